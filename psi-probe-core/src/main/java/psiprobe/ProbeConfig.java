@@ -53,6 +53,7 @@ import psiprobe.beans.LogResolverBean;
 import psiprobe.beans.ResourceResolver;
 import psiprobe.beans.ResourceResolverBean;
 import psiprobe.beans.RuntimeInfoAccessorBean;
+import psiprobe.tools.GeoIpResolver;
 import psiprobe.tools.Mailer;
 
 /**
@@ -93,6 +94,18 @@ public class ProbeConfig implements WebMvcConfigurer {
     return new ContainerWrapperBean(null, forceFirstAdapter, resourceResolvers);
   }
 
+  /**
+   * Gets the geo ip resolver, so that the country database is opened at startup and closed with the
+   * application.
+   *
+   * @return the geo ip resolver
+   */
+  @Bean(name = "geoIpResolver")
+  public GeoIpResolver getGeoIpResolver() {
+    logger.debug("Instantiated geoIpResolver");
+    return GeoIpResolver.getInstance();
+  }
+
   /**
    * Gets the cluster wrapper bean.
    *
@@ -25,9 +25,14 @@ import psiprobe.beans.stats.collectors.ClusterStatsCollectorBean;
 import psiprobe.beans.stats.collectors.ConnectorStatsCollectorBean;
 import psiprobe.beans.stats.collectors.DatasourceStatsCollectorBean;
 import psiprobe.beans.stats.collectors.JvmMemoryStatsCollectorBean;
+import psiprobe.beans.stats.collectors.ProbeOverheadCollectorBean;
 import psiprobe.beans.stats.collectors.RuntimeStatsCollectorBean;
+import psiprobe.beans.stats.collectors.SeriesPolicyLoaderBean;
+import psiprobe.beans.stats.exporters.OpenMetricsExporter;
+import psiprobe.beans.stats.exporters.StatsPushExporter;
 import psiprobe.beans.stats.listeners.MemoryPoolMailingListener;
 import psiprobe.beans.stats.listeners.StatsCollectionListener;
+import psiprobe.beans.stats.listeners.StatsEventDispatcher;
 import psiprobe.beans.stats.providers.ConnectorSeriesProvider;
 import psiprobe.beans.stats.providers.MultipleSeriesProvider;
 import psiprobe.beans.stats.providers.StandardSeriesProvider;
@@ -53,6 +58,8 @@ public class ProbeConfigStats {
     logger.debug("Instantiated statsCollection");
     String storagePath = "";
     XStream xstream = new XStream();
+    // only used to import stats.xml files written by older versions
+    xstream.allowTypesByWildcard(new String[] {"org.jfree.data.xy.**"});
     return new StatsCollection(xstream, storagePath);
   }
 
@@ -122,6 +129,61 @@ public class ProbeConfigStats {
     return new DatasourceStatsCollectorBean();
   }
 
+  /**
+   * Gets the probe overhead collector.
+   *
+   * @return the probe overhead collector
+   */
+  @Bean(name = "probeOverheadCollector")
+  public ProbeOverheadCollectorBean getProbeOverheadCollector() {
+    logger.debug("Instantiated probeOverheadCollector");
+    return new ProbeOverheadCollectorBean();
+  }
+
+  /**
+   * Gets the stats event dispatcher.
+   *
+   * @return the stats event dispatcher
+   */
+  @Bean(name = "statsEventDispatcher")
+  public StatsEventDispatcher getStatsEventDispatcher() {
+    logger.debug("Instantiated statsEventDispatcher");
+    return new StatsEventDispatcher();
+  }
+
+  /**
+   * Gets the open metrics exporter.
+   *
+   * @return the open metrics exporter
+   */
+  @Bean(name = "openMetricsExporter")
+  public OpenMetricsExporter getOpenMetricsExporter() {
+    logger.debug("Instantiated openMetricsExporter");
+    return new OpenMetricsExporter();
+  }
+
+  /**
+   * Gets the series policy loader.
+   *
+   * @return the series policy loader
+   */
+  @Bean(name = "seriesPolicyLoader")
+  public SeriesPolicyLoaderBean getSeriesPolicyLoader() {
+    logger.debug("Instantiated seriesPolicyLoader");
+    return new SeriesPolicyLoaderBean();
+  }
+
+  /**
+   * Gets the stats push exporter.
+   *
+   * @return the stats push exporter
+   */
+  @Bean(name = "statsPushExporter")
+  public StatsPushExporter getStatsPushExporter() {
+    logger.debug("Instantiated statsPushExporter");
+    return new StatsPushExporter();
+  }
+
   /**
    * Gets the memory pool mailing listener.
    *
@@ -296,6 +358,22 @@ public class ProbeConfigStats {
     return provider;
   }
 
+  /**
+   * Gets the probe cpu usage.
+   *
+   * @return the probe cpu usage
+   */
+  @Bean(name = "probeCpu")
+  public StandardSeriesProvider getProbeCpu() {
+    logger.debug("Instantiated probeCpu");
+    List<String> list = new ArrayList<>();
+    list.add("probe.self.cpu");
+
+    StandardSeriesProvider provider = new StandardSeriesProvider();
+    provider.setStatNames(list);
+    return provider;
+  }
+
   /**
    * Gets the fd usage.
    *
@@ -362,6 +440,44 @@ public class ProbeConfigStats {
     return provider;
   }
 
+  /**
+   * Gets the app proc time percentiles.
+   *
+   * @return the app proc time percentiles
+   */
+  @Bean(name = "appProcTimePercentiles")
+  public StandardSeriesProvider getAppProcTimePercentiles() {
+    logger.debug("Instantiated appProcTimePercentiles");
+    List<String> list = new ArrayList<>();
+    list.add("app.proc_time_p50.{0}");
+    list.add("app.proc_time_p90.{0}");
+    list.add("app.proc_time_p99.{0}");
+    list.add("app.proc_time_max.{0}");
+
+    StandardSeriesProvider provider = new StandardSeriesProvider();
+    provider.setStatNames(list);
+    return provider;
+  }
+
+  /**
+   * Gets the total proc time percentiles.
+   *
+   * @return the total proc time percentiles
+   */
+  @Bean(name = "totalProcTimePercentiles")
+  public StandardSeriesProvider getTotalProcTimePercentiles() {
+    logger.debug("Instantiated totalProcTimePercentiles");
+    List<String> list = new ArrayList<>();
+    list.add("total.proc_time_p50");
+    list.add("total.proc_time_p90");
+    list.add("total.proc_time_p99");
+    list.add("total.proc_time_max");
+
+    StandardSeriesProvider provider = new StandardSeriesProvider();
+    provider.setStatNames(list);
+    return provider;
+  }
+
   /**
    * Gets the total req.
    *
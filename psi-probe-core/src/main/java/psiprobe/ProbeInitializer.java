@@ -64,6 +64,8 @@ public class ProbeInitializer implements WebApplicationInitializer {
     probe.addMapping("*.ajax");
     probe.addMapping("/logs/*");
     probe.addMapping("/chart.png");
+    probe.addMapping("/stats/query.json");
+    probe.addMapping("/metrics");
 
     // Set sitemesh filter
     FilterRegistration.Dynamic sitemesh =
@@ -27,6 +27,7 @@ import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.servlet.DispatcherServlet;
 
 import psiprobe.beans.ContainerWrapperBean;
+import psiprobe.tools.ServletWrapperRegistry;
 
 /**
  * Main dispatcher servlet. Spring default dispatcher servlet had to be superseded to handle
@@ -89,6 +90,7 @@ public class ProbeServlet extends DispatcherServlet implements ContainerServlet
 
   @Override
   public void destroy() {
+    ServletWrapperRegistry.clear();
     getContainerWrapperBean().setWrapper(null);
     super.destroy();
   }
@@ -25,7 +25,6 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.Reader;
-import java.lang.management.ManagementFactory;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -33,10 +32,6 @@ import java.util.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
-import javax.management.MBeanServer;
-import javax.management.MalformedObjectNameException;
-import javax.management.ObjectInstance;
-import javax.management.ObjectName;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -47,6 +42,7 @@ import psiprobe.tokenizer.StringTokenizer;
 import psiprobe.tokenizer.Token;
 import psiprobe.tokenizer.Tokenizer;
 import psiprobe.tokenizer.TokenizerSymbol;
+import psiprobe.tools.PlatformMXBeans;
 
 /**
  * Misc. static helper methods.
@@ -569,15 +565,7 @@ public final class Utils {
    * @return true, if it is threading enabled
    */
   public static boolean isThreadingEnabled() {
-    try {
-      MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
-      ObjectName threadingOName = new ObjectName("java.lang:type=Threading");
-      Set<ObjectInstance> threading = mbeanServer.queryMBeans(threadingOName, null);
-      return threading != null && !threading.isEmpty();
-    } catch (MalformedObjectNameException e) {
-      logger.trace("", e);
-      return false;
-    }
+    return PlatformMXBeans.getThreadMXBean() != null;
   }
 
 }
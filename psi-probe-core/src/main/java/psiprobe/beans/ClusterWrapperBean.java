@@ -20,13 +20,34 @@ import psiprobe.model.jmx.Cluster;
 import psiprobe.model.jmx.ClusterSender;
 import psiprobe.model.jmx.PooledClusterSender;
 import psiprobe.model.jmx.SyncClusterSender;
+import psiprobe.tools.JmxAttributes;
 import psiprobe.tools.JmxTools;
+import psiprobe.tools.MBeanMetadataCache;
 
 /**
  * The Class ClusterWrapperBean.
  */
 public class ClusterWrapperBean {
 
+  /** The Constant SENDER_ATTRIBUTES, read from the cluster sender. */
+  private static final String[] SENDER_ATTRIBUTES = {"ackTimeout", "autoConnect",
+      "failureCounter", "nrOfRequests", "replicationMode", "totalBytes"};
+
+  /** The Constant SENDER_ATTRIBUTES_WITH_MEMBERS, also listing the member senders. */
+  private static final String[] SENDER_ATTRIBUTES_WITH_MEMBERS = {"ackTimeout", "autoConnect",
+      "failureCounter", "nrOfRequests", "replicationMode", "totalBytes", "senderObjectNames"};
+
+  /** The Constant MEMBER_ATTRIBUTES, read from each member sender. */
+  private static final String[] MEMBER_ATTRIBUTES = {"address", "port", "avgMessageSize",
+      "avgProcessingTime", "connectCounter", "disconnectCounter", "connected", "keepAliveTimeout",
+      "nrOfRequests", "totalBytes", "resend", "suspect"};
+
+  /** The Constant ASYNC_MEMBER_ATTRIBUTES, read from each asynchronous member sender. */
+  private static final String[] ASYNC_MEMBER_ATTRIBUTES = {"address", "port", "avgMessageSize",
+      "avgProcessingTime", "connectCounter", "disconnectCounter", "connected", "keepAliveTimeout",
+      "nrOfRequests", "totalBytes", "resend", "suspect", "inQueueCounter", "outQueueCounter",
+      "queueSize", "queuedNrOfBytes"};
+
   /**
    * Gets the cluster.
    *
@@ -44,90 +65,84 @@ public class ClusterWrapperBean {
 
     MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
     ObjectName membershipOName =
-        new ObjectName(serverName + ":type=ClusterMembership,host=" + hostName);
+        MBeanMetadataCache.getObjectName(serverName + ":type=ClusterMembership,host=" + hostName);
     ObjectName receiverOName =
-        new ObjectName(serverName + ":type=ClusterReceiver,host=" + hostName);
-    ObjectName senderOName = new ObjectName(serverName + ":type=ClusterSender,host=" + hostName);
-
-    Set<ObjectInstance> clusters =
-        mbeanServer.queryMBeans(new ObjectName("*:type=Cluster,host=" + hostName), null);
+        MBeanMetadataCache.getObjectName(serverName + ":type=ClusterReceiver,host=" + hostName);
+    ObjectName senderOName =
+        MBeanMetadataCache.getObjectName(serverName + ":type=ClusterSender,host=" + hostName);
+
+    JmxTools.recordCall();
+    Set<ObjectInstance> clusters = mbeanServer
+        .queryMBeans(MBeanMetadataCache.getObjectName("*:type=Cluster,host=" + hostName), null);
+    JmxTools.recordCall();
     Set<ObjectInstance> membership = mbeanServer.queryMBeans(membershipOName, null);
     if (clusters != null && !clusters.isEmpty() && membership != null && !membership.isEmpty()) {
       ObjectName clusterOName = clusters.iterator().next().getObjectName();
       cluster = new Cluster();
 
-      cluster.setName(JmxTools.getStringAttr(mbeanServer, clusterOName, "clusterName"));
-      cluster.setInfo(JmxTools.getStringAttr(mbeanServer, clusterOName, "info"));
-      cluster.setManagerClassName(
-          JmxTools.getStringAttr(mbeanServer, clusterOName, "managerClassName"));
-
-      cluster.setMcastAddress(JmxTools.getStringAttr(mbeanServer, membershipOName, "mcastAddr"));
-      cluster.setMcastBindAddress(
-          JmxTools.getStringAttr(mbeanServer, membershipOName, "mcastBindAddress"));
-      cluster.setMcastClusterDomain(
-          JmxTools.getStringAttr(mbeanServer, membershipOName, "mcastClusterDomain"));
-      cluster.setMcastDropTime(JmxTools.getLongAttr(mbeanServer, membershipOName, "mcastDropTime"));
-      cluster
-          .setMcastFrequency(JmxTools.getLongAttr(mbeanServer, membershipOName, "mcastFrequency"));
-      cluster.setMcastPort(JmxTools.getIntAttr(mbeanServer, membershipOName, "mcastPort"));
-      cluster
-          .setMcastSoTimeout(JmxTools.getIntAttr(mbeanServer, membershipOName, "mcastSoTimeout"));
-      cluster.setMcastTtl(JmxTools.getIntAttr(mbeanServer, membershipOName, "mcastTTL"));
-
-      cluster.setTcpListenAddress(
-          JmxTools.getStringAttr(mbeanServer, receiverOName, "tcpListenAddress"));
-      cluster.setTcpListenPort(JmxTools.getIntAttr(mbeanServer, receiverOName, "tcpListenPort"));
-      cluster.setNrOfMsgsReceived(
-          JmxTools.getLongAttr(mbeanServer, receiverOName, "nrOfMsgsReceived"));
-      cluster.setTotalReceivedBytes(
-          JmxTools.getLongAttr(mbeanServer, receiverOName, "totalReceivedBytes"));
-
-      cluster.setSenderAckTimeout(JmxTools.getLongAttr(mbeanServer, senderOName, "ackTimeout"));
-      cluster.setSenderAutoConnect((Boolean) mbeanServer.getAttribute(senderOName, "autoConnect"));
-      cluster.setSenderFailureCounter(
-          JmxTools.getLongAttr(mbeanServer, senderOName, "failureCounter"));
-      cluster.setSenderNrOfRequests(JmxTools.getLongAttr(mbeanServer, senderOName, "nrOfRequests"));
-      cluster.setSenderReplicationMode(
-          JmxTools.getStringAttr(mbeanServer, senderOName, "replicationMode"));
-      cluster.setSenderTotalBytes(JmxTools.getLongAttr(mbeanServer, senderOName, "totalBytes"));
+      JmxAttributes clusterAttrs = JmxTools.getAttributes(mbeanServer, clusterOName,
+          "clusterName", "info", "managerClassName");
+      cluster.setName(clusterAttrs.getString("clusterName"));
+      cluster.setInfo(clusterAttrs.getString("info"));
+      cluster.setManagerClassName(clusterAttrs.getString("managerClassName"));
+
+      JmxAttributes membershipAttrs = JmxTools.getAttributes(mbeanServer, membershipOName,
+          "mcastAddr", "mcastBindAddress", "mcastClusterDomain", "mcastDropTime",
+          "mcastFrequency", "mcastPort", "mcastSoTimeout", "mcastTTL");
+      cluster.setMcastAddress(membershipAttrs.getString("mcastAddr"));
+      cluster.setMcastBindAddress(membershipAttrs.getString("mcastBindAddress"));
+      cluster.setMcastClusterDomain(membershipAttrs.getString("mcastClusterDomain"));
+      cluster.setMcastDropTime(membershipAttrs.getLong("mcastDropTime"));
+      cluster.setMcastFrequency(membershipAttrs.getLong("mcastFrequency"));
+      cluster.setMcastPort(membershipAttrs.getInt("mcastPort"));
+      cluster.setMcastSoTimeout(membershipAttrs.getInt("mcastSoTimeout"));
+      cluster.setMcastTtl(membershipAttrs.getInt("mcastTTL"));
+
+      JmxAttributes receiverAttrs = JmxTools.getAttributes(mbeanServer, receiverOName,
+          "tcpListenAddress", "tcpListenPort", "nrOfMsgsReceived", "totalReceivedBytes");
+      cluster.setTcpListenAddress(receiverAttrs.getString("tcpListenAddress"));
+      cluster.setTcpListenPort(receiverAttrs.getInt("tcpListenPort"));
+      cluster.setNrOfMsgsReceived(receiverAttrs.getLong("nrOfMsgsReceived"));
+      cluster.setTotalReceivedBytes(receiverAttrs.getLong("totalReceivedBytes"));
+
+      JmxAttributes senderAttrs = loadMembers
+          ? JmxTools.getAttributes(mbeanServer, senderOName, SENDER_ATTRIBUTES_WITH_MEMBERS)
+          : JmxTools.getAttributes(mbeanServer, senderOName, SENDER_ATTRIBUTES);
+      cluster.setSenderAckTimeout(senderAttrs.getLong("ackTimeout"));
+      cluster.setSenderAutoConnect(senderAttrs.getBoolean("autoConnect"));
+      cluster.setSenderFailureCounter(senderAttrs.getLong("failureCounter"));
+      cluster.setSenderNrOfRequests(senderAttrs.getLong("nrOfRequests"));
+      cluster.setSenderReplicationMode(senderAttrs.getString("replicationMode"));
+      cluster.setSenderTotalBytes(senderAttrs.getLong("totalBytes"));
 
       if (loadMembers) {
-        ObjectName[] senders =
-            (ObjectName[]) mbeanServer.getAttribute(senderOName, "senderObjectNames");
+        ObjectName[] senders = (ObjectName[]) senderAttrs.get("senderObjectNames");
         for (ObjectName localSenderOName : senders) {
           ClusterSender sender = getClusterSender(cluster);
+          JmxAttributes attrs = JmxTools.getAttributes(mbeanServer, localSenderOName,
+              sender instanceof AsyncClusterSender ? ASYNC_MEMBER_ATTRIBUTES : MEMBER_ATTRIBUTES);
+
+          sender.setAddress(attrs.getString("address"));
+          sender.setPort(attrs.getInt("port"));
+
+          sender.setAvgMessageSize(attrs.getLong("avgMessageSize", -1));
+          sender.setAvgProcessingTime(attrs.getLong("avgProcessingTime", -1));
 
-          sender.setAddress(JmxTools.getStringAttr(mbeanServer, localSenderOName, "address"));
-          sender.setPort(JmxTools.getIntAttr(mbeanServer, localSenderOName, "port"));
-
-          sender.setAvgMessageSize(
-              JmxTools.getLongAttr(mbeanServer, localSenderOName, "avgMessageSize", -1));
-          sender.setAvgProcessingTime(
-              JmxTools.getLongAttr(mbeanServer, localSenderOName, "avgProcessingTime", -1));
-
-          sender.setConnectCounter(
-              JmxTools.getLongAttr(mbeanServer, localSenderOName, "connectCounter"));
-          sender.setDisconnectCounter(
-              JmxTools.getLongAttr(mbeanServer, localSenderOName, "disconnectCounter"));
-          sender.setConnected((Boolean) mbeanServer.getAttribute(localSenderOName, "connected"));
-          sender.setKeepAliveTimeout(
-              JmxTools.getLongAttr(mbeanServer, localSenderOName, "keepAliveTimeout"));
-          sender
-              .setNrOfRequests(JmxTools.getLongAttr(mbeanServer, localSenderOName, "nrOfRequests"));
-          sender.setTotalBytes(JmxTools.getLongAttr(mbeanServer, localSenderOName, "totalBytes"));
-          sender.setResend((Boolean) mbeanServer.getAttribute(localSenderOName, "resend"));
-          sender.setSuspect((Boolean) mbeanServer.getAttribute(localSenderOName, "suspect"));
+          sender.setConnectCounter(attrs.getLong("connectCounter"));
+          sender.setDisconnectCounter(attrs.getLong("disconnectCounter"));
+          sender.setConnected(attrs.getBoolean("connected"));
+          sender.setKeepAliveTimeout(attrs.getLong("keepAliveTimeout"));
+          sender.setNrOfRequests(attrs.getLong("nrOfRequests"));
+          sender.setTotalBytes(attrs.getLong("totalBytes"));
+          sender.setResend(attrs.getBoolean("resend"));
+          sender.setSuspect(attrs.getBoolean("suspect"));
 
           if (sender instanceof AsyncClusterSender) {
             AsyncClusterSender asyncSender = (AsyncClusterSender) sender;
-            asyncSender.setInQueueCounter(
-                JmxTools.getLongAttr(mbeanServer, localSenderOName, "inQueueCounter"));
-            asyncSender.setOutQueueCounter(
-                JmxTools.getLongAttr(mbeanServer, localSenderOName, "outQueueCounter"));
-            asyncSender
-                .setQueueSize(JmxTools.getIntAttr(mbeanServer, localSenderOName, "queueSize"));
-            asyncSender.setQueuedNrOfBytes(
-                JmxTools.getLongAttr(mbeanServer, localSenderOName, "queuedNrOfBytes"));
+            asyncSender.setInQueueCounter(attrs.getLong("inQueueCounter"));
+            asyncSender.setOutQueueCounter(attrs.getLong("outQueueCounter"));
+            asyncSender.setQueueSize(attrs.getInt("queueSize"));
+            asyncSender.setQueuedNrOfBytes(attrs.getLong("queuedNrOfBytes"));
           }
           cluster.getMembers().add(sender);
         }
@@ -10,27 +10,24 @@
  */
 package psiprobe.beans;
 
-import com.maxmind.db.CHMCache;
-import com.maxmind.geoip2.DatabaseReader;
-import com.maxmind.geoip2.exception.AddressNotFoundException;
-import com.maxmind.geoip2.exception.GeoIp2Exception;
-import com.maxmind.geoip2.model.CountryResponse;
-import com.maxmind.geoip2.record.Country;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import psiprobe.model.Connector;
 import psiprobe.model.RequestProcessor;
 import psiprobe.model.ThreadPool;
 import psiprobe.model.jmx.ThreadPoolObjectName;
+import psiprobe.tools.GeoIpResolver;
+import psiprobe.tools.JmxAttributes;
 import psiprobe.tools.JmxTools;
+import psiprobe.tools.MBeanMetadataCache;
 
 import javax.management.*;
-import java.io.File;
-import java.io.IOException;
-import java.net.InetAddress;
-import java.net.URISyntaxException;
-import java.net.UnknownHostException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This class interfaces Tomcat JMX functionality to read connection status. The class essentially
@@ -43,6 +40,36 @@ public class ContainerListenerBean implements NotificationListener {
    */
   private static final Logger logger = LoggerFactory.getLogger(ContainerListenerBean.class);
 
+  /**
+   * The Constant LOCALE_TIMEOUT_MILLIS, after which the page shows clients without their country.
+   */
+  private static final long LOCALE_TIMEOUT_MILLIS = 2000;
+
+  /**
+   * The Constant EXECUTOR_ATTRIBUTES, read from each executor in one call.
+   */
+  private static final String[] EXECUTOR_ATTRIBUTES =
+          {"maxThreads", "largestPoolSize", "minSpareThreads", "activeCount", "poolSize"};
+
+  /**
+   * The Constant POOL_ATTRIBUTES, read from each connector thread pool in one call.
+   */
+  private static final String[] POOL_ATTRIBUTES = {"maxThreads", "maxSpareThreads",
+      "minSpareThreads", "currentThreadsBusy", "currentThreadCount"};
+
+  /**
+   * The Constant CONNECTOR_ATTRIBUTES, read from each connector in one call.
+   */
+  private static final String[] CONNECTOR_ATTRIBUTES =
+          {"stateName", "protocol", "secure", "port", "localPort", "schema"};
+
+  /**
+   * The Constant REQUEST_PROCESSOR_ATTRIBUTES, read from each request processor in one call.
+   */
+  private static final String[] REQUEST_PROCESSOR_ATTRIBUTES = {"stage", "requestProcessingTime",
+      "requestBytesSent", "requestBytesReceived", "remoteAddr", "virtualHost", "method",
+      "workerThreadName"};
+
   /**
    * The allowed operation.
    */
@@ -64,6 +91,26 @@ public class ContainerListenerBean implements NotificationListener {
    */
   private ContainerWrapperBean containerWrapper;
 
+  /**
+   * The time to live of the thread pool and connector snapshots, in milliseconds.
+   */
+  private volatile long snapshotTtl = 1000;
+
+  /**
+   * The latest thread pools.
+   */
+  private final SnapshotCache<ThreadPool> threadPoolSnapshots = new SnapshotCache<>();
+
+  /**
+   * The latest connectors, without request processors.
+   */
+  private final SnapshotCache<Connector> connectorSnapshots = new SnapshotCache<>();
+
+  /**
+   * The latest connectors, with their request processors.
+   */
+  private final SnapshotCache<Connector> processorSnapshots = new SnapshotCache<>();
+
   public ContainerListenerBean(ContainerWrapperBean containerWrapper) {
     this.containerWrapper = containerWrapper;
   }
@@ -86,6 +133,26 @@ public class ContainerListenerBean implements NotificationListener {
     this.containerWrapper = containerWrapper;
   }
 
+  /**
+   * Gets the snapshot ttl.
+   *
+   * @return the time to live of the thread pool and connector snapshots, in milliseconds
+   */
+  public long getSnapshotTtl() {
+    return snapshotTtl;
+  }
+
+  /**
+   * Sets the snapshot ttl.
+   *
+   * @param snapshotTtl the time to live of the thread pool and connector snapshots, in
+   *        milliseconds, 0 to read them on every call
+   */
+  @Value("${psiprobe.beans.containerListener.snapshotTtl}")
+  public void setSnapshotTtl(long snapshotTtl) {
+    this.snapshotTtl = snapshotTtl;
+  }
+
   /**
    * Checks if is initialized.
    *
@@ -112,30 +179,11 @@ public class ContainerListenerBean implements NotificationListener {
     return null;
   }
 
-  private void processCountryResponse() throws CustomException {
-    try (DatabaseReader reader = new DatabaseReader.Builder(new File(
-            Objects.requireNonNull(getClass().getClassLoader().getResource("GeoLite2-Country.mmdb")).toURI()))
-            .withCache(new CHMCache()).build()) {
-      RequestProcessor rp = new RequestProcessor();
-      CountryResponse response =
-              reader.country(InetAddress.getByName(rp.getRemoteAddr()));
-      Country country = response.getCountry();
-      rp.setRemoteAddrLocale(new Locale.Builder().setLanguage("").setRegion(country.getIsoCode()).build());
-    } catch (AddressNotFoundException e) {
-      logger.debug("Address Not Found: {}", e.getMessage());
-      logger.trace("", e);
-    } catch (IOException | GeoIp2Exception | URISyntaxException e) {
-
-      throw new CustomException("An error occurred.", e);
-
-    }
-  }
-
   /**
    * Handles creation and deletion of new "worker" threads.
    *
    * @param notification the notification
-   * @param object       the object
+   * @param object       the handback, the MBean server the listener was added to
    */
   @Override
   public synchronized void handleNotification(Notification notification, Object object) {
@@ -147,6 +195,11 @@ public class ContainerListenerBean implements NotificationListener {
             || MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) {
 
       ObjectName objectName = ((MBeanServerNotification) notification).getMBeanName();
+      if (object instanceof MBeanServer) {
+        MBeanMetadataCache.invalidate((MBeanServer) object, objectName);
+      } else {
+        MBeanMetadataCache.invalidate(objectName);
+      }
       if ("RequestProcessor".equals(objectName.getKeyProperty("type"))) {
         ThreadPoolObjectName threadPoolObjectName = findPool(objectName.getKeyProperty("worker"));
         if (threadPoolObjectName != null) {
@@ -216,16 +269,36 @@ public class ContainerListenerBean implements NotificationListener {
 
     // Register with MBean server
     server.addNotificationListener(new ObjectName("JMImplementation:type=MBeanServerDelegate"),
-            this, null, null);
+            this, null, server);
 
   }
 
+  /**
+   * Gets the thread pools, from a snapshot up to {@link #getSnapshotTtl()} old.
+   *
+   * @return the thread pools, shared with other callers and not to be modified
+   */
+  public List<ThreadPool> getThreadPools() throws ThreadPoolsException {
+    return getThreadPools(false);
+  }
+
   /**
    * Gets the thread pools.
    *
+   * @param fresh whether to read the thread pools now rather than from the latest snapshot
+   *
+   * @return the thread pools, shared with other callers and not to be modified
+   */
+  public List<ThreadPool> getThreadPools(boolean fresh) throws ThreadPoolsException {
+    return threadPoolSnapshots.get(fresh, snapshotTtl, this::loadThreadPools);
+  }
+
+  /**
+   * Reads the thread pools.
+   *
    * @return the thread pools
    */
-  public synchronized List<ThreadPool> getThreadPools() throws ThreadPoolsException {
+  private synchronized List<ThreadPool> loadThreadPools() throws ThreadPoolsException {
     List<ThreadPool> result;
     try {
       if (!isInitialized()) {
@@ -239,11 +312,13 @@ public class ContainerListenerBean implements NotificationListener {
       for (ObjectName executorName : executorNames) {
         ThreadPool threadPool = new ThreadPool();
         threadPool.setName(executorName.getKeyProperty("name"));
-        threadPool.setMaxThreads(JmxTools.getIntAttr(server, executorName, "maxThreads"));
-        threadPool.setMaxSpareThreads(JmxTools.getIntAttr(server, executorName, "largestPoolSize"));
-        threadPool.setMinSpareThreads(JmxTools.getIntAttr(server, executorName, "minSpareThreads"));
-        threadPool.setCurrentThreadsBusy(JmxTools.getIntAttr(server, executorName, "activeCount"));
-        threadPool.setCurrentThreadCount(JmxTools.getIntAttr(server, executorName, "poolSize"));
+        JmxAttributes attrs =
+            JmxTools.getAttributes(server, executorName, EXECUTOR_ATTRIBUTES);
+        threadPool.setMaxThreads(attrs.getInt("maxThreads"));
+        threadPool.setMaxSpareThreads(attrs.getInt("largestPoolSize"));
+        threadPool.setMinSpareThreads(attrs.getInt("minSpareThreads"));
+        threadPool.setCurrentThreadsBusy(attrs.getInt("activeCount"));
+        threadPool.setCurrentThreadCount(attrs.getInt("poolSize"));
         threadPools.add(threadPool);
       }
 
@@ -252,17 +327,16 @@ public class ContainerListenerBean implements NotificationListener {
 
         ThreadPool threadPool = new ThreadPool();
         threadPool.setName(poolName.getKeyProperty("name"));
-        threadPool.setMaxThreads(JmxTools.getIntAttr(server, poolName, "maxThreads"));
+        JmxAttributes attrs = JmxTools.getAttributes(server, poolName, POOL_ATTRIBUTES);
+        threadPool.setMaxThreads(attrs.getInt("maxThreads"));
 
-        if (JmxTools.hasAttribute(server, poolName, "maxSpareThreads")) {
-          threadPool.setMaxSpareThreads(JmxTools.getIntAttr(server, poolName, "maxSpareThreads"));
-          threadPool.setMinSpareThreads(JmxTools.getIntAttr(server, poolName, "minSpareThreads"));
+        if (attrs.has("maxSpareThreads")) {
+          threadPool.setMaxSpareThreads(attrs.getInt("maxSpareThreads"));
+          threadPool.setMinSpareThreads(attrs.getInt("minSpareThreads"));
         }
 
-        threadPool
-                .setCurrentThreadsBusy(JmxTools.getIntAttr(server, poolName, "currentThreadsBusy"));
-        threadPool
-                .setCurrentThreadCount(JmxTools.getIntAttr(server, poolName, "currentThreadCount"));
+        threadPool.setCurrentThreadsBusy(attrs.getInt("currentThreadsBusy"));
+        threadPool.setCurrentThreadCount(attrs.getInt("currentThreadCount"));
 
         /*
          * Tomcat will return -1 for maxThreads if the connector uses an executor for its threads.
@@ -292,11 +366,15 @@ public class ContainerListenerBean implements NotificationListener {
         throw new IllegalArgumentException("Not supported operation");
       }
 
-      ObjectName objectName = new ObjectName("Catalina:type=Connector,port=" + port);
+      ObjectName objectName =
+              MBeanMetadataCache.getObjectName("Catalina:type=Connector,port=" + port);
 
       MBeanServer server = getContainerWrapper().getResourceResolver().getMBeanServer();
 
       JmxTools.invoke(server, objectName, operation, null, null);
+      connectorSnapshots.invalidate();
+      processorSnapshots.invalidate();
+      threadPoolSnapshots.invalidate();
 
       logger.info("operation {} on Connector {} invoked successfully", operation, objectName);
     } catch (Exception e) {
@@ -304,18 +382,62 @@ public class ContainerListenerBean implements NotificationListener {
     }
   }
 
+  /**
+   * Gets the connectors, from a snapshot up to {@link #getSnapshotTtl()} old.
+   *
+   * @param includeRequestProcessors the include request processors
+   * @return the connectors, shared with other callers and not to be modified
+   */
+  public List<Connector> getConnectors(boolean includeRequestProcessors)
+          throws CustomException, MalformedObjectNameException, InstanceNotFoundException {
+    return getConnectors(includeRequestProcessors, false);
+  }
+
   /**
    * Gets the connectors.
    *
    * @param includeRequestProcessors the include request processors
+   * @param fresh whether to read the connectors now rather than from the latest snapshot
+   * @return the connectors, shared with other callers and not to be modified
+   */
+  public List<Connector> getConnectors(boolean includeRequestProcessors, boolean fresh)
+          throws CustomException, MalformedObjectNameException, InstanceNotFoundException {
+    SnapshotCache<Connector> snapshots =
+            includeRequestProcessors ? processorSnapshots : connectorSnapshots;
+    return snapshots.get(fresh, snapshotTtl, () -> loadConnectors(includeRequestProcessors));
+  }
+
+  /**
+   * Reads the connectors, then locates the clients of their request processors without holding the
+   * monitor of the bean, so that a slow lookup does not hold up notifications and other readers.
+   *
+   * @param includeRequestProcessors the include request processors
    * @return the connectors
    */
+  private List<Connector> loadConnectors(boolean includeRequestProcessors)
+          throws CustomException {
+    List<Connector> connectors = readConnectors(includeRequestProcessors);
+    if (includeRequestProcessors) {
+      resolveRemoteAddrLocales(connectors);
+    }
+    return connectors;
+  }
 
-  public synchronized List<Connector> getConnectors(boolean includeRequestProcessors)
-          throws CustomException, MalformedObjectNameException, InstanceNotFoundException {
+  /**
+   * Reads the connectors from the MBean server.
+   *
+   * @param includeRequestProcessors the include request processors
+   * @return the connectors
+   */
+  private synchronized List<Connector> readConnectors(boolean includeRequestProcessors)
+          throws CustomException {
 
     if (!isInitialized()) {
-      initialize();
+      try {
+        initialize();
+      } catch (MalformedObjectNameException | InstanceNotFoundException e) {
+        throw new CustomException("Failed to find connectors", e);
+      }
     }
 
     List<Connector> connectors = new ArrayList<>(poolNames.size());
@@ -330,12 +452,47 @@ public class ContainerListenerBean implements NotificationListener {
         throw new CustomException("Failed to create connector", e);
       }
     }
-
     return connectors;
   }
 
+  /**
+   * Sets the locales of the clients of all request processors, looking up each address once.
+   *
+   * @param connectors the connectors
+   */
+  private void resolveRemoteAddrLocales(List<Connector> connectors) {
+    List<String> addresses = new ArrayList<>();
+    for (Connector connector : connectors) {
+      for (RequestProcessor rp : connector.getRequestProcessors()) {
+        addresses.add(rp.getRemoteAddr());
+      }
+    }
+    CompletableFuture<Map<String, Locale>> lookup =
+            GeoIpResolver.getInstance().resolveAll(addresses);
+    try {
+      Map<String, Locale> locales = lookup.get(LOCALE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      for (Connector connector : connectors) {
+        for (RequestProcessor rp : connector.getRequestProcessors()) {
+          if (rp.getRemoteAddr() != null) {
+            rp.setRemoteAddrLocale(locales.get(rp.getRemoteAddr()));
+          }
+        }
+      }
+    } catch (TimeoutException e) {
+      lookup.cancel(true);
+      logger.debug("Client addresses not located within {} ms", LOCALE_TIMEOUT_MILLIS);
+      logger.trace("", e);
+    } catch (ExecutionException e) {
+      logger.debug("Client addresses not located: {}", e.getMessage());
+      logger.trace("", e);
+    } catch (InterruptedException e) {
+      lookup.cancel(true);
+      Thread.currentThread().interrupt();
+    }
+  }
+
   private Connector createConnector(MBeanServer server, ThreadPoolObjectName threadPoolObjectName,
-                                    boolean includeRequestProcessors) throws MalformedObjectNameException, AttributeNotFoundException, UnknownHostException, CustomException {
+                                    boolean includeRequestProcessors) throws MalformedObjectNameException, AttributeNotFoundException {
     ObjectName poolName = threadPoolObjectName.getThreadPoolName();
     Connector connector = new Connector();
 
@@ -354,7 +511,7 @@ public class ContainerListenerBean implements NotificationListener {
 
     if (!"-1".equals(port)) {
       String str = "Catalina:type=Connector,port=" + port;
-      ObjectName objectName = new ObjectName(str);
+      ObjectName objectName = MBeanMetadataCache.getObjectName(str);
       setConnectorAttributes(server, objectName, connector);
     }
 
@@ -370,43 +527,33 @@ public class ContainerListenerBean implements NotificationListener {
   }
 
   private void setConnectorAttributes(MBeanServer server, ObjectName objectName, Connector connector) throws AttributeNotFoundException {
-    connector.setStatus(JmxTools.getStringAttr(server, objectName, "stateName"));
-    connector.setProtocol(JmxTools.getStringAttr(server, objectName, "protocol"));
-    connector.setSecure(Boolean.parseBoolean(JmxTools.getStringAttr(server, objectName, "secure")));
-    connector.setPort(JmxTools.getIntAttr(server, objectName, "port"));
-    connector.setLocalPort(JmxTools.getIntAttr(server, objectName, "localPort"));
-    connector.setSchema(JmxTools.getStringAttr(server, objectName, "schema"));
+    JmxAttributes attrs = JmxTools.getAttributes(server, objectName, CONNECTOR_ATTRIBUTES);
+    connector.setStatus(attrs.getString("stateName"));
+    connector.setProtocol(attrs.getString("protocol"));
+    connector.setSecure(Boolean.parseBoolean(attrs.getString("secure")));
+    connector.setPort(attrs.getInt("port"));
+    connector.setLocalPort(attrs.getInt("localPort"));
+    connector.setSchema(attrs.getString("schema"));
   }
 
-  private RequestProcessor createRequestProcessor(MBeanServer server, ObjectName wrkName) throws AttributeNotFoundException, UnknownHostException, CustomException {
+  private RequestProcessor createRequestProcessor(MBeanServer server, ObjectName wrkName) throws AttributeNotFoundException {
     RequestProcessor rp = new RequestProcessor();
     rp.setName(wrkName.getKeyProperty("name"));
-    rp.setStage(JmxTools.getIntAttr(server, wrkName, "stage"));
-    rp.setProcessingTime(JmxTools.getLongAttr(server, wrkName, "requestProcessingTime"));
-    rp.setBytesSent(JmxTools.getLongAttr(server, wrkName, "requestBytesSent"));
-    rp.setBytesReceived(JmxTools.getLongAttr(server, wrkName, "requestBytesReceived"));
-    try {
-      rp.setRemoteAddr(JmxTools.getStringAttr(server, wrkName, "remoteAddr"));
-    } catch (RuntimeOperationsException ex) {
-      logger.trace("", ex);
-    }
-
-    if (rp.getRemoteAddr() != null) {
-      if (InetAddress.getByName(rp.getRemoteAddr()).isLoopbackAddress()) {
-        rp.setRemoteAddrLocale(new Locale(System.getProperty("user.language"),
-                System.getProperty("user.country")));
-      } else {
-        processCountryResponse();
-      }
+    JmxAttributes attrs = JmxTools.getAttributes(server, wrkName, REQUEST_PROCESSOR_ATTRIBUTES);
+    rp.setStage(attrs.getInt("stage"));
+    rp.setProcessingTime(attrs.getLong("requestProcessingTime"));
+    rp.setBytesSent(attrs.getLong("requestBytesSent"));
+    rp.setBytesReceived(attrs.getLong("requestBytesReceived"));
+    // remoteAddr is left out of the batch when the processor is between requests
+    if (attrs.has("remoteAddr")) {
+      rp.setRemoteAddr(attrs.getString("remoteAddr"));
     }
 
-    rp.setVirtualHost(JmxTools.getStringAttr(server, wrkName, "virtualHost"));
-    rp.setMethod(JmxTools.getStringAttr(server, wrkName, "method"));
-    JmxTools.getStringAttr(server, wrkName, "currentUri");
-
+    rp.setVirtualHost(attrs.getString("virtualHost"));
+    rp.setMethod(attrs.getString("method"));
 
-    if (JmxTools.hasAttribute(server, wrkName, "workerThreadName")) {
-      rp.setWorkerThreadName(JmxTools.getStringAttr(server, wrkName, "workerThreadName"));
+    if (attrs.has("workerThreadName")) {
+      rp.setWorkerThreadName(attrs.getString("workerThreadName"));
       rp.setWorkerThreadNameSupported(true);
     } else {
       rp.setWorkerThreadNameSupported(false);
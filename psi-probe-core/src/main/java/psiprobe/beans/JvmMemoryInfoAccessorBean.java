@@ -11,7 +11,9 @@
 package psiprobe.beans;
 
 import java.lang.management.ManagementFactory;
-import java.util.LinkedList;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -22,16 +24,45 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import psiprobe.model.jmx.MemoryPool;
+import psiprobe.tools.JmxAttributes;
 import psiprobe.tools.JmxTools;
+import psiprobe.tools.MBeanMetadataCache;
+import psiprobe.tools.PlatformMXBeans;
 
 /**
  * The Class JvmMemoryInfoAccessorBean.
+ *
+ * <p>
+ * The pools of the JVM the probe runs in are read from the {@link MemoryPoolMXBean}s directly. Any
+ * other MBean server is read through the generic JMX API.
+ * </p>
  */
 public class JvmMemoryInfoAccessorBean {
 
   /** The Constant logger. */
   private static final Logger logger = LoggerFactory.getLogger(JvmMemoryInfoAccessorBean.class);
 
+  /** The mbean server. */
+  private MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+  /**
+   * Gets the mbean server.
+   *
+   * @return the mbean server
+   */
+  public MBeanServer getMbeanServer() {
+    return mbeanServer;
+  }
+
+  /**
+   * Sets the mbean server.
+   *
+   * @param mbeanServer the new mbean server
+   */
+  public void setMbeanServer(MBeanServer mbeanServer) {
+    this.mbeanServer = mbeanServer;
+  }
+
   /**
    * Gets the pools.
    *
@@ -41,24 +72,87 @@ public class JvmMemoryInfoAccessorBean {
    */
   public List<MemoryPool> getPools() throws MalformedObjectNameException, AttributeNotFoundException, ReflectionException, InstanceNotFoundException, MBeanException {
 
-    List<MemoryPool> memoryPools = new LinkedList<>();
-    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
-    Set<ObjectInstance> memoryOPools =
-        mbeanServer.queryMBeans(new ObjectName("java.lang:type=MemoryPool,*"), null);
+    boolean platform = mbeanServer == null || PlatformMXBeans.isPlatformServer(mbeanServer);
+    List<MemoryPool> memoryPools = platform ? getPlatformPools() : getPools(mbeanServer);
 
-    // totals
-    long totalInit = 0;
-    long totalMax = 0;
-    long totalUsed = 0;
-    long totalCommitted = 0;
+    if (!memoryPools.isEmpty()) {
+      // totals
+      long totalInit = 0;
+      long totalMax = 0;
+      long totalUsed = 0;
+      long totalCommitted = 0;
+      for (MemoryPool memoryPool : memoryPools) {
+        totalInit += memoryPool.getInit();
+        totalMax += memoryPool.getMax();
+        totalUsed += memoryPool.getUsed();
+        totalCommitted += memoryPool.getCommitted();
+      }
+
+      MemoryPool pool = new MemoryPool();
+      pool.setName("Total");
+      pool.setType("TOTAL");
+      pool.setInit(totalInit);
+      pool.setUsed(totalUsed);
+      pool.setMax(totalMax);
+      pool.setCommitted(totalCommitted);
+      memoryPools.add(pool);
+    }
+
+    return memoryPools;
+
+  }
+
+  /**
+   * Gets the pools of this JVM from its memory pool MXBeans.
+   *
+   * @return the pools
+   */
+  private List<MemoryPool> getPlatformPools() {
+    List<MemoryPool> memoryPools = new ArrayList<>();
+    for (MemoryPoolMXBean poolBean : PlatformMXBeans.getMemoryPools()) {
+      MemoryPool memoryPool = new MemoryPool();
+      memoryPool.setName(poolBean.getName());
+      memoryPool.setType(poolBean.getType().name());
+
+      MemoryUsage usage = poolBean.getUsage();
+      if (usage != null) {
+        memoryPool.setMax(usage.getMax());
+        memoryPool.setUsed(usage.getUsed());
+        memoryPool.setInit(usage.getInit());
+        memoryPool.setCommitted(usage.getCommitted());
+      } else {
+        logger.error("Oops, JVM problem? {} usage is NULL!", poolBean.getName());
+      }
+      memoryPools.add(memoryPool);
+    }
+    return memoryPools;
+  }
+
+  /**
+   * Gets the pools of an MBean server through the generic JMX API.
+   *
+   * @param server the server
+   *
+   * @return the pools
+   *
+   * @throws MalformedObjectNameException the malformed object name exception
+   * @throws AttributeNotFoundException the attribute not found exception
+   */
+  private List<MemoryPool> getPools(MBeanServer server)
+      throws MalformedObjectNameException, AttributeNotFoundException {
+    List<MemoryPool> memoryPools = new ArrayList<>();
+    JmxTools.recordCall();
+    Set<ObjectInstance> memoryOPools = server
+        .queryMBeans(MBeanMetadataCache.getObjectName("java.lang:type=MemoryPool,*"), null);
 
     for (ObjectInstance oi : memoryOPools) {
       ObjectName objName = oi.getObjectName();
       MemoryPool memoryPool = new MemoryPool();
-      memoryPool.setName(JmxTools.getStringAttr(mbeanServer, objName, "Name"));
-      memoryPool.setType(JmxTools.getStringAttr(mbeanServer, objName, "Type"));
+      JmxAttributes attrs = JmxTools.getAttributes(server, objName, "Name", "Type", "Usage");
+      memoryPool.setName(attrs.getString("Name"));
+      memoryPool.setType(attrs.getString("Type"));
 
-      CompositeDataSupport cd = (CompositeDataSupport) mbeanServer.getAttribute(objName, "Usage");
+      CompositeDataSupport cd = (CompositeDataSupport) attrs.get("Usage");
       /*
        * It seems that "Usage" attribute of one of the pools may turn into null intermittently. We
        * better have a dip in the graph then an NPE though.
@@ -72,27 +166,9 @@ public class JvmMemoryInfoAccessorBean {
         logger.error("Oops, JVM problem? {} 'Usage' attribute is NULL!", objName);
       }
 
-      totalInit += memoryPool.getInit();
-      totalMax += memoryPool.getMax();
-      totalUsed += memoryPool.getUsed();
-      totalCommitted += memoryPool.getCommitted();
-
       memoryPools.add(memoryPool);
     }
-
-    if (!memoryPools.isEmpty()) {
-      MemoryPool pool = new MemoryPool();
-      pool.setName("Total");
-      pool.setType("TOTAL");
-      pool.setInit(totalInit);
-      pool.setUsed(totalUsed);
-      pool.setMax(totalMax);
-      pool.setCommitted(totalCommitted);
-      memoryPools.add(pool);
-    }
-
     return memoryPools;
-
   }
 
   private class ListMemoryPoolException extends Exception {
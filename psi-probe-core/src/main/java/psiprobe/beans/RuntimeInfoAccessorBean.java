@@ -22,6 +22,7 @@ import org.slf4j.LoggerFactory;
 
 import psiprobe.model.jmx.RuntimeInformation;
 import psiprobe.tools.JmxTools;
+import psiprobe.tools.MBeanMetadataCache;
 
 /**
  * The Class RuntimeInfoAccessorBean.
@@ -43,12 +44,12 @@ public class RuntimeInfoAccessorBean {
     RuntimeInformation ri = new RuntimeInformation();
 
     try {
-      ObjectName runtimeOName = new ObjectName("java.lang:type=Runtime");
+      ObjectName runtimeOName = MBeanMetadataCache.getObjectName("java.lang:type=Runtime");
       ri.setStartTime(JmxTools.getLongAttr(mbeanServer, runtimeOName, "StartTime"));
       ri.setUptime(JmxTools.getLongAttr(mbeanServer, runtimeOName, "Uptime"));
       ri.setVmVendor(JmxTools.getStringAttr(mbeanServer, runtimeOName, "VmVendor"));
 
-      ObjectName osOName = new ObjectName("java.lang:type=OperatingSystem");
+      ObjectName osOName = MBeanMetadataCache.getObjectName("java.lang:type=OperatingSystem");
       ri.setOsName(JmxTools.getStringAttr(mbeanServer, osOName, "Name"));
       ri.setOsVersion(JmxTools.getStringAttr(mbeanServer, osOName, "Version"));
 
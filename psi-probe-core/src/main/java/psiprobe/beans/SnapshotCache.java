@@ -0,0 +1,130 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The latest list read by a loader, shared by all readers until it is older than a time to live.
+ *
+ * <p>
+ * Readers of a live snapshot take no lock. Once it expires, one reader reloads it while the others
+ * keep getting the expired one, so that a slow load is never repeated by every waiting caller. Only
+ * the first load, and callers asking for a fresh list, wait for the load.
+ * </p>
+ *
+ * @param <T> the type of the items
+ */
+final class SnapshotCache<T> {
+
+  /**
+   * Reads the items of a snapshot.
+   *
+   * @param <T> the type of the items
+   * @param <E> the type of the exception of a failed load
+   */
+  interface Loader<T, E extends Throwable> {
+
+    /**
+     * Loads the items.
+     *
+     * @return the items
+     *
+     * @throws E if the items cannot be read
+     */
+    List<T> load() throws E;
+  }
+
+  /** The latest snapshot, null until the first load or after an invalidation. */
+  private volatile Snapshot<T> snapshot;
+
+  /** The lock held by the thread reloading the snapshot. */
+  private final ReentrantLock refreshLock = new ReentrantLock();
+
+  /**
+   * Gets the items of the latest snapshot, loading a new one if it is older than the time to live.
+   *
+   * @param <E> the type of the exception of a failed load
+   * @param fresh whether to load new items whatever the age of the snapshot
+   * @param ttlMillis the time to live of a snapshot, in milliseconds
+   * @param loader the loader
+   *
+   * @return the items, an unmodifiable list
+   *
+   * @throws E if the items had to be loaded and could not be read
+   */
+  <E extends Throwable> List<T> get(boolean fresh, long ttlMillis, Loader<T, E> loader) throws E {
+    Snapshot<T> current = snapshot;
+    if (!fresh && current != null) {
+      if (current.isLive(ttlMillis) || !refreshLock.tryLock()) {
+        return current.items;
+      }
+    } else {
+      refreshLock.lock();
+    }
+    try {
+      current = snapshot;
+      if (!fresh && current != null && current.isLive(ttlMillis)) {
+        return current.items;
+      }
+      List<T> items = Collections.unmodifiableList(loader.load());
+      snapshot = new Snapshot<>(items);
+      return items;
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Drops the snapshot, so that the next reader loads new items.
+   */
+  void invalidate() {
+    snapshot = null;
+  }
+
+  /**
+   * Items and the time they were loaded at.
+   *
+   * @param <T> the type of the items
+   */
+  private static final class Snapshot<T> {
+
+    /** The items. */
+    final List<T> items;
+
+    /** The load time, in nanoseconds. */
+    final long loadedAt = System.nanoTime();
+
+    /**
+     * Instantiates a new snapshot.
+     *
+     * @param items the items
+     */
+    Snapshot(List<T> items) {
+      this.items = items;
+    }
+
+    /**
+     * Checks whether the snapshot is younger than a time to live.
+     *
+     * @param ttlMillis the time to live, in milliseconds
+     *
+     * @return true, if the snapshot can be served
+     */
+    boolean isLive(long ttlMillis) {
+      return System.nanoTime() - loadedAt < TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+  }
+
+}
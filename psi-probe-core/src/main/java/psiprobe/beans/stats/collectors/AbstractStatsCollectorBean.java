@@ -10,21 +10,25 @@
  */
 package psiprobe.beans.stats.collectors;
 
-import org.jfree.data.xy.XYDataItem;
-import psiprobe.Utils;
 import psiprobe.beans.ClusterWrapperBean;
 import psiprobe.beans.ContainerListenerBean;
 import psiprobe.beans.ContainerWrapperBean;
 import psiprobe.beans.RuntimeInfoAccessorBean;
 import psiprobe.beans.stats.listeners.StatsCollectionEvent;
 import psiprobe.beans.stats.listeners.StatsCollectionListener;
+import psiprobe.beans.stats.listeners.StatsEventDispatcher;
+import psiprobe.model.stats.SeriesPolicy;
+import psiprobe.model.stats.StatsBaseline;
 import psiprobe.model.stats.StatsCollection;
+import psiprobe.model.stats.StatsSeries;
 
 import javax.inject.Inject;
 import javax.management.*;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The Class AbstractStatsCollectorBean.
@@ -40,17 +44,45 @@ public abstract class AbstractStatsCollectorBean {
   public void statsCollection(StatsCollection statsCollection) {
     this.statsCollection = statsCollection;
   }
+
+  /**
+   * Gets the stats collection.
+   *
+   * @return the stats collection
+   */
+  protected StatsCollection getStatsCollection() {
+    return statsCollection;
+  }
   /** The max series. */
   private int maxSeries = 240;
 
-  /** The listeners. */
-  private List<StatsCollectionListener> listeners;
+  /** The listeners, replaced rather than modified once set. */
+  private volatile List<StatsCollectionListener> listeners;
 
-  /** The previous data. */
-  private final Map<String, Long> previousData = new TreeMap<>();
+  /** The event dispatcher, listeners are called on the collecting thread without one. */
+  private StatsEventDispatcher eventDispatcher;
 
-  /** The previous data2 d. */
-  private final Map<String, Entry> previousData2D = new TreeMap<>();
+  /**
+   * Stats event dispatcher.
+   *
+   * @param eventDispatcher the event dispatcher
+   */
+  @Inject
+  public void statsEventDispatcher(StatsEventDispatcher eventDispatcher) {
+    this.eventDispatcher = eventDispatcher;
+  }
+
+  /** The time spent waiting for series monitors and the write-ahead log, in nanoseconds. */
+  private final LongAdder lockWaitNanos = new LongAdder();
+
+  /** The CPU time used by helper threads of the collector, in nanoseconds. */
+  private final LongAdder helperCpuNanos = new LongAdder();
+
+  /** The bytes allocated by helper threads of the collector. */
+  private final LongAdder helperAllocatedBytes = new LongAdder();
+
+  /** The series handles by name. */
+  private final Map<String, SeriesHandle> handles = new ConcurrentHashMap<>();
 
   protected AbstractStatsCollectorBean() {
   }
@@ -64,6 +96,50 @@ public abstract class AbstractStatsCollectorBean {
     this.maxSeries = maxSeries;
   }
 
+  /**
+   * Gets the time this collector spent waiting for series monitors, which are shared with chart
+   * and snapshot readers, and for the write-ahead log.
+   *
+   * @return the lock wait time in nanoseconds
+   */
+  public long getLockWaitTime() {
+    return lockWaitNanos.sum();
+  }
+
+  /**
+   * Gets the CPU time used by threads the collector hands work to, such as a fork-join pool, on
+   * top of the thread calling {@link #collect()}.
+   *
+   * @return the CPU time in nanoseconds
+   */
+  public long getHelperCpuTime() {
+    return helperCpuNanos.sum();
+  }
+
+  /**
+   * Gets the bytes allocated by threads the collector hands work to.
+   *
+   * @return the allocated bytes
+   */
+  public long getHelperAllocatedBytes() {
+    return helperAllocatedBytes.sum();
+  }
+
+  /**
+   * Records the work a helper thread did for the collector.
+   *
+   * @param cpuNanos the CPU time in nanoseconds, negative if not measured
+   * @param allocatedBytes the allocated bytes, negative if not measured
+   */
+  protected void recordHelperWork(long cpuNanos, long allocatedBytes) {
+    if (cpuNanos > 0) {
+      helperCpuNanos.add(cpuNanos);
+    }
+    if (allocatedBytes > 0) {
+      helperAllocatedBytes.add(allocatedBytes);
+    }
+  }
+
   /**
    * Gets the listeners.
    *
@@ -82,6 +158,19 @@ public abstract class AbstractStatsCollectorBean {
     this.listeners = listeners;
   }
 
+  /**
+   * Adds a listener to the configured ones.
+   *
+   * @param listener the listener
+   */
+  public synchronized void addListener(StatsCollectionListener listener) {
+    List<StatsCollectionListener> current = listeners;
+    List<StatsCollectionListener> updated =
+        current == null ? new ArrayList<>() : new ArrayList<>(current);
+    updated.add(listener);
+    listeners = updated;
+  }
+
   public abstract void collect() throws ContainerListenerBean.CustomException, ContainerListenerBean.CustomExceptionException, InterruptedException, ReflectionException, MalformedObjectNameException, AttributeNotFoundException, InstanceNotFoundException, MBeanException, ClusterWrapperBean.CustomException, ContainerWrapperBean.DataSourceException, RuntimeInfoAccessorBean.RuntimeInformationException;
 
 
@@ -98,6 +187,18 @@ public abstract class AbstractStatsCollectorBean {
     }
   }
 
+  /**
+   * Gets the handle of a series, creating it on first use. Collectors should keep the handle
+   * rather than call this for every sample.
+   *
+   * @param name the name
+   *
+   * @return the series handle
+   */
+  protected SeriesHandle getSeriesHandle(String name) {
+    return handles.computeIfAbsent(name, SeriesHandle::new);
+  }
+
   /**
    * Builds the delta stats.
    *
@@ -109,7 +210,7 @@ public abstract class AbstractStatsCollectorBean {
    * @throws InterruptedException the interrupted exception
    */
   protected long buildDeltaStats(String name, long value) throws InterruptedException {
-    return buildDeltaStats(name, value, System.currentTimeMillis());
+    return buildDeltaStats(getSeriesHandle(name), value, System.currentTimeMillis());
   }
 
   /**
@@ -124,13 +225,37 @@ public abstract class AbstractStatsCollectorBean {
    * @throws InterruptedException the interrupted exception
    */
   protected long buildDeltaStats(String name, long value, long time) throws InterruptedException {
+    return buildDeltaStats(getSeriesHandle(name), value, time);
+  }
+
+  /**
+   * Builds the delta stats. The first value seen only primes the handle, a counter that has been
+   * running since before the collector started would otherwise show up as one huge spike. While
+   * the interval of the series policy has not elapsed, deltas are added up and stored with the next
+   * sample that is due.
+   *
+   * @param handle the series handle
+   * @param value the value
+   * @param time the time
+   *
+   * @return the delta since the previous call, never negative
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  protected long buildDeltaStats(SeriesHandle handle, long value, long time)
+      throws InterruptedException {
     long delta = 0;
     if (statsCollection != null) {
-      long previousValue = Utils.toLong(previousData.get(name), 0);
-      delta = value - previousValue;
-      delta = delta > 0 ? delta : 0;
-      buildAbsoluteStats(name, delta, time);
-      previousData.put(name, value);
+      if (handle.primed) {
+        delta = Math.max(value - handle.previousValue, 0);
+        handle.pendingValue += delta;
+        if (isDue(handle, time)) {
+          buildAbsoluteStats(handle, handle.pendingValue, time);
+          handle.pendingValue = 0;
+        }
+      }
+      handle.previousValue = value;
+      handle.primed = true;
     }
     return delta;
   }
@@ -146,48 +271,36 @@ public abstract class AbstractStatsCollectorBean {
    */
   protected void buildAbsoluteStats(String name, long value, long time)
       throws InterruptedException {
-
-    List<XYDataItem> stats = statsCollection.getStats(name);
-    if (stats == null) {
-      statsCollection.newStats(name, maxSeries);
-    } else {
-      XYDataItem data = new XYDataItem(time, value);
-      statsCollection.lockForUpdate();
-      try {
-        stats.add(data);
-        houseKeepStats(stats);
-      } finally {
-        statsCollection.releaseLock();
-      }
-      if (listeners != null) {
-        StatsCollectionEvent event = new StatsCollectionEvent(name, data);
-        for (StatsCollectionListener listener : listeners) {
-          if (listener.isEnabled()) {
-            listener.statsCollected(event);
-          }
-        }
-      }
-    }
+    buildAbsoluteStats(getSeriesHandle(name), value, time);
   }
 
   /**
-   * The Class Entry.
+   * Builds the absolute stats.
+   *
+   * @param handle the series handle
+   * @param value the value
+   * @param time the time
+   *
+   * @throws InterruptedException the interrupted exception
    */
-  private static class Entry {
-
-    /** The time. */
-    long time;
-
-    /** The value. */
-    long value;
-
-    /**
-     * Instantiates a new entry.
-     */
-    public Entry() {
-      // Prevent Emulation by Synthetic Accessor
+  protected void buildAbsoluteStats(SeriesHandle handle, long value, long time)
+      throws InterruptedException {
+    if (!isDue(handle, time)) {
+      return;
+    }
+    addSample(handle, time, (double) value);
+    if (listeners != null && !listeners.isEmpty()) {
+      StatsCollectionEvent event = new StatsCollectionEvent(handle.getName(), time, value);
+      event.setBaseline(handle.expected, handle.deviation);
+      if (eventDispatcher != null && eventDispatcher.publish(listeners, event)) {
+        return;
+      }
+      for (StatsCollectionListener listener : listeners) {
+        if (listener.isEnabled()) {
+          listener.statsCollected(event);
+        }
+      }
     }
-
   }
 
   /**
@@ -211,30 +324,32 @@ public abstract class AbstractStatsCollectorBean {
    */
   protected void buildTimePercentageStats(long value, long time)
       throws InterruptedException {
-  String name = "os.cpu";
-
-    Entry entry = previousData2D.get(name);
-    if (entry == null) {
-      entry = new Entry();
-      entry.value = value;
-      entry.time = time;
-      previousData2D.put(name, entry);
-    } else {
-      double valueDelta = (double) value - entry.value;
-      double timeDelta = (double) time - entry.time;
-      double statValue = valueDelta * 100 / timeDelta;
-      statsCollection.lockForUpdate();
-      try {
-        List<XYDataItem> stats = statsCollection.getStats(name);
-        if (stats == null) {
-          stats = statsCollection.newStats(name, maxSeries);
-        }
-        stats.add(stats.size(), new XYDataItem(time, statValue));
-        houseKeepStats(stats);
-      } finally {
-        statsCollection.releaseLock();
+    buildTimePercentageStats(getSeriesHandle("os.cpu"), value, time);
+  }
+
+  /**
+   * Builds time percentage stats, see {@link #buildTimePercentageStats(long, long)}.
+   *
+   * @param handle the series handle
+   * @param value time spent on the task in milliseconds
+   * @param time system time in milliseconds
+   *
+   * @throws InterruptedException if a lock could not be obtained
+   */
+  protected void buildTimePercentageStats(SeriesHandle handle, long value, long time)
+      throws InterruptedException {
+    if (handle.primed) {
+      handle.pendingValue += value - handle.previousValue;
+      handle.pendingTime += time - handle.previousTime;
+      if (isDue(handle, time)) {
+        addSample(handle, time, (double) handle.pendingValue * 100 / handle.pendingTime);
+        handle.pendingValue = 0;
+        handle.pendingTime = 0;
       }
     }
+    handle.previousValue = value;
+    handle.previousTime = time;
+    handle.primed = true;
   }
 
   /**
@@ -247,13 +362,81 @@ public abstract class AbstractStatsCollectorBean {
   }
 
   /**
-   * House keep stats.
+   * Gets the policy of a series, looking it up again if the policies were replaced.
+   *
+   * @param handle the series handle
+   *
+   * @return the policy
+   */
+  private SeriesPolicy getPolicy(SeriesHandle handle) {
+    long generation = statsCollection.getPolicyGeneration();
+    if (handle.policy == null || handle.policyGeneration != generation) {
+      handle.policy = statsCollection.getPolicy(handle.getName());
+      handle.policyGeneration = generation;
+    }
+    return handle.policy;
+  }
+
+  /**
+   * Checks whether the interval of the series policy has elapsed since the last stored sample.
+   *
+   * @param handle the series handle
+   * @param time the time
+   *
+   * @return true, if a sample taken at the given time is stored
+   */
+  private boolean isDue(SeriesHandle handle, long time) {
+    return time >= handle.nextDue || getPolicy(handle).getInterval() <= 0;
+  }
+
+  /**
+   * Appends a sample to the series, its baseline and the write-ahead log. What the baseline
+   * expected before learning from the sample is kept in the handle for the listeners. The series
+   * evicts its oldest sample by itself once full, it is only resized here when its policy capacity,
+   * or {@code maxSeries} for series without one, changed since the series was created or restored.
+   * The series monitor is the only lock normally taken: the write-ahead log reserves its record
+   * without one and only blocks while a new series is defined or a full segment replaced. The time
+   * spent waiting for either is reported to the stats collection.
    *
-   * @param stats the stats
+   * @param handle the series handle
+   * @param time the time
+   * @param value the value
    */
-  private void houseKeepStats(List<XYDataItem> stats) {
-    while (stats.size() > maxSeries) {
-      stats.remove(0);
+  private void addSample(SeriesHandle handle, long time, double value) {
+    SeriesPolicy policy = getPolicy(handle);
+    int capacity = policy.getCapacity() > 0 ? policy.getCapacity() : maxSeries;
+    handle.nextDue = time + policy.getInterval();
+    StatsSeries stats = handle.series;
+    if (stats == null) {
+      stats = statsCollection.getStats(handle.getName());
+      if (stats == null) {
+        stats = statsCollection.newStats(handle.getName(), maxSeries);
+      }
+      handle.series = stats;
+    }
+    long waitStart = System.nanoTime();
+    long wait;
+    synchronized (stats) {
+      wait = System.nanoTime() - waitStart;
+      if (stats.getCapacity() != capacity) {
+        stats.setCapacity(capacity);
+      }
+      stats.add(time, value);
+    }
+    StatsBaseline baseline = handle.baseline;
+    if (baseline == null) {
+      baseline = statsCollection.newBaseline(handle.getName());
+      handle.baseline = baseline;
+    }
+    if (baseline != null) {
+      synchronized (baseline) {
+        handle.expected = baseline.getExpected(time);
+        handle.deviation = baseline.getDeviation();
+        baseline.add(time, value);
+      }
     }
+    wait += statsCollection.logSample(handle.getName(), capacity, time, value);
+    statsCollection.recordAppend(wait);
+    lockWaitNanos.add(wait);
   }
 }
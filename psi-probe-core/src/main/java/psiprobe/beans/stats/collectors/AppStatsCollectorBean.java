@@ -10,23 +10,48 @@
  */
 package psiprobe.beans.stats.collectors;
 
+import org.apache.catalina.Container;
 import org.apache.catalina.Context;
+import org.apache.catalina.core.StandardWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.context.ServletContextAware;
 import psiprobe.TomcatContainer;
 import psiprobe.beans.ContainerWrapperBean;
 import psiprobe.model.Application;
+import psiprobe.model.stats.HistogramSeries;
+import psiprobe.model.stats.LatencyHistogram;
+import psiprobe.model.stats.RequestLatencyRecorder;
 import psiprobe.tools.ApplicationUtils;
+import psiprobe.tools.PlatformMXBeans;
+import psiprobe.tools.ServletWrapperRegistry;
 
 import javax.servlet.ServletContext;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Collects application statistics.
+ *
+ * <p>
+ * On hosts with many contexts, the servlets of each context are read on a bounded fork-join pool
+ * once the context count reaches the parallel threshold. Every context only touches its own series
+ * handles, the totals are summed up afterwards in context order, so both modes store the same
+ * samples.
+ * </p>
  */
 public class AppStatsCollectorBean extends AbstractStatsCollectorBean
-    implements ServletContextAware {
+    implements ServletContextAware, DisposableBean {
 
   /** The Constant logger. */
   private static final Logger logger = LoggerFactory.getLogger(AppStatsCollectorBean.class);
@@ -40,6 +65,36 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean
   /** The self ignored. */
   private boolean selfIgnored;
 
+  /** The max number of threads reading contexts in parallel, 1 to always read them serially. */
+  private int parallelism = 4;
+
+  /** The min context count for contexts to be read in parallel. */
+  private int parallelThreshold = 100;
+
+  /** The pool reading contexts in parallel, created on first use. */
+  private ForkJoinPool pool;
+
+  /** The latencies of single requests, recorded by the agent valve when it is installed. */
+  private RequestLatencyRecorder latencyRecorder = RequestLatencyRecorder.getInstance();
+
+  /** The series handles by context name. */
+  private final Map<String, AppHandles> appHandles = new ConcurrentHashMap<>();
+
+  /** The total requests handle. */
+  private final SeriesHandle totalRequests = getSeriesHandle("total.requests");
+
+  /** The total errors handle. */
+  private final SeriesHandle totalErrors = getSeriesHandle("total.errors");
+
+  /** The total average processing time handle. */
+  private final SeriesHandle totalAvgProcTimeHandle = getSeriesHandle("total.avg_proc_time");
+
+  /** The total latency percentile handles. */
+  private final LatencyHandles totalLatency = new LatencyHandles("total", "");
+
+  /** The latencies of all applications in the current interval, reused every interval. */
+  private final LatencyHistogram totalInterval = new LatencyHistogram();
+
   /**
    * Gets the container wrapper.
    *
@@ -77,6 +132,44 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean
     this.selfIgnored = selfIgnored;
   }
 
+  /**
+   * Gets the max number of threads reading contexts in parallel.
+   *
+   * @return the parallelism
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the max number of threads reading contexts in parallel.
+   *
+   * @param parallelism the new parallelism, 1 to always read contexts serially
+   */
+  @Value("${psiprobe.beans.stats.collectors.app.parallelism}")
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Gets the min context count for contexts to be read in parallel.
+   *
+   * @return the parallel threshold
+   */
+  public int getParallelThreshold() {
+    return parallelThreshold;
+  }
+
+  /**
+   * Sets the min context count for contexts to be read in parallel.
+   *
+   * @param parallelThreshold the new parallel threshold
+   */
+  @Value("${psiprobe.beans.stats.collectors.app.parallelThreshold}")
+  public void setParallelThreshold(int parallelThreshold) {
+    this.parallelThreshold = parallelThreshold;
+  }
+
   /**
    * Gets the servlet context.
    *
@@ -91,6 +184,15 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean
     this.servletContext = servletContext;
   }
 
+  /**
+   * Sets the recorder of request latencies.
+   *
+   * @param latencyRecorder the latency recorder
+   */
+  void setLatencyRecorder(RequestLatencyRecorder latencyRecorder) {
+    this.latencyRecorder = latencyRecorder;
+  }
+
   @Override
   public void collect() throws InterruptedException {
     long currentTime = System.currentTimeMillis();
@@ -109,46 +211,206 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean
   }
 
   private void collectContextStats(TomcatContainer tomcatContainer, long currentTime) throws InterruptedException {
+    collectContextStats(tomcatContainer.findContexts().toArray(new Context[0]), currentTime);
+  }
+
+  /**
+   * Collects the stats of every context, in parallel at or above the parallel threshold, then the
+   * totals.
+   *
+   * @param contexts the contexts
+   * @param currentTime the current time
+   *
+   * @throws InterruptedException if interrupted while collecting
+   */
+  void collectContextStats(Context[] contexts, long currentTime) throws InterruptedException {
+    ContextSample[] samples = new ContextSample[contexts.length];
+    if (parallelism > 1 && contexts.length >= parallelThreshold) {
+      try {
+        getPool().invoke(new CollectTask(contexts, samples, 0, contexts.length,
+            Math.max(1, contexts.length / (parallelism * 4)), currentTime));
+      } catch (CompletionException e) {
+        // the pool may wrap the exception of the worker once more
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+          if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+          }
+        }
+        throw e;
+      }
+    } else {
+      for (int i = 0; i < contexts.length; i++) {
+        samples[i] = collectContext(contexts[i], currentTime);
+      }
+    }
+
     long totalReqDelta = 0;
     long totalErrDelta = 0;
     long totalAvgProcTime = 0;
     int participatingAppCount = 0;
+    totalInterval.reset();
+    for (ContextSample sample : samples) {
+      if (sample != null && sample.participating) {
+        totalReqDelta += sample.reqDelta;
+        totalErrDelta += sample.errDelta;
+        totalAvgProcTime += sample.avgProcTime;
+        participatingAppCount++;
+        totalInterval.add(sample.handles.latency.interval);
+      }
+    }
 
-    for (Context ctx : tomcatContainer.findContexts()) {
+    buildAbsoluteStats(totalRequests, totalReqDelta, currentTime);
+    buildAbsoluteStats(totalErrors, totalErrDelta, currentTime);
+    buildAbsoluteStats(totalAvgProcTimeHandle,
+        participatingAppCount == 0 ? 0 : totalAvgProcTime / participatingAppCount, currentTime);
+    totalLatency.interval.reset();
+    totalLatency.interval.add(totalInterval);
+    totalLatency.build(currentTime);
+
+    if (latencyRecorder.isRecording()) {
+      retainRecordedLatencies(contexts);
+    }
+  }
+
+  /**
+   * Drops the latencies the valve recorded for contexts that are no longer deployed.
+   *
+   * @param contexts the deployed contexts
+   */
+  private void retainRecordedLatencies(Context[] contexts) {
+    Map<String, Set<String>> names = new HashMap<>();
+    for (Context ctx : contexts) {
       if (ctx != null && ctx.getName() != null) {
-        collectApplicationStats(ctx, currentTime, totalReqDelta, totalErrDelta, totalAvgProcTime, participatingAppCount);
+        names.computeIfAbsent(getHostName(ctx), key -> new HashSet<>()).add(ctx.getName());
       }
     }
+    latencyRecorder.retain(names);
+  }
 
-    buildTotalStats("total.requests", totalReqDelta, currentTime);
-    buildTotalStats("total.errors", totalErrDelta, currentTime);
-    buildTotalStats("total.avg_proc_time", 0, currentTime);
+  /**
+   * Gets the name of the host of a context.
+   *
+   * @param ctx the context
+   *
+   * @return the host name, null if the context has no host
+   */
+  private static String getHostName(Context ctx) {
+    Container host = ctx.getParent();
+    return host == null ? null : host.getName();
   }
 
-  private void collectApplicationStats(Context ctx, long currentTime, long totalReqDelta, long totalErrDelta, long totalAvgProcTime, int participatingAppCount) throws InterruptedException {
+  /**
+   * Collects the stats of a single context. Only touches the handles of that context, so contexts
+   * can be collected concurrently.
+   *
+   * @param ctx the context
+   * @param currentTime the current time
+   *
+   * @return what the context adds to the totals, null if the context is not collected
+   *
+   * @throws InterruptedException if interrupted while collecting
+   */
+  private ContextSample collectContext(Context ctx, long currentTime) throws InterruptedException {
+    if (ctx == null || ctx.getName() == null) {
+      return null;
+    }
+    AppHandles handles = appHandles.computeIfAbsent(ctx.getName(), AppHandles::new);
     Application app = new Application();
     ApplicationUtils.collectApplicationServletStats(ctx, app);
 
-    String appName = "".equals(ctx.getName()) ? "/" : ctx.getName();
-
-    long reqDelta = buildDeltaStats("app.requests." + appName, app.getRequestCount(), currentTime);
-    long errDelta = buildDeltaStats("app.errors." + appName, app.getErrorCount());
-    long procTimeDelta = buildDeltaStats("app.proc_time." + appName, app.getProcessingTime(), currentTime);
+    long reqDelta = buildDeltaStats(handles.requests, app.getRequestCount(), currentTime);
+    long errDelta = buildDeltaStats(handles.errors, app.getErrorCount(), currentTime);
+    long procTimeDelta = buildDeltaStats(handles.procTime, app.getProcessingTime(), currentTime);
 
     long avgProcTime = reqDelta == 0 ? 0 : procTimeDelta / reqDelta;
-    buildAbsoluteStats("app.avg_proc_time." + appName, avgProcTime, currentTime);
+    buildAbsoluteStats(handles.avgProcTime, avgProcTime, currentTime);
+
+    recordLatencies(ctx, handles);
+    handles.latency.build(currentTime);
+
+    ContextSample sample = new ContextSample();
+    sample.handles = handles;
+    sample.reqDelta = reqDelta;
+    sample.errDelta = errDelta;
+    sample.avgProcTime = avgProcTime;
+    sample.participating = reqDelta > 0 && !excludeFromTotal(ctx);
+    return sample;
+  }
 
-    if (reqDelta > 0 && !excludeFromTotal(ctx)) {
-      totalReqDelta += reqDelta;
-      totalErrDelta += errDelta;
-      totalAvgProcTime += avgProcTime;
-      participatingAppCount++;
+  /**
+   * Gets the pool reading contexts in parallel, creating it on first use.
+   *
+   * @return the pool
+   */
+  private synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+        ForkJoinWorkerThread thread =
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+        thread.setName("psi-probe-stats-app-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+      }, null, false);
     }
+    return pool;
+  }
 
+  @Override
+  public synchronized void destroy() {
+    if (pool != null) {
+      pool.shutdownNow();
+      pool = null;
+    }
   }
 
-  private void buildTotalStats(String metricName, long value, long currentTime) throws InterruptedException {
-    buildAbsoluteStats(metricName, value, currentTime);
+  /**
+   * Fills the latency histogram of a context for the current interval.
+   *
+   * <p>
+   * While the agent valve is installed it records the elapsed time of every request, and those
+   * are used as they are. Otherwise the histogram falls back to an estimate: Tomcat only keeps
+   * cumulative request counts and processing times per servlet, so the requests a servlet served
+   * during the interval are recorded at their mean processing time. If the max time of a servlet
+   * grew during the interval, one request took exactly that long and is recorded as such, the
+   * others at the mean of the remaining time. The estimate understates the tail of servlets whose
+   * slow requests are rare.
+   * </p>
+   *
+   * @param ctx the context
+   * @param handles the handles of the context
+   */
+  private void recordLatencies(Context ctx, AppHandles handles) {
+    LatencyHistogram interval = handles.latency.interval;
+    interval.reset();
+    if (latencyRecorder.isRecording()) {
+      latencyRecorder.drain(getHostName(ctx), ctx.getName(), interval);
+      // the estimate starts over should the valve be removed
+      handles.servlets.clear();
+      return;
+    }
+    for (StandardWrapper sw : ServletWrapperRegistry.getStandardWrappers(ctx)) {
+      ServletCounters counters =
+          handles.servlets.computeIfAbsent(sw.getName(), key -> new ServletCounters());
+      long requests = sw.getRequestCount();
+      long time = sw.getProcessingTime();
+      long maxTime = sw.getMaxTime();
+      long reqDelta = requests - counters.requests;
+      long timeDelta = time - counters.time;
+      if (counters.primed && reqDelta > 0 && timeDelta >= 0) {
+        if (maxTime > counters.maxTime && maxTime <= timeDelta) {
+          interval.record(maxTime);
+          if (reqDelta > 1) {
+            interval.record((timeDelta - maxTime) / (reqDelta - 1), reqDelta - 1);
+          }
+        } else {
+          interval.record(timeDelta / reqDelta, reqDelta);
+        }
+      }
+      counters.requests = requests;
+      counters.time = time;
+      counters.maxTime = maxTime;
+      counters.primed = true;
+    }
   }
 
   /**
@@ -178,6 +440,7 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean
     resetStats("total.requests");
     resetStats("total.errors");
     resetStats("total.avg_proc_time");
+    totalLatency.reset();
   }
 
   private void resetContextStats(TomcatContainer tomcatContainer) {
@@ -189,12 +452,6 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean
     }
   }
 
-  @Override
-  protected void resetStats(String metricName) {
-    AppStatsCollectorBean statsCollection = new AppStatsCollectorBean();
-    statsCollection.resetStats(metricName);
-  }
-
   /**
    * Reset.
    *
@@ -205,6 +462,246 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean
     resetStats("app.proc_time." + appName);
     resetStats("app.errors." + appName);
     resetStats("app.avg_proc_time." + appName);
+    resetStats("app.proc_time_hist." + appName);
+    resetStats("app.proc_time_p50." + appName);
+    resetStats("app.proc_time_p90." + appName);
+    resetStats("app.proc_time_p99." + appName);
+    resetStats("app.proc_time_max." + appName);
+  }
+
+  /**
+   * The series handles of a single context, resolved when the context is first seen.
+   */
+  private final class AppHandles {
+
+    /** The requests. */
+    final SeriesHandle requests;
+
+    /** The errors. */
+    final SeriesHandle errors;
+
+    /** The processing time. */
+    final SeriesHandle procTime;
+
+    /** The average processing time. */
+    final SeriesHandle avgProcTime;
+
+    /** The latency percentiles. */
+    final LatencyHandles latency;
+
+    /** The counters of the servlets by servlet name, as seen in the previous interval. */
+    final Map<String, ServletCounters> servlets = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates the handles of a context.
+     *
+     * @param contextName the context name
+     */
+    AppHandles(String contextName) {
+      String appName = "".equals(contextName) ? "/" : contextName;
+      requests = getSeriesHandle("app.requests." + appName);
+      errors = getSeriesHandle("app.errors." + appName);
+      procTime = getSeriesHandle("app.proc_time." + appName);
+      avgProcTime = getSeriesHandle("app.avg_proc_time." + appName);
+      latency = new LatencyHandles("app", "." + appName);
+    }
+  }
+
+  /**
+   * The latency histogram series of a context or of the total, with the series of its
+   * percentiles.
+   */
+  private final class LatencyHandles {
+
+    /** The histogram name. */
+    final String histogramName;
+
+    /** The latencies of the current interval, reused every interval. */
+    final LatencyHistogram interval = new LatencyHistogram();
+
+    /** The histogram series, resolved on the first interval. */
+    HistogramSeries histogram;
+
+    /** The median. */
+    final SeriesHandle p50;
+
+    /** The 90th percentile. */
+    final SeriesHandle p90;
+
+    /** The 99th percentile. */
+    final SeriesHandle p99;
+
+    /** The max. */
+    final SeriesHandle max;
+
+    /**
+     * Instantiates the latency handles.
+     *
+     * @param prefix the series name prefix, {@code app} or {@code total}
+     * @param suffix the series name suffix, the application name with a leading dot
+     */
+    LatencyHandles(String prefix, String suffix) {
+      histogramName = prefix + ".proc_time_hist" + suffix;
+      p50 = getSeriesHandle(prefix + ".proc_time_p50" + suffix);
+      p90 = getSeriesHandle(prefix + ".proc_time_p90" + suffix);
+      p99 = getSeriesHandle(prefix + ".proc_time_p99" + suffix);
+      max = getSeriesHandle(prefix + ".proc_time_max" + suffix);
+    }
+
+    /**
+     * Stores the current interval in the histogram series and writes its percentiles.
+     *
+     * @param time the time
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    void build(long time) throws InterruptedException {
+      if (histogram == null) {
+        histogram = getStatsCollection().newHistogram(histogramName);
+      }
+      histogram.add(time, interval);
+      buildAbsoluteStats(p50, interval.getValueAtPercentile(50), time);
+      buildAbsoluteStats(p90, interval.getValueAtPercentile(90), time);
+      buildAbsoluteStats(p99, interval.getValueAtPercentile(99), time);
+      buildAbsoluteStats(max, interval.getMax(), time);
+    }
+
+    /**
+     * Resets the series.
+     */
+    void reset() {
+      resetStats(histogramName);
+      resetStats(p50.getName());
+      resetStats(p90.getName());
+      resetStats(p99.getName());
+      resetStats(max.getName());
+    }
+  }
+
+  /**
+   * What a context adds to the totals of an interval.
+   */
+  private static final class ContextSample {
+
+    /** The handles of the context. */
+    AppHandles handles;
+
+    /** The requests in the interval. */
+    long reqDelta;
+
+    /** The errors in the interval. */
+    long errDelta;
+
+    /** The average processing time in the interval. */
+    long avgProcTime;
+
+    /** Whether the context counts towards the totals. */
+    boolean participating;
+  }
+
+  /**
+   * Collects a range of contexts, splitting it in halves down to the batch size. The CPU time and
+   * allocations of batches run on pool workers are added to the helper work of the collector, so
+   * that they count towards the run of the stats job.
+   */
+  private final class CollectTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The contexts. */
+    private final transient Context[] contexts;
+
+    /** The samples, by context index. */
+    private final transient ContextSample[] samples;
+
+    /** The first context index. */
+    private final int from;
+
+    /** The context index past the range. */
+    private final int to;
+
+    /** The max contexts collected without splitting. */
+    private final int batchSize;
+
+    /** The time. */
+    private final long time;
+
+    /**
+     * Instantiates a new collect task.
+     *
+     * @param contexts the contexts
+     * @param samples the samples
+     * @param from the first context index
+     * @param to the context index past the range
+     * @param batchSize the batch size
+     * @param time the time
+     */
+    CollectTask(Context[] contexts, ContextSample[] samples, int from, int to, int batchSize,
+        long time) {
+      this.contexts = contexts;
+      this.samples = samples;
+      this.from = from;
+      this.to = to;
+      this.batchSize = batchSize;
+      this.time = time;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > batchSize) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new CollectTask(contexts, samples, from, middle, batchSize, time),
+            new CollectTask(contexts, samples, middle, to, batchSize, time));
+        return;
+      }
+      // the calling thread measures itself, only pool workers are helpers
+      boolean helper = Thread.currentThread() instanceof ForkJoinWorkerThread;
+      long startCpu = helper ? PlatformMXBeans.getCurrentThreadCpuTime() : -1;
+      long startAllocated = helper ? PlatformMXBeans.getCurrentThreadAllocatedBytes() : -1;
+      try {
+        for (int i = from; i < to; i++) {
+          samples[i] = collectContext(contexts[i], time);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CompletionException(e);
+      } finally {
+        if (helper) {
+          recordHelperWork(delta(startCpu, PlatformMXBeans.getCurrentThreadCpuTime()),
+              delta(startAllocated, PlatformMXBeans.getCurrentThreadAllocatedBytes()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the difference of two readings of a thread counter.
+   *
+   * @param start the first reading, -1 if not measured
+   * @param end the second reading, -1 if not measured
+   *
+   * @return the difference, -1 if not measured
+   */
+  static long delta(long start, long end) {
+    return start < 0 || end < 0 ? -1 : end - start;
+  }
+
+  /**
+   * The cumulative counters of a servlet.
+   */
+  private static final class ServletCounters {
+
+    /** Whether the counters hold a sample. */
+    boolean primed;
+
+    /** The request count. */
+    long requests;
+
+    /** The processing time. */
+    long time;
+
+    /** The max time. */
+    long maxTime;
   }
 
 }
@@ -13,31 +13,55 @@ package psiprobe.beans.stats.collectors;
 import psiprobe.beans.ContainerListenerBean;
 import psiprobe.model.Connector;
 
+import javax.inject.Inject;
 import javax.management.InstanceNotFoundException;
 import javax.management.MalformedObjectNameException;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * The Class ConnectorStatsCollectorBean.
+ *
+ * <p>
+ * The connectors are read fresh on every collection, so that each delta covers the time since the
+ * previous sample. The read replaces the snapshot of the shared listener bean, which the connector
+ * pages then serve.
+ * </p>
  */
 public class ConnectorStatsCollectorBean extends AbstractStatsCollectorBean {
 
   /** The listener bean. */
-  private final ContainerListenerBean listenerBean ;
+  private ContainerListenerBean listenerBean;
+
+  /** The series handles by protocol handler. */
+  private final Map<String, ConnectorHandles> connectorHandles = new ConcurrentHashMap<>();
 
   public ConnectorStatsCollectorBean() {
     listenerBean = new ContainerListenerBean( null );
   }
 
+  /**
+   * Sets the listener bean shared with the connector pages.
+   *
+   * @param listenerBean the listener bean
+   */
+  @Inject
+  public void containerListener(ContainerListenerBean listenerBean) {
+    this.listenerBean = listenerBean;
+  }
 
   @Override
   public void collect() throws ContainerListenerBean.CustomException, MalformedObjectNameException, InstanceNotFoundException, InterruptedException {
-    for (Connector connector : listenerBean.getConnectors(false)) {
-      String statName = "stat.connector." + connector.getProtocolHandler();
-      buildDeltaStats(statName + ".requests", connector.getRequestCount());
-      buildDeltaStats(statName + ".errors", connector.getErrorCount());
-      buildDeltaStats(statName + ".sent", connector.getBytesSent());
-      buildDeltaStats(statName + ".received", connector.getBytesReceived());
-      buildDeltaStats(statName + ".proc_time", connector.getProcessingTime());
+    long time = System.currentTimeMillis();
+    for (Connector connector : listenerBean.getConnectors(false, true)) {
+      ConnectorHandles handles =
+          connectorHandles.computeIfAbsent(connector.getProtocolHandler(), ConnectorHandles::new);
+      buildDeltaStats(handles.requests, connector.getRequestCount(), time);
+      buildDeltaStats(handles.errors, connector.getErrorCount(), time);
+      buildDeltaStats(handles.sent, connector.getBytesSent(), time);
+      buildDeltaStats(handles.received, connector.getBytesReceived(), time);
+      buildDeltaStats(handles.procTime, connector.getProcessingTime(), time);
     }
   }
 
@@ -55,4 +79,39 @@ public class ConnectorStatsCollectorBean extends AbstractStatsCollectorBean {
     resetStats(statName + ".proc_time");
   }
 
+  /**
+   * The series handles of a single connector, resolved when the connector is first seen.
+   */
+  private final class ConnectorHandles {
+
+    /** The requests. */
+    final SeriesHandle requests;
+
+    /** The errors. */
+    final SeriesHandle errors;
+
+    /** The bytes sent. */
+    final SeriesHandle sent;
+
+    /** The bytes received. */
+    final SeriesHandle received;
+
+    /** The processing time. */
+    final SeriesHandle procTime;
+
+    /**
+     * Instantiates the handles of a connector.
+     *
+     * @param protocolHandler the protocol handler
+     */
+    ConnectorHandles(String protocolHandler) {
+      String statName = "stat.connector." + protocolHandler;
+      requests = getSeriesHandle(statName + ".requests");
+      errors = getSeriesHandle(statName + ".errors");
+      sent = getSeriesHandle(statName + ".sent");
+      received = getSeriesHandle(statName + ".received");
+      procTime = getSeriesHandle(statName + ".proc_time");
+    }
+  }
+
 }
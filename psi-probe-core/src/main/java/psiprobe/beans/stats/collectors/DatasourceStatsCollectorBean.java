@@ -18,6 +18,9 @@ import psiprobe.model.DataSourceInfo;
 
 import javax.inject.Inject;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * The Class DatasourceStatsCollectorBean.
  */
@@ -35,6 +38,10 @@ public class DatasourceStatsCollectorBean extends AbstractStatsCollectorBean {
   /** The container wrapper. */
   private ContainerWrapperBean containerWrapper;
 
+  /** The series handles by application name, then data source name. */
+  private final Map<String, Map<String, DataSourceHandles>> dataSourceHandles =
+      new ConcurrentHashMap<>();
+
   @Inject
   public void cointanerWrapper(ContainerWrapperBean containerWrapper) {
     this.containerWrapper = containerWrapper;
@@ -66,13 +73,13 @@ public class DatasourceStatsCollectorBean extends AbstractStatsCollectorBean {
     } else {
       for (ApplicationResource ds : getContainerWrapper().getDataSources()) {
         String appName = ds.getApplicationName();
-        String name = (appName == null ? "" : appName) + '/' + ds.getName();
+        DataSourceHandles handles = dataSourceHandles
+            .computeIfAbsent(appName == null ? "" : appName, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(ds.getName(), key -> new DataSourceHandles(ds));
         DataSourceInfo dsi = ds.getDataSourceInfo();
-        int numEstablished = dsi.getEstablishedConnections();
-        int numBusy = dsi.getBusyConnections();
-        logger.trace("Collecting stats for datasource: {}", name);
-        buildAbsoluteStats(PREFIX_ESTABLISHED + name, numEstablished, currentTime);
-        buildAbsoluteStats(PREFIX_BUSY + name, numBusy, currentTime);
+        logger.trace("Collecting stats for datasource: {}", handles.busy.getName());
+        buildAbsoluteStats(handles.established, dsi.getEstablishedConnections(), currentTime);
+        buildAbsoluteStats(handles.busy, dsi.getBusyConnections(), currentTime);
       }
       logger.debug("datasource stats collected in {}ms", System.currentTimeMillis() - currentTime);
     }
@@ -110,4 +117,28 @@ public class DatasourceStatsCollectorBean extends AbstractStatsCollectorBean {
       super(s);
     }
   }
+
+  /**
+   * The series handles of a single data source, resolved when the data source is first seen.
+   */
+  private final class DataSourceHandles {
+
+    /** The established connections. */
+    final SeriesHandle established;
+
+    /** The busy connections. */
+    final SeriesHandle busy;
+
+    /**
+     * Instantiates the handles of a data source.
+     *
+     * @param ds the data source
+     */
+    DataSourceHandles(ApplicationResource ds) {
+      String appName = ds.getApplicationName();
+      String name = (appName == null ? "" : appName) + '/' + ds.getName();
+      established = getSeriesHandle(PREFIX_ESTABLISHED + name);
+      busy = getSeriesHandle(PREFIX_BUSY + name);
+    }
+  }
 }
@@ -0,0 +1,242 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.collectors;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import psiprobe.beans.stats.listeners.StatsEventDispatcher;
+import psiprobe.model.stats.StatsCollection;
+import psiprobe.scheduler.StatsCollectionScheduler;
+
+/**
+ * Measures the overhead of the probe's own background work, i.e. the CPU used by the stats threads
+ * as a share of the CPU available to the JVM, and how long stats listeners wait for their events.
+ *
+ * <p>
+ * Every run adds the series {@code probe.self.cpu}, in percent,
+ * {@code probe.self.listeners.latency}, the average milliseconds between publishing and delivery
+ * of the events delivered since the previous run, and {@code probe.self.listeners.dropped}, the
+ * events dropped since then. The first run only takes a baseline.
+ * </p>
+ *
+ * <p>
+ * The JVM measures the CPU time of platform threads only. While stats jobs run on virtual threads,
+ * or without thread CPU time support, the CPU share is unavailable: it is reported as -1 and no
+ * {@code probe.self.cpu} sample is added, rather than a share that leaves out the jobs.
+ * </p>
+ */
+public class ProbeOverheadCollectorBean {
+
+  /** The Constant THREAD_PREFIX, the name prefix of the probe's background threads. */
+  public static final String THREAD_PREFIX = "psi-probe-stats-";
+
+  /** The Constant CPU_SERIES. */
+  public static final String CPU_SERIES = StatsCollectionScheduler.SERIES_PREFIX + "cpu";
+
+  /** The Constant LATENCY_SERIES. */
+  public static final String LATENCY_SERIES =
+      StatsCollectionScheduler.SERIES_PREFIX + "listeners.latency";
+
+  /** The Constant DROPPED_SERIES. */
+  public static final String DROPPED_SERIES =
+      StatsCollectionScheduler.SERIES_PREFIX + "listeners.dropped";
+
+  /** The stats collection. */
+  private StatsCollection statsCollection;
+
+  /** The event dispatcher. */
+  private StatsEventDispatcher eventDispatcher;
+
+  /** The scheduler, whose jobs on virtual threads are accounted for by their own CPU time. */
+  private StatsCollectionScheduler scheduler;
+
+  /** The CPU time of the probe threads at the previous run, by thread id. */
+  private Map<Long, Long> threadCpu = new HashMap<>();
+
+  /** The CPU time of the jobs on virtual threads at the previous run. */
+  private long virtualCpu;
+
+  /** The time of the previous run in nanoseconds, 0 before the first run. */
+  private long lastRun;
+
+  /** The total listener latency at the previous run, in microseconds. */
+  private long lastLatencyTime;
+
+  /** The delivered event count at the previous run. */
+  private long lastDelivered;
+
+  /** The dropped event count at the previous run. */
+  private long lastDropped;
+
+  /** The CPU share of the last run, in percent; -1 before the second run or if unavailable. */
+  private volatile double cpuUsage = -1;
+
+  /** Whether the CPU of all probe work could be measured at the last run. */
+  private volatile boolean cpuMeasurable = true;
+
+  /** The listener latency of the last run, in milliseconds. */
+  private volatile double listenerLatency;
+
+  /** The events dropped between the last two runs. */
+  private volatile long droppedEvents;
+
+  /**
+   * Stats collection.
+   *
+   * @param statsCollection the stats collection
+   */
+  @Inject
+  public void statsCollection(StatsCollection statsCollection) {
+    this.statsCollection = statsCollection;
+  }
+
+  /**
+   * Event dispatcher.
+   *
+   * @param eventDispatcher the event dispatcher
+   */
+  @Inject
+  public void eventDispatcher(StatsEventDispatcher eventDispatcher) {
+    this.eventDispatcher = eventDispatcher;
+  }
+
+  /**
+   * Sets the scheduler. Set by the scheduler itself when it schedules this collector.
+   *
+   * @param scheduler the scheduler
+   */
+  public void setScheduler(StatsCollectionScheduler scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Measures the overhead since the previous run.
+   */
+  public synchronized void collect() {
+    long now = System.nanoTime();
+    long cpu = probeCpuTime();
+    cpuMeasurable = cpu >= 0;
+    if (!cpuMeasurable) {
+      cpuUsage = -1;
+    } else if (lastRun != 0 && now > lastRun) {
+      double available = (double) (now - lastRun) * Runtime.getRuntime().availableProcessors();
+      cpuUsage = Math.min(cpu * 100 / available, 100);
+    }
+    long time = System.currentTimeMillis();
+    if (statsCollection != null && cpuUsage >= 0) {
+      statsCollection.addInternalSample(CPU_SERIES, time, cpuUsage);
+    }
+    if (eventDispatcher != null) {
+      long latencyTime = eventDispatcher.getLatencyTime();
+      long delivered = eventDispatcher.getDeliveredCount();
+      long dropped = eventDispatcher.getDroppedCount();
+      if (lastRun != 0) {
+        listenerLatency = delivered == lastDelivered ? 0
+            : (latencyTime - lastLatencyTime) / 1000d / (delivered - lastDelivered);
+        droppedEvents = dropped - lastDropped;
+        if (statsCollection != null) {
+          statsCollection.addInternalSample(LATENCY_SERIES, time, listenerLatency);
+          statsCollection.addInternalSample(DROPPED_SERIES, time, (double) droppedEvents);
+        }
+      }
+      lastLatencyTime = latencyTime;
+      lastDelivered = delivered;
+      lastDropped = dropped;
+    }
+    lastRun = now;
+  }
+
+  /**
+   * Gets the CPU time the probe threads used since the previous run. Threads that started since
+   * count their whole CPU time, threads that ended since are lost for their last interval.
+   *
+   * @return the CPU time in nanoseconds, -1 if some probe work cannot be measured
+   */
+  private long probeCpuTime() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!threads.isThreadCpuTimeSupported() || !threads.isThreadCpuTimeEnabled()) {
+      return -1;
+    }
+    long total = 0;
+    Map<Long, Long> current = new HashMap<>();
+    for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+      if (info == null || !info.getThreadName().startsWith(THREAD_PREFIX)) {
+        continue;
+      }
+      long cpu = threads.getThreadCpuTime(info.getThreadId());
+      if (cpu >= 0) {
+        current.put(info.getThreadId(), cpu);
+        Long previous = threadCpu.get(info.getThreadId());
+        total += previous == null ? cpu : cpu - previous;
+      }
+    }
+    threadCpu = current;
+    if (scheduler != null) {
+      long virtual = 0;
+      for (StatsCollectionScheduler.Job job : scheduler.getJobs()) {
+        if (job.isVirtual()) {
+          if (!job.isCpuMeasured()) {
+            return -1;
+          }
+          virtual += job.getCpuTime();
+        }
+      }
+      total += virtual - virtualCpu;
+      virtualCpu = virtual;
+    }
+    return total;
+  }
+
+  /**
+   * Gets the CPU used by the probe threads between the last two runs, as a share of the CPU
+   * available to the JVM.
+   *
+   * @return the cpu usage in percent, -1 if not measured yet
+   */
+  public double getCpuUsage() {
+    return cpuUsage;
+  }
+
+  /**
+   * Checks whether the CPU of all probe work could be measured at the last run.
+   *
+   * @return true, unless stats jobs run on virtual threads or thread CPU time is not supported
+   */
+  public boolean isCpuMeasurable() {
+    return cpuMeasurable;
+  }
+
+  /**
+   * Gets the average time between publishing and delivery of the events delivered between the
+   * last two runs.
+   *
+   * @return the listener latency in milliseconds
+   */
+  public double getListenerLatency() {
+    return listenerLatency;
+  }
+
+  /**
+   * Gets the events dropped between the last two runs.
+   *
+   * @return the dropped events
+   */
+  public long getDroppedEvents() {
+    return droppedEvents;
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.collectors;
+
+import psiprobe.model.stats.SeriesPolicy;
+import psiprobe.model.stats.StatsBaseline;
+import psiprobe.model.stats.StatsSeries;
+
+/**
+ * A series resolved once by a collector, together with the state needed to derive its samples.
+ *
+ * <p>
+ * Collectors obtain a handle through {@link AbstractStatsCollectorBean#getSeriesHandle(String)}
+ * when they first see a context, connector or data source and keep it. Samples written through
+ * the handle need no name building, no map lookups and no boxing of previous values.
+ * </p>
+ *
+ * <p>
+ * A handle belongs to the collector that created it and is only used by one task at a time: the
+ * collecting thread, or for the handles of a context read on a fork-join pool, the single task
+ * that owns that context during the run.
+ * </p>
+ */
+public final class SeriesHandle {
+
+  /** The series name. */
+  private final String name;
+
+  /** The series, resolved on the first sample. */
+  StatsSeries series;
+
+  /** The policy, resolved again whenever the policies are replaced. */
+  SeriesPolicy policy;
+
+  /** The policy generation {@link #policy} was resolved in. */
+  long policyGeneration;
+
+  /** The earliest time the next sample is stored, as set by the policy interval. */
+  long nextDue = Long.MIN_VALUE;
+
+  /** The counter increase not stored yet because the policy interval had not elapsed. */
+  long pendingValue;
+
+  /** The time not accounted for yet because the policy interval had not elapsed. */
+  long pendingTime;
+
+  /** The baseline, resolved on the first sample, null if baselines are disabled. */
+  StatsBaseline baseline;
+
+  /** The value the baseline expected for the last sample, NaN if unknown. */
+  double expected = Double.NaN;
+
+  /** The deviation the baseline expected for the last sample, NaN if unknown. */
+  double deviation = Double.NaN;
+
+  /** Whether {@link #previousValue} and {@link #previousTime} hold a sample. */
+  boolean primed;
+
+  /** The previous raw value, for delta and time percentage stats. */
+  long previousValue;
+
+  /** The previous sample time, for time percentage stats. */
+  long previousTime;
+
+  /**
+   * Instantiates a new series handle.
+   *
+   * @param name the series name
+   */
+  SeriesHandle(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Gets the series name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.collectors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+
+import psiprobe.model.stats.SeriesPolicy;
+import psiprobe.model.stats.StatsCollection;
+import psiprobe.tools.TimeExpression;
+
+/**
+ * Reads the {@link SeriesPolicy series policies} into the stats collection and reloads them when
+ * the properties file they are read from changes, so that retention and sampling can be tuned
+ * without restarting the probe.
+ *
+ * <p>
+ * The file is checked every reload interval by comparing its modification time. Resources that
+ * are not files, e.g. inside a packed war, are read once. A file that cannot be read or holds an
+ * invalid policy is logged and the policies in effect are kept.
+ * </p>
+ */
+public class SeriesPolicyLoaderBean implements InitializingBean, DisposableBean {
+
+  /** The Constant logger. */
+  private static final Logger logger = LoggerFactory.getLogger(SeriesPolicyLoaderBean.class);
+
+  /** The stats collection. */
+  private StatsCollection statsCollection;
+
+  /** The location of the properties holding the policies. */
+  private String location = "classpath:stats.properties";
+
+  /** The reload interval in milliseconds, 0 to read the policies once. */
+  private long reloadInterval = 30_000L;
+
+  /** The modification time of the properties last read, 0 if unknown. */
+  private long lastModified;
+
+  /** The thread checking for changes, null if not reloading. */
+  private ScheduledExecutorService reloader;
+
+  /** The scheduled reload, null if not reloading. */
+  private ScheduledFuture<?> reloadTask;
+
+  /**
+   * Stats collection.
+   *
+   * @param statsCollection the stats collection
+   */
+  @Inject
+  public void statsCollection(StatsCollection statsCollection) {
+    this.statsCollection = statsCollection;
+  }
+
+  /**
+   * Sets the location of the properties holding the policies.
+   *
+   * @param location a resource location, e.g. {@code classpath:stats.properties} or
+   *        {@code file:/etc/psi-probe/stats.properties}
+   */
+  @Value("${psiprobe.beans.stats.policies.location}")
+  public void setLocation(String location) {
+    this.location = location;
+  }
+
+  /**
+   * Sets the reload interval.
+   *
+   * @param reloadInterval the reload interval, a time expression; 0s to read the policies once
+   *
+   * @throws TimeExpression.NewCustomException if the interval is not a valid time expression
+   */
+  @Value("${psiprobe.beans.stats.policies.reloadInterval}")
+  public void setReloadInterval(String reloadInterval) throws TimeExpression.NewCustomException {
+    this.reloadInterval = TimeExpression.inSeconds(reloadInterval) * 1000;
+  }
+
+  /**
+   * Reads the policies if the properties changed since they were last read.
+   *
+   * @return true, if the policies were replaced
+   */
+  synchronized boolean reload() {
+    Resource resource = new DefaultResourceLoader().getResource(location);
+    long modified;
+    try {
+      modified = resource.lastModified();
+    } catch (IOException e) {
+      // not a file, it cannot change
+      modified = 0;
+    }
+    if (modified != 0 && modified == lastModified) {
+      return false;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = resource.getInputStream()) {
+      properties.load(in);
+      List<SeriesPolicy> policies = SeriesPolicy.parse(properties);
+      statsCollection.setPolicies(policies);
+      lastModified = modified;
+      logger.info("Loaded {} stats series policies from '{}'", policies.size(), location);
+      return true;
+    } catch (IOException | TimeExpression.NewCustomException | IllegalArgumentException e) {
+      lastModified = modified;
+      logger.error("Could not load stats series policies from '{}', keeping the current ones",
+          location, e);
+      return false;
+    }
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    reload();
+    if (lastModified != 0 && reloadInterval > 0) {
+      reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "psi-probe-stats-policies");
+        thread.setDaemon(true);
+        return thread;
+      });
+      reloadTask = reloader.scheduleWithFixedDelay(this::reload, reloadInterval, reloadInterval,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (reloadTask != null) {
+      reloadTask.cancel(false);
+      reloadTask = null;
+    }
+    if (reloader != null) {
+      reloader.shutdownNow();
+      reloader = null;
+    }
+  }
+
+}
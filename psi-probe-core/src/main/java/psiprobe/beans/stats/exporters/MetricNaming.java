@@ -0,0 +1,173 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.exporters;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps stats series names to metric names with a label, e.g. {@code app.requests./shop} to
+ * {@code psiprobe_app_requests{app="/shop"}}. Series names embed application, connector, data
+ * source and memory pool names, which may contain any character, so they become label values
+ * rather than part of the metric name.
+ *
+ * <p>
+ * Mappings are computed once per series name and cached.
+ * </p>
+ */
+public class MetricNaming {
+
+  /** The Constant PREFIX. */
+  public static final String PREFIX = "psiprobe_";
+
+  /** The cached mappings. */
+  private final Map<String, MetricName> cache = new ConcurrentHashMap<>();
+
+  /**
+   * Gets the metric name of a series.
+   *
+   * @param seriesName the series name
+   *
+   * @return the metric name
+   */
+  public MetricName resolve(String seriesName) {
+    MetricName name = cache.get(seriesName);
+    if (name == null) {
+      name = cache.computeIfAbsent(seriesName, MetricNaming::map);
+    }
+    return name;
+  }
+
+  /**
+   * Computes the metric name of a series.
+   *
+   * @param seriesName the series name
+   *
+   * @return the metric name
+   */
+  static MetricName map(String seriesName) {
+    if (seriesName.startsWith("app.")) {
+      return firstSegment(seriesName, "app.", "app_", "app");
+    }
+    if (seriesName.startsWith("ds.")) {
+      return firstSegment(seriesName, "ds.", "datasource_", "datasource");
+    }
+    if (seriesName.startsWith("stat.connector.")) {
+      String rest = seriesName.substring("stat.connector.".length());
+      int dot = rest.lastIndexOf('.');
+      if (dot > 0) {
+        return new MetricName(PREFIX + "connector_" + sanitize(rest.substring(dot + 1)),
+            "connector", rest.substring(0, dot));
+      }
+    }
+    if (seriesName.startsWith("memory.pool.")) {
+      return new MetricName(PREFIX + "memory_pool_used", "pool",
+          seriesName.substring("memory.pool.".length()));
+    }
+    return new MetricName(PREFIX + sanitize(seriesName), null, null);
+  }
+
+  /**
+   * Maps a series name whose first segment after the prefix is the metric and the rest the label
+   * value.
+   *
+   * @param seriesName the series name
+   * @param prefix the series name prefix
+   * @param family the metric family prefix
+   * @param label the label name
+   *
+   * @return the metric name
+   */
+  private static MetricName firstSegment(String seriesName, String prefix, String family,
+      String label) {
+    String rest = seriesName.substring(prefix.length());
+    int dot = rest.indexOf('.');
+    if (dot <= 0) {
+      return new MetricName(PREFIX + family + sanitize(rest), null, null);
+    }
+    return new MetricName(PREFIX + family + sanitize(rest.substring(0, dot)), label,
+        rest.substring(dot + 1));
+  }
+
+  /**
+   * Replaces every character not allowed in a metric name by an underscore.
+   *
+   * @param name the name
+   *
+   * @return the sanitized name
+   */
+  static String sanitize(String name) {
+    StringBuilder sb = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+          || (c >= '0' && c <= '9' && i > 0);
+      sb.append(valid ? c : '_');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * A metric name with an optional label.
+   */
+  public static final class MetricName {
+
+    /** The metric family. */
+    private final String family;
+
+    /** The label name, null if there is no label. */
+    private final String labelName;
+
+    /** The label value. */
+    private final String labelValue;
+
+    /**
+     * Instantiates a new metric name.
+     *
+     * @param family the family
+     * @param labelName the label name
+     * @param labelValue the label value
+     */
+    MetricName(String family, String labelName, String labelValue) {
+      this.family = family;
+      this.labelName = labelName;
+      this.labelValue = labelValue;
+    }
+
+    /**
+     * Gets the metric family.
+     *
+     * @return the family
+     */
+    public String getFamily() {
+      return family;
+    }
+
+    /**
+     * Gets the label name.
+     *
+     * @return the label name, null if there is no label
+     */
+    public String getLabelName() {
+      return labelName;
+    }
+
+    /**
+     * Gets the label value.
+     *
+     * @return the label value
+     */
+    public String getLabelValue() {
+      return labelValue;
+    }
+  }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.exporters;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import psiprobe.model.stats.StatsCollection;
+import psiprobe.model.stats.StatsSeries;
+
+/**
+ * Writes the latest value of every series of the {@link StatsCollection} in the OpenMetrics text
+ * format, one gauge per series.
+ *
+ * <p>
+ * OpenMetrics requires the samples of a metric family to be contiguous, while series names sort
+ * by connector, application and so on. The exporter therefore keeps an exposition plan: the
+ * series ordered by family, each with its sample line prefix, e.g.
+ * {@code psiprobe_app_requests{app="/shop"} }, rendered once. The plan is rebuilt only when a
+ * series was added. Writing a scrape streams the plan to the writer, reading each value under
+ * its series monitor only; no lock is shared with the collectors.
+ * </p>
+ */
+public class OpenMetricsExporter {
+
+  /** The Constant CONTENT_TYPE. */
+  public static final String CONTENT_TYPE =
+      "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+  /** The stats collection. */
+  private StatsCollection statsCollection;
+
+  /** The metric naming. */
+  private final MetricNaming naming = new MetricNaming();
+
+  /** The current exposition plan. */
+  private volatile Plan plan = new Plan(-1, new Entry[0]);
+
+  /**
+   * Stats collection.
+   *
+   * @param statsCollection the stats collection
+   */
+  @Inject
+  public void statsCollection(StatsCollection statsCollection) {
+    this.statsCollection = statsCollection;
+  }
+
+  /**
+   * Gets the metric naming.
+   *
+   * @return the metric naming
+   */
+  public MetricNaming getNaming() {
+    return naming;
+  }
+
+  /**
+   * Writes the exposition.
+   *
+   * @param out the writer
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void write(Writer out) throws IOException {
+    String family = null;
+    for (Entry entry : currentPlan().entries) {
+      StatsSeries series = entry.series;
+      long time;
+      double value;
+      synchronized (series) {
+        if (series.isEmpty()) {
+          continue;
+        }
+        time = series.getLastTime();
+        value = series.getLastValue();
+      }
+      if (!entry.family.equals(family)) {
+        family = entry.family;
+        out.write("# TYPE ");
+        out.write(family);
+        out.write(" gauge\n");
+      }
+      out.write(entry.linePrefix);
+      writeValue(out, value);
+      out.write(' ');
+      writeTimestamp(out, time);
+      out.write('\n');
+    }
+    out.write("# EOF\n");
+  }
+
+  /**
+   * Gets the exposition plan, rebuilding it if series were added since it was built.
+   *
+   * @return the plan
+   */
+  private Plan currentPlan() {
+    Plan current = plan;
+    long generation = statsCollection.getSeriesGeneration();
+    if (current.generation != generation) {
+      List<Entry> entries = new ArrayList<>();
+      for (Map.Entry<String, StatsSeries> series : statsCollection.getStatsByPrefix("")
+          .entrySet()) {
+        entries.add(new Entry(naming.resolve(series.getKey()), series.getValue()));
+      }
+      entries.sort(Comparator.comparing((Entry entry) -> entry.family)
+          .thenComparing(entry -> entry.linePrefix));
+      current = new Plan(generation, entries.toArray(new Entry[0]));
+      plan = current;
+    }
+    return current;
+  }
+
+  /**
+   * Writes a value, without a fraction if it is integral.
+   *
+   * @param out the writer
+   * @param value the value
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeValue(Writer out, double value) throws IOException {
+    if (Double.isNaN(value)) {
+      out.write("NaN");
+    } else if (Double.isInfinite(value)) {
+      out.write(value > 0 ? "+Inf" : "-Inf");
+    } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      out.write(Long.toString((long) value));
+    } else {
+      out.write(Double.toString(value));
+    }
+  }
+
+  /**
+   * Writes a timestamp in seconds with millisecond precision.
+   *
+   * @param out the writer
+   * @param time the time in milliseconds
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeTimestamp(Writer out, long time) throws IOException {
+    out.write(Long.toString(time / 1000));
+    long millis = time % 1000;
+    if (millis != 0) {
+      out.write('.');
+      if (millis < 100) {
+        out.write('0');
+      }
+      if (millis < 10) {
+        out.write('0');
+      }
+      out.write(Long.toString(millis));
+    }
+  }
+
+  /**
+   * Renders the part of a sample line before the value.
+   *
+   * @param name the metric name
+   *
+   * @return the line prefix
+   */
+  static String linePrefix(MetricNaming.MetricName name) {
+    StringBuilder sb = new StringBuilder(name.getFamily());
+    if (name.getLabelName() != null) {
+      sb.append('{').append(name.getLabelName()).append("=\"");
+      String value = name.getLabelValue();
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c == '\\' || c == '"') {
+          sb.append('\\').append(c);
+        } else if (c == '\n') {
+          sb.append("\\n");
+        } else {
+          sb.append(c);
+        }
+      }
+      sb.append("\"}");
+    }
+    return sb.append(' ').toString();
+  }
+
+  /**
+   * The series in exposition order, valid for one series generation.
+   */
+  private static final class Plan {
+
+    /** The series generation. */
+    final long generation;
+
+    /** The entries. */
+    final Entry[] entries;
+
+    /**
+     * Instantiates a new plan.
+     *
+     * @param generation the generation
+     * @param entries the entries
+     */
+    Plan(long generation, Entry[] entries) {
+      this.generation = generation;
+      this.entries = entries;
+    }
+  }
+
+  /**
+   * A series with its rendered sample line prefix.
+   */
+  private static final class Entry {
+
+    /** The family. */
+    final String family;
+
+    /** The line prefix. */
+    final String linePrefix;
+
+    /** The series. */
+    final StatsSeries series;
+
+    /**
+     * Instantiates a new entry.
+     *
+     * @param name the metric name
+     * @param series the series
+     */
+    Entry(MetricNaming.MetricName name, StatsSeries series) {
+      this.family = name.getFamily();
+      this.linePrefix = linePrefix(name);
+      this.series = series;
+    }
+  }
+
+}
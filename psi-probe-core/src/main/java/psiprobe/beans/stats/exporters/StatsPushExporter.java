@@ -0,0 +1,926 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.exporters;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+
+import psiprobe.beans.stats.collectors.AbstractStatsCollectorBean;
+import psiprobe.beans.stats.listeners.StatsCollectionEvent;
+import psiprobe.beans.stats.listeners.StatsCollectionListener;
+import psiprobe.tools.TimeExpression;
+
+/**
+ * Pushes every collected sample to a Graphite or StatsD server, for probes that cannot be scraped,
+ * e.g. hosts behind NAT.
+ *
+ * <p>
+ * The exporter registers a {@link #getListener() listener} with every collector. The listener
+ * only copies samples into a bounded ring; a sample arriving while the ring is full is dropped and
+ * counted. A dedicated thread drains the ring every flush interval and encodes the samples into a
+ * reused buffer of at most {@code packetSize} bytes, sending a UDP datagram or TCP write whenever
+ * the next line would not fit. Series names are turned into metric paths once and cached as
+ * bytes.
+ * </p>
+ *
+ * <p>
+ * When the server cannot be reached the connection is closed and retried after a delay that
+ * doubles with every failure, up to a maximum. Samples keep queueing up meanwhile and are dropped
+ * once the ring is full. Each flush also pushes the queue depth and the dropped count under
+ * {@code <prefix>.probe.push}.
+ * </p>
+ */
+public class StatsPushExporter implements InitializingBean, DisposableBean {
+
+  /** The Constant logger. */
+  private static final Logger logger = LoggerFactory.getLogger(StatsPushExporter.class);
+
+  /** The number of samples taken from the ring at a time. */
+  private static final int DRAIN_SIZE = 256;
+
+  /** The max length of a line without the path. */
+  private static final int MAX_LINE_OVERHEAD = 44;
+
+  /** The TCP connect timeout, in milliseconds. */
+  private static final int CONNECT_TIMEOUT = 5000;
+
+  /**
+   * The line format.
+   */
+  public enum Protocol {
+
+    /** Graphite plaintext, {@code path value timestamp}. */
+    GRAPHITE,
+
+    /** StatsD gauges, {@code path:value|g}. */
+    STATSD
+  }
+
+  /**
+   * The transport.
+   */
+  public enum Transport {
+
+    /** One datagram per packet. */
+    UDP,
+
+    /** A persistent connection. */
+    TCP
+  }
+
+  /** The lock guarding the ring. */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Signalled when the exporter is stopped. */
+  private final Condition stopped = lock.newCondition();
+
+  /** The queued series names. */
+  private String[] names;
+
+  /** The queued sample times. */
+  private long[] times;
+
+  /** The queued sample values. */
+  private long[] values;
+
+  /** The index of the oldest queued sample. */
+  private int head;
+
+  /** The number of queued samples. */
+  private int size;
+
+  /** Whether pushing is enabled. */
+  private boolean enabled;
+
+  /** The protocol. */
+  private Protocol protocol = Protocol.GRAPHITE;
+
+  /** The transport. */
+  private Transport transport = Transport.UDP;
+
+  /** The server host. */
+  private String host = "localhost";
+
+  /** The server port. */
+  private int port = 2003;
+
+  /** The metric path prefix, without the trailing dot. */
+  private String prefix = "psiprobe";
+
+  /** The max packet size, in bytes. */
+  private int packetSize = 1432;
+
+  /** The flush interval, in milliseconds. */
+  private long flushInterval = 10000;
+
+  /** The queue size. */
+  private int queueSize = 10000;
+
+  /** The first reconnect delay, in milliseconds. */
+  private long minBackoff = 1000;
+
+  /** The max reconnect delay, in milliseconds. */
+  private long maxBackoff = 60000;
+
+  /** The collectors the listener is registered with. */
+  private List<AbstractStatsCollectorBean> collectors;
+
+  /** The listener feeding the ring. */
+  private final StatsCollectionListener listener = new Listener();
+
+  /** The flush thread. */
+  private Thread thread;
+
+  /** Whether the exporter is running. */
+  private volatile boolean running;
+
+  /** The number of queued samples. */
+  private final LongAdder queuedCount = new LongAdder();
+
+  /** The number of dropped samples. */
+  private final LongAdder droppedCount = new LongAdder();
+
+  /** The number of sent samples. */
+  private final LongAdder sentCount = new LongAdder();
+
+  /** The number of sent packets. */
+  private final LongAdder packetCount = new LongAdder();
+
+  /** The number of failed connects and sends. */
+  private final LongAdder errorCount = new LongAdder();
+
+  /** The number of connections opened after a failure. */
+  private final LongAdder reconnectCount = new LongAdder();
+
+  // The remaining fields are only used by the flushing thread.
+
+  /** The metric paths by series name. */
+  private final Map<String, byte[]> paths = new HashMap<>();
+
+  /** The packet being filled. */
+  private ByteBuffer packet;
+
+  /** The line being encoded. */
+  private ByteBuffer line;
+
+  /** The number of samples in the packet. */
+  private int packetSamples;
+
+  /** The drained series names. */
+  private final String[] batchNames = new String[DRAIN_SIZE];
+
+  /** The drained sample times. */
+  private final long[] batchTimes = new long[DRAIN_SIZE];
+
+  /** The drained sample values. */
+  private final long[] batchValues = new long[DRAIN_SIZE];
+
+  /** Scratch space for formatting numbers. */
+  private final byte[] digits = new byte[20];
+
+  /** The open channel, null if not connected. */
+  private ByteChannel channel;
+
+  /** Whether a connection failed since the last one was opened. */
+  private boolean failed;
+
+  /** The current reconnect delay, 0 after a successful send. */
+  private long backoff;
+
+  /** The time before which no connect is attempted. */
+  private long retryAt;
+
+  /**
+   * Sets whether pushing is enabled.
+   *
+   * @param enabled the new enabled
+   */
+  @Value("${psiprobe.beans.stats.push.enabled}")
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Checks if is enabled.
+   *
+   * @return true, if is enabled
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Sets the protocol.
+   *
+   * @param protocol the new protocol, {@code graphite} or {@code statsd}
+   */
+  @Value("${psiprobe.beans.stats.push.protocol}")
+  public void setProtocol(String protocol) {
+    this.protocol = Protocol.valueOf(protocol.trim().toUpperCase(Locale.ROOT));
+  }
+
+  /**
+   * Gets the protocol.
+   *
+   * @return the protocol
+   */
+  public Protocol getProtocol() {
+    return protocol;
+  }
+
+  /**
+   * Sets the transport.
+   *
+   * @param transport the new transport, {@code udp} or {@code tcp}
+   */
+  @Value("${psiprobe.beans.stats.push.transport}")
+  public void setTransport(String transport) {
+    this.transport = Transport.valueOf(transport.trim().toUpperCase(Locale.ROOT));
+  }
+
+  /**
+   * Gets the transport.
+   *
+   * @return the transport
+   */
+  public Transport getTransport() {
+    return transport;
+  }
+
+  /**
+   * Sets the server host.
+   *
+   * @param host the new host
+   */
+  @Value("${psiprobe.beans.stats.push.host}")
+  public void setHost(String host) {
+    this.host = host.trim();
+  }
+
+  /**
+   * Gets the server host.
+   *
+   * @return the host
+   */
+  public String getHost() {
+    return host;
+  }
+
+  /**
+   * Sets the server port.
+   *
+   * @param port the new port
+   */
+  @Value("${psiprobe.beans.stats.push.port}")
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  /**
+   * Gets the server port.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return port;
+  }
+
+  /**
+   * Sets the metric path prefix. {@code {host}} is replaced by the local host name.
+   *
+   * @param prefix the new prefix, e.g. {@code psiprobe.{host}}
+   */
+  @Value("${psiprobe.beans.stats.push.prefix}")
+  public void setPrefix(String prefix) {
+    String resolved = prefix.trim();
+    if (resolved.contains("{host}")) {
+      resolved = resolved.replace("{host}", localHostName());
+    }
+    while (resolved.endsWith(".")) {
+      resolved = resolved.substring(0, resolved.length() - 1);
+    }
+    this.prefix = resolved;
+  }
+
+  /**
+   * Gets the metric path prefix.
+   *
+   * @return the prefix
+   */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  /**
+   * Sets the max packet size.
+   *
+   * @param packetSize the new packet size in bytes
+   */
+  @Value("${psiprobe.beans.stats.push.packetSize}")
+  public void setPacketSize(int packetSize) {
+    this.packetSize = Math.max(packetSize, 64);
+  }
+
+  /**
+   * Gets the max packet size.
+   *
+   * @return the packet size in bytes
+   */
+  public int getPacketSize() {
+    return packetSize;
+  }
+
+  /**
+   * Sets the flush interval.
+   *
+   * @param flushInterval the new flush interval expression, e.g. {@code 10s}
+   *
+   * @throws TimeExpression.NewCustomException if the expression is invalid
+   */
+  @Value("${psiprobe.beans.stats.push.flushInterval}")
+  public void setFlushInterval(String flushInterval) throws TimeExpression.NewCustomException {
+    this.flushInterval = Math.max(TimeExpression.inSeconds(flushInterval), 1) * 1000;
+  }
+
+  /**
+   * Gets the flush interval.
+   *
+   * @return the flush interval in milliseconds
+   */
+  public long getFlushInterval() {
+    return flushInterval;
+  }
+
+  /**
+   * Sets the queue size.
+   *
+   * @param queueSize the new queue size
+   */
+  @Value("${psiprobe.beans.stats.push.queueSize}")
+  public void setQueueSize(int queueSize) {
+    this.queueSize = Math.max(queueSize, 1);
+  }
+
+  /**
+   * Gets the queue size.
+   *
+   * @return the queue size
+   */
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  /**
+   * Sets the first reconnect delay.
+   *
+   * @param backoff the new delay expression, e.g. {@code 1s}
+   *
+   * @throws TimeExpression.NewCustomException if the expression is invalid
+   */
+  @Value("${psiprobe.beans.stats.push.backoff}")
+  public void setMinBackoff(String backoff) throws TimeExpression.NewCustomException {
+    this.minBackoff = Math.max(TimeExpression.inSeconds(backoff), 1) * 1000;
+  }
+
+  /**
+   * Sets the max reconnect delay.
+   *
+   * @param backoff the new delay expression, e.g. {@code 1m}
+   *
+   * @throws TimeExpression.NewCustomException if the expression is invalid
+   */
+  @Value("${psiprobe.beans.stats.push.maxBackoff}")
+  public void setMaxBackoff(String backoff) throws TimeExpression.NewCustomException {
+    this.maxBackoff = Math.max(TimeExpression.inSeconds(backoff), 1) * 1000;
+  }
+
+  /**
+   * Stats collectors.
+   *
+   * @param collectors the collectors
+   */
+  @Inject
+  public void statsCollectors(List<AbstractStatsCollectorBean> collectors) {
+    this.collectors = collectors;
+  }
+
+  /**
+   * Gets the listener feeding the exporter.
+   *
+   * @return the listener
+   */
+  public StatsCollectionListener getListener() {
+    return listener;
+  }
+
+  /**
+   * Gets the number of samples waiting to be sent.
+   *
+   * @return the queue depth
+   */
+  public int getQueueDepth() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of samples queued since startup.
+   *
+   * @return the queued count
+   */
+  public long getQueuedCount() {
+    return queuedCount.sum();
+  }
+
+  /**
+   * Gets the number of samples dropped, because the queue was full, a line did not fit a packet or
+   * a send failed.
+   *
+   * @return the dropped count
+   */
+  public long getDroppedCount() {
+    return droppedCount.sum();
+  }
+
+  /**
+   * Gets the number of samples sent, including the exporter's own.
+   *
+   * @return the sent count
+   */
+  public long getSentCount() {
+    return sentCount.sum();
+  }
+
+  /**
+   * Gets the number of packets sent.
+   *
+   * @return the packet count
+   */
+  public long getPacketCount() {
+    return packetCount.sum();
+  }
+
+  /**
+   * Gets the number of failed connects and sends.
+   *
+   * @return the error count
+   */
+  public long getErrorCount() {
+    return errorCount.sum();
+  }
+
+  /**
+   * Gets the number of connections opened after a failure.
+   *
+   * @return the reconnect count
+   */
+  public long getReconnectCount() {
+    return reconnectCount.sum();
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    names = new String[queueSize];
+    times = new long[queueSize];
+    values = new long[queueSize];
+    packet = ByteBuffer.allocate(packetSize);
+    line = ByteBuffer.allocate(packetSize + 2 * MAX_LINE_OVERHEAD);
+    if (!enabled) {
+      return;
+    }
+    if (collectors != null) {
+      for (AbstractStatsCollectorBean collector : collectors) {
+        collector.addListener(listener);
+      }
+    }
+    running = true;
+    thread = new Thread(this::run, "psi-probe-stats-push");
+    thread.setDaemon(true);
+    thread.start();
+    logger.info("Pushing stats to {}://{}:{} as {}", transport.name().toLowerCase(Locale.ROOT),
+        host, port, protocol.name().toLowerCase(Locale.ROOT));
+  }
+
+  @Override
+  public void destroy() throws InterruptedException {
+    running = false;
+    Thread flusher = thread;
+    if (flusher != null) {
+      lock.lock();
+      try {
+        stopped.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      flusher.join(TimeUnit.SECONDS.toMillis(5));
+      thread = null;
+    }
+    closeChannel();
+  }
+
+  /**
+   * The flush thread loop. It is stopped by a signal rather than an interrupt, which would close
+   * the channel in the middle of a write.
+   */
+  private void run() {
+    while (running) {
+      lock.lock();
+      try {
+        stopped.await(flushInterval, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } finally {
+        lock.unlock();
+      }
+      try {
+        flush(System.currentTimeMillis());
+      } catch (RuntimeException e) {
+        logger.error("Could not push stats", e);
+      }
+    }
+  }
+
+  /**
+   * Queues a sample, dropping it if the queue is full. Called with the lock held.
+   *
+   * @param sce the sample
+   */
+  private void enqueue(StatsCollectionEvent sce) {
+    if (size == names.length) {
+      droppedCount.increment();
+      return;
+    }
+    int tail = slot(size);
+    names[tail] = sce.getName();
+    times[tail] = sce.getTime();
+    values[tail] = sce.getValue();
+    size++;
+    queuedCount.increment();
+  }
+
+  /**
+   * Sends all queued samples, unless waiting for the reconnect delay to pass.
+   *
+   * @param now the current time
+   *
+   * @return the number of samples sent
+   */
+  int flush(long now) {
+    if (now < retryAt || !connect(now)) {
+      return 0;
+    }
+    long before = sentCount.sum();
+    packet.clear();
+    packetSamples = 0;
+    int drained;
+    while ((drained = drain()) > 0) {
+      for (int i = 0; i < drained; i++) {
+        if (!append(batchNames[i], batchValues[i], batchTimes[i] / 1000, now)) {
+          droppedCount.add(drained - i - 1L);
+          return (int) (sentCount.sum() - before);
+        }
+      }
+    }
+    long seconds = now / 1000;
+    if (append("probe.push.queue_depth", getQueueDepth(), seconds, now)
+        && append("probe.push.dropped", droppedCount.sum(), seconds, now)
+        && packetSamples > 0) {
+      send(now);
+    }
+    return (int) (sentCount.sum() - before);
+  }
+
+  /**
+   * Takes up to {@link #DRAIN_SIZE} samples from the ring.
+   *
+   * @return the number of samples taken
+   */
+  private int drain() {
+    lock.lock();
+    try {
+      int count = Math.min(size, DRAIN_SIZE);
+      for (int i = 0; i < count; i++) {
+        batchNames[i] = names[head];
+        batchTimes[i] = times[head];
+        batchValues[i] = values[head];
+        names[head] = null;
+        head = slot(1);
+        size--;
+      }
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Encodes a sample and adds it to the packet, sending the packet first if the line does not fit.
+   *
+   * @param name the series name
+   * @param value the value
+   * @param seconds the sample time in seconds
+   * @param now the current time
+   *
+   * @return false if a send failed
+   */
+  private boolean append(String name, long value, long seconds, long now) {
+    line.clear();
+    byte[] path = paths.computeIfAbsent(name, this::path);
+    if (protocol == Protocol.STATSD) {
+      if (value < 0) {
+        // a signed gauge value would be taken as a delta
+        putLine(path, 0, seconds);
+      }
+      putLine(path, value, seconds);
+    } else {
+      putLine(path, value, seconds);
+    }
+    if (line.position() == 0 || line.position() > packetSize) {
+      droppedCount.increment();
+      return true;
+    }
+    if (line.position() > packet.remaining() && !send(now)) {
+      droppedCount.increment();
+      return false;
+    }
+    line.flip();
+    packet.put(line);
+    packetSamples++;
+    return true;
+  }
+
+  /**
+   * Encodes a single line into the line buffer. Leaves the buffer empty if the path is too long
+   * for any packet.
+   *
+   * @param path the metric path
+   * @param value the value
+   * @param seconds the sample time in seconds
+   */
+  private void putLine(byte[] path, long value, long seconds) {
+    if (line.remaining() < path.length + MAX_LINE_OVERHEAD) {
+      line.position(0);
+      return;
+    }
+    line.put(path);
+    if (protocol == Protocol.STATSD) {
+      line.put((byte) ':');
+      putLong(value);
+      line.put((byte) '|').put((byte) 'g');
+    } else {
+      line.put((byte) ' ');
+      putLong(value);
+      line.put((byte) ' ');
+      putLong(seconds);
+    }
+    line.put((byte) '\n');
+  }
+
+  /**
+   * Writes the decimal digits of a number into the line buffer without allocating.
+   *
+   * @param value the number
+   */
+  private void putLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      line.put(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+      return;
+    }
+    long remaining = value;
+    if (remaining < 0) {
+      line.put((byte) '-');
+      remaining = -remaining;
+    }
+    int pos = digits.length;
+    do {
+      digits[--pos] = (byte) ('0' + remaining % 10);
+      remaining /= 10;
+    } while (remaining != 0);
+    line.put(digits, pos, digits.length - pos);
+  }
+
+  /**
+   * Sends the packet and empties it. On failure the samples in the packet are dropped.
+   *
+   * @param now the current time
+   *
+   * @return true, if successful
+   */
+  private boolean send(long now) {
+    packet.flip();
+    try {
+      while (packet.hasRemaining()) {
+        channel.write(packet);
+      }
+      packetCount.increment();
+      sentCount.add(packetSamples);
+      backoff = 0;
+      return true;
+    } catch (IOException e) {
+      droppedCount.add(packetSamples);
+      fail(now, e);
+      return false;
+    } finally {
+      packet.clear();
+      packetSamples = 0;
+    }
+  }
+
+  /**
+   * Opens the channel if it is not open.
+   *
+   * @param now the current time
+   *
+   * @return true, if connected
+   */
+  private boolean connect(long now) {
+    if (channel != null) {
+      return true;
+    }
+    try {
+      InetSocketAddress address = new InetSocketAddress(host, port);
+      if (address.isUnresolved()) {
+        throw new UnknownHostException(host);
+      }
+      if (transport == Transport.TCP) {
+        SocketChannel socket = SocketChannel.open();
+        try {
+          socket.socket().connect(address, CONNECT_TIMEOUT);
+        } catch (IOException e) {
+          socket.close();
+          throw e;
+        }
+        channel = socket;
+      } else {
+        channel = DatagramChannel.open().connect(address);
+      }
+    } catch (IOException e) {
+      fail(now, e);
+      return false;
+    }
+    if (failed) {
+      failed = false;
+      reconnectCount.increment();
+      logger.info("Reconnected to {}:{}", host, port);
+    }
+    return true;
+  }
+
+  /**
+   * Closes the channel and schedules the next connect attempt.
+   *
+   * @param now the current time
+   * @param e the cause
+   */
+  private void fail(long now, IOException e) {
+    errorCount.increment();
+    closeChannel();
+    backoff = backoff == 0 ? minBackoff : Math.min(backoff * 2, maxBackoff);
+    retryAt = now + backoff;
+    if (!failed) {
+      logger.warn("Could not push stats to {}:{}, retrying in {} ms", host, port, backoff, e);
+    } else {
+      logger.debug("Could not push stats to {}:{}, retrying in {} ms", host, port, backoff, e);
+    }
+    failed = true;
+  }
+
+  /**
+   * Closes the channel, if open.
+   */
+  private void closeChannel() {
+    ByteChannel open = channel;
+    channel = null;
+    if (open != null) {
+      try {
+        open.close();
+      } catch (IOException e) {
+        logger.trace("", e);
+      }
+    }
+  }
+
+  /**
+   * Builds the metric path of a series, the prefix and the series name with every character
+   * other than letters, digits, {@code -} and {@code _} replaced by an underscore. Dots separate
+   * path nodes and are kept, except where they would make an empty node.
+   *
+   * @param name the series name
+   *
+   * @return the metric path
+   */
+  byte[] path(String name) {
+    StringBuilder sb = new StringBuilder(prefix.length() + name.length() + 1);
+    if (!prefix.isEmpty()) {
+      sb.append(prefix).append('.');
+    }
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+          || c == '-' || c == '_';
+      if (c == '.') {
+        valid = i > 0 && i < name.length() - 1 && name.charAt(i - 1) != '.';
+      }
+      sb.append(valid ? c : '_');
+    }
+    return sb.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Maps a logical ring position to an array slot.
+   *
+   * @param index the position, {@code 0} being the oldest sample
+   *
+   * @return the slot
+   */
+  private int slot(int index) {
+    int slot = head + index;
+    return slot >= names.length ? slot - names.length : slot;
+  }
+
+  /**
+   * Gets the local host name, up to the first dot.
+   *
+   * @return the host name
+   */
+  private static String localHostName() {
+    try {
+      String name = InetAddress.getLocalHost().getHostName();
+      int dot = name.indexOf('.');
+      return dot > 0 ? name.substring(0, dot) : name;
+    } catch (UnknownHostException e) {
+      logger.trace("", e);
+      return "localhost";
+    }
+  }
+
+  /**
+   * Copies collected samples into the ring.
+   */
+  private class Listener implements StatsCollectionListener {
+
+    @Override
+    public void statsCollected(StatsCollectionEvent sce) {
+      lock.lock();
+      try {
+        enqueue(sce);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void statsCollected(List<StatsCollectionEvent> events) {
+      lock.lock();
+      try {
+        for (StatsCollectionEvent sce : events) {
+          enqueue(sce);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return running;
+    }
+  }
+
+}
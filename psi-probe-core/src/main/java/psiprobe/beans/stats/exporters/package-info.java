@@ -9,6 +9,6 @@
  * PURPOSE.
  */
 /**
- * Psi-Probe Scheduler Triggers.
+ * Psi-Probe Beans Stats Exporters Package.
  */
-package psiprobe.scheduler.triggers;
+package psiprobe.beans.stats.exporters;
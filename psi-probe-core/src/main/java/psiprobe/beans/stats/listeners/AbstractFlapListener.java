@@ -11,7 +11,6 @@
 package psiprobe.beans.stats.listeners;
 
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
 
 import psiprobe.Utils;
@@ -22,6 +21,11 @@ import psiprobe.Utils;
  * component using the component's {@code addFlapListener} method. When the flap event occurs, that
  * object's appropriate method is invoked.
  *
+ * <p>
+ * The flap interval, thresholds and weights of a series are read from the properties on its first
+ * event and kept in its {@link FlapHistory} until {@link #reloadSettings()} is called.
+ * </p>
+ *
  * @see <a href="https://assets.nagios.com/downloads/nagioscore/docs/nagioscore/3/en/flapping.html">
  *      Detection and Handling of State Flapping (nagios)</a>
  */
@@ -30,8 +34,8 @@ public abstract class AbstractFlapListener extends AbstractThresholdListener {
   /** The default flap interval. */
   private int defaultFlapInterval;
 
-  /** The flaps. */
-  private final Map<String, LinkedList<Boolean>> flaps = new HashMap<>();
+  /** The flap histories. */
+  private final Map<String, FlapHistory> flaps = new HashMap<>();
 
   /** The flapping states. */
   private final Map<String, Boolean> flappingStates = new HashMap<>();
@@ -42,20 +46,16 @@ public abstract class AbstractFlapListener extends AbstractThresholdListener {
    * @param sce the sce
    */
   protected boolean flappingStarted(StatsCollectionEvent sce ) {
-    flaps.put(sce.getName(), new LinkedList<>());
-    flappingStates.put(sce.getName(), true);
-    flaps.get(sce.getName()).add(true);
-    if ( flaps.get(sce.getName()).size() >= defaultFlapInterval) {
+    restartHistory(sce.getName(), true, true);
+    if (getFlaps(sce.getName()).size() >= defaultFlapInterval) {
       flappingStopped(sce);
     }
     return true;
   }
 
   private void flappingStopped(StatsCollectionEvent sce) {
-    flaps.put(sce.getName(), new LinkedList<>());
-    flappingStates.put(sce.getName(), false);
-    flaps.get(sce.getName()).add(false);
-    if (flaps.get(sce.getName()).size() >= defaultFlapInterval) {
+    restartHistory(sce.getName(), false, false);
+    if (getFlaps(sce.getName()).size() >= defaultFlapInterval) {
       flappingStarted(sce);
     }
   }
@@ -66,10 +66,8 @@ public abstract class AbstractFlapListener extends AbstractThresholdListener {
    * @param sce the sce
    */
   protected boolean aboveThresholdFlappingStopped(StatsCollectionEvent sce ){
-    flaps.put(sce.getName(), new LinkedList<>());
-    flappingStates.put(sce.getName(), false);
-    flaps.get(sce.getName()).add(false);
-    if (flaps.get(sce.getName()).size() >= defaultFlapInterval) {
+    restartHistory(sce.getName(), false, false);
+    if (getFlaps(sce.getName()).size() >= defaultFlapInterval) {
       belowThresholdFlappingStopped(sce);
     }
     return true;
@@ -82,10 +80,8 @@ public abstract class AbstractFlapListener extends AbstractThresholdListener {
    * @return
    */
   protected boolean belowThresholdFlappingStopped(StatsCollectionEvent sce ){
-    flaps.put(sce.getName(), new LinkedList<>());
-    flappingStates.put(sce.getName(), true);
-    flaps.get(sce.getName()).add(true);
-    if (flaps.get(sce.getName()).size() >= defaultFlapInterval) {
+    restartHistory(sce.getName(), true, true);
+    if (getFlaps(sce.getName()).size() >= defaultFlapInterval) {
       aboveThresholdFlappingStopped(sce);
     }
     return false;
@@ -97,10 +93,8 @@ public abstract class AbstractFlapListener extends AbstractThresholdListener {
    * @param sce the sce
    */
   protected void aboveThresholdNotFlapping(StatsCollectionEvent sce){
-    flaps.put(sce.getName(), new LinkedList<>());
-    flappingStates.put(sce.getName(), true);
-    flaps.get(sce.getName()).add(true);
-    if (flaps.get(sce.getName()).size() >= defaultFlapInterval) {
+    restartHistory(sce.getName(), true, true);
+    if (getFlaps(sce.getName()).size() >= defaultFlapInterval) {
       belowThresholdNotFlapping(sce);
     }
   }
@@ -111,10 +105,8 @@ public abstract class AbstractFlapListener extends AbstractThresholdListener {
    * @param sce the sce
    */
   protected void belowThresholdNotFlapping(StatsCollectionEvent sce){
-    flaps.put(sce.getName(), new LinkedList<>());
-    flappingStates.put(sce.getName(), true);
-    flaps.get(sce.getName()).add(false);
-    if (flaps.get(sce.getName()).size() >= defaultFlapInterval) {
+    restartHistory(sce.getName(), true, false);
+    if (getFlaps(sce.getName()).size() >= defaultFlapInterval) {
       aboveThresholdNotFlapping(sce);
     }
   }
@@ -186,11 +178,12 @@ public abstract class AbstractFlapListener extends AbstractThresholdListener {
     addFlap(name, crossedThreshold);
     boolean oldFlappingState = getFlappingState(name);
     float transitionPercent = calculateStateTransitionPercentage(name, oldFlappingState);
+    FlapHistory history = getFlaps(name);
     boolean newFlappingState;
     if (oldFlappingState) {
-      newFlappingState = transitionPercent <= getFlapStopThreshold(name);
+      newFlappingState = transitionPercent <= history.getStopThreshold();
     } else {
-      newFlappingState = transitionPercent > getFlapStartThreshold(name);
+      newFlappingState = transitionPercent > history.getStartThreshold();
     }
     setFlappingState(name, newFlappingState);
     return oldFlappingState != newFlappingState;
@@ -205,20 +198,8 @@ public abstract class AbstractFlapListener extends AbstractThresholdListener {
    * @return the float
    */
   protected float calculateStateTransitionPercentage(String name, boolean flapping) {
-    int flapInterval = getFlapInterval(name);
-    LinkedList<Boolean> list = getFlaps(name);
-    float lowWeight = getFlapLowWeight(name);
-    float highWeight = getFlapHighWeight(name);
-    float weightRange = highWeight - lowWeight;
-    float result = 0;
-    for (int i = list.size() - 1; i >= 0; i--) {
-      boolean thisFlap = list.get(i);
-      if (flapping != thisFlap) {
-        float weight = lowWeight + weightRange * i / (flapInterval - 1);
-        result += weight;
-      }
-    }
-    return result / flapInterval;
+    FlapHistory history = getFlaps(name);
+    return history.score(flapping, history.getLowWeight(), history.getHighWeight());
   }
 
   /**
@@ -228,13 +209,21 @@ public abstract class AbstractFlapListener extends AbstractThresholdListener {
    * @param flap the flap
    */
   protected void addFlap(String name, boolean flap) {
-    int flapInterval = getFlapInterval(name);
-    LinkedList<Boolean> list = getFlaps(name);
-    Boolean value = flap;
-    list.addLast(value);
-    while (list.size() > flapInterval) {
-      list.removeFirst();
-    }
+    getFlaps(name).add(flap);
+  }
+
+  /**
+   * Starts the history of a series over with a single entry, after its flapping state changed.
+   *
+   * @param name the name
+   * @param flapping the flapping state
+   * @param flap the first entry
+   */
+  private void restartHistory(String name, boolean flapping, boolean flap) {
+    FlapHistory history = getFlaps(name);
+    history.clear();
+    history.add(flap);
+    flappingStates.put(name, flapping);
   }
 
   /**
@@ -264,14 +253,36 @@ public abstract class AbstractFlapListener extends AbstractThresholdListener {
   }
 
   /**
-   * Gets the flaps.
+   * Gets the flaps, with the settings of the series resolved at the current version.
    *
    * @param name the name
    *
    * @return the flaps
    */
-  protected LinkedList<Boolean> getFlaps(String name) {
-      return flaps.computeIfAbsent(name, k -> new LinkedList<>());
+  protected FlapHistory getFlaps(String name) {
+    FlapHistory history = flaps.get(name);
+    int version = getSettingsVersion();
+    if (history == null) {
+      history = new FlapHistory(getFlapInterval(name));
+      flaps.put(name, history);
+      resolveSettings(name, history, version);
+    } else if (history.getSettingsVersion() != version) {
+      history.setInterval(getFlapInterval(name));
+      resolveSettings(name, history, version);
+    }
+    return history;
+  }
+
+  /**
+   * Reads the thresholds and weights of a series into its history.
+   *
+   * @param name the name
+   * @param history the history
+   * @param version the current settings version
+   */
+  private void resolveSettings(String name, FlapHistory history, int version) {
+    history.setSettings(version, getFlapStartThreshold(name), getFlapStopThreshold(name),
+        getFlapLowWeight(name), getFlapHighWeight(name));
   }
 
   /**
@@ -350,6 +361,7 @@ public abstract class AbstractFlapListener extends AbstractThresholdListener {
    */
   public void setDefaultFlapInterval(int defaultFlapInterval) {
     this.defaultFlapInterval = defaultFlapInterval;
+    reloadSettings();
   }
 
   /**
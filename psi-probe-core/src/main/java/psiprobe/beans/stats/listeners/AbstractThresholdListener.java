@@ -11,8 +11,8 @@
 package psiprobe.beans.stats.listeners;
 
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import psiprobe.Utils;
 import psiprobe.tools.SizeExpression;
 
 /**
@@ -20,6 +20,17 @@ import psiprobe.tools.SizeExpression;
  * a threshold event implements this interface, and the object created with that class is registered
  * with a component using the component's {@code addThresholdListener} method. When the threshold
  * event occurs, that object's appropriate method is invoked.
+ *
+ * <p>
+ * A series is above its threshold when its value exceeds the fixed {@code threshold} property,
+ * or, with a {@code deviation} property of k, when it exceeds the value its baseline expected by
+ * more than k standard deviations. Either property enables the series.
+ * </p>
+ *
+ * <p>
+ * Both properties are read on the first event of a series and kept with its previous value, so
+ * that later events do not look them up again. Call {@link #reloadSettings()} after changing them.
+ * </p>
  */
 public abstract class AbstractThresholdListener extends AbstractStatsCollectionListener {
 
@@ -29,8 +40,11 @@ public abstract class AbstractThresholdListener extends AbstractStatsCollectionL
   /** The Constant DEFAULT_VALUE. */
   public static final long DEFAULT_VALUE = Long.MIN_VALUE;
 
-  /** The previous values. */
-  private final HashMap<String, Long> previousValues = new HashMap<>();
+  /** The resolved settings and previous values of the series. */
+  private final HashMap<String, SeriesState> states = new HashMap<>();
+
+  /** The version of the settings, the series resolved at an older one read them again. */
+  private final AtomicInteger settingsVersion = new AtomicInteger();
 
   /** The series disabled. */
   private final HashMap<String, Boolean> seriesDisabled = new HashMap<>();
@@ -66,6 +80,7 @@ public abstract class AbstractThresholdListener extends AbstractStatsCollectionL
   @Override
   public void statsCollected(StatsCollectionEvent sce) {
     String name = sce.getName();
+    SeriesState state = getState(name);
     if (isSeriesDisabled(name)) {
       return;
     }
@@ -81,15 +96,57 @@ public abstract class AbstractThresholdListener extends AbstractStatsCollectionL
     } else {
       remainedBelowThreshold(sce);
     }
-    setPreviousValue(name, value);
+    state.previousValue = value;
+    state.previousThreshold = getThreshold(sce);
+    state.hasPreviousThreshold = true;
   }
 
   @Override
   public void reset() {
-    previousValues.clear();
+    states.clear();
     super.reset();
   }
 
+  /**
+   * Makes every series read its settings again on its next event.
+   */
+  public void reloadSettings() {
+    settingsVersion.incrementAndGet();
+  }
+
+  /**
+   * Gets the version of the settings, incremented by {@link #reloadSettings()}.
+   *
+   * @return the settings version
+   */
+  protected int getSettingsVersion() {
+    return settingsVersion.get();
+  }
+
+  /**
+   * Gets the state of a series, reading its threshold and deviation factor if they were not read
+   * at the current settings version.
+   *
+   * @param name the name
+   *
+   * @return the state
+   */
+  private SeriesState getState(String name) {
+    SeriesState state = states.get(name);
+    if (state == null) {
+      state = new SeriesState();
+      states.put(name, state);
+    }
+    int version = settingsVersion.get();
+    if (state.settingsVersion != version) {
+      seriesDisabled.remove(name);
+      state.settingsVersion = version;
+      state.threshold = getThreshold(name);
+      state.deviationFactor = getDeviationFactor(name);
+    }
+    return state;
+  }
+
   /**
    * Checks if is previous value above threshold.
    *
@@ -98,10 +155,9 @@ public abstract class AbstractThresholdListener extends AbstractStatsCollectionL
    * @return true, if is previous value above threshold
    */
   protected boolean isPreviousValueAboveThreshold(StatsCollectionEvent sce) {
-    String name = sce.getName();
-    long threshold = getThreshold(name);
-    long previousValue = getPreviousValue(name);
-    return previousValue > threshold;
+    SeriesState state = getState(sce.getName());
+    long threshold = state.hasPreviousThreshold ? state.previousThreshold : state.threshold;
+    return state.previousValue > threshold;
   }
 
   /**
@@ -112,12 +168,56 @@ public abstract class AbstractThresholdListener extends AbstractStatsCollectionL
    * @return true, if is value above threshold
    */
   protected boolean isValueAboveThreshold(StatsCollectionEvent sce) {
-    String name = sce.getName();
     long value = sce.getValue();
-    long threshold = getThreshold(name);
+    long threshold = getThreshold(sce);
     return value > threshold;
   }
 
+  /**
+   * Gets the threshold a sample is compared with: the fixed threshold, lowered to the expected
+   * value plus the configured number of standard deviations once the baseline of the series
+   * gives one.
+   *
+   * @param sce the sce
+   *
+   * @return the threshold
+   */
+  protected long getThreshold(StatsCollectionEvent sce) {
+    SeriesState state = getState(sce.getName());
+    long threshold = state.threshold;
+    double factor = state.deviationFactor;
+    double expected = sce.getExpected();
+    double deviation = sce.getDeviation();
+    if (factor > 0 && !Double.isNaN(expected) && !Double.isNaN(deviation)) {
+      double adaptive = Math.floor(expected + factor * deviation);
+      if (adaptive < threshold) {
+        threshold = (long) adaptive;
+      }
+    }
+    return threshold;
+  }
+
+  /**
+   * Gets the number of standard deviations above the expected value at which a series is above
+   * its threshold.
+   *
+   * @param name the name
+   *
+   * @return the deviation factor, 0 if the series only has a fixed threshold
+   */
+  protected double getDeviationFactor(String name) {
+    String factor = getPropertyValue(name, "deviation");
+    if (factor == null) {
+      return 0;
+    }
+    try {
+      return Double.parseDouble(factor.trim());
+    } catch (NumberFormatException ex) {
+      logger.trace("", ex);
+      return 0;
+    }
+  }
+
   /**
    * Gets the threshold.
    *
@@ -130,8 +230,10 @@ public abstract class AbstractThresholdListener extends AbstractStatsCollectionL
       return DEFAULT_THRESHOLD;
     }
     String threshold = getPropertyValue(name, "threshold");
-    if (threshold == null && !isSeriesDisabled(name)) {
-      setSeriesDisabled(name);
+    if (threshold == null) {
+      if (getDeviationFactor(name) <= 0) {
+        setSeriesDisabled(name);
+      }
       return DEFAULT_THRESHOLD;
     }
     try {
@@ -150,8 +252,8 @@ public abstract class AbstractThresholdListener extends AbstractStatsCollectionL
    * @return the previous value
    */
   protected long getPreviousValue(String name) {
-    Long value = previousValues.get(name);
-    return Utils.toLong(value, DEFAULT_VALUE);
+    SeriesState state = states.get(name);
+    return state == null ? DEFAULT_VALUE : state.previousValue;
   }
 
   /**
@@ -161,8 +263,7 @@ public abstract class AbstractThresholdListener extends AbstractStatsCollectionL
    * @param previousValue the previous value
    */
   protected void setPreviousValue(String name, long previousValue) {
-    Long value = previousValue;
-    previousValues.put(name, value);
+    getState(name).previousValue = previousValue;
   }
 
   /**
@@ -189,4 +290,28 @@ public abstract class AbstractThresholdListener extends AbstractStatsCollectionL
     seriesDisabled.put(name, true);
   }
 
+  /**
+   * The resolved settings and the previous value of a series.
+   */
+  private static final class SeriesState {
+
+    /** The settings version the threshold and deviation factor were read at. */
+    int settingsVersion = -1;
+
+    /** The fixed threshold. */
+    long threshold;
+
+    /** The deviation factor, 0 if the series only has a fixed threshold. */
+    double deviationFactor;
+
+    /** The previous value. */
+    long previousValue = DEFAULT_VALUE;
+
+    /** The threshold the previous value was compared with. */
+    long previousThreshold;
+
+    /** Whether a previous value was compared with a threshold. */
+    boolean hasPreviousThreshold;
+  }
+
 }
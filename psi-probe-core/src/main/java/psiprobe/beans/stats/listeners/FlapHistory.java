@@ -0,0 +1,309 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.listeners;
+
+/**
+ * The threshold crossings of the last {@code interval} events of a series, used for flap
+ * detection.
+ *
+ * <p>
+ * Crossings are kept as bits in a fixed-width ring. Alongside the bits the history maintains the
+ * number of set bits and the sum of their positions, position {@code 0} being the oldest entry.
+ * Since flap weights grow linearly with the position, both are all that is needed to compute the
+ * weighted transition score in constant time, and both can be updated in constant time when an
+ * entry is added or the oldest one shifts out.
+ * </p>
+ */
+public class FlapHistory {
+
+  /** The bits, entry {@code i} of the ring is bit {@code i % 64} of word {@code i / 64}. */
+  private long[] words;
+
+  /** The max number of entries. */
+  private int interval;
+
+  /** The ring index of the oldest entry. */
+  private int head;
+
+  /** The number of entries. */
+  private int size;
+
+  /** The number of set entries. */
+  private int setCount;
+
+  /** The sum of the positions of the set entries. */
+  private long setPositionSum;
+
+  /** The version of the listener settings the thresholds and weights were resolved at. */
+  private int settingsVersion = -1;
+
+  /** The score above which the series starts flapping. */
+  private float startThreshold;
+
+  /** The score at or below which the series stops flapping. */
+  private float stopThreshold;
+
+  /** The weight of the oldest entry. */
+  private float lowWeight;
+
+  /** The weight of the newest entry of a full history. */
+  private float highWeight;
+
+  /**
+   * Instantiates a new flap history.
+   *
+   * @param interval the max number of entries
+   */
+  public FlapHistory(int interval) {
+    this.interval = Math.max(interval, 1);
+    this.words = new long[wordCount(this.interval)];
+  }
+
+  /**
+   * Gets the max number of entries.
+   *
+   * @return the interval
+   */
+  public int getInterval() {
+    return interval;
+  }
+
+  /**
+   * Changes the max number of entries, keeping the most recent ones. Does nothing if the interval
+   * is unchanged.
+   *
+   * @param interval the new interval
+   */
+  public void setInterval(int interval) {
+    int newInterval = Math.max(interval, 1);
+    if (newInterval == this.interval) {
+      return;
+    }
+    int keep = Math.min(size, newInterval);
+    long[] newWords = new long[wordCount(newInterval)];
+    int newSetCount = 0;
+    long newSetPositionSum = 0;
+    for (int i = 0; i < keep; i++) {
+      if (get(size - keep + i)) {
+        newWords[i >>> 6] |= 1L << i;
+        newSetCount++;
+        newSetPositionSum += i;
+      }
+    }
+    this.words = newWords;
+    this.interval = newInterval;
+    this.head = 0;
+    this.size = keep;
+    this.setCount = newSetCount;
+    this.setPositionSum = newSetPositionSum;
+  }
+
+  /**
+   * Gets the version of the listener settings the thresholds and weights were resolved at.
+   *
+   * @return the settings version, -1 if they were never resolved
+   */
+  public int getSettingsVersion() {
+    return settingsVersion;
+  }
+
+  /**
+   * Sets the thresholds and weights resolved for the series.
+   *
+   * @param settingsVersion the version of the listener settings they were resolved at
+   * @param startThreshold the score above which the series starts flapping
+   * @param stopThreshold the score at or below which the series stops flapping
+   * @param lowWeight the weight of the oldest entry
+   * @param highWeight the weight of the newest entry of a full history
+   */
+  public void setSettings(int settingsVersion, float startThreshold, float stopThreshold,
+      float lowWeight, float highWeight) {
+    this.settingsVersion = settingsVersion;
+    this.startThreshold = startThreshold;
+    this.stopThreshold = stopThreshold;
+    this.lowWeight = lowWeight;
+    this.highWeight = highWeight;
+  }
+
+  /**
+   * Gets the score above which the series starts flapping.
+   *
+   * @return the start threshold
+   */
+  public float getStartThreshold() {
+    return startThreshold;
+  }
+
+  /**
+   * Gets the score at or below which the series stops flapping.
+   *
+   * @return the stop threshold
+   */
+  public float getStopThreshold() {
+    return stopThreshold;
+  }
+
+  /**
+   * Gets the weight of the oldest entry.
+   *
+   * @return the low weight
+   */
+  public float getLowWeight() {
+    return lowWeight;
+  }
+
+  /**
+   * Gets the weight of the newest entry of a full history.
+   *
+   * @return the high weight
+   */
+  public float getHighWeight() {
+    return highWeight;
+  }
+
+  /**
+   * Adds an entry, dropping the oldest one if the history is full.
+   *
+   * @param flap the flap
+   */
+  public void add(boolean flap) {
+    int tail;
+    if (size == interval) {
+      tail = head;
+      if (isSet(head)) {
+        setCount--;
+      }
+      // every remaining entry moves one position towards the oldest
+      setPositionSum -= setCount;
+      head = head + 1 == interval ? 0 : head + 1;
+    } else {
+      tail = slot(size);
+      size++;
+    }
+    if (flap) {
+      words[tail >>> 6] |= 1L << tail;
+      setCount++;
+      setPositionSum += size - 1;
+    } else {
+      words[tail >>> 6] &= ~(1L << tail);
+    }
+  }
+
+  /**
+   * Gets the entry at the given position, {@code 0} being the oldest.
+   *
+   * @param index the index
+   *
+   * @return the entry
+   */
+  public boolean get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return isSet(slot(index));
+  }
+
+  /**
+   * Gets the number of entries.
+   *
+   * @return the size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the number of entries equal to the given value.
+   *
+   * @param flap the value
+   *
+   * @return the count
+   */
+  public int count(boolean flap) {
+    return flap ? setCount : size - setCount;
+  }
+
+  /**
+   * Calculates the weighted share of entries different from the given state. The entry at position
+   * {@code i} weighs {@code lowWeight + (highWeight - lowWeight) * i / (interval - 1)}, the sum of
+   * the weights is divided by the interval.
+   *
+   * @param flapping the state
+   * @param lowWeight the weight of the oldest entry
+   * @param highWeight the weight of the newest entry of a full history
+   *
+   * @return the transition score
+   */
+  public float score(boolean flapping, float lowWeight, float highWeight) {
+    long count;
+    long positionSum;
+    if (flapping) {
+      count = size - (long) setCount;
+      positionSum = (long) size * (size - 1) / 2 - setPositionSum;
+    } else {
+      count = setCount;
+      positionSum = setPositionSum;
+    }
+    double result = (double) lowWeight * count;
+    if (interval > 1) {
+      result += (double) (highWeight - lowWeight) * positionSum / (interval - 1);
+    }
+    return (float) (result / interval);
+  }
+
+  /**
+   * Removes all entries, keeping the interval, thresholds and weights.
+   */
+  public void clear() {
+    for (int i = 0; i < words.length; i++) {
+      words[i] = 0;
+    }
+    head = 0;
+    size = 0;
+    setCount = 0;
+    setPositionSum = 0;
+  }
+
+  /**
+   * Checks the bit of a ring slot.
+   *
+   * @param slot the slot
+   *
+   * @return true, if set
+   */
+  private boolean isSet(int slot) {
+    return (words[slot >>> 6] & 1L << slot) != 0;
+  }
+
+  /**
+   * Maps a logical position to a ring slot.
+   *
+   * @param index the index
+   *
+   * @return the slot
+   */
+  private int slot(int index) {
+    int slot = head + index;
+    return slot >= interval ? slot - interval : slot;
+  }
+
+  /**
+   * Gets the number of words needed for the given number of bits.
+   *
+   * @param bits the bits
+   *
+   * @return the word count
+   */
+  private static int wordCount(int bits) {
+    return (bits + 63) >>> 6;
+  }
+
+}
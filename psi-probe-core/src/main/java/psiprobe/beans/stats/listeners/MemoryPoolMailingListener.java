@@ -118,7 +118,7 @@ public class MemoryPoolMailingListener extends AbstractFlapListener
       return;
     }
     long value = sce.getValue();
-    long threshold = this.getThreshold(name);
+    long threshold = this.getThreshold(sce);
     String subjectInfix = "";
     String bodyPrefix = "";
     if (flappingStop) {
@@ -10,8 +10,6 @@
  */
 package psiprobe.beans.stats.listeners;
 
-import org.jfree.data.xy.XYDataItem;
-
 /**
  * The Class StatsCollectionEvent.
  */
@@ -20,30 +18,29 @@ public class StatsCollectionEvent {
   /** The name. */
   private String name;
 
-  /** The data. */
-  private XYDataItem data;
+  /** The time. */
+  private long time;
 
-  /**
-   * Instantiates a new stats collection event.
-   *
-   * @param name the name
-   * @param data the data
-   */
-  public StatsCollectionEvent(String name, XYDataItem data) {
-    this.name = name;
-    this.data = data;
-  }
+  /** The value. */
+  private long value;
+
+  /** The value the series baseline expected, NaN if unknown. */
+  private double expected = Double.NaN;
+
+  /** The standard deviation the series baseline expected, NaN if unknown. */
+  private double deviation = Double.NaN;
 
   /**
    * Instantiates a new stats collection event.
    *
    * @param name the name
    * @param time the time
-   * @param data the data
+   * @param value the value
    */
-  public StatsCollectionEvent(String name, long time, long data) {
+  public StatsCollectionEvent(String name, long time, long value) {
     this.name = name;
-    this.data = new XYDataItem(time, data);
+    this.time = time;
+    this.value = value;
   }
 
   /**
@@ -65,39 +62,68 @@ public class StatsCollectionEvent {
   }
 
   /**
-   * Gets the data.
+   * Gets the value.
    *
-   * @return the data
+   * @return the value
    */
-  public XYDataItem getData() {
-    return data;
+  public long getValue() {
+    return value;
   }
 
   /**
-   * Sets the data.
+   * Sets the value.
    *
-   * @param data the new data
+   * @param value the new value
    */
-  public void setData(XYDataItem data) {
-    this.data = data;
+  public void setValue(long value) {
+    this.value = value;
   }
 
   /**
-   * Gets the value.
+   * Gets the time.
    *
-   * @return the value
+   * @return the time
    */
-  public long getValue() {
-    return getData().getY().longValue();
+  public long getTime() {
+    return time;
   }
 
   /**
-   * Gets the time.
+   * Sets the time.
    *
-   * @return the time
+   * @param time the new time
    */
-  public long getTime() {
-    return getData().getX().longValue();
+  public void setTime(long time) {
+    this.time = time;
+  }
+
+  /**
+   * Gets the value the series baseline expected, before learning from this sample.
+   *
+   * @return the expected value, NaN if unknown
+   */
+  public double getExpected() {
+    return expected;
+  }
+
+  /**
+   * Gets the standard deviation the series baseline expected, before learning from this sample.
+   *
+   * @return the deviation, NaN if unknown
+   */
+  public double getDeviation() {
+    return deviation;
+  }
+
+  /**
+   * Sets what the series baseline expected.
+   *
+   * @param expected the expected value, NaN if unknown
+   * @param deviation the standard deviation, NaN if unknown
+   */
+  public void setBaseline(double expected, double deviation) {
+    this.expected = expected;
+    this.deviation = deviation;
   }
 
 }
@@ -10,6 +10,8 @@
  */
 package psiprobe.beans.stats.listeners;
 
+import java.util.List;
+
 /**
  * The listener interface for receiving statsCollection events. The class that is interested in
  * processing a statsCollection event implements this interface, and the object created with that
@@ -25,6 +27,18 @@ public interface StatsCollectionListener {
    */
   void statsCollected(StatsCollectionEvent sce);
 
+  /**
+   * Stats collected, several events at once in the order they were collected. Listeners that can
+   * handle a batch more cheaply than event by event may override this.
+   *
+   * @param events the events
+   */
+  default void statsCollected(List<StatsCollectionEvent> events) {
+    for (StatsCollectionEvent sce : events) {
+      statsCollected(sce);
+    }
+  }
+
   /**
    * Checks if is enabled.
    *
@@ -0,0 +1,521 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.listeners;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+
+import psiprobe.tools.TimeExpression;
+
+/**
+ * Delivers {@link StatsCollectionEvent}s to listeners on a dedicated thread, so that a slow
+ * listener, e.g. one sending mail, never holds up sample collection.
+ *
+ * <p>
+ * Collectors {@link #publish(List, StatsCollectionEvent) publish} into a bounded ring. The
+ * dispatcher thread drains up to {@code batchSize} events at a time and hands each listener all
+ * events of the batch meant for it in one {@link StatsCollectionListener#statsCollected(List)}
+ * call. When the ring is full the {@link OverflowPolicy} decides what gives way.
+ * </p>
+ *
+ * <p>
+ * Threshold and flap listeners have to see every sample in order, a lost sample can hide a crossing
+ * or a flapping start or stop. The default {@link OverflowPolicy#BLOCK} therefore makes the
+ * collector wait for room, for at most {@code blockTimeout}, before the event is dropped and
+ * counted. {@link OverflowPolicy#COALESCE} never merges events meant for an
+ * {@link AbstractThresholdListener}.
+ * </p>
+ */
+public class StatsEventDispatcher implements InitializingBean, DisposableBean {
+
+  /** The Constant logger. */
+  private static final Logger logger = LoggerFactory.getLogger(StatsEventDispatcher.class);
+
+  /**
+   * What happens to an event published while the queue is full.
+   */
+  public enum OverflowPolicy {
+
+    /**
+     * The publisher waits for room, for at most the block timeout, then the new event is dropped.
+     */
+    BLOCK,
+
+    /** The new event is dropped. */
+    DROP_NEWEST,
+
+    /** The oldest queued event is dropped to make room. */
+    DROP_OLDEST,
+
+    /**
+     * A queued event of the same series takes the new time and value, listeners only see the
+     * latest sample of that series. Events meant for a threshold listener are never merged, as
+     * that could hide a crossing. Falls back to dropping the oldest event.
+     */
+    COALESCE
+  }
+
+  /** The lock guarding the ring. */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Signalled when the ring becomes non-empty. */
+  private final Condition notEmpty = lock.newCondition();
+
+  /** Signalled when the ring has room again. */
+  private final Condition notFull = lock.newCondition();
+
+  /** The queued events. */
+  private StatsCollectionEvent[] events;
+
+  /** The listeners of the queued events. */
+  private List<?>[] targets;
+
+  /** The enqueue times of the queued events, in nanoseconds. */
+  private long[] enqueued;
+
+  /** The index of the oldest queued event. */
+  private int head;
+
+  /** The number of queued events. */
+  private int size;
+
+  /** The queue size. */
+  private int queueSize = 1024;
+
+  /** The batch size. */
+  private int batchSize = 64;
+
+  /** The overflow policy. */
+  private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+  /** How long a publisher waits for room under {@link OverflowPolicy#BLOCK}, in nanoseconds. */
+  private long blockTimeout = TimeUnit.SECONDS.toNanos(1);
+
+  /** The dispatcher thread. */
+  private Thread thread;
+
+  /** Whether the dispatcher is running. */
+  private volatile boolean running;
+
+  /** The number of queued events. */
+  private final LongAdder queuedCount = new LongAdder();
+
+  /** The number of dropped events. */
+  private final LongAdder droppedCount = new LongAdder();
+
+  /** The number of coalesced events. */
+  private final LongAdder coalescedCount = new LongAdder();
+
+  /** The number of delivered events. */
+  private final LongAdder deliveredCount = new LongAdder();
+
+  /** The total latency between publishing and delivery, in nanoseconds. */
+  private final LongAdder latencyNanos = new LongAdder();
+
+  /** The max latency between publishing and delivery, in nanoseconds. */
+  private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Sets the queue size.
+   *
+   * @param queueSize the new queue size
+   */
+  @Value("${psiprobe.beans.stats.listeners.queueSize}")
+  public void setQueueSize(int queueSize) {
+    this.queueSize = Math.max(queueSize, 1);
+  }
+
+  /**
+   * Gets the queue size.
+   *
+   * @return the queue size
+   */
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  /**
+   * Sets the batch size.
+   *
+   * @param batchSize the new batch size
+   */
+  @Value("${psiprobe.beans.stats.listeners.batchSize}")
+  public void setBatchSize(int batchSize) {
+    this.batchSize = Math.max(batchSize, 1);
+  }
+
+  /**
+   * Gets the batch size.
+   *
+   * @return the batch size
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the overflow policy.
+   *
+   * @param overflowPolicy the new overflow policy, e.g. {@code block}
+   */
+  @Value("${psiprobe.beans.stats.listeners.overflowPolicy}")
+  public void setOverflowPolicy(String overflowPolicy) {
+    this.overflowPolicy =
+        OverflowPolicy.valueOf(overflowPolicy.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+  }
+
+  /**
+   * Gets the overflow policy.
+   *
+   * @return the overflow policy
+   */
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * Sets how long a publisher waits for room under {@link OverflowPolicy#BLOCK}.
+   *
+   * @param blockTimeout the new block timeout expression, e.g. {@code 1s}
+   *
+   * @throws TimeExpression.NewCustomException if the expression is invalid
+   */
+  @Value("${psiprobe.beans.stats.listeners.blockTimeout}")
+  public void setBlockTimeout(String blockTimeout) throws TimeExpression.NewCustomException {
+    this.blockTimeout = TimeUnit.SECONDS.toNanos(TimeExpression.inSeconds(blockTimeout));
+  }
+
+  /**
+   * Gets how long a publisher waits for room under {@link OverflowPolicy#BLOCK}.
+   *
+   * @return the block timeout in milliseconds
+   */
+  public long getBlockTimeout() {
+    return TimeUnit.NANOSECONDS.toMillis(blockTimeout);
+  }
+
+  /**
+   * Queues an event for the given listeners.
+   *
+   * @param listeners the listeners
+   * @param event the event
+   *
+   * @return false if the dispatcher is not running and the caller has to deliver the event itself;
+   *         an event dropped by the overflow policy counts as handled
+   */
+  public boolean publish(List<StatsCollectionListener> listeners, StatsCollectionEvent event) {
+    if (!running) {
+      return false;
+    }
+    long now = System.nanoTime();
+    lock.lock();
+    try {
+      int capacity = events.length;
+      if (size == capacity) {
+        switch (overflowPolicy) {
+          case BLOCK:
+            if (!awaitRoom()) {
+              if (!running) {
+                return false;
+              }
+              droppedCount.increment();
+              return true;
+            }
+            break;
+          case DROP_NEWEST:
+            droppedCount.increment();
+            return true;
+          case COALESCE:
+            if (coalesce(listeners, event)) {
+              coalescedCount.increment();
+              return true;
+            }
+            droppedCount.increment();
+            removeOldest();
+            break;
+          case DROP_OLDEST:
+          default:
+            droppedCount.increment();
+            removeOldest();
+            break;
+        }
+      }
+      int tail = slot(size);
+      events[tail] = event;
+      targets[tail] = listeners;
+      enqueued[tail] = now;
+      size++;
+      queuedCount.increment();
+      notEmpty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits for room in the ring, for at most the block timeout. Called with the lock held.
+   *
+   * @return true, if there is room
+   */
+  private boolean awaitRoom() {
+    long remaining = blockTimeout;
+    try {
+      while (size == events.length && running && remaining > 0) {
+        remaining = notFull.awaitNanos(remaining);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return size < events.length && running;
+  }
+
+  /**
+   * Gets the number of events currently waiting for delivery.
+   *
+   * @return the pending count
+   */
+  public int getPendingCount() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of events queued since startup.
+   *
+   * @return the queued count
+   */
+  public long getQueuedCount() {
+    return queuedCount.sum();
+  }
+
+  /**
+   * Gets the number of events dropped because the queue was full.
+   *
+   * @return the dropped count
+   */
+  public long getDroppedCount() {
+    return droppedCount.sum();
+  }
+
+  /**
+   * Gets the number of events merged into a queued event of the same series.
+   *
+   * @return the coalesced count
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.sum();
+  }
+
+  /**
+   * Gets the number of events delivered to their listeners.
+   *
+   * @return the delivered count
+   */
+  public long getDeliveredCount() {
+    return deliveredCount.sum();
+  }
+
+  /**
+   * Gets the average time between publishing and delivery of an event.
+   *
+   * @return the average latency in microseconds
+   */
+  public long getAverageLatency() {
+    long delivered = deliveredCount.sum();
+    return delivered == 0 ? 0 : latencyNanos.sum() / delivered / 1000;
+  }
+
+  /**
+   * Gets the total time between publishing and delivery of all delivered events. The difference
+   * between two reads divided by the events delivered in between is their average latency.
+   *
+   * @return the total latency in microseconds
+   */
+  public long getLatencyTime() {
+    return latencyNanos.sum() / 1000;
+  }
+
+  /**
+   * Gets the longest time between publishing and delivery of an event.
+   *
+   * @return the max latency in microseconds
+   */
+  public long getMaxLatency() {
+    return maxLatencyNanos.get() / 1000;
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    events = new StatsCollectionEvent[queueSize];
+    targets = new List<?>[queueSize];
+    enqueued = new long[queueSize];
+    running = true;
+    thread = new Thread(this::dispatch, "psi-probe-stats-events");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void destroy() throws InterruptedException {
+    running = false;
+    lock.lock();
+    try {
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    Thread dispatcher = thread;
+    if (dispatcher != null) {
+      dispatcher.interrupt();
+      dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+      thread = null;
+    }
+  }
+
+  /**
+   * The dispatcher thread loop.
+   */
+  private void dispatch() {
+    List<StatsCollectionEvent> batchEvents = new ArrayList<>(batchSize);
+    List<List<?>> batchTargets = new ArrayList<>(batchSize);
+    long[] batchEnqueued = new long[batchSize];
+    while (running) {
+      lock.lock();
+      try {
+        while (size == 0 && running) {
+          notEmpty.await();
+        }
+        while (size > 0 && batchEvents.size() < batchSize) {
+          batchEnqueued[batchEvents.size()] = enqueued[head];
+          batchEvents.add(events[head]);
+          batchTargets.add(targets[head]);
+          removeOldest();
+        }
+        notFull.signalAll();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } finally {
+        lock.unlock();
+      }
+      deliver(batchEvents, batchTargets, batchEnqueued);
+      batchEvents.clear();
+      batchTargets.clear();
+    }
+  }
+
+  /**
+   * Hands every listener the events of the batch meant for it.
+   *
+   * @param batchEvents the events
+   * @param batchTargets the listeners of each event
+   * @param batchEnqueued the enqueue time of each event
+   */
+  private void deliver(List<StatsCollectionEvent> batchEvents, List<List<?>> batchTargets,
+      long[] batchEnqueued) {
+    IdentityHashMap<StatsCollectionListener, List<StatsCollectionEvent>> byListener =
+        new IdentityHashMap<>();
+    for (int i = 0; i < batchEvents.size(); i++) {
+      for (Object target : batchTargets.get(i)) {
+        byListener.computeIfAbsent((StatsCollectionListener) target, key -> new ArrayList<>())
+            .add(batchEvents.get(i));
+      }
+    }
+    for (Map.Entry<StatsCollectionListener, List<StatsCollectionEvent>> entry : byListener
+        .entrySet()) {
+      StatsCollectionListener listener = entry.getKey();
+      try {
+        if (listener.isEnabled()) {
+          listener.statsCollected(entry.getValue());
+        }
+      } catch (RuntimeException e) {
+        logger.error("Stats listener '{}' failed", listener.getClass().getName(), e);
+      }
+    }
+    long now = System.nanoTime();
+    for (int i = 0; i < batchEvents.size(); i++) {
+      long latency = now - batchEnqueued[i];
+      latencyNanos.add(latency);
+      maxLatencyNanos.accumulate(latency);
+    }
+    deliveredCount.add(batchEvents.size());
+  }
+
+  /**
+   * Merges an event into a queued event of the same series and listeners, unless one of the
+   * listeners tracks threshold crossings. Called with the lock held.
+   *
+   * @param listeners the listeners
+   * @param event the event
+   *
+   * @return true, if merged
+   */
+  private boolean coalesce(List<StatsCollectionListener> listeners, StatsCollectionEvent event) {
+    for (StatsCollectionListener listener : listeners) {
+      if (listener instanceof AbstractThresholdListener) {
+        return false;
+      }
+    }
+    for (int i = size - 1; i >= 0; i--) {
+      int slot = slot(i);
+      StatsCollectionEvent queued = events[slot];
+      if (targets[slot] == listeners && queued.getName().equals(event.getName())) {
+        queued.setTime(event.getTime());
+        queued.setValue(event.getValue());
+        queued.setBaseline(event.getExpected(), event.getDeviation());
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Removes the oldest event. Called with the lock held.
+   */
+  private void removeOldest() {
+    events[head] = null;
+    targets[head] = null;
+    head = head + 1 == events.length ? 0 : head + 1;
+    size--;
+  }
+
+  /**
+   * Maps a logical position to a ring slot.
+   *
+   * @param index the index
+   *
+   * @return the slot
+   */
+  private int slot(int index) {
+    int slot = head + index;
+    return slot >= events.length ? slot - events.length : slot;
+  }
+
+}
@@ -10,12 +10,17 @@
  */
 package psiprobe.beans.stats.providers;
 
-import java.util.List;
+import javax.servlet.http.HttpServletRequest;
 
 import org.jfree.data.xy.XYDataItem;
 import org.jfree.data.xy.XYSeries;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.ServletRequestUtils;
+
+import psiprobe.model.stats.StatsRollup;
+import psiprobe.model.stats.StatsSeries;
+import psiprobe.tools.TimeExpression;
 
 /**
  * The Class AbstractSeriesProvider.
@@ -26,26 +31,106 @@ public abstract class AbstractSeriesProvider implements SeriesProvider {
   protected final Logger logger = LoggerFactory.getLogger(getClass());
 
   /**
-   * To series.
+   * To series. This is where samples become chart items, the stats store itself only holds
+   * primitive arrays. Items are built from a copy, the collector appending to the series is never
+   * held up by chart rendering.
    *
    * @param legend the legend
    * @param stats the stats
    *
    * @return the XY series
    */
-  private final Object statsLock = new Object();
+  protected XYSeries toSeries(String legend, StatsSeries stats) {
+    return snapshotToSeries(legend, stats.copy());
+  }
 
-  protected XYSeries toSeries(String legend, List<XYDataItem> stats) {
+  /**
+   * To series, from a series the caller already copied.
+   *
+   * @param legend the legend
+   * @param copy the copy of the stats, not shared with the collector
+   *
+   * @return the XY series
+   */
+  protected XYSeries snapshotToSeries(String legend, StatsSeries copy) {
     XYSeries xySeries = new XYSeries(legend, true, false);
-    synchronized (statsLock) {
-      for (XYDataItem item : stats) {
-        xySeries.addOrUpdate(item.getX(), item.getY());
-      }
+    for (int i = 0; i < copy.size(); i++) {
+      xySeries.addOrUpdate(new XYDataItem(copy.getTime(i), copy.getValue(i)));
     }
-    // Rest of the code...
+    return xySeries;
+  }
 
+  /**
+   * To series, honouring the time window requested by the chart. When the request has a
+   * {@code span} parameter (a time expression such as {@code 7d}) only that window is drawn, from
+   * the coarsest rollup that still has a bucket per pixel of the {@code xz} chart width.
+   *
+   * @param legend the legend
+   * @param stats the stats
+   * @param request the request
+   *
+   * @return the XY series
+   */
+  protected XYSeries toSeries(String legend, StatsSeries stats, HttpServletRequest request) {
+    return snapshotToSeries(legend, stats.copy(), request);
+  }
 
+  /**
+   * To series, honouring the requested time window, from a series the caller already copied.
+   *
+   * @param legend the legend
+   * @param copy the copy of the stats, not shared with the collector
+   * @param request the request
+   *
+   * @return the XY series
+   *
+   * @see #toSeries(String, StatsSeries, HttpServletRequest)
+   */
+  protected XYSeries snapshotToSeries(String legend, StatsSeries copy,
+      HttpServletRequest request) {
+    long span = getSpan(request);
+    if (span <= 0) {
+      return snapshotToSeries(legend, copy);
+    }
+    int width = ServletRequestUtils.getIntParameter(request, "xz", 800);
+    long to = System.currentTimeMillis();
+    long from = to - span;
+    XYSeries xySeries = new XYSeries(legend, true, false);
+    StatsRollup rollup = copy.selectRollup(from, to, width);
+    if (rollup == null) {
+      for (int i = 0; i < copy.size(); i++) {
+        if (copy.getTime(i) >= from) {
+          xySeries.addOrUpdate(new XYDataItem(copy.getTime(i), copy.getValue(i)));
+        }
+      }
+    } else {
+      for (int i = 0; i < rollup.size(); i++) {
+        if (rollup.getStart(i) + rollup.getResolution() > from) {
+          xySeries.addOrUpdate(new XYDataItem(rollup.getStart(i), rollup.getAvg(i)));
+        }
+      }
+    }
     return xySeries;
   }
 
+  /**
+   * Gets the requested time window.
+   *
+   * @param request the request
+   *
+   * @return the span in milliseconds, {@code 0} for the whole series
+   */
+  protected long getSpan(HttpServletRequest request) {
+    String span = ServletRequestUtils.getStringParameter(request, "span", "");
+    if (span.isEmpty()) {
+      return 0;
+    }
+    try {
+      return TimeExpression.inSeconds(span) * 1000;
+    } catch (TimeExpression.NewCustomException | NumberFormatException e) {
+      logger.debug("Ignoring invalid chart span '{}'", span, e);
+      return 0;
+    }
+  }
+
 }
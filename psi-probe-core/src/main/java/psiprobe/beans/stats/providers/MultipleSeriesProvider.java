@@ -11,8 +11,8 @@
 package psiprobe.beans.stats.providers;
 
 import org.jfree.data.xy.DefaultTableXYDataset;
-import org.jfree.data.xy.XYDataItem;
 import psiprobe.model.stats.StatsCollection;
+import psiprobe.model.stats.StatsSeries;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.*;
@@ -87,11 +87,11 @@ public class MultipleSeriesProvider extends AbstractSeriesProvider {
   public void populate(DefaultTableXYDataset dataset, StatsCollection statsCollection,
       HttpServletRequest request) {
 
-    Map<String, List<XYDataItem>> statMap = statsCollection.getStatsByPrefix(statNamePrefix);
+    Map<String, StatsSeries> statMap = statsCollection.getStatsByPrefix(statNamePrefix);
     boolean useTop = getTop() > 0 && getTop() < statMap.size();
     List<Series> seriesList = new ArrayList<>(statMap.size());
 
-    for (Map.Entry<String, List<XYDataItem>> entry : statMap.entrySet()) {
+    for (Map.Entry<String, StatsSeries> entry : statMap.entrySet()) {
       Series ser = new Series(entry);
       if (useTop) {
         ser.calculateAvg();
@@ -124,9 +124,7 @@ public class MultipleSeriesProvider extends AbstractSeriesProvider {
     seriesList.sort(Comparator.comparing(s1 -> s1.key));
 
     for (Series ser : seriesList) {
-      synchronized (ser.stats) {
-        dataset.addSeries(toSeries(ser.key, ser.stats));
-      }
+      dataset.addSeries(snapshotToSeries(ser.key, ser.stats, request));
     }
   }
 
@@ -139,8 +137,8 @@ public class MultipleSeriesProvider extends AbstractSeriesProvider {
     /** The key. */
     final String key;
 
-    /** The stats. */
-    final List<XYDataItem> stats;
+    /** A copy of the stats, used both for the avg and for the chart. */
+    final StatsSeries stats;
 
     /** The avg. */
     double avg = 0;
@@ -150,9 +148,9 @@ public class MultipleSeriesProvider extends AbstractSeriesProvider {
      *
      * @param en the en
      */
-    Series(Map.Entry<String, List<XYDataItem>> en) {
+    Series(Map.Entry<String, StatsSeries> en) {
       key = en.getKey().substring(statNamePrefix.length());
-      stats = en.getValue();
+      stats = en.getValue().copy();
     }
 
     /**
@@ -163,23 +161,20 @@ public class MultipleSeriesProvider extends AbstractSeriesProvider {
       long sum = 0;
       int count = 1;
 
-      synchronized (stats) {
-        boolean useMovingAvg = getMovingAvgFrame() > 0 && getMovingAvgFrame() < stats.size();
-
-        for (ListIterator<XYDataItem> it = stats.listIterator(); it.hasNext();) {
-          XYDataItem xy = it.next();
-          sum += xy.getY().longValue();
-
-          if ((useMovingAvg && count % getMovingAvgFrame() == 0) || !it.hasNext()) {
-            double thisAvg = (double) sum / count;
-            if (thisAvg > avg) {
-              avg = thisAvg;
-            }
-            sum = 0;
-            count = 1;
-          } else {
-            count++;
+      boolean useMovingAvg = getMovingAvgFrame() > 0 && getMovingAvgFrame() < stats.size();
+
+      for (int i = 0; i < stats.size(); i++) {
+        sum += (long) stats.getValue(i);
+
+        if ((useMovingAvg && count % getMovingAvgFrame() == 0) || i == stats.size() - 1) {
+          double thisAvg = (double) sum / count;
+          if (thisAvg > avg) {
+            avg = thisAvg;
           }
+          sum = 0;
+          count = 1;
+        } else {
+          count++;
         }
       }
     }
@@ -18,10 +18,10 @@ import java.util.Objects;
 import javax.servlet.http.HttpServletRequest;
 
 import org.jfree.data.xy.DefaultTableXYDataset;
-import org.jfree.data.xy.XYDataItem;
 import org.springframework.web.bind.ServletRequestUtils;
 
 import psiprobe.model.stats.StatsCollection;
+import psiprobe.model.stats.StatsSeries;
 
 /**
  * The Class StandardSeriesProvider.
@@ -52,12 +52,12 @@ public class StandardSeriesProvider extends AbstractSeriesProvider {
     for (int i = 0; i < statNames.size(); i++) {
       String statName = statNames.get(i);
         statName = MessageFormat.format(statName, seriesParam);
-        List<XYDataItem> stats = statsCollection.getStats(statName);
+        StatsSeries stats = statsCollection.getStats(statName);
       if (stats != null) {
 
         String series =
             ServletRequestUtils.getStringParameter(request, "s" + (i + 1) + "l", "series" + i);
-        dataset.addSeries(toSeries(series, stats));
+        dataset.addSeries(toSeries(series, stats, request));
       }
     }
   }
@@ -0,0 +1,58 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.controllers;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.AbstractController;
+import psiprobe.beans.stats.exporters.OpenMetricsExporter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Exposes the latest value of every stats series in the OpenMetrics text format, for scraping by
+ * Prometheus and compatible agents.
+ */
+@Controller
+public class OpenMetricsController extends AbstractController {
+
+  /** The exporter. */
+  private final OpenMetricsExporter exporter;
+
+  /**
+   * Instantiates a new open metrics controller.
+   *
+   * @param exporter the exporter
+   */
+  public OpenMetricsController(OpenMetricsExporter exporter) {
+    this.exporter = exporter;
+  }
+
+  @GetMapping(path = "/metrics")
+  @Override
+  public ModelAndView handleRequest(HttpServletRequest request, HttpServletResponse response)
+      throws Exception {
+    return super.handleRequest(request, response);
+  }
+
+  @Override
+  protected ModelAndView handleRequestInternal(HttpServletRequest request,
+      HttpServletResponse response) throws Exception {
+    response.setContentType(OpenMetricsExporter.CONTENT_TYPE);
+    response.setHeader("Cache-Control", "no-cache");
+    exporter.write(response.getWriter());
+    response.getWriter().flush();
+    return null;
+  }
+
+}
@@ -50,6 +50,7 @@ import java.util.Objects;
  * <li>yx - image height</li>
  * <li>l - show legend (boolean: true|false)</li>
  * <li>p - name of series provider bean</li>
+ * <li>span - time window to plot, e.g. 7d; drawn from stats rollups where needed</li>
  * </ul>
  */
 @Controller
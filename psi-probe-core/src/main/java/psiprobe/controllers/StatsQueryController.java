@@ -0,0 +1,181 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.controllers;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.ServletRequestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.AbstractController;
+import psiprobe.model.stats.StatsCollection;
+import psiprobe.model.stats.StatsQuery;
+import psiprobe.tools.TimeExpression;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Answers range queries over the "statsCollection" bean as JSON, see {@link StatsQuery}. It
+ * understands these request parameters:
+ * <ul>
+ * <li>name - series name, or</li>
+ * <li>prefix - series name prefix, all matching series are returned</li>
+ * <li>from, to - range in milliseconds since the epoch, {@code to} defaults to now</li>
+ * <li>span - range ending at {@code to} when {@code from} is not given, e.g. 15m; default 1h</li>
+ * <li>step - step width, e.g. 1m; default a single step covering the range</li>
+ * <li>agg - min, max, avg, sum, rate or a percentile such as p99; default avg</li>
+ * </ul>
+ */
+@Controller
+public class StatsQueryController extends AbstractController {
+
+  /** The stats' collection. */
+  private final StatsCollection statsCollection;
+
+  /**
+   * Instantiates a new stats query controller.
+   *
+   * @param statsCollection the stats collection
+   */
+  public StatsQueryController(StatsCollection statsCollection) {
+    this.statsCollection = statsCollection;
+  }
+
+  @GetMapping(path = "/stats/query.json")
+  @Override
+  public ModelAndView handleRequest(HttpServletRequest request, HttpServletResponse response)
+      throws Exception {
+    return super.handleRequest(request, response);
+  }
+
+  @Override
+  protected ModelAndView handleRequestInternal(HttpServletRequest request,
+      HttpServletResponse response) throws Exception {
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+
+    StatsQuery query;
+    Map<String, StatsQuery.Result> results;
+    try {
+      query = buildQuery(request);
+      results = query.execute(statsCollection);
+    } catch (IllegalArgumentException | TimeExpression.NewCustomException e) {
+      response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+      response.getWriter().write("{\"error\":\"" + StringEscapeUtils.escapeJson(e.getMessage())
+          + "\"}");
+      return null;
+    }
+    writeResults(response.getWriter(), query, results);
+    return null;
+  }
+
+  /**
+   * Builds the query from the request parameters.
+   *
+   * @param request the request
+   *
+   * @return the query
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  static StatsQuery buildQuery(HttpServletRequest request)
+      throws TimeExpression.NewCustomException {
+    StatsQuery query = new StatsQuery();
+    String name = ServletRequestUtils.getStringParameter(request, "name", "");
+    String prefix = ServletRequestUtils.getStringParameter(request, "prefix", "");
+    if (name.isEmpty() == prefix.isEmpty()) {
+      throw new IllegalArgumentException("Exactly one of 'name' and 'prefix' is required");
+    }
+    query.setName(name.isEmpty() ? prefix : name);
+    query.setPrefix(name.isEmpty());
+
+    long to = ServletRequestUtils.getLongParameter(request, "to", System.currentTimeMillis());
+    long from = ServletRequestUtils.getLongParameter(request, "from", -1);
+    if (from < 0) {
+      String span = ServletRequestUtils.getStringParameter(request, "span", "1h");
+      from = to - TimeExpression.inSeconds(span) * 1000;
+    }
+    query.setFrom(from);
+    query.setTo(to);
+    query.setStep(
+        TimeExpression.inSeconds(ServletRequestUtils.getStringParameter(request, "step", ""))
+            * 1000);
+    query.setAggregation(ServletRequestUtils.getStringParameter(request, "agg", "avg"));
+    return query;
+  }
+
+  /**
+   * Writes the results, one point at a time, so that a large result is never held as text.
+   *
+   * @param out the writer
+   * @param query the query
+   * @param results the results
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void writeResults(PrintWriter out, StatsQuery query,
+      Map<String, StatsQuery.Result> results) throws IOException {
+    out.write("{\"from\":");
+    out.print(query.getFrom());
+    out.write(",\"to\":");
+    out.print(query.getTo());
+    out.write(",\"step\":");
+    out.print(query.getStep());
+    out.write(",\"aggregation\":\"");
+    out.write(query.getAggregation().name().toLowerCase(Locale.ROOT));
+    out.write('"');
+    if (query.getAggregation() == StatsQuery.Aggregation.PERCENTILE) {
+      out.write(",\"percentile\":");
+      out.print(query.getPercentile());
+    }
+    out.write(",\"series\":[");
+    boolean first = true;
+    for (Map.Entry<String, StatsQuery.Result> entry : results.entrySet()) {
+      StatsQuery.Result result = entry.getValue();
+      if (!first) {
+        out.write(',');
+      }
+      first = false;
+      out.write("{\"name\":\"");
+      out.write(StringEscapeUtils.escapeJson(entry.getKey()));
+      out.write("\",\"resolution\":");
+      out.print(result.getResolution());
+      out.write(",\"samples\":");
+      out.print(result.getSampleCount());
+      out.write(",\"points\":[");
+      for (int i = 0; i < result.size(); i++) {
+        if (i > 0) {
+          out.write(',');
+        }
+        out.write('[');
+        out.print(result.getTime(i));
+        out.write(',');
+        double value = result.getValue(i);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+          out.write("null");
+        } else {
+          out.print(value);
+        }
+        out.write(']');
+      }
+      out.write("]}");
+    }
+    out.write("]}");
+    out.flush();
+  }
+
+}
@@ -12,11 +12,14 @@ package psiprobe.controllers.connectors;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.ServletRequestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.ParameterizableViewController;
+import psiprobe.model.stats.StatsCollection;
 import psiprobe.tools.TimeExpression;
 
+import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -29,6 +32,19 @@ public class ZoomChartController extends ParameterizableViewController {
   /** The collection period. */
   private long collectionPeriod;
 
+  /** The stats collection, used to tell which rollup a time window is drawn from. */
+  private StatsCollection statsCollection;
+
+  /**
+   * Stats collection.
+   *
+   * @param statsCollection the stats collection
+   */
+  @Inject
+  public void statsCollection(StatsCollection statsCollection) {
+    this.statsCollection = statsCollection;
+  }
+
   /**
    * Gets the collection period.
    *
@@ -73,8 +89,22 @@ public class ZoomChartController extends ParameterizableViewController {
 
     // Check if the modelAndView is not null
     if (modelAndView != null) {
-      // Add the "collectionPeriod" attribute to the modelAndView object
-      modelAndView.addObject("collectionPeriod", getCollectionPeriod());
+      // A long window is drawn from a rollup, no point refreshing before its next bucket
+      long refreshPeriod = getCollectionPeriod();
+      String span = ServletRequestUtils.getStringParameter(request, "span", "");
+      try {
+        long spanSeconds = TimeExpression.inSeconds(span);
+        if (spanSeconds > 0 && statsCollection != null) {
+          int width = ServletRequestUtils.getIntParameter(request, "xz", 800);
+          refreshPeriod = Math.max(refreshPeriod,
+              statsCollection.getChartResolution(spanSeconds * 1000, width) / 1000);
+        }
+      } catch (TimeExpression.NewCustomException | NumberFormatException e) {
+        logger.debug("Ignoring invalid chart span '" + span + "'", e);
+        span = "";
+      }
+      modelAndView.addObject("span", span);
+      modelAndView.addObject("collectionPeriod", refreshPeriod);
 
       // Return the updated modelAndView object
       return modelAndView;
@@ -0,0 +1,76 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.controllers.system;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.ParameterizableViewController;
+import psiprobe.beans.stats.collectors.ProbeOverheadCollectorBean;
+import psiprobe.scheduler.StatsCollectionScheduler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Objects;
+
+/**
+ * Shows what the probe's own background work costs: the CPU share of the stats threads, the
+ * wall clock, CPU, allocation, MBean calls and lock waits of every stats job, and the latency of
+ * stats listeners.
+ */
+@Controller
+public class ProbeOverheadController extends ParameterizableViewController {
+
+  /** The scheduler. */
+  private final StatsCollectionScheduler scheduler;
+
+  /** The overhead collector. */
+  private final ProbeOverheadCollectorBean overheadCollector;
+
+  /**
+   * Instantiates a new probe overhead controller.
+   *
+   * @param scheduler the scheduler
+   * @param overheadCollector the overhead collector
+   */
+  public ProbeOverheadController(StatsCollectionScheduler scheduler,
+      ProbeOverheadCollectorBean overheadCollector) {
+    this.scheduler = scheduler;
+    this.overheadCollector = overheadCollector;
+  }
+
+  @GetMapping(path = "/overhead.htm")
+  @Override
+  public ModelAndView handleRequest(HttpServletRequest request, HttpServletResponse response)
+      throws Exception {
+    return super.handleRequest(request, response);
+  }
+
+  @Override
+  protected ModelAndView handleRequestInternal(HttpServletRequest request,
+      HttpServletResponse response) throws Exception {
+    ModelAndView mv = new ModelAndView(Objects.requireNonNull(getViewName()));
+    mv.addObject("jobs", scheduler.getJobs());
+    mv.addObject("cpuUsage", overheadCollector.getCpuUsage());
+    mv.addObject("cpuMeasurable", overheadCollector.isCpuMeasurable());
+    mv.addObject("listenerLatency", overheadCollector.getListenerLatency());
+    mv.addObject("droppedEvents", overheadCollector.getDroppedEvents());
+    return mv;
+  }
+
+  @Value("overhead")
+  @Override
+  public void setViewName(String viewName) {
+    super.setViewName(viewName);
+  }
+
+}
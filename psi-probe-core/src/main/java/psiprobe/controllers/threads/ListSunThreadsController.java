@@ -17,15 +17,14 @@ import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.ParameterizableViewController;
 import psiprobe.model.SunThread;
 import psiprobe.model.ThreadStackElement;
-import psiprobe.tools.JmxTools;
+import psiprobe.tools.PlatformMXBeans;
 
-import javax.management.MBeanServer;
-import javax.management.ObjectName;
-import javax.management.openmbean.CompositeData;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -49,42 +48,44 @@ public class ListSunThreadsController extends ParameterizableViewController {
     List<SunThread> threads = null;
     int executionStackDepth = 1;
 
-    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
-    ObjectName threadingOName = new ObjectName("java.lang:type=Threading");
+    ThreadMXBean threadBean = PlatformMXBeans.getThreadMXBean();
+    if (threadBean == null) {
+      // the JVM provides no threading MXBean, see Utils.isThreadingEnabled
+      return new ModelAndView(Objects.requireNonNull(getViewName()), "threads",
+          Collections.emptyList());
+    }
 
-    long[] deadlockedIds =
-        (long[]) mbeanServer.invoke(threadingOName, "findMonitorDeadlockedThreads", null, null);
-    long[] allIds = (long[]) mbeanServer.getAttribute(threadingOName, "AllThreadIds");
+    long[] deadlockedIds = threadBean.findMonitorDeadlockedThreads();
+    long[] allIds = threadBean.getAllThreadIds();
 
     if (allIds != null) {
       threads = new ArrayList<>(allIds.length);
 
-      for (long id : allIds) {
-        CompositeData cd = (CompositeData) mbeanServer.invoke(threadingOName, "getThreadInfo",
-            new Object[] {id, executionStackDepth}, new String[] {"long", "int"});
+      // one call for all threads, rather than one getThreadInfo invocation per thread
+      for (ThreadInfo info : threadBean.getThreadInfo(allIds, executionStackDepth)) {
 
-        if (cd != null) {
+        if (info != null) {
           SunThread st = new SunThread();
-          st.setId(JmxTools.getLongAttr(cd, "threadId"));
-          st.setName(JmxTools.getStringAttr(cd, "threadName"));
-          st.setState(JmxTools.getStringAttr(cd, "threadState"));
-          st.setSuspended(JmxTools.getBooleanAttr(cd, "suspended"));
-          st.setInNative(JmxTools.getBooleanAttr(cd, "inNative"));
-          st.setLockName(JmxTools.getStringAttr(cd, "lockName"));
-          st.setLockOwnerName(JmxTools.getStringAttr(cd, "lockOwnerName"));
-          st.setWaitedCount(JmxTools.getLongAttr(cd, "waitedCount"));
-          st.setBlockedCount(JmxTools.getLongAttr(cd, "blockedCount"));
+          st.setId(info.getThreadId());
+          st.setName(info.getThreadName());
+          st.setState(info.getThreadState().name());
+          st.setSuspended(info.isSuspended());
+          st.setInNative(info.isInNative());
+          st.setLockName(info.getLockName());
+          st.setLockOwnerName(info.getLockOwnerName());
+          st.setWaitedCount(info.getWaitedCount());
+          st.setBlockedCount(info.getBlockedCount());
           st.setDeadlocked(contains(deadlockedIds, st.getId()));
 
-          CompositeData[] stack = (CompositeData[]) cd.get("stackTrace");
+          StackTraceElement[] stack = info.getStackTrace();
           if (stack.length > 0) {
-            CompositeData cd2 = stack[0];
+            StackTraceElement element = stack[0];
             ThreadStackElement tse = new ThreadStackElement();
-            tse.setClassName(JmxTools.getStringAttr(cd2, "className"));
-            tse.setFileName(JmxTools.getStringAttr(cd2, "fileName"));
-            tse.setMethodName(JmxTools.getStringAttr(cd2, "methodName"));
-            tse.setLineNumber(JmxTools.getIntAttr(cd2, "lineNumber", -1));
-            tse.setNativeMethod(JmxTools.getBooleanAttr(cd2, "nativeMethod"));
+            tse.setClassName(element.getClassName());
+            tse.setFileName(element.getFileName());
+            tse.setMethodName(element.getMethodName());
+            tse.setLineNumber(element.getLineNumber());
+            tse.setNativeMethod(element.isNativeMethod());
             st.setExecutionPoint(tse);
           }
 
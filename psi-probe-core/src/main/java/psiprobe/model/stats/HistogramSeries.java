@@ -0,0 +1,307 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+/**
+ * History of {@link LatencyHistogram}s, kept at the same rollup tiers as {@link StatsSeries}.
+ *
+ * <p>
+ * Collectors fill one histogram per collection interval and {@link #add(long, LatencyHistogram)
+ * add} it, which merges it into the bucket its time falls into in every tier. Each tier keeps its
+ * buckets in a single flat {@code int} array that grows on demand up to the tier capacity, the
+ * array of the oldest bucket is cleared and reused once the tier is full. Intervals without
+ * values cost nothing.
+ * </p>
+ *
+ * <p>
+ * The percentiles of the last interval are also written as regular series by the collector, the
+ * histogram series serves percentiles over arbitrary windows, see
+ * {@link #merge(long, long, LatencyHistogram)}.
+ * </p>
+ */
+public class HistogramSeries {
+
+  /** The Constant INITIAL_LENGTH. */
+  private static final int INITIAL_LENGTH = 8;
+
+  /** The tiers, finest first. */
+  private final Tier[] tiers;
+
+  /**
+   * Instantiates a new histogram series.
+   *
+   * @param resolutions the bucket widths of the tiers in milliseconds, finest first
+   * @param capacities the max number of buckets of the tiers
+   */
+  public HistogramSeries(long[] resolutions, int[] capacities) {
+    tiers = new Tier[resolutions.length];
+    for (int i = 0; i < tiers.length; i++) {
+      tiers[i] = new Tier(resolutions[i], capacities[i]);
+    }
+  }
+
+  /**
+   * Merges the histogram of an interval into every tier.
+   *
+   * @param time the time
+   * @param interval the histogram of the interval
+   */
+  public synchronized void add(long time, LatencyHistogram interval) {
+    if (interval.getTotalCount() == 0) {
+      return;
+    }
+    for (Tier tier : tiers) {
+      tier.add(time, interval);
+    }
+  }
+
+  /**
+   * Merges the buckets overlapping a time window into the target histogram. The finest tier that
+   * covers the window is used, or the one reaching back furthest if none does.
+   *
+   * @param from the window start
+   * @param to the window end
+   * @param target the target histogram
+   *
+   * @return the resolution of the tier used, {@code 0} if there is no data
+   */
+  public synchronized long merge(long from, long to, LatencyHistogram target) {
+    Tier selected = null;
+    for (Tier tier : tiers) {
+      if (tier.size > 0 && (selected == null || tier.oldestStart() < selected.oldestStart())) {
+        selected = tier;
+      }
+      if (tier.covers(from)) {
+        selected = tier;
+        break;
+      }
+    }
+    if (selected == null) {
+      return 0;
+    }
+    selected.merge(from, to, target);
+    return selected.resolution;
+  }
+
+  /**
+   * Gets the number of tiers.
+   *
+   * @return the tier count
+   */
+  public int getTierCount() {
+    return tiers.length;
+  }
+
+  /**
+   * Gets the bucket width of a tier.
+   *
+   * @param tier the tier
+   *
+   * @return the resolution in milliseconds
+   */
+  public long getResolution(int tier) {
+    return tiers[tier].resolution;
+  }
+
+  /**
+   * Gets the number of buckets of a tier.
+   *
+   * @param tier the tier
+   *
+   * @return the size
+   */
+  public synchronized int size(int tier) {
+    return tiers[tier].size;
+  }
+
+  /**
+   * Removes all buckets.
+   */
+  public synchronized void clear() {
+    for (Tier tier : tiers) {
+      tier.head = 0;
+      tier.size = 0;
+      tier.truncated = false;
+    }
+  }
+
+  /**
+   * A ring of histogram buckets of a fixed width.
+   */
+  private static final class Tier {
+
+    /** The bucket width in milliseconds. */
+    final long resolution;
+
+    /** The max number of buckets. */
+    final int capacity;
+
+    /** The bucket start times. */
+    long[] starts;
+
+    /** The total counts. */
+    long[] totals;
+
+    /** The max values. */
+    long[] maxs;
+
+    /** The counts, {@link LatencyHistogram#BUCKET_COUNT} entries per bucket. */
+    int[] counts;
+
+    /** The index of the oldest bucket. */
+    int head;
+
+    /** The number of buckets. */
+    int size;
+
+    /** Whether buckets were dropped to respect the capacity. */
+    boolean truncated;
+
+    /**
+     * Instantiates a new tier.
+     *
+     * @param resolution the resolution
+     * @param capacity the capacity
+     */
+    Tier(long resolution, int capacity) {
+      this.resolution = resolution;
+      this.capacity = Math.max(capacity, 1);
+      allocate(Math.min(this.capacity, INITIAL_LENGTH));
+    }
+
+    /**
+     * Merges an interval into the bucket its time falls into. Intervals older than the newest
+     * bucket are ignored.
+     *
+     * @param time the time
+     * @param interval the interval
+     */
+    void add(long time, LatencyHistogram interval) {
+      long start = time - Math.floorMod(time, resolution);
+      int slot;
+      if (size > 0 && starts[slot(size - 1)] >= start) {
+        slot = slot(size - 1);
+        if (starts[slot] != start) {
+          return;
+        }
+      } else {
+        slot = append(start);
+      }
+      interval.addTo(counts, slot * LatencyHistogram.BUCKET_COUNT);
+      totals[slot] += interval.getTotalCount();
+      maxs[slot] = Math.max(maxs[slot], interval.getMax());
+    }
+
+    /**
+     * Appends an empty bucket, reusing the oldest one if the tier is full.
+     *
+     * @param start the bucket start
+     *
+     * @return the slot
+     */
+    private int append(long start) {
+      if (size == starts.length && size < capacity) {
+        allocate(Math.min(capacity, starts.length * 2));
+      }
+      int tail;
+      if (size == capacity) {
+        tail = head;
+        head = head + 1 == starts.length ? 0 : head + 1;
+        truncated = true;
+      } else {
+        tail = slot(size);
+        size++;
+      }
+      int offset = tail * LatencyHistogram.BUCKET_COUNT;
+      for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+        counts[offset + i] = 0;
+      }
+      starts[tail] = start;
+      totals[tail] = 0;
+      maxs[tail] = 0;
+      return tail;
+    }
+
+    /**
+     * Merges the buckets overlapping a window into the target.
+     *
+     * @param from the window start
+     * @param to the window end
+     * @param target the target
+     */
+    void merge(long from, long to, LatencyHistogram target) {
+      for (int i = 0; i < size; i++) {
+        int slot = slot(i);
+        if (starts[slot] + resolution > from && starts[slot] <= to) {
+          target.add(counts, slot * LatencyHistogram.BUCKET_COUNT, totals[slot], maxs[slot]);
+        }
+      }
+    }
+
+    /**
+     * Checks whether the tier holds data from at least the given time on.
+     *
+     * @param from the time
+     *
+     * @return true, if successful
+     */
+    boolean covers(long from) {
+      return size > 0 && (!truncated || starts[head] <= from);
+    }
+
+    /**
+     * Gets the start of the oldest bucket.
+     *
+     * @return the start
+     */
+    long oldestStart() {
+      return starts[head];
+    }
+
+    /**
+     * Reallocates the arrays, moving the oldest bucket to position zero.
+     *
+     * @param length the new length
+     */
+    private void allocate(int length) {
+      long[] newStarts = new long[length];
+      long[] newTotals = new long[length];
+      long[] newMaxs = new long[length];
+      int[] newCounts = new int[length * LatencyHistogram.BUCKET_COUNT];
+      for (int i = 0; i < size; i++) {
+        int src = slot(i);
+        newStarts[i] = starts[src];
+        newTotals[i] = totals[src];
+        newMaxs[i] = maxs[src];
+        System.arraycopy(counts, src * LatencyHistogram.BUCKET_COUNT, newCounts,
+            i * LatencyHistogram.BUCKET_COUNT, LatencyHistogram.BUCKET_COUNT);
+      }
+      starts = newStarts;
+      totals = newTotals;
+      maxs = newMaxs;
+      counts = newCounts;
+      head = 0;
+    }
+
+    /**
+     * Maps a logical position to an array slot.
+     *
+     * @param index the index
+     *
+     * @return the slot
+     */
+    private int slot(int index) {
+      int slot = head + index;
+      return slot >= starts.length ? slot - starts.length : slot;
+    }
+  }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of latencies in milliseconds, in the manner of HdrHistogram.
+ *
+ * <p>
+ * Values below {@value #SUB_BUCKET_COUNT} get a bucket each. Above that every power of two is
+ * split into {@value #SUB_BUCKET_COUNT} equally wide buckets, so the relative error of a
+ * reported percentile stays below 1/{@value #SUB_BUCKET_COUNT} whatever the magnitude. Values
+ * above {@link #MAX_VALUE} are counted in the last bucket. The bucket array has a fixed length,
+ * histograms are merged by adding their arrays and are meant to be {@link #reset()} and reused.
+ * </p>
+ */
+public class LatencyHistogram {
+
+  /** The number of bits resolving each power of two. */
+  static final int SUB_BUCKET_BITS = 3;
+
+  /** The Constant SUB_BUCKET_COUNT. */
+  public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  /** The largest value told apart, about 12 days. */
+  public static final long MAX_VALUE = (1L << 30) - 1;
+
+  /** The Constant BUCKET_COUNT. */
+  public static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+  /** The counts. */
+  private final long[] counts = new long[BUCKET_COUNT];
+
+  /** The total count. */
+  private long totalCount;
+
+  /** The max recorded value. */
+  private long max;
+
+  /**
+   * Records a value.
+   *
+   * @param value the value
+   */
+  public void record(long value) {
+    record(value, 1);
+  }
+
+  /**
+   * Records a value a number of times.
+   *
+   * @param value the value
+   * @param count the count
+   */
+  public void record(long value, long count) {
+    if (count <= 0) {
+      return;
+    }
+    long clamped = Math.max(value, 0);
+    counts[bucketIndex(clamped)] += count;
+    totalCount += count;
+    max = Math.max(max, clamped);
+  }
+
+  /**
+   * Adds the counts of another histogram.
+   *
+   * @param other the other histogram
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Adds counts stored in a flat array, as kept by {@link HistogramSeries}.
+   *
+   * @param source the source array
+   * @param offset the offset of the first bucket
+   * @param sourceTotal the total count of the source
+   * @param sourceMax the max of the source
+   */
+  void add(int[] source, int offset, long sourceTotal, long sourceMax) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] += source[offset + i];
+    }
+    totalCount += sourceTotal;
+    max = Math.max(max, sourceMax);
+  }
+
+  /**
+   * Moves counts updated concurrently, as kept by {@link RequestLatencyRecorder}, into this
+   * histogram and zeroes them. A value recorded while draining is counted now or at the next
+   * drain, never twice.
+   *
+   * @param source the counts, indexed like this histogram
+   * @param sourceMax the max of the source
+   */
+  void drain(AtomicLongArray source, AtomicLong sourceMax) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      if (source.get(i) != 0) {
+        long count = source.getAndSet(i, 0);
+        counts[i] += count;
+        totalCount += count;
+      }
+    }
+    max = Math.max(max, sourceMax.getAndSet(0));
+  }
+
+  /**
+   * Adds the counts to a flat array, saturating at {@link Integer#MAX_VALUE}.
+   *
+   * @param target the target array
+   * @param offset the offset of the first bucket
+   */
+  void addTo(int[] target, int offset) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      if (counts[i] != 0) {
+        target[offset + i] = (int) Math.min((long) target[offset + i] + counts[i],
+            Integer.MAX_VALUE);
+      }
+    }
+  }
+
+  /**
+   * Removes all values.
+   */
+  public void reset() {
+    Arrays.fill(counts, 0);
+    totalCount = 0;
+    max = 0;
+  }
+
+  /**
+   * Gets the count of a bucket.
+   *
+   * @param index the bucket index
+   *
+   * @return the count
+   */
+  public long getCount(int index) {
+    return counts[index];
+  }
+
+  /**
+   * Gets the total count.
+   *
+   * @return the total count
+   */
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * Gets the max recorded value.
+   *
+   * @return the max
+   */
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * Gets the value at or below which the given percentage of the recorded values fall. The value
+   * reported is the highest value equivalent to the bucket, capped at the max recorded value.
+   *
+   * @param percentile the percentile, between 0 and 100
+   *
+   * @return the value, {@code 0} if the histogram is empty
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    double fraction = Math.min(Math.max(percentile, 0), 100) / 100;
+    long rank = Math.max(1, (long) Math.ceil(fraction * totalCount));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestEquivalentValue(i), max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Gets the bucket of a value.
+   *
+   * @param value the value, not negative
+   *
+   * @return the bucket index
+   */
+  public static int bucketIndex(long value) {
+    long clamped = Math.min(value, MAX_VALUE);
+    if (clamped < SUB_BUCKET_COUNT) {
+      return (int) clamped;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(clamped) - SUB_BUCKET_BITS;
+    return (shift << SUB_BUCKET_BITS) + (int) (clamped >>> shift);
+  }
+
+  /**
+   * Gets the lowest value counted in a bucket.
+   *
+   * @param index the bucket index
+   *
+   * @return the value
+   */
+  public static long lowestEquivalentValue(int index) {
+    int shift = Math.max((index >> SUB_BUCKET_BITS) - 1, 0);
+    return (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+  }
+
+  /**
+   * Gets the highest value counted in a bucket.
+   *
+   * @param index the bucket index
+   *
+   * @return the value
+   */
+  public static long highestEquivalentValue(int index) {
+    int shift = Math.max((index >> SUB_BUCKET_BITS) - 1, 0);
+    return lowestEquivalentValue(index) + (1L << shift) - 1;
+  }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The elapsed time of every request, by host and context, as recorded by the agent valve of the
+ * probe.
+ *
+ * <p>
+ * Request threads record into lock-free per-context buckets shaped like a
+ * {@link LatencyHistogram}, the app stats collector drains them once per interval. Tomcat itself
+ * only keeps cumulative processing times per servlet, so without the valve the collector has to
+ * estimate the latencies from their means.
+ * </p>
+ *
+ * <p>
+ * The valve is installed per host, and two hosts may serve contexts with the same path, so the
+ * buckets are kept by host name first. The collector drops the buckets of the contexts it no longer
+ * finds with {@link #retain(Map)}.
+ * </p>
+ */
+public final class RequestLatencyRecorder {
+
+  /** The shared instance, used by the valve and the collector of the probe web application. */
+  private static final RequestLatencyRecorder INSTANCE = new RequestLatencyRecorder();
+
+  /** The name used for contexts without a host. */
+  private static final String NO_HOST = "";
+
+  /** The latencies by host name and context name. */
+  private final ConcurrentMap<String, ConcurrentMap<String, Buckets>> hosts =
+      new ConcurrentHashMap<>();
+
+  /** The number of started valves recording into this recorder. */
+  private final AtomicInteger valves = new AtomicInteger();
+
+  /**
+   * Gets the shared recorder.
+   *
+   * @return the recorder
+   */
+  public static RequestLatencyRecorder getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Notes that a valve started recording requests.
+   */
+  public void valveStarted() {
+    valves.incrementAndGet();
+  }
+
+  /**
+   * Notes that a valve stopped recording requests.
+   */
+  public void valveStopped() {
+    if (valves.decrementAndGet() <= 0) {
+      valves.set(0);
+      hosts.clear();
+    }
+  }
+
+  /**
+   * Checks whether a valve is recording requests.
+   *
+   * @return true, if the recorded latencies are complete
+   */
+  public boolean isRecording() {
+    return valves.get() > 0;
+  }
+
+  /**
+   * Records the elapsed time of a request.
+   *
+   * @param hostName the name of the host of the context, null if it has none
+   * @param contextName the name of the context that served the request, null if none did
+   * @param elapsed the elapsed time, in milliseconds
+   */
+  public void record(String hostName, String contextName, long elapsed) {
+    if (contextName == null) {
+      return;
+    }
+    String host = hostName == null ? NO_HOST : hostName;
+    ConcurrentMap<String, Buckets> contexts = hosts.get(host);
+    if (contexts == null) {
+      contexts = hosts.computeIfAbsent(host, key -> new ConcurrentHashMap<>());
+    }
+    Buckets buckets = contexts.get(contextName);
+    if (buckets == null) {
+      buckets = contexts.computeIfAbsent(contextName, key -> new Buckets());
+    }
+    buckets.record(Math.max(elapsed, 0));
+  }
+
+  /**
+   * Moves the latencies recorded for a context since the last call into a histogram.
+   *
+   * @param hostName the name of the host of the context, null if it has none
+   * @param contextName the context name
+   * @param target the histogram
+   */
+  public void drain(String hostName, String contextName, LatencyHistogram target) {
+    ConcurrentMap<String, Buckets> contexts = hosts.get(hostName == null ? NO_HOST : hostName);
+    Buckets buckets = contexts == null ? null : contexts.get(contextName);
+    if (buckets != null) {
+      target.drain(buckets.counts, buckets.max);
+    }
+  }
+
+  /**
+   * Drops the latencies of every context not listed, such as undeployed ones.
+   *
+   * @param contextNames the names of the deployed contexts by host name, null standing for the
+   *        contexts without a host
+   */
+  public void retain(Map<String, ? extends Collection<String>> contextNames) {
+    for (Iterator<Map.Entry<String, ConcurrentMap<String, Buckets>>> it =
+        hosts.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<String, ConcurrentMap<String, Buckets>> host = it.next();
+      Collection<String> names =
+          contextNames.get(NO_HOST.equals(host.getKey()) ? null : host.getKey());
+      if (names == null) {
+        it.remove();
+      } else {
+        host.getValue().keySet().retainAll(names);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of contexts with recorded latencies.
+   *
+   * @return the context count
+   */
+  int size() {
+    int size = 0;
+    for (ConcurrentMap<String, Buckets> contexts : hosts.values()) {
+      size += contexts.size();
+    }
+    return size;
+  }
+
+  /**
+   * The buckets of a single context.
+   */
+  private static final class Buckets {
+
+    /** The counts, indexed like {@link LatencyHistogram}. */
+    final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKET_COUNT);
+
+    /** The max recorded value. */
+    final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param value the value, not negative
+     */
+    void record(long value) {
+      counts.incrementAndGet(LatencyHistogram.bucketIndex(value));
+      long current = max.get();
+      while (value > current && !max.compareAndSet(current, value)) {
+        current = max.get();
+      }
+    }
+  }
+
+}
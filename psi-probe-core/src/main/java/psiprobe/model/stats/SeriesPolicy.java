@@ -0,0 +1,277 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import com.google.common.base.Splitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import psiprobe.tools.TimeExpression;
+
+/**
+ * Retention, sample interval and rollup tiers for the series whose names match a pattern, e.g.
+ * fine-grained data for {@code app.*./shop} and coarse data for the remaining {@code app.*}.
+ *
+ * <p>
+ * Policies are read from properties:
+ * </p>
+ *
+ * <pre>
+ * psiprobe.beans.stats.policies=shop,apps
+ * psiprobe.beans.stats.policy.shop.pattern=app.*./shop
+ * psiprobe.beans.stats.policy.shop.interval=30s
+ * psiprobe.beans.stats.policy.shop.retention=12h
+ * psiprobe.beans.stats.policy.shop.rollups=1m:1440,1h:720
+ * psiprobe.beans.stats.policy.apps.pattern=app.*
+ * psiprobe.beans.stats.policy.apps.interval=10m
+ * psiprobe.beans.stats.policy.apps.retention=1d
+ * psiprobe.beans.stats.policy.apps.rollups=1h:168
+ * </pre>
+ *
+ * <p>
+ * The first policy in list order whose pattern matches a series name applies; {@code *} matches
+ * any characters. Every setting is optional. Samples arriving less than {@code interval} after the
+ * last kept one are skipped, counters are then accumulated into the next kept sample. The raw
+ * samples kept are {@code retention / interval}. {@code rollups} replaces the global rollup tiers,
+ * an empty value disables rollups.
+ * </p>
+ */
+public final class SeriesPolicy {
+
+  /** The Constant LIST_PROPERTY. */
+  public static final String LIST_PROPERTY = "psiprobe.beans.stats.policies";
+
+  /** The Constant PROPERTY_PREFIX. */
+  public static final String PROPERTY_PREFIX = "psiprobe.beans.stats.policy.";
+
+  /** The policy of series no configured policy matches. */
+  public static final SeriesPolicy DEFAULT = new SeriesPolicy("default", null, 0, 0, null, null);
+
+  /** Splits comma separated lists, skipping blank entries. */
+  private static final Splitter LIST_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  /** The policy name. */
+  private final String name;
+
+  /** The pattern, null for the default policy. */
+  private final Pattern pattern;
+
+  /** The min time between kept samples in milliseconds, 0 to keep every sample. */
+  private final long interval;
+
+  /** The number of raw samples kept, 0 for the collector default. */
+  private final int capacity;
+
+  /** The rollup resolutions, null for the global tiers. */
+  private final long[] rollupResolutions;
+
+  /** The rollup capacities, null for the global tiers. */
+  private final int[] rollupCapacities;
+
+  /**
+   * Instantiates a new series policy.
+   *
+   * @param name the name
+   * @param pattern the pattern
+   * @param interval the interval
+   * @param capacity the capacity
+   * @param rollupResolutions the rollup resolutions
+   * @param rollupCapacities the rollup capacities
+   */
+  SeriesPolicy(String name, Pattern pattern, long interval, int capacity,
+      long[] rollupResolutions, int[] rollupCapacities) {
+    this.name = name;
+    this.pattern = pattern;
+    this.interval = interval;
+    this.capacity = capacity;
+    this.rollupResolutions = rollupResolutions;
+    this.rollupCapacities = rollupCapacities;
+  }
+
+  /**
+   * Reads the policies listed in the given properties, in list order.
+   *
+   * @param properties the properties
+   *
+   * @return the policies
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  public static List<SeriesPolicy> parse(Properties properties)
+      throws TimeExpression.NewCustomException {
+    List<SeriesPolicy> policies = new ArrayList<>();
+    for (String id : LIST_SPLITTER.split(properties.getProperty(LIST_PROPERTY, ""))) {
+      policies.add(parse(id, properties));
+    }
+    return policies;
+  }
+
+  /**
+   * Reads a single policy.
+   *
+   * @param id the policy name
+   * @param properties the properties
+   *
+   * @return the policy
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  static SeriesPolicy parse(String id, Properties properties)
+      throws TimeExpression.NewCustomException {
+    String prefix = PROPERTY_PREFIX + id + '.';
+    String glob = properties.getProperty(prefix + "pattern");
+    if (glob == null || glob.trim().isEmpty()) {
+      throw new IllegalArgumentException("Stats policy '" + id + "' has no pattern");
+    }
+    long interval =
+        TimeExpression.inSeconds(properties.getProperty(prefix + "interval", "").trim()) * 1000;
+    long retention =
+        TimeExpression.inSeconds(properties.getProperty(prefix + "retention", "").trim()) * 1000;
+    if (retention > 0 && interval <= 0) {
+      throw new IllegalArgumentException(
+          "Stats policy '" + id + "' needs an interval to derive its retention");
+    }
+    long[] resolutions = null;
+    int[] capacities = null;
+    String rollups = properties.getProperty(prefix + "rollups");
+    if (rollups != null) {
+      Map<Long, Integer> tiers = parseTiers(rollups);
+      resolutions = new long[tiers.size()];
+      capacities = new int[tiers.size()];
+      int i = 0;
+      for (Map.Entry<Long, Integer> tier : tiers.entrySet()) {
+        resolutions[i] = tier.getKey();
+        capacities[i] = tier.getValue();
+        i++;
+      }
+    }
+    return new SeriesPolicy(id, compile(glob.trim()), interval,
+        (int) TimeExpression.dataPoints(interval, retention), resolutions, capacities);
+  }
+
+  /**
+   * Parses rollup tiers.
+   *
+   * @param rollups comma separated {@code resolution:buckets} pairs, e.g.
+   *        {@code 1m:240,15m:192,1h:168}
+   *
+   * @return the bucket counts by resolution in milliseconds, finest first
+   *
+   * @throws TimeExpression.NewCustomException if a resolution is not a valid time expression
+   */
+  static Map<Long, Integer> parseTiers(String rollups) throws TimeExpression.NewCustomException {
+    Map<Long, Integer> tiers = new TreeMap<>();
+    for (String trimmed : LIST_SPLITTER.split(rollups)) {
+      int colon = trimmed.indexOf(':');
+      if (colon < 0) {
+        throw new IllegalArgumentException("Invalid rollup tier, expected resolution:buckets: "
+            + trimmed);
+      }
+      long resolution = TimeExpression.inSeconds(trimmed.substring(0, colon).trim()) * 1000;
+      tiers.put(resolution, Integer.valueOf(trimmed.substring(colon + 1).trim()));
+    }
+    return tiers;
+  }
+
+  /**
+   * Compiles a pattern where {@code *} matches any characters.
+   *
+   * @param glob the pattern
+   *
+   * @return the regular expression
+   */
+  private static Pattern compile(String glob) {
+    StringBuilder regex = new StringBuilder();
+    int start = 0;
+    for (int star = glob.indexOf('*'); star >= 0; star = glob.indexOf('*', start)) {
+      if (star > start) {
+        regex.append(Pattern.quote(glob.substring(start, star)));
+      }
+      regex.append(".*");
+      start = star + 1;
+    }
+    if (start < glob.length()) {
+      regex.append(Pattern.quote(glob.substring(start)));
+    }
+    return Pattern.compile(regex.toString(), Pattern.DOTALL);
+  }
+
+  /**
+   * Checks whether the policy applies to a series.
+   *
+   * @param seriesName the series name
+   *
+   * @return true, if the pattern matches
+   */
+  public boolean matches(String seriesName) {
+    return pattern != null && pattern.matcher(seriesName).matches();
+  }
+
+  /**
+   * Gets the policy name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the min time between kept samples.
+   *
+   * @return the interval in milliseconds, 0 to keep every sample
+   */
+  public long getInterval() {
+    return interval;
+  }
+
+  /**
+   * Gets the number of raw samples kept.
+   *
+   * @return the capacity, 0 for the collector default
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Checks whether the policy sets its own rollup tiers.
+   *
+   * @return true, if it has rollups
+   */
+  public boolean hasRollups() {
+    return rollupResolutions != null;
+  }
+
+  /**
+   * Gets the rollup resolutions, finest first.
+   *
+   * @return the rollup resolutions in milliseconds, null for the global tiers
+   */
+  public long[] getRollupResolutions() {
+    return rollupResolutions == null ? null : rollupResolutions.clone();
+  }
+
+  /**
+   * Gets the rollup capacities, matching {@link #getRollupResolutions()}.
+   *
+   * @return the rollup capacities, null for the global tiers
+   */
+  public int[] getRollupCapacities() {
+    return rollupCapacities == null ? null : rollupCapacities.clone();
+  }
+
+}
@@ -0,0 +1,364 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import java.util.Arrays;
+
+/**
+ * The value a series is expected to take, learned from its samples, so that alerts can fire on
+ * deviation from what is usual rather than on a fixed threshold.
+ *
+ * <p>
+ * Every sample updates an exponentially weighted moving average and variance. With a season
+ * configured, e.g. one day in slots of one hour, the baseline additionally keeps additive
+ * Holt-Winters state: a level, a trend and one seasonal offset per slot. The slot is chosen by the
+ * sample time, so that irregular sampling does not shift the season, and the Holt-Winters state
+ * advances once per slot with the average of the samples in it; advancing it with every sample
+ * would let level and seasonal offset drift apart within a slot. The forecast error variance is
+ * still updated with every sample. The Holt-Winters forecast is used once a whole season has been
+ * seen, the moving average before that. Each update is O(1) and touches primitive fields only.
+ * </p>
+ *
+ * <p>
+ * Like {@link StatsSeries}, all methods synchronize on the baseline itself.
+ * </p>
+ */
+public class StatsBaseline {
+
+  /** The smoothing factor of the average, variance and level. */
+  private double alpha = 0.1;
+
+  /** The smoothing factor of the trend. */
+  private double beta = 0.01;
+
+  /** The smoothing factor of the seasonal offsets. */
+  private double gamma = 0.1;
+
+  /** The number of samples needed before an expected value is given. */
+  private int minSamples = 30;
+
+  /** The width of a seasonal slot, in milliseconds. */
+  private long seasonResolution;
+
+  /** The seasonal offsets, empty without a season. */
+  private double[] seasonal = new double[0];
+
+  /** The number of samples seen. */
+  private long count;
+
+  /** The time of the first sample seen. */
+  private long firstTime;
+
+  /** The time of the last sample seen. */
+  private long lastTime;
+
+  /** The moving average. */
+  private double mean;
+
+  /** The moving variance. */
+  private double variance;
+
+  /** The Holt-Winters level. */
+  private double level;
+
+  /** The Holt-Winters trend, per slot. */
+  private double trend;
+
+  /** The moving variance of the Holt-Winters forecast error. */
+  private double errorVariance;
+
+  /** The slot the samples being averaged belong to, counted from the epoch. */
+  private long currentSlot;
+
+  /** The sum of the samples of the current slot. */
+  private double slotSum;
+
+  /** The number of samples of the current slot. */
+  private int slotCount;
+
+  /**
+   * Sets the smoothing factors and the season. Seasonal offsets are kept if the season did not
+   * change, and dropped otherwise.
+   *
+   * @param alpha the smoothing factor of the average, variance and level
+   * @param beta the smoothing factor of the trend
+   * @param gamma the smoothing factor of the seasonal offsets
+   * @param minSamples the number of samples needed before an expected value is given
+   * @param seasonResolution the width of a seasonal slot in milliseconds
+   * @param seasonLength the number of seasonal slots, 0 for no season
+   */
+  public synchronized void configure(double alpha, double beta, double gamma, int minSamples,
+      long seasonResolution, int seasonLength) {
+    this.alpha = alpha;
+    this.beta = beta;
+    this.gamma = gamma;
+    this.minSamples = minSamples;
+    int length = seasonResolution > 0 ? Math.max(seasonLength, 0) : 0;
+    if (length != seasonal.length || seasonResolution != this.seasonResolution) {
+      this.seasonResolution = length == 0 ? 0 : seasonResolution;
+      this.seasonal = new double[length];
+      this.errorVariance = variance;
+      this.level = mean;
+      this.trend = 0;
+      this.slotSum = 0;
+      this.slotCount = 0;
+      // the new season has to be learned from scratch
+      this.firstTime = lastTime;
+    }
+  }
+
+  /**
+   * Learns from a sample.
+   *
+   * @param time the time
+   * @param value the value
+   */
+  public synchronized void add(long time, double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return;
+    }
+    if (count == 0) {
+      firstTime = time;
+      lastTime = time;
+      mean = value;
+      level = value;
+      count = 1;
+      return;
+    }
+    double diff = value - mean;
+    double increment = alpha * diff;
+    mean += increment;
+    variance = (1 - alpha) * (variance + diff * increment);
+
+    if (seasonal.length > 0) {
+      long slot = Math.floorDiv(time, seasonResolution);
+      if (slotCount > 0 && slot != currentSlot) {
+        advanceSeason();
+      }
+      double error = value - (level + trend + seasonal[seasonSlot(time)]);
+      errorVariance = (1 - alpha) * errorVariance + alpha * error * error;
+      currentSlot = slot;
+      slotSum += value;
+      slotCount++;
+    }
+    lastTime = Math.max(lastTime, time);
+    count++;
+  }
+
+  /**
+   * Advances the Holt-Winters state with the average of the current slot.
+   */
+  private void advanceSeason() {
+    double average = slotSum / slotCount;
+    int slot = (int) Math.floorMod(currentSlot, (long) seasonal.length);
+    double previousLevel = level;
+    level = alpha * (average - seasonal[slot]) + (1 - alpha) * (level + trend);
+    trend = beta * (level - previousLevel) + (1 - beta) * trend;
+    seasonal[slot] = gamma * (average - level) + (1 - gamma) * seasonal[slot];
+    slotSum = 0;
+    slotCount = 0;
+  }
+
+  /**
+   * Gets the value expected at the given time.
+   *
+   * @param time the time
+   *
+   * @return the expected value, NaN while fewer than {@code minSamples} samples were seen
+   */
+  public synchronized double getExpected(long time) {
+    if (count < minSamples) {
+      return Double.NaN;
+    }
+    return isSeasonal() ? level + trend + seasonal[seasonSlot(time)] : mean;
+  }
+
+  /**
+   * Gets the standard deviation of samples from the expected value.
+   *
+   * @return the deviation, NaN while fewer than {@code minSamples} samples were seen
+   */
+  public synchronized double getDeviation() {
+    if (count < minSamples) {
+      return Double.NaN;
+    }
+    return Math.sqrt(isSeasonal() ? errorVariance : variance);
+  }
+
+  /**
+   * Checks whether the expected value is the seasonal forecast, that is a season is configured
+   * and a whole season has been seen.
+   *
+   * @return true, if is seasonal
+   */
+  public synchronized boolean isSeasonal() {
+    return seasonal.length > 0 && lastTime - firstTime >= seasonResolution * seasonal.length;
+  }
+
+  /**
+   * Gets the number of samples seen.
+   *
+   * @return the count
+   */
+  public synchronized long getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the moving average.
+   *
+   * @return the mean
+   */
+  public synchronized double getMean() {
+    return mean;
+  }
+
+  /**
+   * Gets the moving variance.
+   *
+   * @return the variance
+   */
+  public synchronized double getVariance() {
+    return variance;
+  }
+
+  /**
+   * Forgets all samples.
+   */
+  public synchronized void clear() {
+    count = 0;
+    firstTime = 0;
+    lastTime = 0;
+    mean = 0;
+    variance = 0;
+    level = 0;
+    trend = 0;
+    errorVariance = 0;
+    currentSlot = 0;
+    slotSum = 0;
+    slotCount = 0;
+    Arrays.fill(seasonal, 0);
+  }
+
+  /**
+   * Copies the baseline.
+   *
+   * @return the copy
+   */
+  public synchronized StatsBaseline copy() {
+    StatsBaseline copy = new StatsBaseline();
+    copy.configure(alpha, beta, gamma, minSamples, seasonResolution, seasonal.length);
+    copy.setState(getState());
+    return copy;
+  }
+
+  /**
+   * Copies the learned state, for writing a snapshot.
+   *
+   * @return the state
+   */
+  synchronized State getState() {
+    State state = new State();
+    state.count = count;
+    state.firstTime = firstTime;
+    state.lastTime = lastTime;
+    state.mean = mean;
+    state.variance = variance;
+    state.level = level;
+    state.trend = trend;
+    state.errorVariance = errorVariance;
+    state.currentSlot = currentSlot;
+    state.slotSum = slotSum;
+    state.slotCount = slotCount;
+    state.seasonResolution = seasonResolution;
+    state.seasonal = seasonal.clone();
+    return state;
+  }
+
+  /**
+   * Restores learned state read from a snapshot, including its season. {@link #configure} is
+   * expected to be called afterwards, it drops the seasonal state if the season changed.
+   *
+   * @param state the state
+   */
+  synchronized void setState(State state) {
+    count = state.count;
+    firstTime = state.firstTime;
+    lastTime = state.lastTime;
+    mean = state.mean;
+    variance = state.variance;
+    level = state.level;
+    trend = state.trend;
+    errorVariance = state.errorVariance;
+    currentSlot = state.currentSlot;
+    slotSum = state.slotSum;
+    slotCount = state.slotCount;
+    seasonResolution = state.seasonResolution;
+    seasonal = state.seasonal.clone();
+  }
+
+  /**
+   * Maps a time to its seasonal slot.
+   *
+   * @param time the time
+   *
+   * @return the slot
+   */
+  private int seasonSlot(long time) {
+    return (int) Math.floorMod(Math.floorDiv(time, seasonResolution), (long) seasonal.length);
+  }
+
+  /**
+   * The learned state of a baseline, as stored in a snapshot.
+   */
+  static final class State {
+
+    /** The count. */
+    long count;
+
+    /** The first time. */
+    long firstTime;
+
+    /** The last time. */
+    long lastTime;
+
+    /** The mean. */
+    double mean;
+
+    /** The variance. */
+    double variance;
+
+    /** The level. */
+    double level;
+
+    /** The trend. */
+    double trend;
+
+    /** The error variance. */
+    double errorVariance;
+
+    /** The current slot. */
+    long currentSlot;
+
+    /** The sum of the samples of the current slot. */
+    double slotSum;
+
+    /** The number of samples of the current slot. */
+    int slotCount;
+
+    /** The season resolution. */
+    long seasonResolution;
+
+    /** The seasonal offsets. */
+    double[] seasonal = new double[0];
+  }
+
+}
@@ -20,22 +20,44 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.web.context.WebApplicationContext;
-import psiprobe.tools.UpdateCommitLock;
+import psiprobe.tools.SizeExpression;
+import psiprobe.tools.TimeExpression;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 import static oracle.ucp.jdbc.DatasourceConfigManager.init;
 
 
 /**
  * The Class StatsCollection.
+ *
+ * <p>
+ * The store has no global lock: series are kept in a concurrent map and every series guards
+ * itself, so collectors only ever contend with readers of the very series they append to. Readers
+ * and the serializer work on short-lived copies of each series.
+ * </p>
  */
 public class StatsCollection implements InitializingBean, DisposableBean, ApplicationContextAware {
 
@@ -43,7 +65,14 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
   private static final Logger logger = LoggerFactory.getLogger(StatsCollection.class);
 
   /** The stats' data. */
-  private Map<String, List<XYDataItem>> statsData = new TreeMap<>();
+  private final ConcurrentNavigableMap<String, StatsSeries> statsData =
+      new ConcurrentSkipListMap<>();
+
+  /** Incremented whenever a series is added, so that views over all series know to rebuild. */
+  private final AtomicLong seriesGeneration = new AtomicLong();
+
+  /** The latency histograms. */
+  private final ConcurrentMap<String, HistogramSeries> histograms = new ConcurrentHashMap<>();
 
   /** The xstream. */
   private final XStream xstream;
@@ -51,6 +80,9 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
   /** The swap file name. */
   private String swapFileName;
 
+  /** The legacy XML swap file name, imported once when no binary snapshot exists yet. */
+  private String legacySwapFileName;
+
   /** The storage path. */
   private final String storagePath;
 
@@ -60,8 +92,80 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
   /** The max files. */
   private static final int MAX_FILES = 2;
 
-  /** The lock. */
-  private final UpdateCommitLock lock = new UpdateCommitLock();
+  /** The number of samples appended by collectors. */
+  private final LongAdder appendCount = new LongAdder();
+
+  /** The time collectors spent waiting for series monitors, in nanoseconds. */
+  private final LongAdder lockWaitNanos = new LongAdder();
+
+  /** The longest single wait for a series monitor, in nanoseconds. */
+  private final LongAccumulator maxLockWaitNanos = new LongAccumulator(Math::max, 0);
+
+  /** The write-ahead log name. */
+  private String writeAheadLogName;
+
+  /** The write-ahead log enabled. */
+  private boolean writeAheadLogEnabled = true;
+
+  /** The write-ahead log segment size. */
+  private int writeAheadLogSegmentSize = 1024 * 1024;
+
+  /** The write-ahead log, null when disabled or unusable. */
+  private volatile StatsWriteAheadLog writeAheadLog;
+
+  /** The rollup resolutions in milliseconds, finest first. */
+  private long[] rollupResolutions = {60_000L, 900_000L, 3_600_000L};
+
+  /** The rollup capacities, matching {@link #rollupResolutions}. */
+  private int[] rollupCapacities = {240, 192, 168};
+
+  /** The series policies, first match wins. */
+  private volatile List<SeriesPolicy> policies = Collections.emptyList();
+
+  /** The policy of each series name looked up since the policies were last set. */
+  private final ConcurrentMap<String, SeriesPolicy> policyCache = new ConcurrentHashMap<>();
+
+  /** Incremented whenever the policies are replaced, so that collectors know to look them up. */
+  private final AtomicLong policyGeneration = new AtomicLong();
+
+  /** The baselines by series name. */
+  private final ConcurrentMap<String, StatsBaseline> baselines = new ConcurrentHashMap<>();
+
+  /** Whether series learn baselines. */
+  private boolean baselineEnabled = true;
+
+  /** The baseline smoothing factor of the average, variance and level. */
+  private double baselineAlpha = 0.05;
+
+  /** The baseline smoothing factor of the trend. */
+  private double baselineBeta = 0.01;
+
+  /** The baseline smoothing factor of the seasonal offsets. */
+  private double baselineGamma = 0.1;
+
+  /** The number of samples a baseline needs before giving an expected value. */
+  private int baselineMinSamples = 30;
+
+  /** The width of a baseline seasonal slot in milliseconds, 0 for no season. */
+  private long baselineSeasonResolution = 3_600_000L;
+
+  /** The number of baseline seasonal slots. */
+  private int baselineSeasonLength = 24;
+
+  /** The Constant SNAPSHOT_TIME_SERIES. */
+  public static final String SNAPSHOT_TIME_SERIES = "probe.self.snapshot.time";
+
+  /** The Constant SNAPSHOT_SIZE_SERIES. */
+  public static final String SNAPSHOT_SIZE_SERIES = "probe.self.snapshot.size";
+
+  /** The capacity of the series the collection reports about itself. */
+  private static final int INTERNAL_SERIES_CAPACITY = 240;
+
+  /** The thread writing snapshots, created on first use. */
+  private ExecutorService snapshotWriter;
+
+  /** The snapshot being written. */
+  private volatile Future<?> pendingSnapshot;
 
   public StatsCollection(XStream xstream, String storagePath) throws UniversalConnectionPoolException {
     this.xstream = xstream;
@@ -74,23 +178,373 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
    *
    * @param swapFileName the new swap file name
    */
-  @Value("stats.xml")
+  @Value("stats.bin")
   public void setSwapFileName(String swapFileName) {
     this.swapFileName = swapFileName;
   }
 
   /**
-   * New stats.
+   * Sets the legacy XML swap file name.
+   *
+   * @param legacySwapFileName the new legacy swap file name
+   */
+  @Value("stats.xml")
+  public void setLegacySwapFileName(String legacySwapFileName) {
+    this.legacySwapFileName = legacySwapFileName;
+  }
+
+  /**
+   * Sets the write-ahead log name.
+   *
+   * @param writeAheadLogName the new write-ahead log name
+   */
+  @Value("stats.wal")
+  public void setWriteAheadLogName(String writeAheadLogName) {
+    this.writeAheadLogName = writeAheadLogName;
+  }
+
+  /**
+   * Sets the write-ahead log enabled.
+   *
+   * @param writeAheadLogEnabled the new write-ahead log enabled
+   */
+  @Value("${psiprobe.beans.stats.wal.enabled}")
+  public void setWriteAheadLogEnabled(boolean writeAheadLogEnabled) {
+    this.writeAheadLogEnabled = writeAheadLogEnabled;
+  }
+
+  /**
+   * Sets the write-ahead log segment size.
+   *
+   * @param segmentSize the new segment size expression, e.g. {@code 1M}
+   */
+  @Value("${psiprobe.beans.stats.wal.segmentSize}")
+  public void setWriteAheadLogSegmentSize(String segmentSize) {
+    this.writeAheadLogSegmentSize = (int) SizeExpression.parse(segmentSize);
+  }
+
+  /**
+   * Sets the rollup tiers kept for every series.
+   *
+   * @param rollups comma separated {@code resolution:buckets} pairs, e.g.
+   *        {@code 1m:240,15m:192,1h:168}; empty to disable rollups
+   *
+   * @throws TimeExpression.NewCustomException if a resolution is not a valid time expression
+   */
+  @Value("${psiprobe.beans.stats.rollups}")
+  public void setRollups(String rollups) throws TimeExpression.NewCustomException {
+    Map<Long, Integer> tiers = SeriesPolicy.parseTiers(rollups);
+    long[] resolutions = new long[tiers.size()];
+    int[] capacities = new int[tiers.size()];
+    int i = 0;
+    for (Entry<Long, Integer> tier : tiers.entrySet()) {
+      resolutions[i] = tier.getKey();
+      capacities[i] = tier.getValue();
+      i++;
+    }
+    this.rollupResolutions = resolutions;
+    this.rollupCapacities = capacities;
+  }
+
+  /**
+   * Sets whether series learn baselines.
+   *
+   * @param baselineEnabled the new baseline enabled
+   */
+  @Value("${psiprobe.beans.stats.baseline.enabled}")
+  public void setBaselineEnabled(boolean baselineEnabled) {
+    this.baselineEnabled = baselineEnabled;
+  }
+
+  /**
+   * Sets the baseline smoothing factor of the average, variance and level.
+   *
+   * @param baselineAlpha the new baseline alpha, between 0 and 1
+   */
+  @Value("${psiprobe.beans.stats.baseline.alpha}")
+  public void setBaselineAlpha(double baselineAlpha) {
+    this.baselineAlpha = baselineAlpha;
+  }
+
+  /**
+   * Sets the baseline smoothing factor of the trend.
+   *
+   * @param baselineBeta the new baseline beta, between 0 and 1
+   */
+  @Value("${psiprobe.beans.stats.baseline.beta}")
+  public void setBaselineBeta(double baselineBeta) {
+    this.baselineBeta = baselineBeta;
+  }
+
+  /**
+   * Sets the baseline smoothing factor of the seasonal offsets.
+   *
+   * @param baselineGamma the new baseline gamma, between 0 and 1
+   */
+  @Value("${psiprobe.beans.stats.baseline.gamma}")
+  public void setBaselineGamma(double baselineGamma) {
+    this.baselineGamma = baselineGamma;
+  }
+
+  /**
+   * Sets the number of samples a baseline needs before giving an expected value.
+   *
+   * @param baselineMinSamples the new baseline min samples
+   */
+  @Value("${psiprobe.beans.stats.baseline.minSamples}")
+  public void setBaselineMinSamples(int baselineMinSamples) {
+    this.baselineMinSamples = Math.max(baselineMinSamples, 1);
+  }
+
+  /**
+   * Sets the baseline season.
+   *
+   * @param season {@code resolution:slots}, e.g. {@code 1h:24} for a daily season in hourly
+   *        slots; empty for no season
+   *
+   * @throws TimeExpression.NewCustomException if the resolution is not a valid time expression
+   */
+  @Value("${psiprobe.beans.stats.baseline.season}")
+  public void setBaselineSeason(String season) throws TimeExpression.NewCustomException {
+    String trimmed = season.trim();
+    if (trimmed.isEmpty()) {
+      this.baselineSeasonResolution = 0;
+      this.baselineSeasonLength = 0;
+      return;
+    }
+    int colon = trimmed.indexOf(':');
+    if (colon < 0) {
+      throw new IllegalArgumentException("Invalid baseline season, expected resolution:slots: "
+          + trimmed);
+    }
+    this.baselineSeasonResolution =
+        TimeExpression.inSeconds(trimmed.substring(0, colon).trim()) * 1000;
+    this.baselineSeasonLength = Integer.parseInt(trimmed.substring(colon + 1).trim());
+  }
+
+  /**
+   * Gets the rollup resolutions in milliseconds, finest first.
+   *
+   * @return the rollup resolutions
+   */
+  public long[] getRollupResolutions() {
+    return rollupResolutions.clone();
+  }
+
+  /**
+   * Gets the resolution a chart of the given span and width is drawn with, assuming the rollups
+   * cover the span. Used to avoid refreshing a chart more often than its data changes.
+   *
+   * @param span the span in milliseconds
+   * @param width the width in pixels
+   *
+   * @return the resolution in milliseconds, {@code 0} for the raw samples
+   */
+  public long getChartResolution(long span, int width) {
+    long maxResolution = width > 0 ? span / width : 0;
+    long resolution = 0;
+    for (long candidate : rollupResolutions) {
+      if (candidate <= maxResolution) {
+        resolution = candidate;
+      }
+    }
+    return resolution;
+  }
+
+  /**
+   * Gets the policy of a series: the first configured policy whose pattern matches its name.
+   *
+   * @param name the series name
+   *
+   * @return the policy, {@link SeriesPolicy#DEFAULT} if none matches
+   */
+  public SeriesPolicy getPolicy(String name) {
+    SeriesPolicy policy = policyCache.get(name);
+    if (policy == null) {
+      policy = SeriesPolicy.DEFAULT;
+      for (SeriesPolicy candidate : policies) {
+        if (candidate.matches(name)) {
+          policy = candidate;
+          break;
+        }
+      }
+      policyCache.put(name, policy);
+    }
+    return policy;
+  }
+
+  /**
+   * Gets a counter that changes whenever the policies are replaced.
+   *
+   * @return the policy generation
+   */
+  public long getPolicyGeneration() {
+    return policyGeneration.get();
+  }
+
+  /**
+   * Gets the series policies.
+   *
+   * @return the policies, in match order
+   */
+  public List<SeriesPolicy> getPolicies() {
+    return policies;
+  }
+
+  /**
+   * Replaces the series policies. The rollups of existing series and the capacity of those a
+   * policy sizes are adjusted right away, intervals apply from the next sample on.
+   *
+   * @param policies the policies, in match order
+   */
+  public void setPolicies(List<SeriesPolicy> policies) {
+    this.policies = Collections.unmodifiableList(new ArrayList<>(policies));
+    policyCache.clear();
+    policyGeneration.incrementAndGet();
+    for (Entry<String, StatsSeries> entry : statsData.entrySet()) {
+      StatsSeries series = entry.getValue();
+      configureRollups(entry.getKey(), series);
+      int capacity = getPolicy(entry.getKey()).getCapacity();
+      if (capacity > 0) {
+        synchronized (series) {
+          series.setCapacity(capacity);
+        }
+      }
+    }
+  }
+
+  /**
+   * Makes the rollups of a series match the tiers of its policy, or the configured tiers if the
+   * policy has none. Missing tiers are backfilled from the raw samples, tiers that are no longer
+   * configured are dropped.
+   *
+   * @param name the series name
+   * @param series the series
+   */
+  private void configureRollups(String name, StatsSeries series) {
+    SeriesPolicy policy = getPolicy(name);
+    long[] resolutions = policy.hasRollups() ? policy.getRollupResolutions() : rollupResolutions;
+    int[] capacities = policy.hasRollups() ? policy.getRollupCapacities() : rollupCapacities;
+    synchronized (series) {
+      StatsRollup[] existing = series.getRollups();
+      StatsRollup[] rollups = new StatsRollup[resolutions.length];
+      for (int i = 0; i < rollups.length; i++) {
+        for (StatsRollup rollup : existing) {
+          if (rollup.getResolution() == resolutions[i]) {
+            rollup.setCapacity(capacities[i]);
+            rollups[i] = rollup;
+          }
+        }
+        if (rollups[i] == null) {
+          rollups[i] = new StatsRollup(resolutions[i], capacities[i]);
+          for (int j = 0; j < series.size(); j++) {
+            rollups[i].add(series.getTime(j), series.getValue(j));
+          }
+        }
+      }
+      series.setRollups(rollups);
+    }
+  }
+
+  /**
+   * Applies the configured baseline settings.
+   *
+   * @param baseline the baseline
+   */
+  private void configureBaseline(StatsBaseline baseline) {
+    baseline.configure(baselineAlpha, baselineBeta, baselineGamma, baselineMinSamples,
+        baselineSeasonResolution, baselineSeasonLength);
+  }
+
+  /**
+   * New stats. If another thread created the series in the meantime, that series is returned.
    *
    * @param name the name
-   * @param maxElements the max elements
+   * @param maxElements the max elements, unless the policy of the series sets a capacity
    *
-   * @return the list
+   * @return the series
    */
-  public synchronized List<XYDataItem> newStats(String name, int maxElements) {
-    List<XYDataItem> stats = Collections.synchronizedList(new ArrayList<>(maxElements));
-    statsData.put(name, stats);
-    return stats;
+  public StatsSeries newStats(String name, int maxElements) {
+    int capacity = getPolicy(name).getCapacity();
+    StatsSeries stats = new StatsSeries(capacity > 0 ? capacity : maxElements);
+    configureRollups(name, stats);
+    StatsSeries existing = statsData.putIfAbsent(name, stats);
+    if (existing == null) {
+      seriesGeneration.incrementAndGet();
+    }
+    return existing == null ? stats : existing;
+  }
+
+  /**
+   * Gets a counter that changes whenever a series is added. Series are never removed.
+   *
+   * @return the series generation
+   */
+  public long getSeriesGeneration() {
+    return seriesGeneration.get();
+  }
+
+  /**
+   * Records how long a collector waited for locks while appending a sample, for the series
+   * monitor and for the write-ahead log.
+   *
+   * @param nanos the wait in nanoseconds
+   */
+  public void recordAppend(long nanos) {
+    appendCount.increment();
+    lockWaitNanos.add(nanos);
+    maxLockWaitNanos.accumulate(nanos);
+  }
+
+  /**
+   * Gets the number of samples appended by collectors.
+   *
+   * @return the append count
+   */
+  public long getAppendCount() {
+    return appendCount.sum();
+  }
+
+  /**
+   * Gets the total time collectors spent waiting for series monitors and the write-ahead log.
+   *
+   * @return the lock wait time in milliseconds
+   */
+  public long getLockWaitTime() {
+    return lockWaitNanos.sum() / 1_000_000;
+  }
+
+  /**
+   * Gets the longest time a collector waited for locks while appending a sample.
+   *
+   * @return the max lock wait time in microseconds
+   */
+  public long getMaxLockWaitTime() {
+    return maxLockWaitNanos.get() / 1_000;
+  }
+
+  /**
+   * Records a sample in the write-ahead log, if enabled. Called by collectors after the sample was
+   * added to its series.
+   *
+   * @param name the name
+   * @param capacity the capacity of the series
+   * @param time the time
+   * @param value the value
+   *
+   * @return the time spent waiting for the write-ahead log, in nanoseconds
+   */
+  public long logSample(String name, int capacity, long time, double value) {
+    StatsWriteAheadLog wal = writeAheadLog;
+    if (wal != null) {
+      try {
+        return wal.append(name, capacity, time, value);
+      } catch (IOException e) {
+        logger.error("Could not write to stats write-ahead log, disabling it", e);
+        writeAheadLog = null;
+      }
+    }
+    return 0;
   }
 
   /**
@@ -98,11 +552,76 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
    *
    * @param name the name
    */
-  public synchronized void resetStats(String name) {
-    List<XYDataItem> stats = getStats(name);
+  public void resetStats(String name) {
+    StatsSeries stats = getStats(name);
     if (stats != null) {
       stats.clear();
     }
+    HistogramSeries histogram = getHistogram(name);
+    if (histogram != null) {
+      histogram.clear();
+    }
+    StatsBaseline baseline = getBaseline(name);
+    if (baseline != null) {
+      baseline.clear();
+    }
+  }
+
+  /**
+   * Gets a latency histogram series.
+   *
+   * @param name the name
+   *
+   * @return the histogram series, null if there is none
+   */
+  public HistogramSeries getHistogram(String name) {
+    return histograms.get(name);
+  }
+
+  /**
+   * Gets a latency histogram series, creating it with the configured rollup tiers on first use.
+   *
+   * @param name the name
+   *
+   * @return the histogram series
+   */
+  public HistogramSeries newHistogram(String name) {
+    return histograms.computeIfAbsent(name,
+        key -> {
+          SeriesPolicy policy = getPolicy(key);
+          return policy.hasRollups()
+              ? new HistogramSeries(policy.getRollupResolutions(), policy.getRollupCapacities())
+              : new HistogramSeries(rollupResolutions, rollupCapacities);
+        });
+  }
+
+  /**
+   * Gets the baseline of a series.
+   *
+   * @param name the series name
+   *
+   * @return the baseline, null if there is none
+   */
+  public StatsBaseline getBaseline(String name) {
+    return baselines.get(name);
+  }
+
+  /**
+   * Gets the baseline of a series, creating it on first use.
+   *
+   * @param name the series name
+   *
+   * @return the baseline, null if baselines are disabled
+   */
+  public StatsBaseline newBaseline(String name) {
+    if (!baselineEnabled) {
+      return null;
+    }
+    return baselines.computeIfAbsent(name, key -> {
+      StatsBaseline baseline = new StatsBaseline();
+      configureBaseline(baseline);
+      return baseline;
+    });
   }
 
   /**
@@ -112,7 +631,7 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
    *
    * @return the stats
    */
-  public synchronized List<XYDataItem> getStats(String name) {
+  public StatsSeries getStats(String name) {
     return statsData.get(name);
   }
 
@@ -126,33 +645,45 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
   public long getLastValueForStat(String statName) {
     long statValue = 0;
 
-    List<XYDataItem> stats = getStats(statName);
-    if (stats != null && !stats.isEmpty()) {
-      XYDataItem xy = stats.get(stats.size() - 1);
-      if (xy != null && xy.getY() != null) {
-        statValue = xy.getY().longValue();
-      }
+    StatsSeries stats = getStats(statName);
+    if (stats != null) {
+      statValue = (long) stats.getLastValue();
     }
 
     return statValue;
   }
 
   /**
-   * Returns series if stat name starts with the prefix.
+   * Returns series if stat name starts with the prefix. As names are kept sorted, the matches are
+   * a contiguous range found in O(log n) rather than by scanning all series.
    *
    * @param statNamePrefix they key under which the stats are stored
    *
-   * @return a Map of matching stats. Map keys are stat names and map values are corresponding
-   *         series.
+   * @return a read-only live view of matching stats, sorted by name. Map keys are stat names and
+   *         map values are corresponding series.
    */
-  public synchronized Map<String, List<XYDataItem>> getStatsByPrefix(String statNamePrefix) {
-    Map<String, List<XYDataItem>> map = new HashMap<>();
-    for (Map.Entry<String, List<XYDataItem>> en : statsData.entrySet()) {
-      if (en.getKey().startsWith(statNamePrefix)) {
-        map.put(en.getKey(), en.getValue());
+  public Map<String, StatsSeries> getStatsByPrefix(String statNamePrefix) {
+    String end = prefixEnd(statNamePrefix);
+    Map<String, StatsSeries> matches = end == null ? statsData.tailMap(statNamePrefix, true)
+        : statsData.subMap(statNamePrefix, true, end, false);
+    return Collections.unmodifiableMap(matches);
+  }
+
+  /**
+   * Gets the smallest string greater than every string starting with the prefix.
+   *
+   * @param prefix the prefix
+   *
+   * @return the upper bound, or {@code null} if there is none
+   */
+  static String prefixEnd(String prefix) {
+    for (int i = prefix.length() - 1; i >= 0; i--) {
+      char c = prefix.charAt(i);
+      if (c != Character.MAX_VALUE) {
+        return prefix.substring(0, i) + (char) (c + 1);
       }
     }
-    return map;
+    return null;
   }
 
   /**
@@ -161,8 +692,19 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
    * @return the file
    */
   private File makeFile() {
-    return storagePath == null ? new File(contextTempDir, swapFileName)
-        : new File(storagePath, swapFileName);
+    return makeFile(swapFileName);
+  }
+
+  /**
+   * Make file.
+   *
+   * @param fileName the file name
+   *
+   * @return the file
+   */
+  private File makeFile(String fileName) {
+    return storagePath == null ? new File(contextTempDir, fileName)
+        : new File(storagePath, fileName);
   }
 
   /**
@@ -193,61 +735,250 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
   }
 
   /**
-   * Writes stats data to file on disk.
+   * Takes a snapshot and hands it to a background thread that writes it to disk, so that the
+   * scheduled job returns after an in-memory capture of every series. A snapshot still being
+   * written when the next one is due makes this one be skipped.
    *
-   * @throws InterruptedException if a lock cannot be obtained
+   * @throws InterruptedException never, kept for the scheduled job signature
    */
   public synchronized void serialize() throws InterruptedException {
-    lock.lockForCommit();
-    long start = System.currentTimeMillis();
+    Future<?> pending = pendingSnapshot;
+    if (pending != null && !pending.isDone()) {
+      logger.debug("Previous stats snapshot still being written, skipping this one");
+      return;
+    }
+    Snapshot snapshot = capture();
+    if (snapshotWriter == null) {
+      snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "psi-probe-stats-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    pendingSnapshot = snapshotWriter.submit(() -> write(snapshot));
+  }
+
+  /**
+   * Waits for the snapshot being written in the background, if any.
+   *
+   * @param timeout the max time to wait in milliseconds
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  void awaitSnapshot(long timeout) throws InterruptedException {
+    Future<?> pending = pendingSnapshot;
+    if (pending != null) {
+      try {
+        pending.get(timeout, TimeUnit.MILLISECONDS);
+      } catch (ExecutionException | TimeoutException e) {
+        logger.debug("Stats snapshot did not complete", e);
+      }
+    }
+  }
+
+  /**
+   * Copies every series and baseline. The write-ahead log is rolled before any series is copied,
+   * so a sample either made it into the copy or is logged in a segment that is kept. Each series
+   * monitor is only held for the duration of a few array copies.
+   *
+   * @return the snapshot
+   */
+  private Snapshot capture() {
+    long start = System.nanoTime();
+    StatsWriteAheadLog wal = writeAheadLog;
+    long walSequence = wal == null ? 0 : wal.roll();
+    Map<String, StatsSeries> series = new TreeMap<>();
+    for (Entry<String, StatsSeries> entry : statsData.entrySet()) {
+      series.put(entry.getKey(), entry.getValue().copy());
+    }
+    Map<String, StatsBaseline> baselineCopies = new TreeMap<>();
+    for (Entry<String, StatsBaseline> entry : baselines.entrySet()) {
+      baselineCopies.put(entry.getKey(), entry.getValue().copy());
+    }
+    return new Snapshot(series, baselineCopies, wal, walSequence, start);
+  }
+
+  /**
+   * Writes a captured snapshot to a temporary file and renames it over the snapshot file, so that
+   * a crash while writing never leaves a truncated snapshot behind. The time taken and the size
+   * written are recorded as the {@value #SNAPSHOT_TIME_SERIES} and
+   * {@value #SNAPSHOT_SIZE_SERIES} series.
+   *
+   * @param snapshot the snapshot
+   */
+  private void write(Snapshot snapshot) {
+    File file = makeFile();
+    Path target = file.toPath();
+    Path temp = new File(file.getAbsolutePath() + ".tmp").toPath();
     try {
+      long size = StatsSnapshotCodec.write(snapshot.series, snapshot.baselines,
+          snapshot.walSequence, temp);
       shiftFiles(0);
-      try (OutputStream os = Files.newOutputStream(makeFile().toPath())) {
-        xstream.toXML(statsData, os);
+      try {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
       }
+      if (snapshot.wal != null) {
+        snapshot.wal.truncate(snapshot.walSequence);
+      }
+      long duration = (System.nanoTime() - snapshot.started) / 1_000_000;
+      logger.debug("stats snapshot of {} bytes written in {}ms", size, duration);
+      long now = System.currentTimeMillis();
+      addInternalSample(SNAPSHOT_TIME_SERIES, now, (double) duration);
+      addInternalSample(SNAPSHOT_SIZE_SERIES, now, (double) size);
     } catch (Exception e) {
-      logger.error("Could not write stats data to '{}'", makeFile().getAbsolutePath(), e);
+      logger.error("Could not write stats data to '{}'", file.getAbsolutePath(), e);
+      try {
+        Files.deleteIfExists(temp);
+      } catch (IOException ex) {
+        logger.trace("", ex);
+      }
     } finally {
-      lock.releaseCommitLock();
-      logger.debug("stats serialized in {}ms", System.currentTimeMillis() - start);
+      logger.debug("{} samples appended so far, collectors waited {}ms for series locks, at most"
+          + " {}us at once", getAppendCount(), getLockWaitTime(), getMaxLockWaitTime());
     }
   }
 
+  /**
+   * Appends a sample the probe reports about itself, such as snapshot or scheduler timings. Such
+   * series are neither collected nor baselined.
+   *
+   * @param name the series name
+   * @param time the time
+   * @param value the value
+   */
+  public void addInternalSample(String name, long time, double value) {
+    StatsSeries series = getStats(name);
+    if (series == null) {
+      series = newStats(name, INTERNAL_SERIES_CAPACITY);
+    }
+    series.add(time, value);
+    logSample(name, INTERNAL_SERIES_CAPACITY, time, value);
+  }
+
   /**
    * Deserialize.
    *
    * @param file the file
    *
-   * @return the map
+   * @return the snapshot
    */
-  @SuppressWarnings("unchecked")
-  private Map<String, List<XYDataItem>> deserialize(File file) {
+  private StatsSnapshotCodec.Snapshot deserialize(File file) {
     if (!file.exists() || !file.canRead()) {
-      return Collections.emptyMap();
+      return null;
     }
     long start = System.currentTimeMillis();
-    Map<String, List<XYDataItem>> stats = null;
+    StatsSnapshotCodec.Snapshot stats = null;
+
+    try {
+      stats = StatsSnapshotCodec.read(file.toPath());
+    } catch (IOException e) {
+      logger.error("Could not read stats data from '{}' during initialization",
+          file.getAbsolutePath(), e);
+    }
+
+    logger.debug("stats data read in {}ms", System.currentTimeMillis() - start);
+    return stats;
+  }
+
+  /**
+   * Imports stats data written by XStream before the binary snapshot format existed.
+   *
+   * @param file the legacy XML file
+   *
+   * @return the map
+   */
+  private Map<String, StatsSeries> importLegacy(File file) {
+    long start = System.currentTimeMillis();
+    Map<String, StatsSeries> stats = null;
 
     try (InputStream fis = Files.newInputStream(file.toPath())) {
-      stats = (Map<String, List<XYDataItem>>) xstream.fromXML(fis);
-      if (stats != null) {
-        addExtraDataPoints(stats);
-      }
+      stats = toStatsSeries((Map<?, ?>) xstream.fromXML(fis));
     } catch (Exception e) {
       handleDeserializationError(file, e);
     }
 
-    logger.debug("stats data read in {}ms", System.currentTimeMillis() - start);
+    logger.info("Imported legacy stats data from '{}' in {}ms", file.getAbsolutePath(),
+        System.currentTimeMillis() - start);
+    return stats;
+  }
+
+  /**
+   * Converts deserialized data to series. Files written before series were array backed hold a
+   * list of {@link XYDataItem} per stat, those are copied into a series of the same length.
+   *
+   * @param data the deserialized data
+   *
+   * @return the series by stat name
+   */
+  private Map<String, StatsSeries> toStatsSeries(Map<?, ?> data) {
+    if (data == null) {
+      return null;
+    }
+    Map<String, StatsSeries> stats = new TreeMap<>();
+    for (Entry<?, ?> en : data.entrySet()) {
+      Object value = en.getValue();
+      if (value instanceof StatsSeries) {
+        stats.put((String) en.getKey(), (StatsSeries) value);
+      } else if (value instanceof List) {
+        List<?> list = (List<?>) value;
+        StatsSeries series = new StatsSeries(list.size());
+        for (Object item : list) {
+          XYDataItem xy = (XYDataItem) item;
+          series.add(xy.getX().longValue(), xy.getYValue());
+        }
+        stats.put((String) en.getKey(), series);
+      }
+    }
     return stats;
   }
 
-  private void addExtraDataPoints(Map<String, List<XYDataItem>> stats) {
-    for (Entry<String, List<XYDataItem>> set : stats.entrySet()) {
-      List<XYDataItem> list = set.getValue();
-      if (!list.isEmpty()) {
-        XYDataItem xy = list.get(list.size() - 1);
-        list.add(new XYDataItem( (xy.getX().longValue() + 1), 0));
-        list.add(new XYDataItem(System.currentTimeMillis(), 0));
+  /**
+   * Opens the write-ahead log and replays the samples collected after the snapshot was taken.
+   *
+   * @param stats the stats read from the snapshot
+   * @param walSequence the first segment not covered by the snapshot
+   */
+  private void recoverWriteAheadLog(Map<String, StatsSeries> stats, long walSequence) {
+    StatsWriteAheadLog wal =
+        new StatsWriteAheadLog(makeFile().getAbsoluteFile().getParentFile().toPath(),
+            writeAheadLogName, writeAheadLogSegmentSize);
+    long start = System.currentTimeMillis();
+    try {
+      wal.open();
+      long count = wal.replay(walSequence, (name, capacity, time, value) -> {
+        StatsSeries series = stats.computeIfAbsent(name, key -> {
+          StatsSeries created = new StatsSeries(capacity);
+          configureRollups(name, created);
+          return created;
+        });
+        // samples may already be in the snapshot if it was written while the log was disabled
+        if (series.isEmpty() || time > series.getLastTime()) {
+          series.add(time, value);
+          StatsBaseline baseline = newBaseline(name);
+          if (baseline != null) {
+            baseline.add(time, value);
+          }
+        }
+      });
+      writeAheadLog = wal;
+      logger.debug("{} stats samples replayed from write-ahead log in {}ms", count,
+          System.currentTimeMillis() - start);
+    } catch (IOException e) {
+      logger.error("Could not open stats write-ahead log, samples will only be kept in snapshots",
+          e);
+    }
+  }
+
+  private void addExtraDataPoints(Map<String, StatsSeries> stats) {
+    for (Entry<String, StatsSeries> set : stats.entrySet()) {
+      StatsSeries series = set.getValue();
+      synchronized (series) {
+        if (!series.isEmpty()) {
+          series.add(series.getLastTime() + 1, 0);
+          series.add(System.currentTimeMillis(), 0);
+        }
       }
     }
   }
@@ -262,43 +993,65 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
               file.getAbsolutePath(), e);
     }
   }
-  /**
-   * Lock for update.
-   *
-   * @throws InterruptedException the interrupted exception
-   */
-  public void lockForUpdate() throws InterruptedException {
-    lock.lockForUpdate();
-  }
-
-  /**
-   * Release lock.
-   */
-  public void releaseLock() {
-    lock.releaseUpdateLock();
-  }
-
   /**
    * Reads stats data from file on disk.
    */
   @Override
   public synchronized void afterPropertiesSet() {
-    Map<String, List<XYDataItem>> stats;
+    Map<String, StatsSeries> stats = null;
+    long walSequence = 0;
 
       File file = makeFile();
-      stats = deserialize(file);
+      File legacyFile = makeFile(legacySwapFileName);
+      if (!file.exists() && legacySwapFileName != null && legacyFile.canRead()) {
+        stats = importLegacy(legacyFile);
+      } else {
+        StatsSnapshotCodec.Snapshot snapshot = deserialize(file);
+        if (snapshot != null) {
+          stats = snapshot.getStats();
+          walSequence = snapshot.getWalSequence();
+          if (baselineEnabled) {
+            for (StatsBaseline baseline : snapshot.getBaselines().values()) {
+              configureBaseline(baseline);
+            }
+            baselines.putAll(snapshot.getBaselines());
+          }
+        }
+      }
 
-    if (stats != null) {
-      statsData = stats;
-    } else {
+    if (stats == null) {
       logger.debug("Stats data file not found. Empty file assumed.");
+      stats = new TreeMap<>();
     }
+    for (Entry<String, StatsSeries> entry : stats.entrySet()) {
+      configureRollups(entry.getKey(), entry.getValue());
+    }
+    if (writeAheadLogEnabled) {
+      recoverWriteAheadLog(stats, walSequence);
+    }
+    addExtraDataPoints(stats);
+    statsData.putAll(stats);
+    seriesGeneration.incrementAndGet();
 
   }
 
   @Override
   public void destroy() throws Exception {
-    serialize();
+    ExecutorService writer;
+    synchronized (this) {
+      writer = snapshotWriter;
+      snapshotWriter = null;
+    }
+    if (writer != null) {
+      writer.shutdown();
+      writer.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    write(capture());
+    StatsWriteAheadLog wal = writeAheadLog;
+    if (wal != null) {
+      writeAheadLog = null;
+      wal.close();
+    }
   }
 
   @Override
@@ -316,5 +1069,43 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
     }
   }
 
+  /**
+   * Copies of the series and baselines, taken for writing a snapshot.
+   */
+  private static final class Snapshot {
+
+    /** The series. */
+    final Map<String, StatsSeries> series;
+
+    /** The baselines. */
+    final Map<String, StatsBaseline> baselines;
+
+    /** The write-ahead log to truncate once written, null if disabled. */
+    final StatsWriteAheadLog wal;
+
+    /** The first write-ahead log segment not covered by the snapshot. */
+    final long walSequence;
+
+    /** The time the capture started, in nanoseconds. */
+    final long started;
+
+    /**
+     * Instantiates a new snapshot.
+     *
+     * @param series the series
+     * @param baselines the baselines
+     * @param wal the write-ahead log
+     * @param walSequence the wal sequence
+     * @param started the capture start
+     */
+    Snapshot(Map<String, StatsSeries> series, Map<String, StatsBaseline> baselines,
+        StatsWriteAheadLog wal, long walSequence, long started) {
+      this.series = series;
+      this.baselines = baselines;
+      this.wal = wal;
+      this.walSequence = walSequence;
+      this.started = started;
+    }
+  }
 
 }
@@ -0,0 +1,566 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Range query over a {@link StatsCollection}: the samples of one series, or of all series sharing
+ * a prefix, between {@code from} and {@code to}, aggregated into steps of {@code step}
+ * milliseconds.
+ *
+ * <p>
+ * Every series is evaluated in a single pass over its samples while holding its monitor, nothing
+ * is copied. When the raw samples do not reach back to {@code from}, or a rollup with no more
+ * than one bucket per step covers the range, the rollup buckets are aggregated instead.
+ * </p>
+ */
+public class StatsQuery {
+
+  /** The max number of steps of a query. */
+  public static final int MAX_STEPS = 10_000;
+
+  /** The max number of series a prefix query may match. */
+  public static final int MAX_SERIES = 200;
+
+  /**
+   * How the samples of a step are combined.
+   */
+  public enum Aggregation {
+
+    /** The smallest sample. */
+    MIN,
+
+    /** The largest sample. */
+    MAX,
+
+    /** The mean of the samples. */
+    AVG,
+
+    /** The sum of the samples. */
+    SUM,
+
+    /**
+     * The sum of the samples per second of the step. Meant for series holding per interval
+     * deltas, such as request counts.
+     */
+    RATE,
+
+    /**
+     * The given percentile of the samples. Rollup buckets contribute their average, once per
+     * bucket.
+     */
+    PERCENTILE
+  }
+
+  /** The series name, or the prefix. */
+  private String name;
+
+  /** Whether the name is a prefix. */
+  private boolean prefix;
+
+  /** The range start. */
+  private long from;
+
+  /** The range end. */
+  private long to;
+
+  /** The step, 0 for a single step covering the range. */
+  private long step;
+
+  /** The aggregation. */
+  private Aggregation aggregation = Aggregation.AVG;
+
+  /** The percentile, for {@link Aggregation#PERCENTILE}. */
+  private double percentile = 99;
+
+  /**
+   * Gets the name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Sets the name.
+   *
+   * @param name the new name
+   */
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Checks if the name is a prefix.
+   *
+   * @return true, if is prefix
+   */
+  public boolean isPrefix() {
+    return prefix;
+  }
+
+  /**
+   * Sets whether the name is a prefix.
+   *
+   * @param prefix the new prefix
+   */
+  public void setPrefix(boolean prefix) {
+    this.prefix = prefix;
+  }
+
+  /**
+   * Gets the range start.
+   *
+   * @return the from
+   */
+  public long getFrom() {
+    return from;
+  }
+
+  /**
+   * Sets the range start.
+   *
+   * @param from the new from
+   */
+  public void setFrom(long from) {
+    this.from = from;
+  }
+
+  /**
+   * Gets the range end.
+   *
+   * @return the to
+   */
+  public long getTo() {
+    return to;
+  }
+
+  /**
+   * Sets the range end.
+   *
+   * @param to the new to
+   */
+  public void setTo(long to) {
+    this.to = to;
+  }
+
+  /**
+   * Gets the step.
+   *
+   * @return the step
+   */
+  public long getStep() {
+    return step;
+  }
+
+  /**
+   * Sets the step.
+   *
+   * @param step the new step, 0 for a single step covering the range
+   */
+  public void setStep(long step) {
+    this.step = step;
+  }
+
+  /**
+   * Gets the aggregation.
+   *
+   * @return the aggregation
+   */
+  public Aggregation getAggregation() {
+    return aggregation;
+  }
+
+  /**
+   * Sets the aggregation.
+   *
+   * @param aggregation the new aggregation
+   */
+  public void setAggregation(Aggregation aggregation) {
+    this.aggregation = aggregation;
+  }
+
+  /**
+   * Sets the aggregation by name, e.g. {@code avg}, {@code p99} for the 99th percentile.
+   *
+   * @param aggregation the new aggregation
+   */
+  public void setAggregation(String aggregation) {
+    String value = aggregation.trim().toUpperCase(Locale.ROOT);
+    if (value.length() > 1 && value.charAt(0) == 'P' && Character.isDigit(value.charAt(1))) {
+      this.aggregation = Aggregation.PERCENTILE;
+      setPercentile(Double.parseDouble(value.substring(1)));
+    } else {
+      this.aggregation = Aggregation.valueOf(value);
+    }
+  }
+
+  /**
+   * Gets the percentile.
+   *
+   * @return the percentile
+   */
+  public double getPercentile() {
+    return percentile;
+  }
+
+  /**
+   * Sets the percentile.
+   *
+   * @param percentile the new percentile, between 0 and 100
+   */
+  public void setPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile out of range: " + percentile);
+    }
+    this.percentile = percentile;
+  }
+
+  /**
+   * Gets the number of steps.
+   *
+   * @return the step count
+   */
+  public int getStepCount() {
+    long span = to - from;
+    if (span <= 0) {
+      throw new IllegalArgumentException("Empty query range: " + from + ".." + to);
+    }
+    long count = step <= 0 ? 1 : (span + step - 1) / step;
+    if (count > MAX_STEPS) {
+      throw new IllegalArgumentException("Too many steps: " + count + ", at most " + MAX_STEPS);
+    }
+    return (int) count;
+  }
+
+  /**
+   * Runs the query.
+   *
+   * @param statsCollection the stats collection
+   *
+   * @return the results by series name, in name order
+   */
+  public Map<String, Result> execute(StatsCollection statsCollection) {
+    int steps = getStepCount();
+    Map<String, Result> results = new LinkedHashMap<>();
+    if (prefix) {
+      Map<String, StatsSeries> matches = statsCollection.getStatsByPrefix(name);
+      if (matches.size() > MAX_SERIES) {
+        throw new IllegalArgumentException(
+            "Too many series: " + matches.size() + ", at most " + MAX_SERIES);
+      }
+      for (Map.Entry<String, StatsSeries> entry : matches.entrySet()) {
+        results.put(entry.getKey(), evaluate(entry.getValue(), steps));
+      }
+    } else {
+      StatsSeries series = statsCollection.getStats(name);
+      if (series != null) {
+        results.put(name, evaluate(series, steps));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Evaluates the query on a single series.
+   *
+   * @param series the series
+   *
+   * @return the result
+   */
+  public Result evaluate(StatsSeries series) {
+    return evaluate(series, getStepCount());
+  }
+
+  /**
+   * Evaluates the query on a single series.
+   *
+   * @param series the series
+   * @param steps the step count
+   *
+   * @return the result
+   */
+  private Result evaluate(StatsSeries series, int steps) {
+    long stepWidth = step <= 0 ? to - from : step;
+    Accumulator acc = new Accumulator(from, stepWidth, steps,
+        aggregation == Aggregation.PERCENTILE);
+    long resolution;
+    synchronized (series) {
+      StatsRollup rollup = series.selectRollup(from, to, steps);
+      if (rollup == null) {
+        resolution = 0;
+        series.scan(from, to, acc);
+      } else {
+        resolution = rollup.getResolution();
+        for (int i = 0; i < rollup.size(); i++) {
+          long start = rollup.getStart(i);
+          if (start >= from && start < to) {
+            acc.accept(start, rollup.getMin(i), rollup.getMax(i), rollup.getSum(i),
+                rollup.getCount(i));
+          }
+        }
+      }
+    }
+    return acc.finish(aggregation, percentile, resolution);
+  }
+
+  /**
+   * The aggregated values of a series.
+   */
+  public static final class Result {
+
+    /** The step start times. */
+    private final long[] times;
+
+    /** The values, {@link Double#NaN} for steps without samples. */
+    private final double[] values;
+
+    /** The number of samples aggregated. */
+    private final long sampleCount;
+
+    /** The resolution of the rollup used, 0 for raw samples. */
+    private final long resolution;
+
+    /**
+     * Instantiates a new result.
+     *
+     * @param times the times
+     * @param values the values
+     * @param sampleCount the sample count
+     * @param resolution the resolution
+     */
+    Result(long[] times, double[] values, long sampleCount, long resolution) {
+      this.times = times;
+      this.values = values;
+      this.sampleCount = sampleCount;
+      this.resolution = resolution;
+    }
+
+    /**
+     * Gets the number of steps.
+     *
+     * @return the size
+     */
+    public int size() {
+      return times.length;
+    }
+
+    /**
+     * Gets the start of a step.
+     *
+     * @param index the index
+     *
+     * @return the time
+     */
+    public long getTime(int index) {
+      return times[index];
+    }
+
+    /**
+     * Gets the value of a step.
+     *
+     * @param index the index
+     *
+     * @return the value, {@link Double#NaN} if the step has no samples
+     */
+    public double getValue(int index) {
+      return values[index];
+    }
+
+    /**
+     * Gets the number of samples, or rollup buckets, aggregated.
+     *
+     * @return the sample count
+     */
+    public long getSampleCount() {
+      return sampleCount;
+    }
+
+    /**
+     * Gets the resolution of the rollup the result was computed from.
+     *
+     * @return the resolution in milliseconds, 0 for raw samples
+     */
+    public long getResolution() {
+      return resolution;
+    }
+  }
+
+  /**
+   * Per step running aggregates, fed in time order.
+   */
+  static final class Accumulator {
+
+    /** The range start. */
+    private final long from;
+
+    /** The step width. */
+    private final long stepWidth;
+
+    /** The mins. */
+    private final double[] mins;
+
+    /** The maxs. */
+    private final double[] maxs;
+
+    /** The sums. */
+    private final double[] sums;
+
+    /** The counts. */
+    private final long[] counts;
+
+    /** The values for percentiles, in step order, null if not needed. */
+    private double[] values;
+
+    /** The offset into {@link #values} of the first value of each step. */
+    private final int[] offsets;
+
+    /** The number of values. */
+    private int valueCount;
+
+    /** The total number of samples. */
+    private long sampleCount;
+
+    /**
+     * Instantiates a new accumulator.
+     *
+     * @param from the range start
+     * @param stepWidth the step width
+     * @param steps the step count
+     * @param keepValues whether values are kept for percentiles
+     */
+    Accumulator(long from, long stepWidth, int steps, boolean keepValues) {
+      this.from = from;
+      this.stepWidth = stepWidth;
+      mins = new double[steps];
+      maxs = new double[steps];
+      sums = new double[steps];
+      counts = new long[steps];
+      Arrays.fill(mins, Double.POSITIVE_INFINITY);
+      Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+      if (keepValues) {
+        values = new double[64];
+        offsets = new int[steps + 1];
+      } else {
+        offsets = null;
+      }
+    }
+
+    /**
+     * Adds a raw sample.
+     *
+     * @param time the time
+     * @param value the value
+     */
+    void accept(long time, double value) {
+      accept(time, value, value, value, 1);
+    }
+
+    /**
+     * Adds a sample or a rollup bucket.
+     *
+     * @param time the time
+     * @param min the min
+     * @param max the max
+     * @param sum the sum
+     * @param count the count
+     */
+    void accept(long time, double min, double max, double sum, long count) {
+      int index = (int) ((time - from) / stepWidth);
+      if (index < 0 || index >= counts.length || count <= 0) {
+        return;
+      }
+      mins[index] = Math.min(mins[index], min);
+      maxs[index] = Math.max(maxs[index], max);
+      sums[index] += sum;
+      counts[index] += count;
+      sampleCount++;
+      if (values != null) {
+        if (valueCount == values.length) {
+          values = Arrays.copyOf(values, valueCount * 2);
+        }
+        values[valueCount++] = sum / count;
+        offsets[index + 1] = valueCount;
+      }
+    }
+
+    /**
+     * Computes the result.
+     *
+     * @param aggregation the aggregation
+     * @param percentile the percentile
+     * @param resolution the resolution of the data
+     *
+     * @return the result
+     */
+    Result finish(Aggregation aggregation, double percentile, long resolution) {
+      int steps = counts.length;
+      long[] times = new long[steps];
+      double[] result = new double[steps];
+      int previousEnd = 0;
+      for (int i = 0; i < steps; i++) {
+        times[i] = from + i * stepWidth;
+        if (offsets != null) {
+          // steps without values keep an offset of 0
+          offsets[i + 1] = Math.max(offsets[i + 1], previousEnd);
+          previousEnd = offsets[i + 1];
+        }
+        if (counts[i] == 0) {
+          result[i] = Double.NaN;
+          continue;
+        }
+        switch (aggregation) {
+          case MIN:
+            result[i] = mins[i];
+            break;
+          case MAX:
+            result[i] = maxs[i];
+            break;
+          case SUM:
+            result[i] = sums[i];
+            break;
+          case RATE:
+            result[i] = sums[i] * 1000 / stepWidth;
+            break;
+          case PERCENTILE:
+            result[i] = percentile(offsets[i], offsets[i + 1], percentile);
+            break;
+          case AVG:
+          default:
+            result[i] = sums[i] / counts[i];
+            break;
+        }
+      }
+      return new Result(times, result, sampleCount, resolution);
+    }
+
+    /**
+     * Computes a percentile of a range of the kept values, using the nearest rank.
+     *
+     * @param start the range start
+     * @param end the range end
+     * @param percentile the percentile
+     *
+     * @return the value
+     */
+    private double percentile(int start, int end, double percentile) {
+      Arrays.sort(values, start, end);
+      int rank = (int) Math.ceil(percentile / 100 * (end - start));
+      return values[start + Math.max(rank, 1) - 1];
+    }
+  }
+
+}
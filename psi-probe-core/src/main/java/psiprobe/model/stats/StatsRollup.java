@@ -0,0 +1,377 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+/**
+ * Fixed resolution aggregate of a {@link StatsSeries}, e.g. one bucket per minute.
+ *
+ * <p>
+ * Every bucket keeps min, max, sum, last value and sample count of the samples whose time falls
+ * into it. Buckets are kept in a ring of at most {@code capacity} entries which grows on demand,
+ * so a young series does not pay for the full retention. A rollup is owned by its series and is
+ * only accessed while holding the series monitor.
+ * </p>
+ */
+public class StatsRollup {
+
+  /** The Constant INITIAL_LENGTH. */
+  private static final int INITIAL_LENGTH = 8;
+
+  /** The bucket width in milliseconds. */
+  private final long resolution;
+
+  /** The max number of buckets. */
+  private int capacity;
+
+  /** The bucket start times. */
+  private long[] starts;
+
+  /** The minimums. */
+  private double[] mins;
+
+  /** The maximums. */
+  private double[] maxs;
+
+  /** The sums. */
+  private double[] sums;
+
+  /** The last values. */
+  private double[] lasts;
+
+  /** The sample counts. */
+  private int[] counts;
+
+  /** The index of the oldest bucket. */
+  private int head;
+
+  /** The number of buckets. */
+  private int size;
+
+  /** Whether buckets were dropped to respect the capacity. */
+  private boolean truncated;
+
+  /**
+   * Instantiates a new stats rollup.
+   *
+   * @param resolution the bucket width in milliseconds
+   * @param capacity the max number of buckets
+   */
+  public StatsRollup(long resolution, int capacity) {
+    if (resolution <= 0) {
+      throw new IllegalArgumentException("Rollup resolution must be positive: " + resolution);
+    }
+    this.resolution = resolution;
+    this.capacity = Math.max(capacity, 1);
+    allocate(Math.min(this.capacity, INITIAL_LENGTH));
+  }
+
+  /**
+   * Copy constructor.
+   *
+   * @param other the rollup to copy
+   */
+  private StatsRollup(StatsRollup other) {
+    this.resolution = other.resolution;
+    this.capacity = other.capacity;
+    this.starts = other.starts.clone();
+    this.mins = other.mins.clone();
+    this.maxs = other.maxs.clone();
+    this.sums = other.sums.clone();
+    this.lasts = other.lasts.clone();
+    this.counts = other.counts.clone();
+    this.head = other.head;
+    this.size = other.size;
+    this.truncated = other.truncated;
+  }
+
+  /**
+   * Copies the rollup. The caller holds the monitor of the owning series.
+   *
+   * @return the copy
+   */
+  StatsRollup copy() {
+    return new StatsRollup(this);
+  }
+
+  /**
+   * Adds a sample to the bucket its time falls into. Samples older than the newest bucket are
+   * ignored.
+   *
+   * @param time the time
+   * @param value the value
+   */
+  void add(long time, double value) {
+    long start = time - Math.floorMod(time, resolution);
+    if (size > 0) {
+      int newest = slot(size - 1);
+      if (starts[newest] == start) {
+        mins[newest] = Math.min(mins[newest], value);
+        maxs[newest] = Math.max(maxs[newest], value);
+        sums[newest] += value;
+        lasts[newest] = value;
+        counts[newest]++;
+        return;
+      }
+      if (start < starts[newest]) {
+        return;
+      }
+    }
+    restore(start, 1, value, value, value, value);
+  }
+
+  /**
+   * Appends a complete bucket, as read from a snapshot.
+   *
+   * @param start the bucket start
+   * @param count the count
+   * @param min the min
+   * @param max the max
+   * @param sum the sum
+   * @param last the last
+   */
+  void restore(long start, int count, double min, double max, double sum, double last) {
+    if (size == starts.length && size < capacity) {
+      allocate(Math.min(capacity, starts.length * 2));
+    }
+    int tail;
+    if (size == capacity) {
+      tail = head;
+      head = head + 1 == starts.length ? 0 : head + 1;
+      truncated = true;
+    } else {
+      tail = slot(size);
+      size++;
+    }
+    starts[tail] = start;
+    counts[tail] = count;
+    mins[tail] = min;
+    maxs[tail] = max;
+    sums[tail] = sum;
+    lasts[tail] = last;
+  }
+
+  /**
+   * Gets the bucket width in milliseconds.
+   *
+   * @return the resolution
+   */
+  public long getResolution() {
+    return resolution;
+  }
+
+  /**
+   * Gets the max number of buckets.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Changes the max number of buckets, keeping the most recent ones.
+   *
+   * @param capacity the new capacity
+   */
+  void setCapacity(int capacity) {
+    int cap = Math.max(capacity, 1);
+    if (cap < size) {
+      head = slot(size - cap);
+      size = cap;
+      truncated = true;
+    }
+    this.capacity = cap;
+    allocate(Math.max(size, Math.min(cap, INITIAL_LENGTH)));
+  }
+
+  /**
+   * Gets the number of buckets.
+   *
+   * @return the size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Checks whether the rollup holds data from at least the given time on. A rollup that never
+   * dropped a bucket covers the whole history of its series.
+   *
+   * @param from the time
+   *
+   * @return true, if successful
+   */
+  public boolean covers(long from) {
+    return size > 0 && (!truncated || starts[head] <= from);
+  }
+
+  /**
+   * Checks whether buckets were dropped to respect the capacity.
+   *
+   * @return true, if is truncated
+   */
+  boolean isTruncated() {
+    return truncated;
+  }
+
+  /**
+   * Sets whether buckets were dropped, as read from a snapshot.
+   *
+   * @param truncated the new truncated
+   */
+  void setTruncated(boolean truncated) {
+    this.truncated = truncated;
+  }
+
+  /**
+   * Gets the start of the bucket at the given position, {@code 0} being the oldest.
+   *
+   * @param index the index
+   *
+   * @return the start
+   */
+  public long getStart(int index) {
+    return starts[checkedSlot(index)];
+  }
+
+  /**
+   * Gets the min.
+   *
+   * @param index the index
+   *
+   * @return the min
+   */
+  public double getMin(int index) {
+    return mins[checkedSlot(index)];
+  }
+
+  /**
+   * Gets the max.
+   *
+   * @param index the index
+   *
+   * @return the max
+   */
+  public double getMax(int index) {
+    return maxs[checkedSlot(index)];
+  }
+
+  /**
+   * Gets the sum.
+   *
+   * @param index the index
+   *
+   * @return the sum
+   */
+  public double getSum(int index) {
+    return sums[checkedSlot(index)];
+  }
+
+  /**
+   * Gets the average.
+   *
+   * @param index the index
+   *
+   * @return the avg
+   */
+  public double getAvg(int index) {
+    int slot = checkedSlot(index);
+    return sums[slot] / counts[slot];
+  }
+
+  /**
+   * Gets the last value.
+   *
+   * @param index the index
+   *
+   * @return the last
+   */
+  public double getLast(int index) {
+    return lasts[checkedSlot(index)];
+  }
+
+  /**
+   * Gets the sample count.
+   *
+   * @param index the index
+   *
+   * @return the count
+   */
+  public int getCount(int index) {
+    return counts[checkedSlot(index)];
+  }
+
+  /**
+   * Removes all buckets.
+   */
+  void clear() {
+    head = 0;
+    size = 0;
+    truncated = false;
+  }
+
+  /**
+   * Reallocates the arrays, moving the oldest bucket to position zero.
+   *
+   * @param length the new length
+   */
+  private void allocate(int length) {
+    long[] newStarts = new long[length];
+    double[] newMins = new double[length];
+    double[] newMaxs = new double[length];
+    double[] newSums = new double[length];
+    double[] newLasts = new double[length];
+    int[] newCounts = new int[length];
+    for (int i = 0; i < size; i++) {
+      int src = slot(i);
+      newStarts[i] = starts[src];
+      newMins[i] = mins[src];
+      newMaxs[i] = maxs[src];
+      newSums[i] = sums[src];
+      newLasts[i] = lasts[src];
+      newCounts[i] = counts[src];
+    }
+    starts = newStarts;
+    mins = newMins;
+    maxs = newMaxs;
+    sums = newSums;
+    lasts = newLasts;
+    counts = newCounts;
+    head = 0;
+  }
+
+  /**
+   * Maps a logical position to an array slot.
+   *
+   * @param index the index
+   *
+   * @return the slot
+   */
+  private int slot(int index) {
+    int slot = head + index;
+    return slot >= starts.length ? slot - starts.length : slot;
+  }
+
+  /**
+   * Maps a logical position to an array slot, checking bounds.
+   *
+   * @param index the index
+   *
+   * @return the slot
+   */
+  private int checkedSlot(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return slot(index);
+  }
+
+}
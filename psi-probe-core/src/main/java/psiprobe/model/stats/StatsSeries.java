@@ -0,0 +1,348 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+/**
+ * Fixed capacity time series backed by parallel primitive arrays.
+ *
+ * <p>
+ * Samples are kept in a ring buffer: appending to a full series overwrites the oldest sample, so
+ * both append and eviction are O(1) and no per-sample objects are allocated. Index {@code 0}
+ * always refers to the oldest retained sample.
+ * </p>
+ *
+ * <p>
+ * A series may carry {@link StatsRollup rollups} which aggregate every appended sample into
+ * coarser buckets and so retain a much longer history than the raw samples.
+ * </p>
+ *
+ * <p>
+ * All accessors synchronize on the series itself, there is no lock shared between series. A
+ * series has a single writer, the collector owning it. Readers that need a consistent view for
+ * longer than a few accessor calls, such as charts and snapshots, should work on a {@link #copy()}
+ * instead of holding the series monitor and blocking the writer.
+ * </p>
+ */
+public class StatsSeries {
+
+  /** The timestamps. */
+  private long[] times;
+
+  /** The values. */
+  private double[] values;
+
+  /** The index of the oldest sample. */
+  private int head;
+
+  /** The number of retained samples. */
+  private int size;
+
+  /** Whether samples were evicted to respect the capacity. */
+  private boolean truncated;
+
+  /** The rollups, finest resolution first. */
+  private StatsRollup[] rollups = new StatsRollup[0];
+
+  /**
+   * Instantiates a new stats series.
+   *
+   * @param capacity the max number of samples retained
+   */
+  public StatsSeries(int capacity) {
+    int cap = Math.max(capacity, 0);
+    this.times = new long[cap];
+    this.values = new double[cap];
+  }
+
+  /**
+   * Copies the series and its rollups. The monitor is only held for the duration of a few array
+   * copies.
+   *
+   * @return the copy
+   */
+  public synchronized StatsSeries copy() {
+    StatsSeries copy = new StatsSeries(0);
+    copy.times = times.clone();
+    copy.values = values.clone();
+    copy.head = head;
+    copy.size = size;
+    copy.truncated = truncated;
+    copy.rollups = new StatsRollup[rollups.length];
+    for (int i = 0; i < rollups.length; i++) {
+      copy.rollups[i] = rollups[i].copy();
+    }
+    return copy;
+  }
+
+  /**
+   * Appends a sample, evicting the oldest one if the series is full.
+   *
+   * @param time the time
+   * @param value the value
+   */
+  public synchronized void add(long time, double value) {
+    int capacity = times.length;
+    if (capacity == 0) {
+      return;
+    }
+    int tail = head + size;
+    if (tail >= capacity) {
+      tail -= capacity;
+    }
+    times[tail] = time;
+    values[tail] = value;
+    if (size == capacity) {
+      head = head + 1 == capacity ? 0 : head + 1;
+      truncated = true;
+    } else {
+      size++;
+    }
+    for (StatsRollup rollup : rollups) {
+      rollup.add(time, value);
+    }
+  }
+
+  /**
+   * Gets the time of the sample at the given position.
+   *
+   * @param index the position, {@code 0} being the oldest sample
+   *
+   * @return the time
+   */
+  public synchronized long getTime(int index) {
+    return times[physicalIndex(index)];
+  }
+
+  /**
+   * Gets the value of the sample at the given position.
+   *
+   * @param index the position, {@code 0} being the oldest sample
+   *
+   * @return the value
+   */
+  public synchronized double getValue(int index) {
+    return values[physicalIndex(index)];
+  }
+
+  /**
+   * Gets the time of the most recent sample.
+   *
+   * @return the last time, or {@code 0} if the series is empty
+   */
+  public synchronized long getLastTime() {
+    return size == 0 ? 0 : times[physicalIndex(size - 1)];
+  }
+
+  /**
+   * Gets the value of the most recent sample.
+   *
+   * @return the last value, or {@code 0} if the series is empty
+   */
+  public synchronized double getLastValue() {
+    return size == 0 ? 0 : values[physicalIndex(size - 1)];
+  }
+
+  /**
+   * Gets the number of retained samples.
+   *
+   * @return the size
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Checks if is empty.
+   *
+   * @return true, if is empty
+   */
+  public synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Gets the capacity.
+   *
+   * @return the capacity
+   */
+  public synchronized int getCapacity() {
+    return times.length;
+  }
+
+  /**
+   * Changes the capacity, keeping the most recent samples that still fit.
+   *
+   * @param capacity the new capacity
+   */
+  public synchronized void setCapacity(int capacity) {
+    int cap = Math.max(capacity, 0);
+    if (cap == times.length) {
+      return;
+    }
+    int keep = Math.min(size, cap);
+    if (keep < size) {
+      truncated = true;
+    }
+    long[] newTimes = new long[cap];
+    double[] newValues = new double[cap];
+    for (int i = 0; i < keep; i++) {
+      int src = physicalIndex(size - keep + i);
+      newTimes[i] = times[src];
+      newValues[i] = values[src];
+    }
+    times = newTimes;
+    values = newValues;
+    head = 0;
+    size = keep;
+  }
+
+  /**
+   * Removes all samples.
+   */
+  public synchronized void clear() {
+    head = 0;
+    size = 0;
+    truncated = false;
+    for (StatsRollup rollup : rollups) {
+      rollup.clear();
+    }
+  }
+
+  /**
+   * Checks whether the raw samples reach back to at least the given time. A series that never
+   * evicted a sample covers its whole history.
+   *
+   * @param from the time
+   *
+   * @return true, if successful
+   */
+  public synchronized boolean covers(long from) {
+    return size > 0 && (!truncated || times[head] <= from);
+  }
+
+  /**
+   * Checks whether samples were evicted to respect the capacity.
+   *
+   * @return true, if is truncated
+   */
+  synchronized boolean isTruncated() {
+    return truncated;
+  }
+
+  /**
+   * Sets whether samples were evicted, as read from a snapshot.
+   *
+   * @param truncated the new truncated
+   */
+  synchronized void setTruncated(boolean truncated) {
+    this.truncated = truncated;
+  }
+
+  /**
+   * Gets the rollups, finest resolution first. The rollups must only be read while holding the
+   * series monitor.
+   *
+   * @return the rollups
+   */
+  public synchronized StatsRollup[] getRollups() {
+    return rollups.clone();
+  }
+
+  /**
+   * Sets the rollups, finest resolution first.
+   *
+   * @param rollups the new rollups
+   */
+  public synchronized void setRollups(StatsRollup... rollups) {
+    this.rollups = rollups.clone();
+  }
+
+  /**
+   * Chooses the data to draw the given time window with at the given width. Picks the coarsest
+   * rollup that still covers the window with no more than one bucket per pixel; failing that,
+   * the finest data that covers the window, falling back to the longest history available.
+   *
+   * @param from the start of the window
+   * @param to the end of the window
+   * @param width the width in pixels
+   *
+   * @return the rollup, or {@code null} for the raw samples
+   */
+  public synchronized StatsRollup selectRollup(long from, long to, int width) {
+    long maxResolution = width > 0 ? (to - from) / width : 0;
+    for (int i = rollups.length - 1; i >= 0; i--) {
+      if (rollups[i].getResolution() <= maxResolution && rollups[i].covers(from)) {
+        return rollups[i];
+      }
+    }
+    if (covers(from)) {
+      return null;
+    }
+    for (StatsRollup rollup : rollups) {
+      if (rollup.covers(from)) {
+        return rollup;
+      }
+    }
+    StatsRollup longest = null;
+    long oldest = size == 0 ? Long.MAX_VALUE : times[head];
+    for (StatsRollup rollup : rollups) {
+      if (rollup.size() > 0 && rollup.getStart(0) < oldest) {
+        longest = rollup;
+        oldest = rollup.getStart(0);
+      }
+    }
+    return longest;
+  }
+
+  /**
+   * Feeds the samples with {@code from <= time < to} to an accumulator, oldest first. The first
+   * sample is found by binary search, samples being kept in time order.
+   *
+   * @param from the range start
+   * @param to the range end
+   * @param acc the accumulator
+   */
+  synchronized void scan(long from, long to, StatsQuery.Accumulator acc) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (times[physicalIndex(mid)] < from) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    for (int i = low; i < size; i++) {
+      int slot = physicalIndex(i);
+      if (times[slot] >= to) {
+        break;
+      }
+      acc.accept(times[slot], values[slot]);
+    }
+  }
+
+  /**
+   * Maps a logical position to an array slot.
+   *
+   * @param index the logical position
+   *
+   * @return the array slot
+   */
+  private int physicalIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    int slot = head + index;
+    return slot >= times.length ? slot - times.length : slot;
+  }
+
+}
@@ -0,0 +1,678 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes the binary stats snapshot.
+ *
+ * <p>
+ * Layout: a magic number and a format version, the first write-ahead log segment not covered by
+ * the snapshot (since version 2), the number of series, then for each series its name, capacity
+ * and sample count followed by the samples. Timestamps are stored as zig-zag
+ * varints of the delta-of-delta to the previous samples, which is usually a single byte for a
+ * collector running at a fixed period. Values are XOR-ed with the previous value and only the
+ * non-zero bytes of the result are written, preceded by a control byte holding the number of
+ * leading and trailing zero bytes.
+ * </p>
+ *
+ * <p>
+ * Since version 3 every series is followed by a flag telling whether samples were evicted and by
+ * its rollups: resolution, capacity, the same flag and bucket count, then for each bucket its
+ * start (delta-of-delta encoded like timestamps), sample count, and min, max, sum and last value,
+ * each XOR-ed with the same field of the previous bucket.
+ * </p>
+ *
+ * <p>
+ * Since version 4 the series are followed by the number of {@link StatsBaseline baselines}, then
+ * for each baseline its name, sample count, first and last sample time, season resolution and
+ * length, the current slot and its sample count, and its mean, variance, level, trend, error
+ * variance, current slot sum and seasonal offsets, written like sample values.
+ * </p>
+ */
+public final class StatsSnapshotCodec {
+
+  /** The Constant MAGIC. */
+  static final int MAGIC = 0x50534953;
+
+  /** The Constant VERSION. */
+  static final int VERSION = 4;
+
+  /** The Constant BUFFER_SIZE. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Prevent Instantiation.
+   */
+  private StatsSnapshotCodec() {
+    // Prevent Instantiation
+  }
+
+  /**
+   * Writes the series to the given file, replacing its content.
+   *
+   * @param stats the series by name
+   * @param walSequence the first write-ahead log segment whose samples are not in {@code stats}
+   * @param file the file
+   *
+   * @return the number of bytes written
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static long write(Map<String, StatsSeries> stats, long walSequence, Path file)
+      throws IOException {
+    return write(stats, Collections.emptyMap(), walSequence, file);
+  }
+
+  /**
+   * Writes the series and baselines to the given file, replacing its content. Series and
+   * baselines are read one sample at a time, callers pass copies of those still being appended
+   * to.
+   *
+   * @param stats the series by name
+   * @param baselines the baselines by series name
+   * @param walSequence the first write-ahead log segment whose samples are not in {@code stats}
+   * @param file the file
+   *
+   * @return the number of bytes written
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static long write(Map<String, StatsSeries> stats, Map<String, StatsBaseline> baselines,
+      long walSequence, Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      Output out = new Output(channel);
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      out.writeVarLong(walSequence);
+      out.writeVarLong(stats.size());
+      for (Map.Entry<String, StatsSeries> entry : stats.entrySet()) {
+        out.writeString(entry.getKey());
+        writeSeries(out, entry.getValue());
+      }
+      out.writeVarLong(baselines.size());
+      for (Map.Entry<String, StatsBaseline> entry : baselines.entrySet()) {
+        out.writeString(entry.getKey());
+        writeBaseline(out, entry.getValue().getState());
+      }
+      out.flush();
+      return channel.position();
+    }
+  }
+
+  /**
+   * Reads series from the given file.
+   *
+   * @param file the file
+   *
+   * @return the snapshot
+   *
+   * @throws IOException Signals that an I/O exception has occurred, or the file is not a stats
+   *         snapshot
+   */
+  public static Snapshot read(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      Input in = new Input(channel);
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a stats snapshot: " + file);
+      }
+      int version = in.readByte();
+      if (version < 1 || version > VERSION) {
+        throw new IOException("Unsupported stats snapshot version " + version + ": " + file);
+      }
+      long walSequence = version >= 2 ? in.readVarLong() : 0;
+      long count = in.readVarLong();
+      Map<String, StatsSeries> stats = new TreeMap<>();
+      for (long i = 0; i < count; i++) {
+        String name = in.readString();
+        stats.put(name, readSeries(in, version));
+      }
+      Map<String, StatsBaseline> baselines = new TreeMap<>();
+      if (version >= 4) {
+        long baselineCount = in.readVarLong();
+        for (long i = 0; i < baselineCount; i++) {
+          String name = in.readString();
+          StatsBaseline baseline = new StatsBaseline();
+          baseline.setState(readBaseline(in));
+          baselines.put(name, baseline);
+        }
+      }
+      return new Snapshot(stats, baselines, walSequence);
+    }
+  }
+
+  /**
+   * Writes a single series.
+   *
+   * @param out the out
+   * @param series the series
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeSeries(Output out, StatsSeries series) throws IOException {
+    int size = series.size();
+    out.writeVarLong(series.getCapacity());
+    out.writeVarLong(size);
+    long prevTime = 0;
+    long prevDelta = 0;
+    long prevBits = 0;
+    for (int i = 0; i < size; i++) {
+      long time = series.getTime(i);
+      long delta = time - prevTime;
+      out.writeVarLong(zigZag(delta - prevDelta));
+      prevTime = time;
+      prevDelta = delta;
+
+      long bits = Double.doubleToRawLongBits(series.getValue(i));
+      writeXor(out, bits ^ prevBits);
+      prevBits = bits;
+    }
+    out.writeByte(series.isTruncated() ? 1 : 0);
+    StatsRollup[] rollups = series.getRollups();
+    out.writeVarLong(rollups.length);
+    for (StatsRollup rollup : rollups) {
+      writeRollup(out, rollup);
+    }
+  }
+
+  /**
+   * Writes a single rollup.
+   *
+   * @param out the out
+   * @param rollup the rollup
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeRollup(Output out, StatsRollup rollup) throws IOException {
+    int size = rollup.size();
+    out.writeVarLong(rollup.getResolution());
+    out.writeVarLong(rollup.getCapacity());
+    out.writeByte(rollup.isTruncated() ? 1 : 0);
+    out.writeVarLong(size);
+    long prevStart = 0;
+    long prevDelta = 0;
+    long[] prevBits = new long[4];
+    long[] bits = new long[4];
+    for (int i = 0; i < size; i++) {
+      long start = rollup.getStart(i);
+      long delta = start - prevStart;
+      out.writeVarLong(zigZag(delta - prevDelta));
+      prevStart = start;
+      prevDelta = delta;
+      out.writeVarLong(rollup.getCount(i));
+
+      bits[0] = Double.doubleToRawLongBits(rollup.getMin(i));
+      bits[1] = Double.doubleToRawLongBits(rollup.getMax(i));
+      bits[2] = Double.doubleToRawLongBits(rollup.getSum(i));
+      bits[3] = Double.doubleToRawLongBits(rollup.getLast(i));
+      for (int j = 0; j < bits.length; j++) {
+        writeXor(out, bits[j] ^ prevBits[j]);
+        prevBits[j] = bits[j];
+      }
+    }
+  }
+
+  /**
+   * Writes the state of a baseline.
+   *
+   * @param out the out
+   * @param state the state
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeBaseline(Output out, StatsBaseline.State state) throws IOException {
+    out.writeVarLong(state.count);
+    out.writeVarLong(zigZag(state.firstTime));
+    out.writeVarLong(zigZag(state.lastTime - state.firstTime));
+    out.writeVarLong(state.seasonResolution);
+    out.writeVarLong(state.seasonal.length);
+    out.writeVarLong(zigZag(state.currentSlot));
+    out.writeVarLong(state.slotCount);
+    writeXor(out, Double.doubleToRawLongBits(state.mean));
+    writeXor(out, Double.doubleToRawLongBits(state.variance));
+    writeXor(out, Double.doubleToRawLongBits(state.level));
+    writeXor(out, Double.doubleToRawLongBits(state.trend));
+    writeXor(out, Double.doubleToRawLongBits(state.errorVariance));
+    writeXor(out, Double.doubleToRawLongBits(state.slotSum));
+    for (double offset : state.seasonal) {
+      writeXor(out, Double.doubleToRawLongBits(offset));
+    }
+  }
+
+  /**
+   * Reads the state of a baseline.
+   *
+   * @param in the in
+   *
+   * @return the state
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static StatsBaseline.State readBaseline(Input in) throws IOException {
+    StatsBaseline.State state = new StatsBaseline.State();
+    state.count = in.readVarLong();
+    state.firstTime = unZigZag(in.readVarLong());
+    state.lastTime = state.firstTime + unZigZag(in.readVarLong());
+    state.seasonResolution = in.readVarLong();
+    state.seasonal = new double[(int) in.readVarLong()];
+    state.currentSlot = unZigZag(in.readVarLong());
+    state.slotCount = (int) in.readVarLong();
+    state.mean = Double.longBitsToDouble(readXor(in));
+    state.variance = Double.longBitsToDouble(readXor(in));
+    state.level = Double.longBitsToDouble(readXor(in));
+    state.trend = Double.longBitsToDouble(readXor(in));
+    state.errorVariance = Double.longBitsToDouble(readXor(in));
+    state.slotSum = Double.longBitsToDouble(readXor(in));
+    for (int i = 0; i < state.seasonal.length; i++) {
+      state.seasonal[i] = Double.longBitsToDouble(readXor(in));
+    }
+    return state;
+  }
+
+  /**
+   * Reads a single series.
+   *
+   * @param in the in
+   * @param version the snapshot version
+   *
+   * @return the stats series
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static StatsSeries readSeries(Input in, int version) throws IOException {
+    int capacity = (int) in.readVarLong();
+    int size = (int) in.readVarLong();
+    StatsSeries series = new StatsSeries(Math.max(capacity, size));
+    long prevTime = 0;
+    long prevDelta = 0;
+    long prevBits = 0;
+    for (int i = 0; i < size; i++) {
+      long delta = prevDelta + unZigZag(in.readVarLong());
+      long time = prevTime + delta;
+      prevTime = time;
+      prevDelta = delta;
+
+      long bits = prevBits ^ readXor(in);
+      prevBits = bits;
+      series.add(time, Double.longBitsToDouble(bits));
+    }
+    if (capacity != series.getCapacity()) {
+      series.setCapacity(capacity);
+    }
+    if (version < 3) {
+      // older snapshots do not tell, a full series has most likely evicted samples
+      series.setTruncated(size >= capacity);
+      return series;
+    }
+    series.setTruncated(in.readByte() != 0);
+    StatsRollup[] rollups = new StatsRollup[(int) in.readVarLong()];
+    for (int i = 0; i < rollups.length; i++) {
+      rollups[i] = readRollup(in);
+    }
+    series.setRollups(rollups);
+    return series;
+  }
+
+  /**
+   * Reads a single rollup.
+   *
+   * @param in the in
+   *
+   * @return the stats rollup
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static StatsRollup readRollup(Input in) throws IOException {
+    long resolution = in.readVarLong();
+    int capacity = (int) in.readVarLong();
+    boolean truncated = in.readByte() != 0;
+    int size = (int) in.readVarLong();
+    StatsRollup rollup = new StatsRollup(resolution, Math.max(capacity, size));
+    long prevStart = 0;
+    long prevDelta = 0;
+    long[] bits = new long[4];
+    for (int i = 0; i < size; i++) {
+      long delta = prevDelta + unZigZag(in.readVarLong());
+      long start = prevStart + delta;
+      prevStart = start;
+      prevDelta = delta;
+      int count = (int) in.readVarLong();
+      for (int j = 0; j < bits.length; j++) {
+        bits[j] ^= readXor(in);
+      }
+      rollup.restore(start, count, Double.longBitsToDouble(bits[0]),
+          Double.longBitsToDouble(bits[1]), Double.longBitsToDouble(bits[2]),
+          Double.longBitsToDouble(bits[3]));
+    }
+    if (capacity != rollup.getCapacity()) {
+      rollup.setCapacity(capacity);
+    }
+    rollup.setTruncated(truncated);
+    return rollup;
+  }
+
+  /**
+   * Writes the XOR of two consecutive values.
+   *
+   * @param out the out
+   * @param xor the xor
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeXor(Output out, long xor) throws IOException {
+    if (xor == 0) {
+      out.writeByte(0);
+      return;
+    }
+    int leading = Long.numberOfLeadingZeros(xor) / 8;
+    int trailing = Long.numberOfTrailingZeros(xor) / 8;
+    out.writeByte(0x80 | leading << 3 | trailing);
+    for (int i = 7 - leading; i >= trailing; i--) {
+      out.writeByte((int) (xor >>> (i * 8)));
+    }
+  }
+
+  /**
+   * Reads the XOR of two consecutive values.
+   *
+   * @param in the in
+   *
+   * @return the xor
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static long readXor(Input in) throws IOException {
+    int control = in.readByte();
+    if (control == 0) {
+      return 0;
+    }
+    int leading = (control >>> 3) & 0x07;
+    int trailing = control & 0x07;
+    long xor = 0;
+    for (int i = 7 - leading; i >= trailing; i--) {
+      xor |= (long) in.readByte() << (i * 8);
+    }
+    return xor;
+  }
+
+  /**
+   * Zig zag encoding, so that small negative numbers are small varints too.
+   *
+   * @param value the value
+   *
+   * @return the encoded value
+   */
+  static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /**
+   * Reverses {@link #zigZag(long)}.
+   *
+   * @param value the encoded value
+   *
+   * @return the value
+   */
+  static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * The content of a snapshot file.
+   */
+  public static final class Snapshot {
+
+    /** The stats. */
+    private final Map<String, StatsSeries> stats;
+
+    /** The baselines. */
+    private final Map<String, StatsBaseline> baselines;
+
+    /** The wal sequence. */
+    private final long walSequence;
+
+    /**
+     * Instantiates a new snapshot.
+     *
+     * @param stats the stats
+     * @param baselines the baselines
+     * @param walSequence the wal sequence
+     */
+    Snapshot(Map<String, StatsSeries> stats, Map<String, StatsBaseline> baselines,
+        long walSequence) {
+      this.stats = stats;
+      this.baselines = baselines;
+      this.walSequence = walSequence;
+    }
+
+    /**
+     * Gets the series by name.
+     *
+     * @return the stats
+     */
+    public Map<String, StatsSeries> getStats() {
+      return stats;
+    }
+
+    /**
+     * Gets the baselines by series name.
+     *
+     * @return the baselines, empty for snapshots older than version 4
+     */
+    public Map<String, StatsBaseline> getBaselines() {
+      return baselines;
+    }
+
+    /**
+     * Gets the first write-ahead log segment not covered by the snapshot.
+     *
+     * @return the wal sequence
+     */
+    public long getWalSequence() {
+      return walSequence;
+    }
+  }
+
+  /**
+   * Buffered writer on top of a file channel.
+   */
+  static final class Output {
+
+    /** The channel. */
+    private final FileChannel channel;
+
+    /** The buffer. */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Instantiates a new output.
+     *
+     * @param channel the channel
+     */
+    Output(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Write byte.
+     *
+     * @param value the value
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void writeByte(int value) throws IOException {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      buffer.put((byte) value);
+    }
+
+    /**
+     * Write int.
+     *
+     * @param value the value
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void writeInt(int value) throws IOException {
+      for (int i = 3; i >= 0; i--) {
+        writeByte(value >>> (i * 8));
+      }
+    }
+
+    /**
+     * Write an unsigned varint.
+     *
+     * @param value the value
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void writeVarLong(long value) throws IOException {
+      long remaining = value;
+      while ((remaining & ~0x7FL) != 0) {
+        writeByte((int) ((remaining & 0x7F) | 0x80));
+        remaining >>>= 7;
+      }
+      writeByte((int) remaining);
+    }
+
+    /**
+     * Write string.
+     *
+     * @param value the value
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void writeString(String value) throws IOException {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(bytes.length);
+      for (byte b : bytes) {
+        writeByte(b);
+      }
+    }
+
+    /**
+     * Flush.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  /**
+   * Buffered reader on top of a file channel.
+   */
+  static final class Input {
+
+    /** The channel. */
+    private final FileChannel channel;
+
+    /** The buffer. */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Instantiates a new input.
+     *
+     * @param channel the channel
+     */
+    Input(FileChannel channel) {
+      this.channel = channel;
+      buffer.flip();
+    }
+
+    /**
+     * Read byte.
+     *
+     * @return the unsigned byte value
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    int readByte() throws IOException {
+      if (!buffer.hasRemaining()) {
+        buffer.clear();
+        int read = channel.read(buffer);
+        buffer.flip();
+        if (read <= 0) {
+          throw new EOFException("Unexpected end of stats snapshot");
+        }
+      }
+      return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Read int.
+     *
+     * @return the int
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    int readInt() throws IOException {
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        value = value << 8 | readByte();
+      }
+      return value;
+    }
+
+    /**
+     * Read an unsigned varint.
+     *
+     * @return the long
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    long readVarLong() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IOException("Malformed varint in stats snapshot");
+    }
+
+    /**
+     * Read string.
+     *
+     * @return the string
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    String readString() throws IOException {
+      int length = (int) readVarLong();
+      byte[] bytes = new byte[length];
+      for (int i = 0; i < length; i++) {
+        bytes[i] = (byte) readByte();
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+}
@@ -0,0 +1,493 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of collected samples, so that samples taken since the last snapshot survive a
+ * crash.
+ *
+ * <p>
+ * Samples are written as fixed size records (series id, time, value) into memory-mapped segment
+ * files named {@code <baseName>.<sequence>}. Series names are written once to a dictionary file
+ * {@code <baseName>.names} together with the series capacity. A snapshot records the sequence
+ * returned by {@link #roll()}; on startup only segments from that sequence on are replayed, and
+ * older segments are removed by {@link #truncate(long)} once the snapshot is safely on disk.
+ * </p>
+ *
+ * <p>
+ * Appends take no lock: each one reserves its record in the current segment by advancing an
+ * atomic position, so collectors on any number of threads write side by side. Only the thread
+ * that finds the segment full maps the next one, while others that find it full wait for that.
+ * Full segments are forced to disk on a background thread rather than by the appending thread.
+ * </p>
+ */
+public class StatsWriteAheadLog implements Closeable {
+
+  /** The Constant logger. */
+  private static final Logger logger = LoggerFactory.getLogger(StatsWriteAheadLog.class);
+
+  /** The Constant MAGIC. */
+  private static final int MAGIC = 0x5053574C;
+
+  /** The Constant VERSION. */
+  private static final int VERSION = 1;
+
+  /** The Constant HEADER_SIZE: magic, version and sequence. */
+  static final int HEADER_SIZE = 16;
+
+  /** The Constant RECORD_SIZE: series id, time and value. */
+  static final int RECORD_SIZE = 20;
+
+  /** The directory. */
+  private final Path directory;
+
+  /** The base name. */
+  private final String baseName;
+
+  /** The segment size. */
+  private final int segmentSize;
+
+  /** The series ids by name, read without a lock. */
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+  /** The series names by id, guarded by the lock. */
+  private final List<String> names = new ArrayList<>();
+
+  /** The series capacities by id, guarded by the lock. */
+  private final List<Integer> capacities = new ArrayList<>();
+
+  /** The lock of the dictionary and of segment changes, never taken by an append to a segment. */
+  private final Object lock = new Object();
+
+  /** The dictionary channel. */
+  private FileChannel dictionary;
+
+  /** The current segment, null until the first append and after a roll. */
+  private volatile Segment segment;
+
+  /** The sequence of the next segment to create. */
+  private long nextSequence = 1;
+
+  /** The thread forcing full segments to disk, started by {@link #open()}. */
+  private ExecutorService forcer;
+
+  /**
+   * Instantiates a new write-ahead log.
+   *
+   * @param directory the directory
+   * @param baseName the base name of the log files
+   * @param segmentSize the segment size in bytes
+   */
+  public StatsWriteAheadLog(Path directory, String baseName, int segmentSize) {
+    this.directory = directory;
+    this.baseName = baseName;
+    this.segmentSize = Math.max(segmentSize, HEADER_SIZE + RECORD_SIZE);
+  }
+
+  /**
+   * Loads the series dictionary and finds existing segments. Must be called before any other
+   * method.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void open() throws IOException {
+    synchronized (lock) {
+      openDictionary();
+      forcer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "psi-probe-stats-wal");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Opens the dictionary and finds the sequence of the next segment.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void openDictionary() throws IOException {
+    Files.createDirectories(directory);
+    Path dictionaryFile = directory.resolve(baseName + ".names");
+    long validLength = Files.exists(dictionaryFile) ? readDictionary(dictionaryFile) : 0;
+    dictionary =
+        FileChannel.open(dictionaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    // drop a torn entry so that new entries are readable again
+    dictionary.truncate(validLength);
+    dictionary.position(validLength);
+    for (long sequence : listSegments().keySet()) {
+      nextSequence = Math.max(nextSequence, sequence + 1);
+    }
+  }
+
+  /**
+   * Replays all samples of segments with a sequence of at least {@code fromSequence}, oldest
+   * first.
+   *
+   * @param fromSequence the first segment not covered by the last snapshot
+   * @param consumer the consumer
+   *
+   * @return the number of replayed samples
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public long replay(long fromSequence, SampleConsumer consumer) throws IOException {
+    synchronized (lock) {
+      long count = 0;
+      for (Map.Entry<Long, Path> entry : listSegments().entrySet()) {
+        if (entry.getKey() >= fromSequence) {
+          count += replaySegment(entry.getValue(), consumer);
+        }
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Appends a sample.
+   *
+   * @param name the series name
+   * @param capacity the series capacity
+   * @param time the time
+   * @param value the value
+   *
+   * @return the time spent waiting for the log lock, in nanoseconds, 0 unless the sample defined
+   *         a series or found the segment full
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public long append(String name, int capacity, long time, double value) throws IOException {
+    long wait = 0;
+    Integer id = ids.get(name);
+    if (id == null) {
+      long waitStart = System.nanoTime();
+      synchronized (lock) {
+        wait += System.nanoTime() - waitStart;
+        id = ids.get(name);
+        if (id == null) {
+          id = define(name, capacity);
+        }
+      }
+    }
+    Segment current = segment;
+    int position = current == null ? -1 : current.reserve();
+    while (position < 0) {
+      long waitStart = System.nanoTime();
+      synchronized (lock) {
+        wait += System.nanoTime() - waitStart;
+        // another thread may have replaced the segment meanwhile, or a roll closed it
+        if (segment == current || segment == null) {
+          startSegment();
+        }
+        current = segment;
+      }
+      position = current.reserve();
+    }
+    current.write(position, id, time, value);
+    return wait;
+  }
+
+  /**
+   * Closes the current segment so that subsequent samples go to a new one. The closed segment is
+   * forced to disk by the calling thread.
+   *
+   * @return the sequence of the first segment that will hold samples appended after this call
+   */
+  public long roll() {
+    Segment closed;
+    long sequence;
+    synchronized (lock) {
+      closed = segment;
+      segment = null;
+      sequence = nextSequence;
+    }
+    if (closed != null) {
+      closed.buffer.force();
+    }
+    return sequence;
+  }
+
+  /**
+   * Deletes segments with a sequence lower than the given one.
+   *
+   * @param beforeSequence the first segment to keep
+   */
+  public void truncate(long beforeSequence) {
+    synchronized (lock) {
+      try {
+        for (Map.Entry<Long, Path> entry : listSegments().entrySet()) {
+          if (entry.getKey() < beforeSequence) {
+            Files.deleteIfExists(entry.getValue());
+          }
+        }
+      } catch (IOException e) {
+        logger.error("Could not truncate stats write-ahead log in '{}'", directory, e);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    ExecutorService stopped;
+    synchronized (lock) {
+      stopped = forcer;
+      forcer = null;
+    }
+    if (stopped != null) {
+      stopped.shutdown();
+      try {
+        stopped.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    roll();
+    synchronized (lock) {
+      if (dictionary != null) {
+        dictionary.close();
+        dictionary = null;
+      }
+    }
+  }
+
+  /**
+   * Assigns an id to a series and records it in the dictionary. Called with the lock held.
+   *
+   * @param name the name
+   * @param capacity the capacity
+   *
+   * @return the id
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private int define(String name, int capacity) throws IOException {
+    int id = names.size();
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(12 + bytes.length);
+    buffer.putInt(id).putInt(capacity).putInt(bytes.length).put(bytes).flip();
+    while (buffer.hasRemaining()) {
+      dictionary.write(buffer);
+    }
+    ids.put(name, id);
+    names.add(name);
+    capacities.add(capacity);
+    return id;
+  }
+
+  /**
+   * Reads the dictionary, ignoring a torn entry at the end.
+   *
+   * @param file the file
+   *
+   * @return the length of the valid part of the file
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private long readDictionary(Path file) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+    int validLength = 0;
+    while (buffer.remaining() >= 12) {
+      int id = buffer.getInt();
+      int capacity = buffer.getInt();
+      int length = buffer.getInt();
+      if (id != names.size() || length < 0 || length > buffer.remaining()) {
+        break;
+      }
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      String name = new String(bytes, StandardCharsets.UTF_8);
+      ids.put(name, id);
+      names.add(name);
+      capacities.add(capacity);
+      validLength = buffer.position();
+    }
+    return validLength;
+  }
+
+  /**
+   * Starts a new segment and hands the full one to the forcer. Called with the lock held.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void startSegment() throws IOException {
+    Segment full = segment;
+    long sequence = nextSequence++;
+    Path file = directory.resolve(baseName + "." + sequence);
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+    buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence);
+    segment = new Segment(buffer);
+    if (full != null) {
+      try {
+        if (forcer == null) {
+          throw new RejectedExecutionException("closed");
+        }
+        forcer.execute(full.buffer::force);
+      } catch (RejectedExecutionException e) {
+        logger.trace("", e);
+        full.buffer.force();
+      }
+    }
+  }
+
+  /**
+   * Replays a single segment.
+   *
+   * @param file the file
+   * @param consumer the consumer
+   *
+   * @return the number of replayed samples
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private long replaySegment(Path file, SampleConsumer consumer) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+    if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+      logger.warn("Ignoring '{}', not a stats write-ahead log segment", file);
+      return 0;
+    }
+    if (buffer.getInt() != VERSION) {
+      throw new IOException("Unsupported stats write-ahead log version in " + file);
+    }
+    buffer.getLong();
+    long count = 0;
+    while (buffer.remaining() >= RECORD_SIZE) {
+      int id = buffer.getInt() - 1;
+      long time = buffer.getLong();
+      double value = buffer.getDouble();
+      if (id == -1) {
+        // reserved by an append that did not finish, or past the last record
+        continue;
+      }
+      if (id < 0 || id >= names.size()) {
+        break;
+      }
+      consumer.accept(names.get(id), capacities.get(id), time, value);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Lists segment files by sequence.
+   *
+   * @return the segments
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private Map<Long, Path> listSegments() throws IOException {
+    Map<Long, Path> segments = new TreeMap<>();
+    String prefix = baseName + ".";
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*")) {
+      for (Path file : stream) {
+        String suffix = file.getFileName().toString().substring(prefix.length());
+        if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+          segments.put(Long.valueOf(suffix), file);
+        }
+      }
+    }
+    return segments;
+  }
+
+  /**
+   * A mapped segment and the position of its next free record.
+   */
+  private static final class Segment {
+
+    /** The buffer, only written at absolute positions, each record by the thread reserving it. */
+    final MappedByteBuffer buffer;
+
+    /** The position of the next free record. */
+    final AtomicInteger position = new AtomicInteger(HEADER_SIZE);
+
+    /**
+     * Instantiates a new segment.
+     *
+     * @param buffer the buffer, its header written
+     */
+    Segment(MappedByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * Reserves room for a record.
+     *
+     * @return the position of the record, -1 if the segment is full
+     */
+    int reserve() {
+      if (position.get() > buffer.capacity() - RECORD_SIZE) {
+        return -1;
+      }
+      int reserved = position.getAndAdd(RECORD_SIZE);
+      return reserved <= buffer.capacity() - RECORD_SIZE ? reserved : -1;
+    }
+
+    /**
+     * Writes a reserved record.
+     *
+     * @param at the position of the record
+     * @param id the series id
+     * @param time the time
+     * @param value the value
+     */
+    void write(int at, int id, long time, double value) {
+      buffer.putLong(at + 4, time);
+      buffer.putDouble(at + 12, value);
+      // the id goes in last, a zero id marks a record that is not written
+      buffer.putInt(at, id + 1);
+    }
+  }
+
+  /**
+   * Receives replayed samples.
+   */
+  @FunctionalInterface
+  public interface SampleConsumer {
+
+    /**
+     * Accept.
+     *
+     * @param name the series name
+     * @param capacity the series capacity
+     * @param time the time
+     * @param value the value
+     */
+    void accept(String name, int capacity, long time, double value);
+  }
+
+}
@@ -0,0 +1,772 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import psiprobe.beans.stats.collectors.AbstractStatsCollectorBean;
+import psiprobe.beans.stats.collectors.AppStatsCollectorBean;
+import psiprobe.beans.stats.collectors.ClusterStatsCollectorBean;
+import psiprobe.beans.stats.collectors.ConnectorStatsCollectorBean;
+import psiprobe.beans.stats.collectors.DatasourceStatsCollectorBean;
+import psiprobe.beans.stats.collectors.JvmMemoryStatsCollectorBean;
+import psiprobe.beans.stats.collectors.ProbeOverheadCollectorBean;
+import psiprobe.beans.stats.collectors.RuntimeStatsCollectorBean;
+import psiprobe.model.stats.StatsCollection;
+import psiprobe.tools.JmxTools;
+import psiprobe.tools.PlatformMXBeans;
+import psiprobe.tools.TimeExpression;
+
+/**
+ * Runs the stats collectors and the stats serializer, each every period at its phase, e.g. every
+ * 30 seconds at second 0.
+ *
+ * <p>
+ * A single dispatcher thread keeps time and hands every due job to a worker of its own, so that a
+ * slow data source or cluster collection cannot delay memory or runtime sampling. A job whose
+ * previous run has not finished when it is due again skips the run and counts an overrun instead
+ * of queueing up. Each job is offset from its phase by a random jitter chosen at start, so that
+ * probes on many servers do not all query their data sources at the same instant. On Java 21 and
+ * later, jobs can run on virtual threads instead of one platform thread each.
+ * </p>
+ *
+ * <p>
+ * After every run, the probe accounts for its own cost in the series
+ * {@code probe.self.<job>.wall} and {@code .cpu}, the wall clock and CPU time of the run in
+ * milliseconds, {@code .allocated}, the bytes allocated by the run, {@code .mbeanCalls}, the MBean
+ * server calls it made, {@code .lockWait}, the milliseconds a collector waited for series
+ * monitors held by readers and for the write-ahead log, {@code .lag}, the milliseconds between
+ * the scheduled and the actual start, and {@code .overruns}, the runs skipped since the previous
+ * run. CPU time and allocations are only reported where the JVM measures them per thread, which
+ * excludes virtual threads. They include the work a collector hands to its own pool.
+ * </p>
+ */
+public class StatsCollectionScheduler implements InitializingBean, DisposableBean {
+
+  /** The Constant logger. */
+  private static final Logger logger = LoggerFactory.getLogger(StatsCollectionScheduler.class);
+
+  /** The Constant SERIES_PREFIX. */
+  public static final String SERIES_PREFIX = "probe.self.";
+
+  /** The time workers are given to finish their run on shutdown, in seconds. */
+  private static final int SHUTDOWN_TIMEOUT = 10;
+
+  /**
+   * A unit of work run by the scheduler.
+   */
+  @FunctionalInterface
+  public interface Task {
+
+    /**
+     * Runs the task.
+     *
+     * @throws Throwable if the run failed
+     */
+    void run() throws Throwable;
+  }
+
+  /** The jobs, in registration order. */
+  private final List<Job> jobs = new ArrayList<>();
+
+  /** The stats collection the job metrics are added to. */
+  private StatsCollection statsCollection;
+
+  /** The max random offset of a job from its phase, in milliseconds. */
+  private long jitter = 5000;
+
+  /** Whether jobs run on virtual threads, where available. */
+  private boolean virtualThreads;
+
+  /** The thread keeping time, null while stopped. */
+  private ScheduledExecutorService dispatcher;
+
+  /**
+   * Stats collection.
+   *
+   * @param statsCollection the stats collection
+   */
+  @Inject
+  public void statsCollection(StatsCollection statsCollection) {
+    this.statsCollection = statsCollection;
+  }
+
+  /**
+   * Sets the max random offset of a job from its phase. It is capped at the job period.
+   *
+   * @param jitter the jitter, a time expression
+   *
+   * @throws TimeExpression.NewCustomException if the jitter is not a valid time expression
+   */
+  @Value("${psiprobe.beans.stats.scheduler.jitter}")
+  public void setJitter(String jitter) throws TimeExpression.NewCustomException {
+    this.jitter = TimeExpression.inSeconds(jitter) * 1000;
+  }
+
+  /**
+   * Sets whether jobs run on virtual threads. Ignored before Java 21.
+   *
+   * @param virtualThreads the new virtual threads
+   */
+  @Value("${psiprobe.beans.stats.scheduler.virtualThreads}")
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
+  /**
+   * Schedules the connector stats collector.
+   *
+   * @param collector the collector
+   * @param period the period
+   * @param phase the phase
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  @Autowired
+  public void scheduleConnectorStats(ConnectorStatsCollectorBean collector,
+      @Value("${psiprobe.beans.stats.collectors.connector.period}") String period,
+      @Value("${psiprobe.beans.stats.collectors.connector.phase}") String phase)
+      throws TimeExpression.NewCustomException {
+    addJob("connector", period, phase, collector);
+  }
+
+  /**
+   * Schedules the cluster stats collector.
+   *
+   * @param collector the collector
+   * @param period the period
+   * @param phase the phase
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  @Autowired
+  public void scheduleClusterStats(ClusterStatsCollectorBean collector,
+      @Value("${psiprobe.beans.stats.collectors.cluster.period}") String period,
+      @Value("${psiprobe.beans.stats.collectors.cluster.phase}") String phase)
+      throws TimeExpression.NewCustomException {
+    addJob("cluster", period, phase, collector);
+  }
+
+  /**
+   * Schedules the memory stats collector.
+   *
+   * @param collector the collector
+   * @param period the period
+   * @param phase the phase
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  @Autowired
+  public void scheduleMemoryStats(JvmMemoryStatsCollectorBean collector,
+      @Value("${psiprobe.beans.stats.collectors.memory.period}") String period,
+      @Value("${psiprobe.beans.stats.collectors.memory.phase}") String phase)
+      throws TimeExpression.NewCustomException {
+    addJob("memory", period, phase, collector);
+  }
+
+  /**
+   * Schedules the runtime stats collector.
+   *
+   * @param collector the collector
+   * @param period the period
+   * @param phase the phase
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  @Autowired
+  public void scheduleRuntimeStats(RuntimeStatsCollectorBean collector,
+      @Value("${psiprobe.beans.stats.collectors.runtime.period}") String period,
+      @Value("${psiprobe.beans.stats.collectors.runtime.phase}") String phase)
+      throws TimeExpression.NewCustomException {
+    addJob("runtime", period, phase, collector);
+  }
+
+  /**
+   * Schedules the application stats collector.
+   *
+   * @param collector the collector
+   * @param period the period
+   * @param phase the phase
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  @Autowired
+  public void scheduleAppStats(AppStatsCollectorBean collector,
+      @Value("${psiprobe.beans.stats.collectors.app.period}") String period,
+      @Value("${psiprobe.beans.stats.collectors.app.phase}") String phase)
+      throws TimeExpression.NewCustomException {
+    addJob("app", period, phase, collector);
+  }
+
+  /**
+   * Schedules the datasource stats collector.
+   *
+   * @param collector the collector
+   * @param period the period
+   * @param phase the phase
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  @Autowired
+  public void scheduleDatasourceStats(DatasourceStatsCollectorBean collector,
+      @Value("${psiprobe.beans.stats.collectors.datasource.period}") String period,
+      @Value("${psiprobe.beans.stats.collectors.datasource.phase}") String phase)
+      throws TimeExpression.NewCustomException {
+    addJob("datasource", period, phase, collector);
+  }
+
+  /**
+   * Schedules the collector of the probe overhead.
+   *
+   * @param collector the collector
+   * @param period the period
+   * @param phase the phase
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  @Autowired
+  public void scheduleSelfStats(ProbeOverheadCollectorBean collector,
+      @Value("${psiprobe.beans.stats.collectors.self.period}") String period,
+      @Value("${psiprobe.beans.stats.collectors.self.phase}") String phase)
+      throws TimeExpression.NewCustomException {
+    collector.setScheduler(this);
+    addJob("self", period, phase, collector::collect);
+  }
+
+  /**
+   * Schedules the stats serializer.
+   *
+   * @param collection the stats collection
+   * @param period the period
+   * @param phase the phase
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  @Autowired
+  public void scheduleStatsSerializer(StatsCollection collection,
+      @Value("${psiprobe.beans.stats.serializer.period}") String period,
+      @Value("${psiprobe.beans.stats.serializer.phase}") String phase)
+      throws TimeExpression.NewCustomException {
+    addJob("serializer", period, phase, collection::serialize);
+  }
+
+  /**
+   * Adds a job. Jobs added after the scheduler started are not run.
+   *
+   * @param name the job name, part of its metric series names
+   * @param period the period, a time expression; 0s to not run the job
+   * @param phase the offset from the top of the period, a time expression
+   * @param task the task
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  public synchronized void addJob(String name, String period, String phase, Task task)
+      throws TimeExpression.NewCustomException {
+    long periodMillis = TimeExpression.inSeconds(period) * 1000;
+    if (periodMillis <= 0) {
+      logger.info("Stats job '{}' has no period and is not scheduled", name);
+      return;
+    }
+    jobs.add(new Job(name, periodMillis, TimeExpression.inSeconds(phase) * 1000, task));
+  }
+
+  /**
+   * Adds a job running a stats collector, whose waits for series monitors are then reported.
+   *
+   * @param name the job name, part of its metric series names
+   * @param period the period, a time expression; 0s to not run the job
+   * @param phase the offset from the top of the period, a time expression
+   * @param collector the collector
+   *
+   * @throws TimeExpression.NewCustomException if a time expression is invalid
+   */
+  public synchronized void addJob(String name, String period, String phase,
+      AbstractStatsCollectorBean collector) throws TimeExpression.NewCustomException {
+    int count = jobs.size();
+    addJob(name, period, phase, collector::collect);
+    if (jobs.size() > count) {
+      jobs.get(count).collector = collector;
+    }
+  }
+
+  /**
+   * Gets the jobs.
+   *
+   * @return the jobs, in registration order
+   */
+  public synchronized List<Job> getJobs() {
+    return Collections.unmodifiableList(new ArrayList<>(jobs));
+  }
+
+  @Override
+  public synchronized void afterPropertiesSet() {
+    ThreadFactory virtualThreadFactory = virtualThreads ? virtualThreadFactory() : null;
+    if (virtualThreads && virtualThreadFactory == null) {
+      logger.info("Virtual threads need Java 21 or later, stats jobs run on platform threads");
+    } else if (virtualThreadFactory != null) {
+      logger.info("The JVM does not measure the CPU time and allocations of virtual threads,"
+          + " the CPU used by stats jobs is shown as unavailable");
+    }
+    dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "psi-probe-stats-scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long now = System.currentTimeMillis();
+    for (Job job : jobs) {
+      if (virtualThreadFactory != null) {
+        job.executor = runnable -> virtualThreadFactory.newThread(runnable).start();
+      } else {
+        ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "psi-probe-stats-" + job.name);
+          thread.setDaemon(true);
+          return thread;
+        });
+        job.worker = worker;
+        job.executor = worker;
+      }
+      long offset = jitter > 0 ? ThreadLocalRandom.current().nextLong(Math.min(jitter, job.period))
+          : 0;
+      job.nextFire = firstFire(now, job.period, job.phase) + offset;
+      job.schedule = dispatcher.scheduleAtFixedRate(() -> fire(job), job.nextFire - now,
+          job.period, TimeUnit.MILLISECONDS);
+      logger.debug("Scheduled stats job '{}' every {}ms, first run in {}ms", job.name, job.period,
+          job.nextFire - now);
+    }
+  }
+
+  @Override
+  public void destroy() throws InterruptedException {
+    List<Job> stopped;
+    synchronized (this) {
+      stopped = new ArrayList<>(jobs);
+      for (Job job : stopped) {
+        if (job.schedule != null) {
+          job.schedule.cancel(false);
+          job.schedule = null;
+        }
+      }
+      if (dispatcher != null) {
+        dispatcher.shutdownNow();
+        dispatcher = null;
+      }
+    }
+    for (Job job : stopped) {
+      if (job.worker != null) {
+        job.worker.shutdown();
+      }
+    }
+    for (Job job : stopped) {
+      if (job.worker != null && !job.worker.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+        logger.warn("Stats job '{}' did not finish within {}s", job.name, SHUTDOWN_TIMEOUT);
+        job.worker.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Gets the first time after {@code now} that is {@code phase} past a multiple of
+   * {@code period}.
+   *
+   * @param now the current time
+   * @param period the period
+   * @param phase the phase
+   *
+   * @return the first time a job is due
+   */
+  static long firstFire(long now, long period, long phase) {
+    return now - Math.floorMod(now - phase, period) + period;
+  }
+
+  /**
+   * Hands a due job to its worker, unless its previous run is still going. Called on the
+   * dispatcher thread.
+   *
+   * @param job the job
+   */
+  void fire(Job job) {
+    long scheduled = job.nextFire;
+    job.nextFire += job.period;
+    if (!job.running.compareAndSet(false, true)) {
+      job.overrunCount.incrementAndGet();
+      job.pendingOverruns.incrementAndGet();
+      logger.debug("Stats job '{}' still running, skipped the run due at {}", job.name, scheduled);
+      return;
+    }
+    try {
+      job.executor.execute(() -> run(job, scheduled));
+    } catch (RuntimeException e) {
+      job.running.set(false);
+      logger.error("Could not start stats job '{}'", job.name, e);
+    }
+  }
+
+  /**
+   * Runs a job and records its metrics. Called on the worker of the job.
+   *
+   * @param job the job
+   * @param scheduled the time the run was due
+   */
+  private void run(Job job, long scheduled) {
+    // both readings are -1 on virtual threads
+    long startCpu = PlatformMXBeans.getCurrentThreadCpuTime();
+    long startAllocated = PlatformMXBeans.getCurrentThreadAllocatedBytes();
+    long startCalls = JmxTools.getCallCount();
+    long startLockWait = job.collector == null ? 0 : job.collector.getLockWaitTime();
+    long startHelperCpu = job.collector == null ? 0 : job.collector.getHelperCpuTime();
+    long startHelperAllocated =
+        job.collector == null ? 0 : job.collector.getHelperAllocatedBytes();
+    long start = System.currentTimeMillis();
+    long started = System.nanoTime();
+    try {
+      job.task.run();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable e) {
+      job.failureCount.incrementAndGet();
+      logger.error("Stats job '{}' failed", job.name, e);
+    } finally {
+      long duration = (System.nanoTime() - started) / 1_000_000;
+      long lag = Math.max(start - scheduled, 0);
+      long endCpu = PlatformMXBeans.getCurrentThreadCpuTime();
+      long cpu = startCpu < 0 || endCpu < 0 ? -1 : endCpu - startCpu;
+      long endAllocated = PlatformMXBeans.getCurrentThreadAllocatedBytes();
+      long allocated = startAllocated < 0 || endAllocated < 0 ? -1 : endAllocated - startAllocated;
+      long calls = JmxTools.getCallCount() - startCalls;
+      long lockWait = job.collector == null ? 0 : job.collector.getLockWaitTime() - startLockWait;
+      if (job.collector != null) {
+        // work the collector handed to its own pool
+        if (cpu >= 0) {
+          cpu += job.collector.getHelperCpuTime() - startHelperCpu;
+        }
+        if (allocated >= 0) {
+          allocated += job.collector.getHelperAllocatedBytes() - startHelperAllocated;
+        }
+      }
+      job.lastDuration = duration;
+      job.maxDuration = Math.max(job.maxDuration, duration);
+      job.lastLag = lag;
+      job.recordCpu(cpu);
+      job.lastAllocated = allocated;
+      job.lastMBeanCalls = calls;
+      job.lastLockWait = lockWait;
+      job.runCount.incrementAndGet();
+      long overruns = job.pendingOverruns.getAndSet(0);
+      job.running.set(false);
+      if (statsCollection != null) {
+        String prefix = SERIES_PREFIX + job.name;
+        statsCollection.addInternalSample(prefix + ".wall", start, (double) duration);
+        if (cpu >= 0) {
+          statsCollection.addInternalSample(prefix + ".cpu", start, cpu / 1_000_000d);
+        }
+        if (allocated >= 0) {
+          statsCollection.addInternalSample(prefix + ".allocated", start, (double) allocated);
+        }
+        statsCollection.addInternalSample(prefix + ".mbeanCalls", start, (double) calls);
+        if (job.collector != null) {
+          statsCollection.addInternalSample(prefix + ".lockWait", start, lockWait / 1_000_000d);
+        }
+        statsCollection.addInternalSample(prefix + ".lag", start, (double) lag);
+        statsCollection.addInternalSample(prefix + ".overruns", start, (double) overruns);
+      }
+    }
+  }
+
+  /**
+   * Creates a factory of virtual threads through reflection, as the probe is built for Java 8.
+   *
+   * @return the thread factory, null before Java 21
+   */
+  static ThreadFactory virtualThreadFactory() {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder,
+          "psi-probe-stats-", 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException e) {
+      logger.trace("", e);
+      return null;
+    }
+  }
+
+  /**
+   * A scheduled job and its run statistics.
+   */
+  public static final class Job {
+
+    /** The name. */
+    final String name;
+
+    /** The period in milliseconds. */
+    final long period;
+
+    /** The phase in milliseconds. */
+    final long phase;
+
+    /** The task. */
+    final Task task;
+
+    /** The collector run by the task, null if the task is not a collector. */
+    AbstractStatsCollectorBean collector;
+
+    /** Whether a run is in progress. */
+    final AtomicBoolean running = new AtomicBoolean();
+
+    /** The number of completed runs. */
+    final AtomicLong runCount = new AtomicLong();
+
+    /** The number of runs skipped because the previous one had not finished. */
+    final AtomicLong overrunCount = new AtomicLong();
+
+    /** The runs skipped since the last completed run. */
+    final AtomicLong pendingOverruns = new AtomicLong();
+
+    /** The number of failed runs. */
+    final AtomicLong failureCount = new AtomicLong();
+
+    /** The time the next run is due, only used on the dispatcher thread. */
+    long nextFire;
+
+    /** The periodic firing of the job on the dispatcher, null when not scheduled. */
+    ScheduledFuture<?> schedule;
+
+    /** The executor running the job. */
+    Executor executor;
+
+    /** The platform thread running the job, null on virtual threads. */
+    ExecutorService worker;
+
+    /** The duration of the last run, in milliseconds. */
+    volatile long lastDuration;
+
+    /** The longest run, in milliseconds. */
+    volatile long maxDuration;
+
+    /** The lag of the last run, in milliseconds. */
+    volatile long lastLag;
+
+    /** The CPU time of the last run in nanoseconds, -1 if not measured. */
+    volatile long lastCpu = -1;
+
+    /** The CPU time of all runs, in nanoseconds. */
+    final AtomicLong cpuTime = new AtomicLong();
+
+    /** Whether the CPU time of every run so far was measured. */
+    volatile boolean cpuMeasured = true;
+
+    /** The bytes allocated by the last run, -1 if not measured. */
+    volatile long lastAllocated = -1;
+
+    /** The MBean server calls of the last run. */
+    volatile long lastMBeanCalls;
+
+    /** The time the last run waited for series monitors and the write-ahead log, in nanoseconds. */
+    volatile long lastLockWait;
+
+    /**
+     * Instantiates a new job.
+     *
+     * @param name the name
+     * @param period the period
+     * @param phase the phase
+     * @param task the task
+     */
+    Job(String name, long period, long phase, Task task) {
+      this.name = name;
+      this.period = period;
+      this.phase = phase;
+      this.task = task;
+    }
+
+    /**
+     * Gets the name.
+     *
+     * @return the name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Gets the period.
+     *
+     * @return the period in milliseconds
+     */
+    public long getPeriod() {
+      return period;
+    }
+
+    /**
+     * Checks if a run is in progress.
+     *
+     * @return true, if running
+     */
+    public boolean isRunning() {
+      return running.get();
+    }
+
+    /**
+     * Gets the number of completed runs.
+     *
+     * @return the run count
+     */
+    public long getRunCount() {
+      return runCount.get();
+    }
+
+    /**
+     * Gets the number of runs skipped because the previous one had not finished.
+     *
+     * @return the overrun count
+     */
+    public long getOverrunCount() {
+      return overrunCount.get();
+    }
+
+    /**
+     * Gets the number of failed runs.
+     *
+     * @return the failure count
+     */
+    public long getFailureCount() {
+      return failureCount.get();
+    }
+
+    /**
+     * Gets the duration of the last run.
+     *
+     * @return the last duration in milliseconds
+     */
+    public long getLastDuration() {
+      return lastDuration;
+    }
+
+    /**
+     * Gets the longest run.
+     *
+     * @return the max duration in milliseconds
+     */
+    public long getMaxDuration() {
+      return maxDuration;
+    }
+
+    /**
+     * Gets the time between the scheduled and the actual start of the last run.
+     *
+     * @return the last lag in milliseconds
+     */
+    public long getLastLag() {
+      return lastLag;
+    }
+
+    /**
+     * Gets the CPU time of the last run.
+     *
+     * @return the last CPU time in nanoseconds, -1 if not measured
+     */
+    public long getLastCpu() {
+      return lastCpu;
+    }
+
+    /**
+     * Gets the CPU time of all runs.
+     *
+     * @return the CPU time in nanoseconds, short of the runs that were not measured
+     */
+    public long getCpuTime() {
+      return cpuTime.get();
+    }
+
+    /**
+     * Checks whether the CPU time of every run so far was measured, which it is not on virtual
+     * threads.
+     *
+     * @return true, if {@link #getCpuTime()} is complete
+     */
+    public boolean isCpuMeasured() {
+      return cpuMeasured;
+    }
+
+    /**
+     * Records the CPU time of a run.
+     *
+     * @param cpu the CPU time in nanoseconds, -1 if not measured
+     */
+    void recordCpu(long cpu) {
+      lastCpu = cpu;
+      if (cpu < 0) {
+        cpuMeasured = false;
+      } else {
+        cpuTime.addAndGet(cpu);
+      }
+    }
+
+    /**
+     * Gets the bytes allocated by the last run.
+     *
+     * @return the last allocated bytes, -1 if not measured
+     */
+    public long getLastAllocated() {
+      return lastAllocated;
+    }
+
+    /**
+     * Gets the MBean server calls of the last run.
+     *
+     * @return the last MBean call count
+     */
+    public long getLastMBeanCalls() {
+      return lastMBeanCalls;
+    }
+
+    /**
+     * Gets the time the last run waited for series monitors held by readers and for the
+     * write-ahead log.
+     *
+     * @return the last lock wait in nanoseconds
+     */
+    public long getLastLockWait() {
+      return lastLockWait;
+    }
+
+    /**
+     * Checks if the job runs on virtual threads rather than on a platform thread of its own.
+     *
+     * @return true, if virtual
+     */
+    public boolean isVirtual() {
+      return executor != null && worker == null;
+    }
+  }
+
+}
@@ -9,6 +9,6 @@
  * PURPOSE.
  */
 /**
- * Psi-Probe Scheduler Jobs.
+ * Psi-Probe Scheduler.
  */
-package psiprobe.scheduler.jobs;
+package psiprobe.scheduler;
@@ -144,18 +144,15 @@ public final class ApplicationUtils {
     long minTime = Long.MAX_VALUE;
     long maxTime = 0;
 
-    for (Container container : context.findChildren()) {
-      if (container instanceof StandardWrapper) {
-        StandardWrapper sw = (StandardWrapper) container;
-        svltCount++;
-        reqCount += sw.getRequestCount();
-        errCount += sw.getErrorCount();
-        procTime += sw.getProcessingTime();
-        if (sw.getRequestCount() > 0) {
-          minTime = Math.min(minTime, sw.getMinTime());
-        }
-        maxTime = Math.max(maxTime, sw.getMaxTime());
+    for (StandardWrapper sw : ServletWrapperRegistry.getStandardWrappers(context)) {
+      svltCount++;
+      reqCount += sw.getRequestCount();
+      errCount += sw.getErrorCount();
+      procTime += sw.getProcessingTime();
+      if (sw.getRequestCount() > 0) {
+        minTime = Math.min(minTime, sw.getMinTime());
       }
+      maxTime = Math.max(maxTime, sw.getMaxTime());
     }
     app.setServletCount(svltCount);
     app.setRequestCount(reqCount);
@@ -257,8 +254,10 @@ public final class ApplicationUtils {
             (String) httpSession.getAttribute(ApplicationSession.LAST_ACCESSED_BY_IP);
         if (lastAccessedIp != null) {
           sbean.setLastAccessedIp(lastAccessedIp);
-          sbean.setLastAccessedIpLocale(
-              (Locale) httpSession.getAttribute(ApplicationSession.LAST_ACCESSED_LOCALE));
+          // locate the address, the browser locale stored by the valve is the fallback
+          Locale locale = GeoIpResolver.getInstance().resolve(lastAccessedIp);
+          sbean.setLastAccessedIpLocale(locale != null ? locale
+              : (Locale) httpSession.getAttribute(ApplicationSession.LAST_ACCESSED_LOCALE));
         }
 
       } catch (IllegalStateException e) {
@@ -353,13 +352,10 @@ public final class ApplicationUtils {
    * @return the application servlets
    */
   public static List<ServletInfo> getApplicationServlets(Context context) {
-    Container[] cns = context.findChildren();
-    List<ServletInfo> servlets = new ArrayList<>(cns.length);
-    for (Container container : cns) {
-      if (container instanceof Wrapper) {
-        Wrapper wrapper = (Wrapper) container;
-        servlets.add(getServletInfo(wrapper, context.getName()));
-      }
+    Wrapper[] wrappers = ServletWrapperRegistry.getWrappers(context);
+    List<ServletInfo> servlets = new ArrayList<>(wrappers.length);
+    for (Wrapper wrapper : wrappers) {
+      servlets.add(getServletInfo(wrapper, context.getName()));
     }
     return servlets;
   }
@@ -0,0 +1,276 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.tools;
+
+import com.maxmind.db.CHMCache;
+import com.maxmind.db.Reader;
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.exception.AddressNotFoundException;
+import com.maxmind.geoip2.exception.GeoIp2Exception;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves client addresses to the locale of their country with the bundled GeoLite2 country
+ * database, shared by the connector and session pages.
+ *
+ * <p>
+ * The database is opened once, memory-mapped when it is a file and read into memory otherwise, and
+ * the last {@value #CACHE_SIZE} answers are kept, including addresses the database does not know.
+ * Loopback addresses resolve to the locale of the JVM. Without the database every other address
+ * resolves to null.
+ * </p>
+ */
+public final class GeoIpResolver implements Closeable {
+
+  /** The Constant logger. */
+  private static final Logger logger = LoggerFactory.getLogger(GeoIpResolver.class);
+
+  /** The Constant DATABASE, the classpath resource of the country database. */
+  static final String DATABASE = "GeoLite2-Country.mmdb";
+
+  /** The Constant CACHE_SIZE. */
+  static final int CACHE_SIZE = 4096;
+
+  /** The shared instance. */
+  private static GeoIpResolver instance;
+
+  /** The reader, null if the database is missing. */
+  private final DatabaseReader reader;
+
+  /** The locales by address, empty for addresses without a country, least recently used first. */
+  private final Map<String, Optional<Locale>> cache;
+
+  /** The executor of batch lookups, started on first use. */
+  private ExecutorService executor;
+
+  /** Whether the resolver is closed. */
+  private volatile boolean closed;
+
+  /**
+   * Instantiates a new geo ip resolver.
+   *
+   * @param reader the reader, null if the database is missing
+   * @param cacheSize the number of addresses to keep
+   */
+  GeoIpResolver(DatabaseReader reader, int cacheSize) {
+    this.reader = reader;
+    this.cache = new LinkedHashMap<String, Optional<Locale>>(64, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Optional<Locale>> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Gets the shared resolver, opening the database on first use.
+   *
+   * @return the resolver
+   */
+  public static synchronized GeoIpResolver getInstance() {
+    if (instance == null || instance.closed) {
+      instance = new GeoIpResolver(open(GeoIpResolver.class.getClassLoader().getResource(DATABASE)),
+          CACHE_SIZE);
+    }
+    return instance;
+  }
+
+  /**
+   * Opens the database.
+   *
+   * @param url the location of the database
+   *
+   * @return the reader, null if the database is missing or cannot be read
+   */
+  static DatabaseReader open(URL url) {
+    if (url == null) {
+      logger.info("{} not found, client addresses will not be located", DATABASE);
+      return null;
+    }
+    try {
+      if ("file".equals(url.getProtocol())) {
+        return new DatabaseReader.Builder(new File(url.toURI()))
+            .fileMode(Reader.FileMode.MEMORY_MAPPED).withCache(new CHMCache()).build();
+      }
+      // packed in a jar, there is no file to map
+      try (InputStream in = url.openStream()) {
+        return new DatabaseReader.Builder(in).withCache(new CHMCache()).build();
+      }
+    } catch (IOException | URISyntaxException e) {
+      logger.error("Cannot open {}", url, e);
+      return null;
+    }
+  }
+
+  /**
+   * Resolves an address.
+   *
+   * @param address the address
+   *
+   * @return the locale of the country of the address, null if it is not known
+   */
+  public Locale resolve(String address) {
+    if (address == null) {
+      return null;
+    }
+    Optional<Locale> locale;
+    synchronized (cache) {
+      locale = cache.get(address);
+    }
+    if (locale == null) {
+      locale = Optional.ofNullable(lookup(address));
+      synchronized (cache) {
+        cache.put(address, locale);
+      }
+    }
+    return locale.orElse(null);
+  }
+
+  /**
+   * Resolves many addresses at once, such as the clients of every request processor of a
+   * connector. Cached addresses are answered right away, each other address is looked up once on a
+   * background thread. Cancelling the future skips the addresses not looked up yet.
+   *
+   * @param addresses the addresses, may repeat and contain null
+   *
+   * @return the locales by address, without the addresses that are not known
+   */
+  public CompletableFuture<Map<String, Locale>> resolveAll(Collection<String> addresses) {
+    Map<String, Locale> result = new HashMap<>();
+    Set<String> misses = new LinkedHashSet<>();
+    synchronized (cache) {
+      for (String address : addresses) {
+        if (address != null && !result.containsKey(address) && !misses.contains(address)) {
+          Optional<Locale> locale = cache.get(address);
+          if (locale == null) {
+            misses.add(address);
+          } else if (locale.isPresent()) {
+            result.put(address, locale.get());
+          }
+        }
+      }
+    }
+    if (misses.isEmpty()) {
+      return CompletableFuture.completedFuture(result);
+    }
+    CompletableFuture<Map<String, Locale>> future = new CompletableFuture<>();
+    executor().execute(() -> {
+      try {
+        for (String address : misses) {
+          if (future.isDone()) {
+            return;
+          }
+          Locale locale = resolve(address);
+          if (locale != null) {
+            result.put(address, locale);
+          }
+        }
+        future.complete(result);
+      } catch (RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Gets the number of addresses kept.
+   *
+   * @return the cache size
+   */
+  int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+   * Looks an address up in the database.
+   *
+   * @param address the address
+   *
+   * @return the locale, null if the address has no known country
+   */
+  private Locale lookup(String address) {
+    try {
+      InetAddress inetAddress = InetAddress.getByName(address);
+      if (inetAddress.isLoopbackAddress()) {
+        return new Locale(System.getProperty("user.language", ""),
+            System.getProperty("user.country", ""));
+      }
+      if (reader == null) {
+        return null;
+      }
+      String isoCode = reader.country(inetAddress).getCountry().getIsoCode();
+      return isoCode == null ? null
+          : new Locale.Builder().setLanguage("").setRegion(isoCode).build();
+    } catch (AddressNotFoundException e) {
+      logger.debug("Address Not Found: {}", e.getMessage());
+      logger.trace("", e);
+    } catch (IOException | GeoIp2Exception | IllegalArgumentException e) {
+      logger.debug("Cannot locate '{}'", address);
+      logger.trace("", e);
+    }
+    return null;
+  }
+
+  /**
+   * Gets the executor of batch lookups.
+   *
+   * @return the executor
+   */
+  private synchronized ExecutorService executor() {
+    if (executor == null) {
+      executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "psi-probe-geoip");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return executor;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    if (reader != null) {
+      reader.close();
+    }
+  }
+
+}
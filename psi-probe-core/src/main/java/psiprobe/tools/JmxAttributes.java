@@ -0,0 +1,182 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.tools;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.ObjectName;
+
+/**
+ * Typed view of attributes read from an MBean in a single call, see
+ * {@link JmxTools#getAttributes(javax.management.MBeanServer, ObjectName, String...)}.
+ *
+ * <p>
+ * Attributes the MBean does not have or could not read are absent from the view. The getters
+ * without a default throw {@link AttributeNotFoundException} for them, as the single attribute
+ * getters of {@link JmxTools} do, while {@link #has(String)} tells optional attributes apart.
+ * </p>
+ */
+public final class JmxAttributes {
+
+  /** The MBean name. */
+  private final ObjectName objectName;
+
+  /** The values by attribute name. */
+  private final Map<String, Object> values;
+
+  /**
+   * Instantiates a new view of read attributes.
+   *
+   * @param objectName the MBean name
+   * @param attributes the attributes returned by the MBean server
+   */
+  JmxAttributes(ObjectName objectName, AttributeList attributes) {
+    this.objectName = objectName;
+    List<Attribute> list = attributes.asList();
+    values = new HashMap<>(list.size() * 2);
+    for (Attribute attribute : list) {
+      values.put(attribute.getName(), attribute.getValue());
+    }
+  }
+
+  /**
+   * Checks whether an attribute was read.
+   *
+   * @param name the attribute name
+   *
+   * @return true, if the MBean returned the attribute, even with a null value
+   */
+  public boolean has(String name) {
+    return values.containsKey(name);
+  }
+
+  /**
+   * Gets the number of attributes read.
+   *
+   * @return the size
+   */
+  public int size() {
+    return values.size();
+  }
+
+  /**
+   * Gets the raw value of an attribute.
+   *
+   * @param name the attribute name
+   *
+   * @return the value, possibly null
+   *
+   * @throws AttributeNotFoundException if the attribute was not read
+   */
+  public Object get(String name) throws AttributeNotFoundException {
+    Object value = values.get(name);
+    if (value == null && !values.containsKey(name)) {
+      throw new AttributeNotFoundException(
+          "Attribute '" + name + "' not found for object '" + objectName + "'");
+    }
+    return value;
+  }
+
+  /**
+   * Gets an attribute as a string.
+   *
+   * @param name the attribute name
+   *
+   * @return the string value, null if the value is null
+   *
+   * @throws AttributeNotFoundException if the attribute was not read
+   */
+  public String getString(String name) throws AttributeNotFoundException {
+    Object value = get(name);
+    return value == null ? null : value.toString();
+  }
+
+  /**
+   * Gets a numeric attribute as a long.
+   *
+   * @param name the attribute name
+   *
+   * @return the long value
+   *
+   * @throws AttributeNotFoundException if the attribute was not read or is not a number
+   */
+  public long getLong(String name) throws AttributeNotFoundException {
+    return number(name).longValue();
+  }
+
+  /**
+   * Gets a numeric attribute as a long, or a default value.
+   *
+   * @param name the attribute name
+   * @param defaultValue the value if the attribute was not read or is not a number
+   *
+   * @return the long value
+   */
+  public long getLong(String name, long defaultValue) {
+    Object value = values.get(name);
+    return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+  }
+
+  /**
+   * Gets a numeric attribute as an int.
+   *
+   * @param name the attribute name
+   *
+   * @return the int value
+   *
+   * @throws AttributeNotFoundException if the attribute was not read or is not a number
+   */
+  public int getInt(String name) throws AttributeNotFoundException {
+    return number(name).intValue();
+  }
+
+  /**
+   * Gets a boolean attribute.
+   *
+   * @param name the attribute name
+   *
+   * @return the boolean value
+   *
+   * @throws AttributeNotFoundException if the attribute was not read or is not a boolean
+   */
+  public boolean getBoolean(String name) throws AttributeNotFoundException {
+    Object value = get(name);
+    if (!(value instanceof Boolean)) {
+      throw new AttributeNotFoundException(
+          "Attribute '" + name + "' of object '" + objectName + "' is not a boolean: " + value);
+    }
+    return (Boolean) value;
+  }
+
+  /**
+   * Gets a numeric attribute.
+   *
+   * @param name the attribute name
+   *
+   * @return the number
+   *
+   * @throws AttributeNotFoundException if the attribute was not read or is not a number
+   */
+  private Number number(String name) throws AttributeNotFoundException {
+    Object value = get(name);
+    if (!(value instanceof Number)) {
+      throw new AttributeNotFoundException(
+          "Attribute '" + name + "' of object '" + objectName + "' is not a number: " + value);
+    }
+    return (Number) value;
+  }
+
+}
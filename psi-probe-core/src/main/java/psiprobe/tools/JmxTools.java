@@ -25,6 +25,9 @@ public final class JmxTools {
   /** The Constant logger. */
   private static final Logger logger = LoggerFactory.getLogger(JmxTools.class);
 
+  /** The MBean server calls made by each thread. */
+  private static final ThreadLocal<long[]> CALLS = ThreadLocal.withInitial(() -> new long[1]);
+
   /**
    * Prevent Instantiation.
    */
@@ -43,6 +46,7 @@ public final class JmxTools {
   public static Object getAttribute(MBeanServer mbeanServer, ObjectName objName, String attrName)
           throws AttributeNotFoundException {
     try {
+      recordCall();
       return mbeanServer.getAttribute(objName, attrName);
     } catch (javax.management.AttributeNotFoundException e) {
       logger.error("{} does not have '{}' attribute", objName, attrName);
@@ -54,6 +58,48 @@ public final class JmxTools {
     }
   }
 
+  /**
+   * Reads several attributes of an MBean in a single MBean server call. Attributes the MBean does
+   * not have, or fails to read, are left out of the returned view rather than failing the batch.
+   *
+   * @param mbeanServer the mbean server
+   * @param objName the obj name
+   * @param attrNames the attr names
+   *
+   * @return the attributes read
+   *
+   * @throws AttributeNotFoundException if the MBean cannot be read at all
+   */
+  public static JmxAttributes getAttributes(MBeanServer mbeanServer, ObjectName objName,
+      String... attrNames) throws AttributeNotFoundException {
+    try {
+      recordCall();
+      return new JmxAttributes(objName, mbeanServer.getAttributes(objName, attrNames));
+    } catch (ReflectionException | InstanceNotFoundException | RuntimeOperationsException e) {
+      logger.error("", e);
+      throw new AttributeNotFoundException("7 Attributes " + String.join(", ", attrNames)
+          + notFoundString + objName + "'");
+    }
+  }
+
+  /**
+   * Gets the number of MBean server calls the current thread made through this class, or
+   * reported with {@link #recordCall()}. The difference between two reads is the number of calls
+   * made in between.
+   *
+   * @return the call count
+   */
+  public static long getCallCount() {
+    return CALLS.get()[0];
+  }
+
+  /**
+   * Counts an MBean server call made by the current thread without this class.
+   */
+  public static void recordCall() {
+    CALLS.get()[0]++;
+  }
+
   /**
    * Invoke.
    *
@@ -70,6 +116,7 @@ public final class JmxTools {
                               Object[] o, String[] s) throws MethodNotFoundException {
 
     try {
+      recordCall();
       return mbeanServer.invoke(objName, method, o, s);
 
     } catch (Exception e) {
@@ -92,6 +139,7 @@ public final class JmxTools {
       long defaultValue) {
 
     try {
+      recordCall();
       Object obj = mbeanServer.getAttribute(objName, attrName);
       return obj == null ? defaultValue : (Long) obj;
     } catch (Exception e) {
@@ -130,6 +178,7 @@ public final class JmxTools {
           throws AttributeNotFoundException {
 
     try {
+      recordCall();
       return (Long) mbeanServer.getAttribute(objName, attrName);
     } catch (Exception e) {
       logger.trace("", e);
@@ -151,6 +200,7 @@ public final class JmxTools {
           throws AttributeNotFoundException {
 
     try {
+      recordCall();
       return (Integer) mbeanServer.getAttribute(objName, attrName);
     } catch (Exception e) {
       logger.trace("", e);
@@ -224,7 +274,8 @@ public final class JmxTools {
   }
 
   /**
-   * Checks for attribute.
+   * Checks for attribute. The attributes of the MBean are read once and kept in the
+   * {@link MBeanMetadataCache} until it is unregistered.
    *
    * @param server the server
    * @param mbean the mbean
@@ -236,15 +287,25 @@ public final class JmxTools {
   public static boolean hasAttribute(MBeanServer server, ObjectName mbean, String attrName)
           throws AttributeNotFoundException {
 
+    return getAttributeType(server, mbean, attrName) != null;
+  }
+
+  /**
+   * Gets the declared type of an attribute, from the {@link MBeanMetadataCache}.
+   *
+   * @param server the server
+   * @param mbean the mbean
+   * @param attrName the attr name
+   *
+   * @return the class name of the attribute type, null if the MBean has no such attribute
+   *
+   * @throws AttributeNotFoundException if the MBean cannot be introspected
+   */
+  public static String getAttributeType(MBeanServer server, ObjectName mbean, String attrName)
+          throws AttributeNotFoundException {
+
     try {
-      MBeanInfo info = server.getMBeanInfo(mbean);
-      MBeanAttributeInfo[] ai = info.getAttributes();
-      for (MBeanAttributeInfo attribInfo : ai) {
-        if (attribInfo.getName().equals(attrName)) {
-          return true;
-        }
-      }
-      return false;
+      return MBeanMetadataCache.getAttributeTypes(server, mbean).get(attrName);
     } catch (Exception e) {
       logger.trace("", e);
       throw new AttributeNotFoundException("6 Attribute '" + attrName + notFoundString + mbean + "'");
@@ -0,0 +1,213 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.tools;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Caches the attribute names and types of MBeans by {@link MBeanServer} and {@link ObjectName}, and
+ * the parsed {@link ObjectName}s the probe builds from strings over and over.
+ *
+ * <p>
+ * MBean metadata does not change while an MBean is registered, so an entry stays valid until the
+ * MBean is unregistered. {@code ContainerListenerBean} forwards the registration notifications of
+ * the MBean server to {@link #invalidate(MBeanServer, ObjectName)}. The same name may stand for
+ * different MBeans on different servers, so each server has a cache of its own, dropped once the
+ * server is garbage collected. The caches are bounded, names past the bound are served without
+ * being kept.
+ * </p>
+ */
+public final class MBeanMetadataCache {
+
+  /** The Constant MAX_ENTRIES, of each cache. */
+  static final int MAX_ENTRIES = 4096;
+
+  /** The attribute types by attribute name, by MBean, by server. */
+  private static final Map<MBeanServer, Map<ObjectName, Map<String, String>>> servers =
+      new WeakHashMap<>();
+
+  /** The cache of the server used last, read without taking the servers lock. */
+  private static volatile ServerAttributes last = new ServerAttributes(null, null);
+
+  /** The parsed names by string. */
+  private static final Map<String, ObjectName> names = new ConcurrentHashMap<>();
+
+  /**
+   * Prevent Instantiation.
+   */
+  private MBeanMetadataCache() {
+    // Prevent Instantiation
+  }
+
+  /**
+   * Gets the attribute types of an MBean, reading its {@code MBeanInfo} on first use.
+   *
+   * @param server the server
+   * @param objectName the object name
+   *
+   * @return the attribute types by attribute name
+   *
+   * @throws InstanceNotFoundException if the MBean is not registered
+   * @throws IntrospectionException if the MBean info cannot be built
+   * @throws ReflectionException if the MBean info cannot be read
+   */
+  static Map<String, String> getAttributeTypes(MBeanServer server, ObjectName objectName)
+      throws InstanceNotFoundException, IntrospectionException, ReflectionException {
+    Map<ObjectName, Map<String, String>> attributes = getAttributes(server);
+    Map<String, String> types = attributes.get(objectName);
+    if (types == null) {
+      JmxTools.recordCall();
+      MBeanAttributeInfo[] infos = server.getMBeanInfo(objectName).getAttributes();
+      Map<String, String> read = new HashMap<>(infos.length * 2);
+      for (MBeanAttributeInfo info : infos) {
+        read.put(info.getName(), info.getType());
+      }
+      types = Collections.unmodifiableMap(read);
+      if (attributes.size() < MAX_ENTRIES) {
+        attributes.put(objectName, types);
+      }
+    }
+    return types;
+  }
+
+  /**
+   * Gets the attribute cache of a server.
+   *
+   * @param server the server
+   *
+   * @return the attribute types by attribute name, by MBean
+   */
+  private static Map<ObjectName, Map<String, String>> getAttributes(MBeanServer server) {
+    ServerAttributes cached = last;
+    if (cached.attributes != null && cached.server.get() == server) {
+      return cached.attributes;
+    }
+    Map<ObjectName, Map<String, String>> attributes;
+    synchronized (servers) {
+      attributes = servers.computeIfAbsent(server, key -> new ConcurrentHashMap<>());
+    }
+    last = new ServerAttributes(server, attributes);
+    return attributes;
+  }
+
+  /**
+   * Gets a parsed object name, the same instance for the same string.
+   *
+   * @param name the name
+   *
+   * @return the object name
+   *
+   * @throws MalformedObjectNameException if the name is not valid
+   */
+  public static ObjectName getObjectName(String name) throws MalformedObjectNameException {
+    ObjectName objectName = names.get(name);
+    if (objectName == null) {
+      objectName = new ObjectName(name);
+      if (names.size() < MAX_ENTRIES) {
+        ObjectName previous = names.putIfAbsent(name, objectName);
+        if (previous != null) {
+          objectName = previous;
+        }
+      }
+    }
+    return objectName;
+  }
+
+  /**
+   * Forgets the metadata of an MBean, to be called when it is registered or unregistered.
+   *
+   * @param server the server the MBean is registered with
+   * @param objectName the object name
+   */
+  public static void invalidate(MBeanServer server, ObjectName objectName) {
+    Map<ObjectName, Map<String, String>> attributes;
+    synchronized (servers) {
+      attributes = servers.get(server);
+    }
+    if (attributes != null) {
+      attributes.remove(objectName);
+    }
+  }
+
+  /**
+   * Forgets the metadata of an MBean on every server, for callers that do not know its server.
+   *
+   * @param objectName the object name
+   */
+  public static void invalidate(ObjectName objectName) {
+    for (Map<ObjectName, Map<String, String>> attributes : getAllAttributes()) {
+      attributes.remove(objectName);
+    }
+  }
+
+  /**
+   * Gets the number of MBeans whose metadata is kept, over all servers.
+   *
+   * @return the size
+   */
+  static int size() {
+    int size = 0;
+    for (Map<ObjectName, Map<String, String>> attributes : getAllAttributes()) {
+      size += attributes.size();
+    }
+    return size;
+  }
+
+  /**
+   * Gets the attribute caches of all servers.
+   *
+   * @return the caches
+   */
+  private static List<Map<ObjectName, Map<String, String>>> getAllAttributes() {
+    synchronized (servers) {
+      return new ArrayList<>(servers.values());
+    }
+  }
+
+  /**
+   * The attribute cache of a server, held without keeping the server alive.
+   */
+  private static final class ServerAttributes {
+
+    /** The server. */
+    final WeakReference<MBeanServer> server;
+
+    /** The attribute types by attribute name, by MBean. */
+    final Map<ObjectName, Map<String, String>> attributes;
+
+    /**
+     * Instantiates a new server attributes.
+     *
+     * @param server the server
+     * @param attributes the attributes
+     */
+    ServerAttributes(MBeanServer server, Map<ObjectName, Map<String, String>> attributes) {
+      this.server = new WeakReference<>(server);
+      this.attributes = attributes;
+    }
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.tools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.MBeanServer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Direct access to the MXBeans of the JVM the probe runs in, for readers that would otherwise go
+ * through the string based {@link MBeanServer} API and convert every value from open types.
+ *
+ * <p>
+ * Readers pointed at another MBean server, such as a remote one, keep using {@link JmxTools};
+ * {@link #isPlatformServer(MBeanServer)} tells the two apart.
+ * </p>
+ */
+public final class PlatformMXBeans {
+
+  /** The Constant logger. */
+  private static final Logger logger = LoggerFactory.getLogger(PlatformMXBeans.class);
+
+  /** The memory pools, read once and again only when one of them becomes invalid. */
+  private static volatile List<MemoryPoolMXBean> memoryPools;
+
+  /**
+   * Prevent Instantiation.
+   */
+  private PlatformMXBeans() {
+    // Prevent Instantiation
+  }
+
+  /**
+   * Checks whether a server is the platform MBean server of this JVM.
+   *
+   * @param server the server
+   *
+   * @return true, if the MXBeans of this JVM can be read directly instead
+   */
+  public static boolean isPlatformServer(MBeanServer server) {
+    return server == ManagementFactory.getPlatformMBeanServer();
+  }
+
+  /**
+   * Gets the memory pools of this JVM.
+   *
+   * @return the memory pools, an unmodifiable list
+   */
+  public static List<MemoryPoolMXBean> getMemoryPools() {
+    List<MemoryPoolMXBean> pools = memoryPools;
+    if (pools == null || !allValid(pools)) {
+      pools = Collections.unmodifiableList(ManagementFactory.getMemoryPoolMXBeans());
+      memoryPools = pools;
+    }
+    return pools;
+  }
+
+  /**
+   * Gets the thread MXBean of this JVM.
+   *
+   * @return the thread MXBean, null if the JVM does not provide one
+   */
+  public static ThreadMXBean getThreadMXBean() {
+    try {
+      return ManagementFactory.getThreadMXBean();
+    } catch (RuntimeException | LinkageError e) {
+      logger.trace("", e);
+      return null;
+    }
+  }
+
+  /**
+   * Gets the CPU time used so far by the current thread.
+   *
+   * @return the CPU time in nanoseconds, -1 if not measured, as on virtual threads
+   */
+  public static long getCurrentThreadCpuTime() {
+    ThreadMXBean threads = getThreadMXBean();
+    if (threads == null || !threads.isCurrentThreadCpuTimeSupported()
+        || !threads.isThreadCpuTimeEnabled()) {
+      return -1;
+    }
+    return threads.getCurrentThreadCpuTime();
+  }
+
+  /**
+   * Gets the bytes allocated so far by the current thread, through the HotSpot extension of the
+   * thread MXBean.
+   *
+   * @return the allocated bytes, -1 if not measured, as on virtual threads
+   */
+  public static long getCurrentThreadAllocatedBytes() {
+    ThreadMXBean threads = getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+      if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+        return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Checks that no memory pool has been removed by the JVM.
+   *
+   * @param pools the pools
+   *
+   * @return true, if all pools are still valid
+   */
+  private static boolean allValid(List<MemoryPoolMXBean> pools) {
+    for (MemoryPoolMXBean pool : pools) {
+      if (!pool.isValid()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.ContainerEvent;
+import org.apache.catalina.ContainerListener;
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.core.StandardWrapper;
+
+/**
+ * Keeps the servlet wrappers of every context in ready arrays, so that stats collectors and pages
+ * do not walk the children of every context each time they read servlet counters.
+ *
+ * <p>
+ * The first lookup of a context subscribes to its add and remove child events and reads its
+ * children once. The arrays are only rebuilt when a servlet is added or removed, and the context is
+ * forgotten once it is destroyed. Reads take no lock.
+ * </p>
+ *
+ * <p>
+ * The listeners are classes of the probe added to the contexts of other applications, so the probe
+ * must {@link #clear()} the registry when it stops, or they would keep its class loader alive.
+ * </p>
+ */
+public final class ServletWrapperRegistry {
+
+  /** The wrappers by context. */
+  private static final Map<Context, Entry> entries = new ConcurrentHashMap<>();
+
+  /** The Constant NO_WRAPPERS. */
+  private static final Wrapper[] NO_WRAPPERS = {};
+
+  /** The Constant NO_STANDARD_WRAPPERS. */
+  private static final StandardWrapper[] NO_STANDARD_WRAPPERS = {};
+
+  /**
+   * Prevent Instantiation.
+   */
+  private ServletWrapperRegistry() {
+    // Prevent Instantiation
+  }
+
+  /**
+   * Gets the servlet wrappers of a context.
+   *
+   * @param context the context
+   *
+   * @return the wrappers, a shared array that must not be modified
+   */
+  public static Wrapper[] getWrappers(Context context) {
+    return getEntry(context).wrappers;
+  }
+
+  /**
+   * Gets the servlet wrappers of a context that keep request counters.
+   *
+   * @param context the context
+   *
+   * @return the standard wrappers, a shared array that must not be modified
+   */
+  public static StandardWrapper[] getStandardWrappers(Context context) {
+    return getEntry(context).standardWrappers;
+  }
+
+  /**
+   * Unsubscribes from every context and forgets their wrappers.
+   */
+  public static void clear() {
+    for (Map.Entry<Context, Entry> registered : entries.entrySet()) {
+      registered.getValue().detach(registered.getKey());
+    }
+  }
+
+  /**
+   * Gets the number of contexts whose wrappers are kept.
+   *
+   * @return the context count
+   */
+  static int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the entry of a context, subscribing to the context on first use. A destroyed context is
+   * read directly and not kept.
+   *
+   * @param context the context
+   *
+   * @return the entry
+   */
+  private static Entry getEntry(Context context) {
+    Entry entry = entries.get(context);
+    if (entry != null) {
+      return entry;
+    }
+    if (LifecycleState.DESTROYED.equals(context.getState())) {
+      Entry detached = new Entry();
+      detached.rebuild(context, null);
+      return detached;
+    }
+    return entries.computeIfAbsent(context, key -> {
+      Entry created = new Entry();
+      // listen first, so that a servlet added while the children are read is not missed
+      key.addContainerListener(created);
+      key.addLifecycleListener(created);
+      created.rebuild(key, null);
+      return created;
+    });
+  }
+
+  /**
+   * The wrappers of a context, rebuilt on add and remove child events.
+   */
+  private static final class Entry implements ContainerListener, LifecycleListener {
+
+    /** The wrappers. */
+    volatile Wrapper[] wrappers = NO_WRAPPERS;
+
+    /** The standard wrappers. */
+    volatile StandardWrapper[] standardWrappers = NO_STANDARD_WRAPPERS;
+
+    /**
+     * Reads the wrappers of a context.
+     *
+     * @param context the context
+     * @param removed a child being removed, Tomcat fires the event before it leaves the children
+     */
+    synchronized void rebuild(Container context, Object removed) {
+      Container[] children = context.findChildren();
+      List<Wrapper> allWrappers = new ArrayList<>(children.length);
+      List<StandardWrapper> standard = new ArrayList<>(children.length);
+      for (Container child : children) {
+        if (child instanceof Wrapper && child != removed) {
+          allWrappers.add((Wrapper) child);
+          if (child instanceof StandardWrapper) {
+            standard.add((StandardWrapper) child);
+          }
+        }
+      }
+      wrappers = allWrappers.toArray(NO_WRAPPERS);
+      standardWrappers = standard.toArray(NO_STANDARD_WRAPPERS);
+    }
+
+    @Override
+    public void containerEvent(ContainerEvent event) {
+      if (Container.ADD_CHILD_EVENT.equals(event.getType())) {
+        rebuild(event.getContainer(), null);
+      } else if (Container.REMOVE_CHILD_EVENT.equals(event.getType())) {
+        rebuild(event.getContainer(), event.getData());
+      }
+    }
+
+    @Override
+    public void lifecycleEvent(LifecycleEvent event) {
+      if (Lifecycle.AFTER_DESTROY_EVENT.equals(event.getType())
+          && event.getLifecycle() instanceof Context) {
+        detach((Context) event.getLifecycle());
+      }
+    }
+
+    /**
+     * Forgets a context and removes the listeners from it.
+     *
+     * @param context the context
+     */
+    void detach(Context context) {
+      entries.remove(context, this);
+      context.removeContainerListener(this);
+      context.removeLifecycleListener(this);
+    }
+  }
+
+}
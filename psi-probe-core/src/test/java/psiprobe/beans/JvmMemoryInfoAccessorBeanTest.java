@@ -0,0 +1,74 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import psiprobe.model.jmx.MemoryPool;
+import psiprobe.tools.JmxTools;
+
+/**
+ * The Class JvmMemoryInfoAccessorBeanTest.
+ */
+class JvmMemoryInfoAccessorBeanTest {
+
+  /**
+   * Gets the types of the pools by name.
+   *
+   * @param pools the pools
+   *
+   * @return the types by name
+   */
+  private static Map<String, String> types(List<MemoryPool> pools) {
+    Map<String, String> types = new TreeMap<>();
+    for (MemoryPool pool : pools) {
+      types.put(pool.getName(), pool.getType());
+    }
+    return types;
+  }
+
+  /**
+   * Test the platform pools are read without MBean server calls, and match the pools read through
+   * the generic JMX API from another server.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testPlatformAndGenericPathsAgree() throws Exception {
+    JvmMemoryInfoAccessorBean platform = new JvmMemoryInfoAccessorBean();
+    long calls = JmxTools.getCallCount();
+    List<MemoryPool> platformPools = platform.getPools();
+    Assertions.assertEquals(calls, JmxTools.getCallCount());
+
+    MBeanServer other = MBeanServerFactory.newMBeanServer();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      other.registerMBean(pool, pool.getObjectName());
+    }
+    JvmMemoryInfoAccessorBean generic = new JvmMemoryInfoAccessorBean();
+    generic.setMbeanServer(other);
+    List<MemoryPool> genericPools = generic.getPools();
+    Assertions.assertTrue(JmxTools.getCallCount() > calls);
+
+    Assertions.assertEquals(types(genericPools), types(platformPools));
+    Assertions.assertEquals("TOTAL", platformPools.get(platformPools.size() - 1).getType());
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class SnapshotCacheTest.
+ */
+class SnapshotCacheTest {
+
+  /** The loads so far. */
+  private final AtomicInteger loads = new AtomicInteger();
+
+  /**
+   * Loads a list holding the number of the load.
+   *
+   * @return the list
+   */
+  private List<Integer> load() {
+    return Collections.singletonList(loads.incrementAndGet());
+  }
+
+  /**
+   * Test a live snapshot is shared, an expired or invalidated one reloaded, and that fresh reads
+   * always load.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testTtlAndFresh() throws Exception {
+    SnapshotCache<Integer> cache = new SnapshotCache<>();
+    List<Integer> first = cache.get(false, 60_000, this::load);
+    Assertions.assertSame(first, cache.get(false, 60_000, this::load));
+    Assertions.assertEquals(1, loads.get());
+    Assertions.assertThrows(UnsupportedOperationException.class, () -> first.add(0));
+
+    Assertions.assertEquals(Collections.singletonList(2), cache.get(true, 60_000, this::load));
+    Assertions.assertEquals(Collections.singletonList(3), cache.get(false, 0, this::load));
+
+    cache.invalidate();
+    Assertions.assertEquals(Collections.singletonList(4), cache.get(false, 60_000, this::load));
+  }
+
+  /**
+   * Test readers of an expired snapshot get it without waiting while another thread reloads it.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testStaleWhileReloading() throws Exception {
+    SnapshotCache<Integer> cache = new SnapshotCache<>();
+    List<Integer> first = cache.get(false, 0, this::load);
+
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<List<Integer>> reload = CompletableFuture.supplyAsync(() -> {
+      try {
+        return cache.get(false, 0, () -> {
+          loading.countDown();
+          release.await(10, TimeUnit.SECONDS);
+          return load();
+        });
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    Assertions.assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+    Assertions.assertSame(first, cache.get(false, 0, this::load));
+    Assertions.assertEquals(1, loads.get());
+
+    release.countDown();
+    Assertions.assertEquals(Collections.singletonList(2), reload.get(10, TimeUnit.SECONDS));
+  }
+
+}
@@ -11,9 +11,17 @@
 package psiprobe.beans.stats.collectors;
 
 import com.codebox.bean.JavaBeanTester;
+import com.thoughtworks.xstream.XStream;
 
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import psiprobe.model.stats.RequestLatencyRecorder;
+import psiprobe.model.stats.StatsCollection;
+import psiprobe.model.stats.StatsSeries;
+
 /**
  * The Class AppStatsCollectorBeanTest.
  */
@@ -27,4 +35,117 @@ class AppStatsCollectorBeanTest {
     JavaBeanTester.builder(AppStatsCollectorBean.class).loadData().test();
   }
 
+  /**
+   * Test contexts read in parallel give the same series as contexts read serially.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testParallelMatchesSerial() throws Exception {
+    SyntheticHost host = new SyntheticHost(40, 5);
+    StatsCollection serialStats = new StatsCollection(new XStream(), null);
+    AppStatsCollectorBean serial = new AppStatsCollectorBean();
+    serial.statsCollection(serialStats);
+    serial.setParallelism(1);
+    StatsCollection parallelStats = new StatsCollection(new XStream(), null);
+    AppStatsCollectorBean parallel = new AppStatsCollectorBean();
+    parallel.statsCollection(parallelStats);
+    parallel.setParallelism(4);
+    parallel.setParallelThreshold(10);
+    try {
+      for (int tick = 1; tick <= 4; tick++) {
+        host.tick();
+        serial.collectContextStats(host.getContexts(), tick * 1000L);
+        parallel.collectContextStats(host.getContexts(), tick * 1000L);
+      }
+
+      // the work of the pool workers is accounted to the collector, serial work is not
+      Assertions.assertTrue(parallel.getHelperAllocatedBytes() > 0);
+      Assertions.assertEquals(0, serial.getHelperAllocatedBytes());
+      Assertions.assertEquals(0, serial.getHelperCpuTime());
+
+      Map<String, StatsSeries> expected = serialStats.getStatsByPrefix("");
+      Map<String, StatsSeries> actual = parallelStats.getStatsByPrefix("");
+      Assertions.assertEquals(expected.keySet(), actual.keySet());
+      Assertions.assertTrue(expected.containsKey("app.requests./app39"));
+      Assertions.assertTrue(expected.get("total.requests").getLastValue() > 0);
+      for (Map.Entry<String, StatsSeries> entry : expected.entrySet()) {
+        StatsSeries series = actual.get(entry.getKey());
+        Assertions.assertEquals(entry.getValue().size(), series.size(), entry.getKey());
+        for (int i = 0; i < series.size(); i++) {
+          Assertions.assertEquals(entry.getValue().getTime(i), series.getTime(i), entry.getKey());
+          Assertions.assertEquals(entry.getValue().getValue(i), series.getValue(i),
+              entry.getKey());
+        }
+      }
+    } finally {
+      parallel.destroy();
+    }
+  }
+
+  /**
+   * Test the latencies recorded by the valve give the real tail, where the per-servlet estimate
+   * would only see the mean, are drained once, and are not mixed with those of a context with the
+   * same name on another host.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testValveLatencies() throws Exception {
+    SyntheticHost host = new SyntheticHost(1, 1);
+    StatsCollection stats = new StatsCollection(new XStream(), null);
+    RequestLatencyRecorder recorder = new RequestLatencyRecorder();
+    AppStatsCollectorBean collector = new AppStatsCollectorBean();
+    collector.statsCollection(stats);
+    collector.setLatencyRecorder(recorder);
+    recorder.valveStarted();
+    for (int i = 0; i < 98; i++) {
+      recorder.record(SyntheticHost.NAME, "/app0", 1);
+    }
+    recorder.record(SyntheticHost.NAME, "/app0", 500);
+    recorder.record(SyntheticHost.NAME, "/app0", 500);
+    recorder.record("other.example.com", "/app0", 900);
+    recorder.record(SyntheticHost.NAME, "/other", 7);
+    recorder.record(SyntheticHost.NAME, null, 7);
+
+    host.tick();
+    collector.collectContextStats(host.getContexts(), 1000L);
+    Assertions.assertEquals(1, stats.getStats("app.proc_time_p50./app0").getLastValue());
+    Assertions.assertEquals(500, stats.getStats("app.proc_time_p99./app0").getLastValue());
+    Assertions.assertEquals(500, stats.getStats("app.proc_time_max./app0").getLastValue());
+
+    host.tick();
+    collector.collectContextStats(host.getContexts(), 2000L);
+    Assertions.assertEquals(0, stats.getStats("app.proc_time_p99./app0").getLastValue());
+  }
+
+  /**
+   * Test resetting an application clears its series, histogram and percentiles included, and
+   * leaves the other applications alone.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testResetApp() throws Exception {
+    SyntheticHost host = new SyntheticHost(2, 3);
+    StatsCollection stats = new StatsCollection(new XStream(), null);
+    AppStatsCollectorBean collector = new AppStatsCollectorBean();
+    collector.statsCollection(stats);
+    for (int tick = 1; tick <= 3; tick++) {
+      host.tick();
+      collector.collectContextStats(host.getContexts(), tick * 1000L);
+    }
+    Assertions.assertTrue(stats.getStats("app.proc_time_p99./app0").size() > 0);
+    Assertions.assertTrue(stats.getHistogram("app.proc_time_hist./app0").size(0) > 0);
+
+    collector.reset("/app0");
+
+    for (String name : new String[] {"requests", "proc_time", "errors", "avg_proc_time",
+        "proc_time_p50", "proc_time_p90", "proc_time_p99", "proc_time_max"}) {
+      Assertions.assertEquals(0, stats.getStats("app." + name + "./app0").size(), name);
+    }
+    Assertions.assertEquals(0, stats.getHistogram("app.proc_time_hist./app0").size(0));
+    Assertions.assertTrue(stats.getStats("app.requests./app1").size() > 0);
+  }
+
 }
@@ -0,0 +1,101 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.collectors;
+
+import com.thoughtworks.xstream.XStream;
+
+import java.util.Locale;
+
+import psiprobe.model.stats.StatsCollection;
+
+/**
+ * Benchmark of an application stats tick on a synthetic host of 500 contexts with 20 servlets
+ * each, reading the contexts serially and on 2, 4 and 8 threads.
+ *
+ * <p>
+ * Not run by the build, start it from the IDE or with
+ * {@code java -cp target/test-classes:target/classes:<tomcat jars> psiprobe.beans.stats.collectors.AppStatsCollectorBenchmark}.
+ * </p>
+ */
+public final class AppStatsCollectorBenchmark {
+
+  /** The Constant CONTEXTS. */
+  private static final int CONTEXTS = 500;
+
+  /** The Constant SERVLETS. */
+  private static final int SERVLETS = 20;
+
+  /** The Constant PARALLELISM, 1 being the serial mode. */
+  private static final int[] PARALLELISM = {1, 2, 4, 8};
+
+  /** The Constant WARMUP_TICKS. */
+  private static final int WARMUP_TICKS = 200;
+
+  /** The Constant TICKS. */
+  private static final int TICKS = 500;
+
+  /**
+   * Prevent Instantiation.
+   */
+  private AppStatsCollectorBenchmark() {
+    // Prevent Instantiation
+  }
+
+  /**
+   * The main method.
+   *
+   * @param args the arguments
+   *
+   * @throws Exception the exception
+   */
+  public static void main(String[] args) throws Exception {
+    System.out.println("threads      ms/tick");
+    for (int parallelism : PARALLELISM) {
+      System.out.println(String.format(Locale.ROOT, "%7d %12.3f", parallelism,
+          run(parallelism) / 1_000_000d / TICKS));
+    }
+  }
+
+  /**
+   * Runs ticks on a fresh host and collector.
+   *
+   * @param parallelism the parallelism
+   *
+   * @return the elapsed nanoseconds of the measured ticks
+   *
+   * @throws Exception the exception
+   */
+  private static long run(int parallelism) throws Exception {
+    SyntheticHost host = new SyntheticHost(CONTEXTS, SERVLETS);
+    AppStatsCollectorBean collector = new AppStatsCollectorBean();
+    collector.statsCollection(new StatsCollection(new XStream(), null));
+    collector.setParallelism(parallelism);
+    collector.setParallelThreshold(1);
+    try {
+      long time = 0;
+      for (int i = 0; i < WARMUP_TICKS; i++) {
+        host.tick();
+        collector.collectContextStats(host.getContexts(), time += 1000);
+      }
+      long elapsed = 0;
+      for (int i = 0; i < TICKS; i++) {
+        host.tick();
+        long start = System.nanoTime();
+        collector.collectContextStats(host.getContexts(), time += 1000);
+        elapsed += System.nanoTime() - start;
+      }
+      return elapsed;
+    } finally {
+      collector.destroy();
+    }
+  }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.collectors;
+
+import com.thoughtworks.xstream.XStream;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import psiprobe.model.stats.StatsCollection;
+
+/**
+ * The Class ProbeOverheadCollectorBeanTest.
+ */
+class ProbeOverheadCollectorBeanTest {
+
+  /**
+   * Test the CPU of probe threads is reported after a baseline run, and that of other threads is
+   * not.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testCpuUsage() throws Exception {
+    Assumptions.assumeTrue(ManagementFactory.getThreadMXBean().isThreadCpuTimeSupported()
+        && ManagementFactory.getThreadMXBean().isThreadCpuTimeEnabled());
+    StatsCollection collection = new StatsCollection(new XStream(), null);
+    ProbeOverheadCollectorBean collector = new ProbeOverheadCollectorBean();
+    collector.statsCollection(collection);
+
+    collector.collect();
+    Assertions.assertEquals(-1, collector.getCpuUsage());
+    Assertions.assertNull(collection.getStats(ProbeOverheadCollectorBean.CPU_SERIES));
+
+    Thread busy = new Thread(() -> {
+      long end = System.nanoTime() + 50_000_000L;
+      long spin = 0;
+      while (System.nanoTime() < end) {
+        spin++;
+      }
+      Assertions.assertTrue(spin > 0);
+      // stay alive to be seen by the next run
+      try {
+        Thread.sleep(2000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, ProbeOverheadCollectorBean.THREAD_PREFIX + "test");
+    busy.setDaemon(true);
+    busy.start();
+    Thread.sleep(100);
+    collector.collect();
+    busy.interrupt();
+
+    Assertions.assertTrue(collector.getCpuUsage() > 0);
+    Assertions.assertEquals(collector.getCpuUsage(),
+        collection.getStats(ProbeOverheadCollectorBean.CPU_SERIES).getLastValue());
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.collectors;
+
+import com.thoughtworks.xstream.XStream;
+
+import java.util.Collections;
+import java.util.Properties;
+
+import oracle.ucp.UniversalConnectionPoolException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import psiprobe.model.stats.SeriesPolicy;
+import psiprobe.model.stats.StatsCollection;
+import psiprobe.model.stats.StatsSeries;
+
+/**
+ * The Class SeriesHandleTest.
+ */
+class SeriesHandleTest {
+
+  /** The stats collection. */
+  private StatsCollection statsCollection;
+
+  /** The collector. */
+  private AbstractStatsCollectorBean collector;
+
+  /**
+   * Sets up a collector writing to an empty stats collection.
+   *
+   * @throws UniversalConnectionPoolException the universal connection pool exception
+   */
+  @BeforeEach
+  void setUp() throws UniversalConnectionPoolException {
+    statsCollection = new StatsCollection(new XStream(), null);
+    collector = new AbstractStatsCollectorBean() {
+      @Override
+      public void collect() {
+        // samples are fed by the tests
+      }
+    };
+    collector.statsCollection(statsCollection);
+    collector.setMaxSeries(10);
+  }
+
+  /**
+   * Test handles are shared per name.
+   */
+  @Test
+  void testHandleIsResolvedOnce() {
+    SeriesHandle handle = collector.getSeriesHandle("app.requests./");
+    Assertions.assertSame(handle, collector.getSeriesHandle("app.requests./"));
+    Assertions.assertEquals("app.requests./", handle.getName());
+  }
+
+  /**
+   * Test delta stats are only recorded once the handle holds a previous value.
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  @Test
+  void testDeltaStats() throws InterruptedException {
+    SeriesHandle handle = collector.getSeriesHandle("stat.connector.http.requests");
+    Assertions.assertEquals(0, collector.buildDeltaStats(handle, 1000, 1));
+    Assertions.assertEquals(5, collector.buildDeltaStats(handle, 1005, 2));
+    // a counter reset is not a negative delta
+    Assertions.assertEquals(0, collector.buildDeltaStats(handle, 3, 3));
+    Assertions.assertEquals(4, collector.buildDeltaStats(handle, 7, 4));
+
+    StatsSeries series = statsCollection.getStats("stat.connector.http.requests");
+    Assertions.assertEquals(3, series.size());
+    Assertions.assertEquals(2, series.getTime(0));
+    Assertions.assertEquals(5, series.getValue(0));
+    Assertions.assertEquals(4, series.getLastValue());
+  }
+
+  /**
+   * Test time percentage stats are relative to the previous sample.
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  @Test
+  void testTimePercentageStats() throws InterruptedException {
+    collector.buildTimePercentageStats(0, 0);
+    collector.buildTimePercentageStats(500, 1000);
+    collector.buildTimePercentageStats(600, 2000);
+
+    StatsSeries series = statsCollection.getStats("os.cpu");
+    Assertions.assertEquals(2, series.size());
+    Assertions.assertEquals(50, series.getValue(0));
+    Assertions.assertEquals(10, series.getValue(1));
+  }
+
+  /**
+   * Test a policy interval skips samples, deltas being carried over to the next stored one, and
+   * that replacing the policies takes effect on the next sample.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testPolicyInterval() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("psiprobe.beans.stats.policies", "requests");
+    properties.setProperty("psiprobe.beans.stats.policy.requests.pattern", "app.requests.*");
+    properties.setProperty("psiprobe.beans.stats.policy.requests.interval", "30s");
+    properties.setProperty("psiprobe.beans.stats.policy.requests.retention", "1m");
+    statsCollection.setPolicies(SeriesPolicy.parse(properties));
+
+    SeriesHandle handle = collector.getSeriesHandle("app.requests./shop");
+    collector.buildDeltaStats(handle, 100, 0);
+    for (int i = 1; i <= 6; i++) {
+      // the delta since the previous call is still returned
+      Assertions.assertEquals(10, collector.buildDeltaStats(handle, 100 + i * 10, i * 10_000L));
+    }
+
+    StatsSeries series = statsCollection.getStats("app.requests./shop");
+    Assertions.assertEquals(2, series.getCapacity());
+    Assertions.assertEquals(2, series.size());
+    Assertions.assertEquals(10_000, series.getTime(0));
+    Assertions.assertEquals(10, series.getValue(0));
+    Assertions.assertEquals(40_000, series.getTime(1));
+    Assertions.assertEquals(30, series.getValue(1));
+
+    statsCollection.setPolicies(Collections.emptyList());
+    collector.buildDeltaStats(handle, 200, 70_000);
+    Assertions.assertEquals(10, series.getCapacity());
+    Assertions.assertEquals(3, series.size());
+    // the 20 requests skipped at 50s and 60s are carried over
+    Assertions.assertEquals(60, series.getLastValue());
+  }
+
+}
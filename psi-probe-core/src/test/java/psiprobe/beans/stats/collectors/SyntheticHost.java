@@ -0,0 +1,159 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.collectors;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.core.StandardWrapper;
+
+/**
+ * A host of synthetic contexts whose servlets serve a varying number of requests every tick,
+ * without a running Tomcat.
+ */
+final class SyntheticHost {
+
+  /** The Constant NAME, the name of the host. */
+  static final String NAME = "localhost";
+
+  /** The contexts. */
+  private final Context[] contexts;
+
+  /** The servlets, by context. */
+  private final SyntheticWrapper[][] wrappers;
+
+  /** The number of ticks so far. */
+  private int ticks;
+
+  /**
+   * Instantiates a new synthetic host.
+   *
+   * @param contextCount the context count
+   * @param servletsPerContext the servlets per context
+   */
+  SyntheticHost(int contextCount, int servletsPerContext) {
+    StandardHost host = new StandardHost();
+    host.setName(NAME);
+    contexts = new Context[contextCount];
+    wrappers = new SyntheticWrapper[contextCount][servletsPerContext];
+    for (int i = 0; i < contextCount; i++) {
+      Container[] servlets = new Container[servletsPerContext];
+      for (int j = 0; j < servletsPerContext; j++) {
+        wrappers[i][j] = new SyntheticWrapper("servlet" + j);
+        servlets[j] = wrappers[i][j];
+      }
+      StandardContext context = new StandardContext() {
+        @Override
+        public Container[] findChildren() {
+          return servlets.clone();
+        }
+      };
+      context.setName("/app" + i);
+      context.setParent(host);
+      contexts[i] = context;
+    }
+  }
+
+  /**
+   * Gets the contexts.
+   *
+   * @return the contexts
+   */
+  Context[] getContexts() {
+    return contexts;
+  }
+
+  /**
+   * Lets every servlet serve some requests.
+   */
+  void tick() {
+    ticks++;
+    for (int i = 0; i < wrappers.length; i++) {
+      for (int j = 0; j < wrappers[i].length; j++) {
+        int requests = (i * 31 + j * 7 + ticks * 13) % 50;
+        wrappers[i][j].serve(requests, (i + j + ticks) % 5, requests * (1 + (i + j) % 20L));
+      }
+    }
+  }
+
+  /**
+   * A servlet whose counters are set by the test rather than by requests.
+   */
+  private static final class SyntheticWrapper extends StandardWrapper {
+
+    /** The request count. */
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    /** The error count. */
+    private final AtomicInteger errorCount = new AtomicInteger();
+
+    /** The processing time. */
+    private final AtomicLong processingTime = new AtomicLong();
+
+    /** The max time. */
+    private final AtomicLong maxTime = new AtomicLong();
+
+    /**
+     * Instantiates a new synthetic wrapper.
+     *
+     * @param name the name
+     */
+    SyntheticWrapper(String name) {
+      setName(name);
+    }
+
+    /**
+     * Serves requests.
+     *
+     * @param requests the requests
+     * @param errors the errors
+     * @param time the total time of the requests
+     */
+    void serve(int requests, int errors, long time) {
+      requestCount.addAndGet(requests);
+      errorCount.addAndGet(errors);
+      processingTime.addAndGet(time);
+      if (requests > 0) {
+        maxTime.accumulateAndGet(time / requests + errors, Math::max);
+      }
+    }
+
+    @Override
+    public int getRequestCount() {
+      return requestCount.get();
+    }
+
+    @Override
+    public int getErrorCount() {
+      return errorCount.get();
+    }
+
+    @Override
+    public long getProcessingTime() {
+      return processingTime.get();
+    }
+
+    @Override
+    public long getMaxTime() {
+      return maxTime.get();
+    }
+
+    @Override
+    public long getMinTime() {
+      return 0;
+    }
+  }
+
+}
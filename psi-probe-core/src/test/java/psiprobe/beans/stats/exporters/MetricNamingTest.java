@@ -0,0 +1,59 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.exporters;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class MetricNamingTest.
+ */
+class MetricNamingTest {
+
+  /**
+   * Asserts the mapping of a series name.
+   *
+   * @param seriesName the series name
+   * @param expected the expected sample line prefix
+   */
+  private static void assertMapped(String seriesName, String expected) {
+    Assertions.assertEquals(expected,
+        OpenMetricsExporter.linePrefix(MetricNaming.map(seriesName)));
+  }
+
+  /**
+   * Test the series of every collector map to a family and a label.
+   */
+  @Test
+  void testMapping() {
+    assertMapped("app.requests./shop", "psiprobe_app_requests{app=\"/shop\"} ");
+    assertMapped("app.proc_time_p99./my.app", "psiprobe_app_proc_time_p99{app=\"/my.app\"} ");
+    assertMapped("total.avg_proc_time", "psiprobe_total_avg_proc_time ");
+    assertMapped("stat.connector.\"http-nio-127.0.0.1-8080\".sent",
+        "psiprobe_connector_sent{connector=\"\\\"http-nio-127.0.0.1-8080\\\"\"} ");
+    assertMapped("ds.busy.jdbc/shop", "psiprobe_datasource_busy{datasource=\"jdbc/shop\"} ");
+    assertMapped("memory.pool.PS Eden Space", "psiprobe_memory_pool_used{pool=\"PS Eden Space\"} ");
+    assertMapped("cluster.req.received", "psiprobe_cluster_req_received ");
+    assertMapped("os.cpu", "psiprobe_os_cpu ");
+  }
+
+  /**
+   * Test mappings are cached.
+   */
+  @Test
+  void testCache() {
+    MetricNaming naming = new MetricNaming();
+    Assertions.assertSame(naming.resolve("os.cpu"), naming.resolve("os.cpu"));
+    Assertions.assertEquals("a_b_1", MetricNaming.sanitize("a-b.1"));
+    Assertions.assertEquals("_1", MetricNaming.sanitize("11"));
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.exporters;
+
+import com.thoughtworks.xstream.XStream;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import oracle.ucp.UniversalConnectionPoolException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import psiprobe.model.stats.StatsCollection;
+
+/**
+ * The Class OpenMetricsExporterTest.
+ */
+class OpenMetricsExporterTest {
+
+  /**
+   * Test families are contiguous even when series names interleave them.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testExposition() throws Exception {
+    StatsCollection collection = new StatsCollection(new XStream(), null);
+    collection.newStats("stat.connector.ajp-8009.requests", 10).add(1_000, 3);
+    collection.newStats("stat.connector.ajp-8009.sent", 10).add(1_000, 1024);
+    collection.newStats("stat.connector.http-8080.requests", 10).add(1_500, 7);
+    collection.newStats("os.cpu", 10).add(2_042, 12.5);
+    collection.newStats("os.fd.open", 10);
+    OpenMetricsExporter exporter = new OpenMetricsExporter();
+    exporter.statsCollection(collection);
+
+    StringWriter out = new StringWriter();
+    exporter.write(out);
+    Assertions.assertEquals("# TYPE psiprobe_connector_requests gauge\n"
+        + "psiprobe_connector_requests{connector=\"ajp-8009\"} 3 1\n"
+        + "psiprobe_connector_requests{connector=\"http-8080\"} 7 1.500\n"
+        + "# TYPE psiprobe_connector_sent gauge\n"
+        + "psiprobe_connector_sent{connector=\"ajp-8009\"} 1024 1\n"
+        + "# TYPE psiprobe_os_cpu gauge\n"
+        + "psiprobe_os_cpu 12.5 2.042\n"
+        + "# EOF\n", out.toString());
+
+    // a series added after the first scrape shows up in the next one
+    collection.newStats("os.fd.max", 10).add(3_000, 4096);
+    out = new StringWriter();
+    exporter.write(out);
+    Assertions.assertTrue(out.toString().contains("psiprobe_os_fd_max 4096 3\n"));
+  }
+
+  /**
+   * Test a scrape of 10k series stays within a few milliseconds.
+   *
+   * @throws UniversalConnectionPoolException the universal connection pool exception
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  void testManySeries() throws UniversalConnectionPoolException, IOException {
+    StatsCollection collection = new StatsCollection(new XStream(), null);
+    for (int i = 0; i < 10_000; i++) {
+      collection.newStats("app.requests./app" + i, 10).add(i, i);
+    }
+    OpenMetricsExporter exporter = new OpenMetricsExporter();
+    exporter.statsCollection(collection);
+    Writer sink = new Writer() {
+      @Override
+      public void write(char[] cbuf, int off, int len) {
+        // discard
+      }
+
+      @Override
+      public void flush() {
+        // nothing to flush
+      }
+
+      @Override
+      public void close() {
+        // nothing to close
+      }
+    };
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < 20; i++) {
+      long start = System.nanoTime();
+      exporter.write(sink);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    Assertions.assertTrue(best < 50_000_000L, "scrape took " + best / 1000 + "us");
+  }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.exporters;
+
+import com.google.common.base.Splitter;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import psiprobe.beans.stats.listeners.StatsCollectionEvent;
+
+/**
+ * The Class StatsPushExporterTest.
+ */
+class StatsPushExporterTest {
+
+  /**
+   * Creates an exporter sending to the loopback address.
+   *
+   * @param protocol the protocol
+   * @param transport the transport
+   * @param port the port
+   * @param queueSize the queue size
+   *
+   * @return the exporter
+   */
+  private static StatsPushExporter exporter(String protocol, String transport, int port,
+      int queueSize) {
+    StatsPushExporter exporter = new StatsPushExporter();
+    exporter.setProtocol(protocol);
+    exporter.setTransport(transport);
+    exporter.setHost("127.0.0.1");
+    exporter.setPort(port);
+    exporter.setPrefix("test");
+    exporter.setPacketSize(64);
+    exporter.setQueueSize(queueSize);
+    exporter.afterPropertiesSet();
+    return exporter;
+  }
+
+  /**
+   * Test graphite lines are batched into datagrams no larger than the packet size.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testGraphiteOverUdp() throws Exception {
+    try (DatagramSocket server = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+      server.setSoTimeout(5000);
+      StatsPushExporter exporter = exporter("graphite", "udp", server.getLocalPort(), 100);
+      for (int i = 0; i < 5; i++) {
+        exporter.getListener()
+            .statsCollected(new StatsCollectionEvent("app.requests./shop", 1_000_000L + i, i));
+      }
+      exporter.getListener()
+          .statsCollected(new StatsCollectionEvent("memory.pool.PS Eden Space", 2_000_000L, 42));
+
+      Assertions.assertEquals(8, exporter.flush(2_000_000L));
+      Assertions.assertEquals(0, exporter.getQueueDepth());
+
+      List<String> lines = new ArrayList<>();
+      byte[] buf = new byte[1024];
+      for (long i = 0; i < exporter.getPacketCount(); i++) {
+        DatagramPacket packet = new DatagramPacket(buf, buf.length);
+        server.receive(packet);
+        Assertions.assertTrue(packet.getLength() <= 64, "packet of " + packet.getLength());
+        String text = new String(buf, 0, packet.getLength(), StandardCharsets.US_ASCII);
+        Assertions.assertTrue(text.endsWith("\n"));
+        lines.addAll(Splitter.on('\n').omitEmptyStrings().splitToList(text));
+      }
+      Assertions.assertTrue(exporter.getPacketCount() > 1);
+      Assertions.assertEquals(8, lines.size());
+      Assertions.assertEquals("test.app.requests._shop 0 1000", lines.get(0));
+      Assertions.assertEquals("test.app.requests._shop 4 1000", lines.get(4));
+      Assertions.assertEquals("test.memory.pool.PS_Eden_Space 42 2000", lines.get(5));
+      Assertions.assertEquals("test.probe.push.queue_depth 0 2000", lines.get(6));
+      Assertions.assertEquals("test.probe.push.dropped 0 2000", lines.get(7));
+    }
+  }
+
+  /**
+   * Test statsd gauges over a tcp connection, a negative gauge being reset first.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testStatsdOverTcp() throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      server.setSoTimeout(5000);
+      StatsPushExporter exporter = exporter("statsd", "tcp", server.getLocalPort(), 100);
+      exporter.getListener().statsCollected(new StatsCollectionEvent("ds.busy.jdbc/db", 0, 7));
+      exporter.getListener().statsCollected(new StatsCollectionEvent("total.delta", 0, -3));
+      exporter.flush(1000);
+
+      try (Socket client = server.accept(); BufferedReader in = new BufferedReader(
+          new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII))) {
+        Assertions.assertEquals("test.ds.busy.jdbc_db:7|g", in.readLine());
+        Assertions.assertEquals("test.total.delta:0|g", in.readLine());
+        Assertions.assertEquals("test.total.delta:-3|g", in.readLine());
+        Assertions.assertEquals("test.probe.push.queue_depth:0|g", in.readLine());
+        Assertions.assertEquals("test.probe.push.dropped:0|g", in.readLine());
+      }
+      exporter.destroy();
+    }
+  }
+
+  /**
+   * Test samples arriving while the queue is full are dropped and counted.
+   */
+  @Test
+  void testQueueFull() {
+    StatsPushExporter exporter = exporter("graphite", "udp", 2003, 2);
+    for (int i = 0; i < 5; i++) {
+      exporter.getListener().statsCollected(new StatsCollectionEvent("s" + i, 0, i));
+    }
+    Assertions.assertEquals(2, exporter.getQueueDepth());
+    Assertions.assertEquals(2, exporter.getQueuedCount());
+    Assertions.assertEquals(3, exporter.getDroppedCount());
+  }
+
+  /**
+   * Test a refused connection keeps the samples queued until the reconnect delay has passed, and
+   * that the delay doubles.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testBackoff() throws Exception {
+    int port;
+    try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      port = probe.getLocalPort();
+    }
+    StatsPushExporter exporter = exporter("graphite", "tcp", port, 10);
+    exporter.setMinBackoff("1s");
+    exporter.setMaxBackoff("3s");
+    exporter.getListener().statsCollected(new StatsCollectionEvent("a", 0, 1));
+
+    Assertions.assertEquals(0, exporter.flush(10_000));
+    Assertions.assertEquals(1, exporter.getErrorCount());
+    Assertions.assertEquals(1, exporter.getQueueDepth());
+
+    // still backing off, no connect attempt
+    Assertions.assertEquals(0, exporter.flush(10_500));
+    Assertions.assertEquals(1, exporter.getErrorCount());
+
+    Assertions.assertEquals(0, exporter.flush(11_000));
+    Assertions.assertEquals(2, exporter.getErrorCount());
+    Assertions.assertEquals(0, exporter.flush(12_900));
+    Assertions.assertEquals(2, exporter.getErrorCount());
+    Assertions.assertEquals(0, exporter.flush(13_000));
+    Assertions.assertEquals(3, exporter.getErrorCount());
+    // capped at 3s
+    Assertions.assertEquals(0, exporter.flush(15_900));
+    Assertions.assertEquals(3, exporter.getErrorCount());
+
+    try (ServerSocket server = new ServerSocket()) {
+      server.setReuseAddress(true);
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1);
+      Assertions.assertEquals(3, exporter.flush(16_000));
+      Assertions.assertEquals(1, exporter.getReconnectCount());
+      Assertions.assertEquals(0, exporter.getQueueDepth());
+      Assertions.assertEquals(0, exporter.getDroppedCount());
+      server.accept().close();
+    }
+    exporter.destroy();
+  }
+
+  /**
+   * Test metric paths.
+   */
+  @Test
+  void testPath() {
+    StatsPushExporter exporter = new StatsPushExporter();
+    exporter.setPrefix("psiprobe.");
+    Assertions.assertEquals("psiprobe.app.requests._",
+        new String(exporter.path("app.requests./"), StandardCharsets.US_ASCII));
+    Assertions.assertEquals("psiprobe.a._b_",
+        new String(exporter.path("a..b."), StandardCharsets.US_ASCII));
+    exporter.setPrefix("");
+    Assertions.assertEquals("_x_y", new String(exporter.path(".x:y"), StandardCharsets.US_ASCII));
+  }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.listeners;
+
+import java.util.LinkedList;
+import java.util.Locale;
+
+/**
+ * Micro-benchmark of the per event cost of flap detection for flap intervals of 10 to 1000. It
+ * measures {@link AbstractFlapListener#statsCollected(StatsCollectionEvent)} end to end, once with
+ * the settings resolved on the first event of the series and once with them read again on every
+ * event, and compares the bit ring of {@link FlapHistory} to the former linked list scan.
+ *
+ * <p>
+ * Not run by the build, start it from the IDE or with
+ * {@code java -cp target/test-classes:target/classes psiprobe.beans.stats.listeners.FlapHistoryBenchmark}.
+ * </p>
+ */
+public final class FlapHistoryBenchmark {
+
+  /** The Constant INTERVALS. */
+  private static final int[] INTERVALS = {10, 30, 100, 300, 1000};
+
+  /** The Constant EVENTS. */
+  private static final int EVENTS = 200_000;
+
+  /** The budget of list node visits per run, the list scan is quadratic in the interval. */
+  private static final long LIST_BUDGET = 50_000_000L;
+
+  /** The number of events of the runs reading the settings on every event. */
+  private static final int RELOAD_EVENTS = 2_000;
+
+  /** The property category of the benchmarked listener. */
+  private static final String CATEGORY = "benchmark";
+
+  /** The series name. */
+  private static final String NAME = "series";
+
+  /** The threshold of the series. */
+  private static final long THRESHOLD = 100;
+
+  /** The Constant ROUNDS. */
+  private static final int ROUNDS = 5;
+
+  /** Keeps the JIT from dropping the results. */
+  private static float sink;
+
+  /**
+   * Prevent Instantiation.
+   */
+  private FlapHistoryBenchmark() {
+    // Prevent Instantiation
+  }
+
+  /**
+   * The main method.
+   *
+   * @param args the arguments
+   */
+  public static void main(String[] args) {
+    System.out.println("interval  listener ns/event    reload ns/event"
+        + "    ring ns/event    list ns/event");
+    for (int interval : INTERVALS) {
+      long listener = Long.MAX_VALUE;
+      long reload = Long.MAX_VALUE;
+      long ring = Long.MAX_VALUE;
+      long list = Long.MAX_VALUE;
+      for (int round = 0; round < ROUNDS; round++) {
+        listener = Math.min(listener, runListener(interval, EVENTS, false));
+        reload = Math.min(reload, runListener(interval, RELOAD_EVENTS, true));
+        ring = Math.min(ring, runRing(interval));
+        list = Math.min(list, runList(interval));
+      }
+      System.out.println(String.format(Locale.ROOT, "%8d %18.1f %18.1f %16.1f %16.1f", interval,
+          (double) listener / EVENTS, (double) reload / RELOAD_EVENTS, (double) ring / EVENTS,
+          (double) list / listEvents(interval)));
+    }
+    System.out.println(sink);
+  }
+
+  /**
+   * Feeds events into a flap listener, its threshold and flap interval being set as properties.
+   *
+   * @param interval the interval
+   * @param events the number of events
+   * @param reloadSettings whether to make the listener read the settings again on every event
+   *
+   * @return the elapsed nanoseconds
+   */
+  private static long runListener(int interval, int events, boolean reloadSettings) {
+    BenchmarkListener listener = new BenchmarkListener();
+    listener.setPropertyCategory(CATEGORY);
+    listener.setDefaultFlapInterval(interval);
+    System.setProperty(propertyKey("threshold"), Long.toString(THRESHOLD));
+    System.setProperty(propertyKey("flapInterval"), Integer.toString(interval));
+    StatsCollectionEvent above = new StatsCollectionEvent(NAME, 0, THRESHOLD * 2);
+    StatsCollectionEvent below = new StatsCollectionEvent(NAME, 0, 0);
+    long start = System.nanoTime();
+    for (int i = 0; i < events; i++) {
+      if (reloadSettings) {
+        listener.reloadSettings();
+      }
+      listener.statsCollected(i % 7 == 0 ? above : below);
+    }
+    long elapsed = System.nanoTime() - start;
+    sink += listener.changes;
+    return elapsed;
+  }
+
+  /**
+   * Gets the key of a property of the benchmarked series.
+   *
+   * @param attribute the attribute
+   *
+   * @return the property key
+   */
+  private static String propertyKey(String attribute) {
+    return BenchmarkListener.class.getPackage().getName() + '.' + CATEGORY + '.' + NAME + '.'
+        + attribute;
+  }
+
+  /**
+   * Feeds events into a flap history.
+   *
+   * @param interval the interval
+   *
+   * @return the elapsed nanoseconds
+   */
+  private static long runRing(int interval) {
+    FlapHistory history = new FlapHistory(interval);
+    long start = System.nanoTime();
+    float score = 0;
+    for (int i = 0; i < EVENTS; i++) {
+      history.add(i % 7 == 0);
+      score += history.score(false, 0.75F, 1.25F);
+    }
+    long elapsed = System.nanoTime() - start;
+    sink += score;
+    return elapsed;
+  }
+
+  /**
+   * Gets the number of events fed into the linked list, enough to fill it twice.
+   *
+   * @param interval the interval
+   *
+   * @return the event count
+   */
+  private static int listEvents(int interval) {
+    return (int) Math.min(EVENTS, Math.max(2L * interval, LIST_BUDGET / interval / interval));
+  }
+
+  /**
+   * Feeds events into a linked list scanned on every event, as the flap listener used to.
+   *
+   * @param interval the interval
+   *
+   * @return the elapsed nanoseconds
+   */
+  private static long runList(int interval) {
+    LinkedList<Boolean> history = new LinkedList<>();
+    float lowWeight = 0.75F;
+    float weightRange = 1.25F - lowWeight;
+    long start = System.nanoTime();
+    float score = 0;
+    int events = listEvents(interval);
+    for (int i = 0; i < events; i++) {
+      history.addLast(i % 7 == 0);
+      while (history.size() > interval) {
+        history.removeFirst();
+      }
+      float result = 0;
+      for (int j = history.size() - 1; j >= 0; j--) {
+        if (history.get(j)) {
+          result += lowWeight + weightRange * j / (interval - 1);
+        }
+      }
+      score += result / interval;
+    }
+    long elapsed = System.nanoTime() - start;
+    sink += score;
+    return elapsed;
+  }
+
+  /**
+   * A flap listener counting its flapping state changes.
+   */
+  private static final class BenchmarkListener extends AbstractFlapListener {
+
+    /** The number of flapping state changes. */
+    int changes;
+
+    @Override
+    protected boolean flappingStarted(StatsCollectionEvent sce) {
+      changes++;
+      return super.flappingStarted(sce);
+    }
+
+    @Override
+    protected boolean aboveThresholdFlappingStopped(StatsCollectionEvent sce) {
+      changes++;
+      return super.aboveThresholdFlappingStopped(sce);
+    }
+
+    @Override
+    protected boolean belowThresholdFlappingStopped(StatsCollectionEvent sce) {
+      changes++;
+      return super.belowThresholdFlappingStopped(sce);
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.listeners;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class FlapHistoryTest.
+ */
+class FlapHistoryTest {
+
+  /**
+   * Test the incremental score matches a full scan of the entries.
+   */
+  @Test
+  void testScoreMatchesScan() {
+    Random random = new Random(42);
+    for (int interval : new int[] {1, 2, 10, 64, 65, 200}) {
+      FlapHistory history = new FlapHistory(interval);
+      Deque<Boolean> expected = new ArrayDeque<>();
+      for (int n = 0; n < interval * 5; n++) {
+        boolean flap = random.nextBoolean();
+        history.add(flap);
+        expected.addLast(flap);
+        if (expected.size() > interval) {
+          expected.removeFirst();
+        }
+        Assertions.assertEquals(expected.size(), history.size());
+        for (boolean flapping : new boolean[] {false, true}) {
+          Assertions.assertEquals(scan(expected, interval, flapping, 1.0F, 2.5F),
+              history.score(flapping, 1.0F, 2.5F), 1e-4);
+        }
+      }
+      int i = 0;
+      for (Boolean flap : expected) {
+        Assertions.assertEquals(flap, history.get(i++));
+      }
+    }
+  }
+
+  /**
+   * Test changing the interval keeps the most recent entries.
+   */
+  @Test
+  void testSetInterval() {
+    FlapHistory history = new FlapHistory(10);
+    for (int i = 0; i < 10; i++) {
+      history.add(i % 3 == 0);
+    }
+    history.setInterval(4);
+    Assertions.assertEquals(4, history.size());
+    Assertions.assertTrue(history.get(0));
+    Assertions.assertFalse(history.get(1));
+    Assertions.assertFalse(history.get(2));
+    Assertions.assertTrue(history.get(3));
+    Assertions.assertEquals(2, history.count(true));
+    Assertions.assertEquals(0.5F, history.score(false, 1.0F, 1.0F), 1e-6);
+
+    history.clear();
+    Assertions.assertEquals(0, history.size());
+    Assertions.assertEquals(0F, history.score(false, 1.0F, 1.0F));
+  }
+
+  /**
+   * Computes the transition score the way the flap listener used to, by scanning all entries.
+   *
+   * @param entries the entries
+   * @param interval the interval
+   * @param flapping the flapping state
+   * @param lowWeight the low weight
+   * @param highWeight the high weight
+   *
+   * @return the score
+   */
+  private static float scan(Deque<Boolean> entries, int interval, boolean flapping,
+      float lowWeight, float highWeight) {
+    float result = 0;
+    int i = 0;
+    for (Boolean flap : entries) {
+      if (flapping != flap) {
+        result += interval > 1 ? lowWeight + (highWeight - lowWeight) * i / (interval - 1)
+            : lowWeight;
+      }
+      i++;
+    }
+    return result / interval;
+  }
+
+}
@@ -10,6 +10,8 @@
  */
 package psiprobe.beans.stats.listeners;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -191,6 +193,32 @@ class FlapListenerTests {
     Assertions.assertTrue(listener.aboveThresholdFlappingStopped( aboveThreshold));
   }
 
+  /**
+   * Test the flap settings of a series are read on its first event only, until they are reloaded.
+   */
+  @Test
+  void testSettingsResolvedOnce() {
+    AtomicInteger reads = new AtomicInteger();
+    MockFlapListener counting = new MockFlapListener(defaultThreshold, defaultInterval,
+        defaultStartThreshold, defaultStopThreshold, defaultLowWeight, defaultHighWeight) {
+      @Override
+      protected float getFlapStartThreshold(String name) {
+        reads.incrementAndGet();
+        return super.getFlapStartThreshold(name);
+      }
+    };
+    for (int i = 0; i < defaultInterval; i++) {
+      counting.statsCollected(aboveThreshold);
+      counting.statsCollected(belowThreshold);
+    }
+    Assertions.assertEquals(1, reads.get());
+
+    counting.reloadSettings();
+    counting.statsCollected(aboveThreshold);
+    counting.statsCollected(belowThreshold);
+    Assertions.assertEquals(2, reads.get());
+  }
+
   /**
    * The listener interface for receiving mockFlap events. The class that is interested in
    * processing a mockFlap event implements this interface, and the object created with that class
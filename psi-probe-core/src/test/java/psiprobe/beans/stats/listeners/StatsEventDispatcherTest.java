@@ -0,0 +1,243 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.beans.stats.listeners;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class StatsEventDispatcherTest.
+ */
+class StatsEventDispatcherTest {
+
+  /** The dispatcher. */
+  private final StatsEventDispatcher dispatcher = new StatsEventDispatcher();
+
+  /** The events received by the listener, as name=value. */
+  private final List<String> received = new CopyOnWriteArrayList<>();
+
+  /** Counted down when the listener got its first event. */
+  private final CountDownLatch entered = new CountDownLatch(1);
+
+  /** Holds the listener until the test lets it go. */
+  private final CountDownLatch gate = new CountDownLatch(1);
+
+  /** A listener blocking on its first event, like one stuck on a slow mail server. */
+  private final List<StatsCollectionListener> listeners =
+      Collections.singletonList(new StatsCollectionListener() {
+        @Override
+        public void statsCollected(StatsCollectionEvent sce) {
+          received.add(sce.getName() + "=" + sce.getValue());
+          entered.countDown();
+          try {
+            gate.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+
+        @Override
+        public boolean isEnabled() {
+          return true;
+        }
+      });
+
+  /**
+   * Stops the dispatcher.
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    gate.countDown();
+    dispatcher.destroy();
+  }
+
+  /**
+   * Starts the dispatcher with a queue of two and blocks it on a first event.
+   *
+   * @param policy the overflow policy
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  private void startBlocked(String policy) throws InterruptedException {
+    dispatcher.setQueueSize(2);
+    dispatcher.setBatchSize(1);
+    dispatcher.setOverflowPolicy(policy);
+    dispatcher.afterPropertiesSet();
+    Assertions.assertTrue(dispatcher.publish(listeners, new StatsCollectionEvent("first", 0, 0)));
+    Assertions.assertTrue(entered.await(5, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Waits until the given number of events was delivered.
+   *
+   * @param count the count
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  private void awaitDelivered(long count) throws InterruptedException {
+    gate.countDown();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (dispatcher.getDeliveredCount() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Assertions.assertEquals(count, dispatcher.getDeliveredCount());
+  }
+
+  /**
+   * Test a full queue coalesces events of the same series.
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  @Test
+  void testCoalesce() throws InterruptedException {
+    startBlocked("coalesce");
+    dispatcher.publish(listeners, new StatsCollectionEvent("a", 1, 1));
+    dispatcher.publish(listeners, new StatsCollectionEvent("b", 1, 1));
+    dispatcher.publish(listeners, new StatsCollectionEvent("a", 2, 2));
+
+    awaitDelivered(3);
+    Assertions.assertEquals("[first=0, a=2, b=1]", received.toString());
+    Assertions.assertEquals(1, dispatcher.getCoalescedCount());
+    Assertions.assertEquals(0, dispatcher.getDroppedCount());
+  }
+
+  /**
+   * Test events meant for a threshold listener are never coalesced.
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  @Test
+  void testCoalesceSkipsThresholdListeners() throws InterruptedException {
+    startBlocked("coalesce");
+    List<StatsCollectionListener> thresholdListeners = Arrays.asList(listeners.get(0),
+        new AbstractThresholdListener() {
+          @Override
+          protected void crossedAboveThreshold(StatsCollectionEvent sce) {
+            // nothing to do
+          }
+
+          @Override
+          protected void crossedBelowThreshold(StatsCollectionEvent sce) {
+            // nothing to do
+          }
+
+          @Override
+          protected void remainedAboveThreshold(StatsCollectionEvent sce) {
+            // nothing to do
+          }
+
+          @Override
+          protected void remainedBelowThreshold(StatsCollectionEvent sce) {
+            // nothing to do
+          }
+        });
+    dispatcher.publish(thresholdListeners, new StatsCollectionEvent("a", 1, 1));
+    dispatcher.publish(thresholdListeners, new StatsCollectionEvent("b", 1, 1));
+    dispatcher.publish(thresholdListeners, new StatsCollectionEvent("a", 2, 2));
+
+    awaitDelivered(3);
+    Assertions.assertEquals("[first=0, b=1, a=2]", received.toString());
+    Assertions.assertEquals(0, dispatcher.getCoalescedCount());
+    Assertions.assertEquals(1, dispatcher.getDroppedCount());
+  }
+
+  /**
+   * Test a full queue makes the publisher wait for room.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testBlock() throws Exception {
+    startBlocked("block");
+    dispatcher.publish(listeners, new StatsCollectionEvent("a", 1, 1));
+    dispatcher.publish(listeners, new StatsCollectionEvent("b", 1, 1));
+    Thread publisher = new Thread(
+        () -> dispatcher.publish(listeners, new StatsCollectionEvent("c", 1, 1)));
+    publisher.start();
+
+    awaitDelivered(4);
+    publisher.join(5000);
+    Assertions.assertEquals("[first=0, a=1, b=1, c=1]", received.toString());
+    Assertions.assertEquals(0, dispatcher.getDroppedCount());
+  }
+
+  /**
+   * Test a full queue drops and counts the new event once the block timeout expires.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testBlockTimeout() throws Exception {
+    dispatcher.setBlockTimeout("0s");
+    startBlocked("block");
+    dispatcher.publish(listeners, new StatsCollectionEvent("a", 1, 1));
+    dispatcher.publish(listeners, new StatsCollectionEvent("b", 1, 1));
+    Assertions.assertTrue(dispatcher.publish(listeners, new StatsCollectionEvent("c", 1, 1)));
+
+    awaitDelivered(3);
+    Assertions.assertEquals("[first=0, a=1, b=1]", received.toString());
+    Assertions.assertEquals(1, dispatcher.getDroppedCount());
+  }
+
+  /**
+   * Test a full queue drops the newest event.
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  @Test
+  void testDropNewest() throws InterruptedException {
+    startBlocked("drop-newest");
+    dispatcher.publish(listeners, new StatsCollectionEvent("a", 1, 1));
+    dispatcher.publish(listeners, new StatsCollectionEvent("b", 1, 1));
+    Assertions.assertTrue(dispatcher.publish(listeners, new StatsCollectionEvent("c", 1, 1)));
+
+    awaitDelivered(3);
+    Assertions.assertEquals("[first=0, a=1, b=1]", received.toString());
+    Assertions.assertEquals(1, dispatcher.getDroppedCount());
+    Assertions.assertEquals(3, dispatcher.getQueuedCount());
+  }
+
+  /**
+   * Test a full queue drops the oldest event.
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  @Test
+  void testDropOldest() throws InterruptedException {
+    startBlocked("drop_oldest");
+    dispatcher.publish(listeners, new StatsCollectionEvent("a", 1, 1));
+    dispatcher.publish(listeners, new StatsCollectionEvent("b", 1, 1));
+    dispatcher.publish(listeners, new StatsCollectionEvent("c", 1, 1));
+
+    awaitDelivered(3);
+    Assertions.assertEquals("[first=0, b=1, c=1]", received.toString());
+    Assertions.assertEquals(1, dispatcher.getDroppedCount());
+  }
+
+  /**
+   * Test events are not accepted before the dispatcher is started.
+   */
+  @Test
+  void testNotRunning() {
+    Assertions.assertFalse(dispatcher.publish(listeners, new StatsCollectionEvent("a", 1, 1)));
+  }
+
+}
@@ -10,6 +10,8 @@
  */
 package psiprobe.beans.stats.listeners;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -94,6 +96,56 @@ class ThresholdListenerTests {
     Assertions.assertTrue(listener.isCrossedAboveThreshold());
   }
 
+  /**
+   * Test a value well above what the baseline expected is above the threshold even though it is
+   * below the fixed threshold.
+   */
+  @Test
+  void testDeviationFromBaseline() {
+    MockThresholdListener adaptive = new MockThresholdListener(Long.MAX_VALUE) {
+      @Override
+      protected double getDeviationFactor(String name) {
+        return 3;
+      }
+    };
+    StatsCollectionEvent usual = new StatsCollectionEvent("test", 0, 104);
+    usual.setBaseline(100, 2);
+    StatsCollectionEvent unusual = new StatsCollectionEvent("test", 0, 107);
+    unusual.setBaseline(100, 2);
+    StatsCollectionEvent unknown = new StatsCollectionEvent("test", 0, 1000);
+
+    adaptive.statsCollected(usual);
+    Assertions.assertTrue(adaptive.isRemainedBelowThreshold());
+    Assertions.assertEquals(106, adaptive.getThreshold(unusual));
+    adaptive.statsCollected(unusual);
+    Assertions.assertTrue(adaptive.isCrossedAboveThreshold());
+    // without a baseline only the fixed threshold applies
+    adaptive.statsCollected(unknown);
+    Assertions.assertTrue(adaptive.isCrossedBelowThreshold());
+  }
+
+  /**
+   * Test a changed threshold is only read once the settings are reloaded.
+   */
+  @Test
+  void testReloadSettings() {
+    AtomicLong threshold = new AtomicLong(defaultThreshold);
+    MockThresholdListener reloading = new MockThresholdListener(defaultThreshold) {
+      @Override
+      public long getThreshold(String name) {
+        return threshold.get();
+      }
+    };
+    reloading.statsCollected(belowThreshold);
+    threshold.set(-1);
+    reloading.statsCollected(belowThreshold);
+    Assertions.assertTrue(reloading.isRemainedBelowThreshold());
+
+    reloading.reloadSettings();
+    reloading.statsCollected(belowThreshold);
+    Assertions.assertTrue(reloading.isCrossedAboveThreshold());
+  }
+
   /**
    * The listener interface for receiving mockThreshold events. The class that is interested in
    * processing a mockThreshold event implements this interface, and the object created with that
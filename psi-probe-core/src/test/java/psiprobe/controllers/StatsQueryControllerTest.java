@@ -0,0 +1,72 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.controllers;
+
+import com.thoughtworks.xstream.XStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import psiprobe.model.stats.StatsCollection;
+
+/**
+ * The Class StatsQueryControllerTest.
+ */
+class StatsQueryControllerTest {
+
+  /**
+   * Test a query is answered as JSON.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testQuery() throws Exception {
+    StatsCollection collection = new StatsCollection(new XStream(), null);
+    collection.newStats("os.cpu", 10).add(1000, 10);
+    collection.newStats("os.cpu", 10).add(2000, 30);
+    StatsQueryController controller = new StatsQueryController(collection);
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stats/query.json");
+    request.addParameter("name", "os.cpu");
+    request.addParameter("from", "0");
+    request.addParameter("to", "4000");
+    request.addParameter("agg", "max");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    controller.handleRequestInternal(request, response);
+
+    Assertions.assertEquals(200, response.getStatus());
+    Assertions.assertEquals("{\"from\":0,\"to\":4000,\"step\":0,\"aggregation\":\"max\","
+        + "\"series\":[{\"name\":\"os.cpu\",\"resolution\":0,\"samples\":2,"
+        + "\"points\":[[0,30.0]]}]}", response.getContentAsString());
+  }
+
+  /**
+   * Test an invalid query is rejected.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testInvalidQuery() throws Exception {
+    StatsQueryController controller =
+        new StatsQueryController(new StatsCollection(new XStream(), null));
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stats/query.json");
+    request.addParameter("prefix", "os.");
+    request.addParameter("step", "1x");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    controller.handleRequestInternal(request, response);
+
+    Assertions.assertEquals(400, response.getStatus());
+    Assertions.assertTrue(response.getContentAsString().startsWith("{\"error\":"));
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.controllers.system;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.ModelAndView;
+
+import psiprobe.beans.stats.collectors.ProbeOverheadCollectorBean;
+import psiprobe.scheduler.StatsCollectionScheduler;
+
+/**
+ * The Class ProbeOverheadControllerTest.
+ */
+class ProbeOverheadControllerTest {
+
+  /**
+   * Test the page lists the stats jobs.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testModel() throws Exception {
+    StatsCollectionScheduler scheduler = new StatsCollectionScheduler();
+    scheduler.addJob("memory", "30s", "0s", () -> {
+      // nothing to collect
+    });
+    ProbeOverheadController controller =
+        new ProbeOverheadController(scheduler, new ProbeOverheadCollectorBean());
+    controller.setViewName("overhead");
+
+    ModelAndView mv = controller.handleRequestInternal(
+        new MockHttpServletRequest("GET", "/overhead.htm"), new MockHttpServletResponse());
+
+    Assertions.assertEquals("overhead", mv.getViewName());
+    List<?> jobs = (List<?>) mv.getModel().get("jobs");
+    Assertions.assertEquals(1, jobs.size());
+    Assertions.assertEquals("memory", ((StatsCollectionScheduler.Job) jobs.get(0)).getName());
+    Assertions.assertEquals(-1.0, mv.getModel().get("cpuUsage"));
+    Assertions.assertEquals(Boolean.TRUE, mv.getModel().get("cpuMeasurable"));
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class LatencyHistogramTest.
+ */
+class LatencyHistogramTest {
+
+  /** The Constant MINUTE. */
+  private static final long MINUTE = 60_000L;
+
+  /**
+   * Test every value falls into a bucket whose bounds enclose it within the relative precision.
+   */
+  @Test
+  void testBucketBounds() {
+    for (long value = 0; value < 1_000_000; value += 1 + value / 50) {
+      int index = LatencyHistogram.bucketIndex(value);
+      long low = LatencyHistogram.lowestEquivalentValue(index);
+      long high = LatencyHistogram.highestEquivalentValue(index);
+      Assertions.assertTrue(low <= value && value <= high, value + " not in " + low + ".." + high);
+      Assertions.assertTrue(high - low <= value / LatencyHistogram.SUB_BUCKET_COUNT);
+    }
+    Assertions.assertEquals(LatencyHistogram.BUCKET_COUNT - 1,
+        LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+  }
+
+  /**
+   * Test percentiles.
+   */
+  @Test
+  void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Assertions.assertEquals(0, histogram.getValueAtPercentile(99));
+    histogram.record(5, 90);
+    histogram.record(100, 9);
+    histogram.record(2000);
+
+    Assertions.assertEquals(100, histogram.getTotalCount());
+    Assertions.assertEquals(5, histogram.getValueAtPercentile(50));
+    Assertions.assertEquals(5, histogram.getValueAtPercentile(90));
+    long p99 = histogram.getValueAtPercentile(99);
+    Assertions.assertTrue(p99 >= 100 && p99 < 100 + 100 / LatencyHistogram.SUB_BUCKET_COUNT);
+    Assertions.assertEquals(2000, histogram.getValueAtPercentile(100));
+    Assertions.assertEquals(2000, histogram.getMax());
+
+    histogram.reset();
+    Assertions.assertEquals(0, histogram.getTotalCount());
+    Assertions.assertEquals(0, histogram.getMax());
+  }
+
+  /**
+   * Test merging the same values in different intervals and tiers gives the same percentiles.
+   */
+  @Test
+  void testMergeAcrossIntervalsAndTiers() {
+    HistogramSeries series =
+        new HistogramSeries(new long[] {MINUTE, 60 * MINUTE}, new int[] {3, 10});
+    LatencyHistogram interval = new LatencyHistogram();
+    LatencyHistogram all = new LatencyHistogram();
+    for (int i = 0; i < 10; i++) {
+      interval.reset();
+      interval.record(10L * (i + 1), 10);
+      series.add(i * MINUTE, interval);
+      all.add(interval);
+    }
+    // an empty interval does not create a bucket
+    interval.reset();
+    series.add(10 * MINUTE, interval);
+    Assertions.assertEquals(3, series.size(0));
+    Assertions.assertEquals(1, series.size(1));
+
+    LatencyHistogram lastMinutes = new LatencyHistogram();
+    Assertions.assertEquals(MINUTE, series.merge(7 * MINUTE, 10 * MINUTE, lastMinutes));
+    Assertions.assertEquals(30, lastMinutes.getTotalCount());
+    Assertions.assertEquals(100, lastMinutes.getMax());
+
+    LatencyHistogram lastHour = new LatencyHistogram();
+    Assertions.assertEquals(60 * MINUTE, series.merge(0, 10 * MINUTE, lastHour));
+    Assertions.assertEquals(all.getTotalCount(), lastHour.getTotalCount());
+    for (double percentile : new double[] {50, 90, 99, 100}) {
+      Assertions.assertEquals(all.getValueAtPercentile(percentile),
+          lastHour.getValueAtPercentile(percentile));
+    }
+
+    series.clear();
+    Assertions.assertEquals(0, series.merge(0, 10 * MINUTE, new LatencyHistogram()));
+  }
+
+}
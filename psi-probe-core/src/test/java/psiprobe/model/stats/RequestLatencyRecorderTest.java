@@ -0,0 +1,81 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class RequestLatencyRecorderTest.
+ */
+class RequestLatencyRecorderTest {
+
+  /**
+   * Drains the latencies of a context.
+   *
+   * @param recorder the recorder
+   * @param hostName the host name
+   * @param contextName the context name
+   *
+   * @return the histogram
+   */
+  private static LatencyHistogram drain(RequestLatencyRecorder recorder, String hostName,
+      String contextName) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    recorder.drain(hostName, contextName, histogram);
+    return histogram;
+  }
+
+  /**
+   * Test contexts with the same name on different hosts are kept apart.
+   */
+  @Test
+  void testHostsKeptApart() {
+    RequestLatencyRecorder recorder = new RequestLatencyRecorder();
+    recorder.record("a.example.com", "/app", 10);
+    recorder.record("b.example.com", "/app", 900);
+    recorder.record(null, "/app", 50);
+
+    Assertions.assertEquals(10, drain(recorder, "a.example.com", "/app").getMax());
+    Assertions.assertEquals(900, drain(recorder, "b.example.com", "/app").getMax());
+    Assertions.assertEquals(50, drain(recorder, null, "/app").getMax());
+    Assertions.assertEquals(0, drain(recorder, "a.example.com", "/app").getTotalCount());
+  }
+
+  /**
+   * Test the contexts that are not listed any more are dropped.
+   */
+  @Test
+  void testRetain() {
+    RequestLatencyRecorder recorder = new RequestLatencyRecorder();
+    recorder.record("a.example.com", "/kept", 10);
+    recorder.record("a.example.com", "/undeployed", 10);
+    recorder.record("b.example.com", "/kept", 10);
+    recorder.record(null, "/kept", 10);
+    Assertions.assertEquals(4, recorder.size());
+
+    Map<String, List<String>> deployed = new HashMap<>();
+    deployed.put("a.example.com", Arrays.asList("/kept", "/new"));
+    deployed.put(null, Collections.singletonList("/kept"));
+    recorder.retain(deployed);
+    Assertions.assertEquals(2, recorder.size());
+    Assertions.assertEquals(1, drain(recorder, "a.example.com", "/kept").getTotalCount());
+    Assertions.assertEquals(1, drain(recorder, null, "/kept").getTotalCount());
+    Assertions.assertEquals(0, drain(recorder, "b.example.com", "/kept").getTotalCount());
+  }
+
+}
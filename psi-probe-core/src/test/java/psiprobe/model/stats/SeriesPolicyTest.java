@@ -0,0 +1,148 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import com.thoughtworks.xstream.XStream;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class SeriesPolicyTest.
+ */
+class SeriesPolicyTest {
+
+  /**
+   * Creates the properties of two policies, the first one more specific.
+   *
+   * @return the properties
+   */
+  private static Properties properties() {
+    Properties properties = new Properties();
+    properties.setProperty("psiprobe.beans.stats.policies", "shop, apps");
+    properties.setProperty("psiprobe.beans.stats.policy.shop.pattern", "app.*./shop");
+    properties.setProperty("psiprobe.beans.stats.policy.shop.interval", "30s");
+    properties.setProperty("psiprobe.beans.stats.policy.shop.retention", "1h");
+    properties.setProperty("psiprobe.beans.stats.policy.shop.rollups", "1h:24,1m:60");
+    properties.setProperty("psiprobe.beans.stats.policy.apps.pattern", "app.*");
+    properties.setProperty("psiprobe.beans.stats.policy.apps.rollups", "");
+    return properties;
+  }
+
+  /**
+   * Test policies are parsed in list order.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testParse() throws Exception {
+    List<SeriesPolicy> policies = SeriesPolicy.parse(properties());
+    Assertions.assertEquals(2, policies.size());
+
+    SeriesPolicy shop = policies.get(0);
+    Assertions.assertEquals("shop", shop.getName());
+    Assertions.assertEquals(30_000, shop.getInterval());
+    Assertions.assertEquals(120, shop.getCapacity());
+    Assertions.assertArrayEquals(new long[] {60_000, 3_600_000}, shop.getRollupResolutions());
+    Assertions.assertArrayEquals(new int[] {60, 24}, shop.getRollupCapacities());
+
+    SeriesPolicy apps = policies.get(1);
+    Assertions.assertEquals(0, apps.getInterval());
+    Assertions.assertEquals(0, apps.getCapacity());
+    Assertions.assertTrue(apps.hasRollups());
+    Assertions.assertEquals(0, apps.getRollupResolutions().length);
+    Assertions.assertFalse(SeriesPolicy.DEFAULT.hasRollups());
+  }
+
+  /**
+   * Test patterns match whole names, only {@code *} being special.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testMatches() throws Exception {
+    SeriesPolicy shop = SeriesPolicy.parse(properties()).get(0);
+    Assertions.assertTrue(shop.matches("app.requests./shop"));
+    Assertions.assertTrue(shop.matches("app.errors./shop"));
+    Assertions.assertFalse(shop.matches("app.requests./shopping"));
+    Assertions.assertFalse(shop.matches("appXrequests./shop"));
+    Assertions.assertFalse(SeriesPolicy.DEFAULT.matches("app.requests./shop"));
+  }
+
+  /**
+   * Test blank entries of the policy and rollup lists are skipped.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testBlankEntriesSkipped() throws Exception {
+    Assertions.assertTrue(SeriesPolicy.parse(new Properties()).isEmpty());
+
+    Properties properties = new Properties();
+    properties.setProperty("psiprobe.beans.stats.policies", " , ds,,");
+    properties.setProperty("psiprobe.beans.stats.policy.ds.pattern", "ds.busy.*");
+    properties.setProperty("psiprobe.beans.stats.policy.ds.rollups", "1m:60, ,1h:24,");
+    List<SeriesPolicy> policies = SeriesPolicy.parse(properties);
+    Assertions.assertEquals(1, policies.size());
+    Assertions.assertEquals("ds", policies.get(0).getName());
+    Assertions.assertArrayEquals(new int[] {60, 24}, policies.get(0).getRollupCapacities());
+  }
+
+  /**
+   * Test a retention without an interval is rejected.
+   */
+  @Test
+  void testRetentionNeedsInterval() {
+    Properties properties = new Properties();
+    properties.setProperty("psiprobe.beans.stats.policies", "ds");
+    properties.setProperty("psiprobe.beans.stats.policy.ds.pattern", "ds.busy.*");
+    properties.setProperty("psiprobe.beans.stats.policy.ds.retention", "1d");
+    Assertions.assertThrows(IllegalArgumentException.class, () -> SeriesPolicy.parse(properties));
+  }
+
+  /**
+   * Test the stats collection applies the first matching policy, also to existing series.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testCollectionAppliesPolicies() throws Exception {
+    StatsCollection collection = new StatsCollection(new XStream(), null);
+    StatsSeries shop = collection.newStats("app.requests./shop", 240);
+    StatsSeries other = collection.newStats("app.requests./other", 240);
+    StatsSeries memory = collection.newStats("memory.pool.Eden", 240);
+    Assertions.assertEquals(3, shop.getRollups().length);
+
+    collection.setPolicies(SeriesPolicy.parse(properties()));
+    Assertions.assertEquals("shop", collection.getPolicy("app.requests./shop").getName());
+    Assertions.assertEquals("apps", collection.getPolicy("app.requests./other").getName());
+    Assertions.assertSame(SeriesPolicy.DEFAULT, collection.getPolicy("memory.pool.Eden"));
+
+    Assertions.assertEquals(120, shop.getCapacity());
+    Assertions.assertEquals(2, shop.getRollups().length);
+    Assertions.assertEquals(60_000, shop.getRollups()[0].getResolution());
+    Assertions.assertEquals(240, other.getCapacity());
+    Assertions.assertEquals(0, other.getRollups().length);
+    Assertions.assertEquals(3, memory.getRollups().length);
+    Assertions.assertEquals(120, collection.newStats("app.errors./shop", 240).getCapacity());
+
+    long generation = collection.getPolicyGeneration();
+    collection.setPolicies(Collections.emptyList());
+    Assertions.assertNotEquals(generation, collection.getPolicyGeneration());
+    Assertions.assertSame(SeriesPolicy.DEFAULT, collection.getPolicy("app.requests./shop"));
+    Assertions.assertEquals(3, shop.getRollups().length);
+  }
+
+}
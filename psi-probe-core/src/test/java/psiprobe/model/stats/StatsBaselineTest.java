@@ -0,0 +1,81 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class StatsBaselineTest.
+ */
+class StatsBaselineTest {
+
+  /** The Constant HOUR. */
+  private static final long HOUR = 3_600_000L;
+
+  /**
+   * Test the moving average and variance converge to those of the samples.
+   */
+  @Test
+  void testMovingAverage() {
+    StatsBaseline baseline = new StatsBaseline();
+    baseline.configure(0.05, 0.01, 0.1, 10, 0, 0);
+    for (int i = 0; i < 9; i++) {
+      baseline.add(i * 30_000L, 100);
+    }
+    Assertions.assertTrue(Double.isNaN(baseline.getExpected(0)));
+
+    // alternating 90 and 110: mean 100, standard deviation 10
+    for (int i = 9; i < 2000; i++) {
+      baseline.add(i * 30_000L, i % 2 == 0 ? 90 : 110);
+    }
+    Assertions.assertEquals(100, baseline.getExpected(0), 1);
+    Assertions.assertEquals(10, baseline.getDeviation(), 1);
+    Assertions.assertFalse(baseline.isSeasonal());
+  }
+
+  /**
+   * Test the seasonal forecast follows a daily pattern the moving average cannot.
+   */
+  @Test
+  void testSeason() {
+    StatsBaseline baseline = new StatsBaseline();
+    baseline.configure(0.05, 0.01, 0.2, 10, HOUR, 24);
+    long time = 0;
+    // two weeks of a daily square wave: 1000 during business hours, 100 otherwise
+    for (; time < 14 * 24 * HOUR; time += 60_000L) {
+      long hour = time / HOUR % 24;
+      baseline.add(time, hour >= 8 && hour < 18 ? 1000 : 100);
+    }
+    Assertions.assertTrue(baseline.isSeasonal());
+    Assertions.assertEquals(1000, baseline.getExpected(time + 10 * HOUR), 50);
+    Assertions.assertEquals(100, baseline.getExpected(time + 22 * HOUR), 50);
+    Assertions.assertTrue(baseline.getDeviation() < 100, "deviation " + baseline.getDeviation());
+  }
+
+  /**
+   * Test changing the season drops the seasonal state only.
+   */
+  @Test
+  void testReconfigure() {
+    StatsBaseline baseline = new StatsBaseline();
+    baseline.configure(0.05, 0.01, 0.1, 1, HOUR, 24);
+    for (long time = 0; time < 2 * 24 * HOUR; time += 60_000L) {
+      baseline.add(time, 5);
+    }
+    Assertions.assertTrue(baseline.isSeasonal());
+
+    baseline.configure(0.05, 0.01, 0.1, 1, HOUR, 12);
+    Assertions.assertFalse(baseline.isSeasonal());
+    Assertions.assertEquals(5, baseline.getExpected(0), 1e-9);
+  }
+
+}
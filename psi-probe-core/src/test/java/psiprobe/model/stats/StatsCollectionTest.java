@@ -0,0 +1,100 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import com.thoughtworks.xstream.XStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import oracle.ucp.UniversalConnectionPoolException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The Class StatsCollectionTest.
+ */
+class StatsCollectionTest {
+
+  /**
+   * Test prefix lookups only return matching series, in name order.
+   *
+   * @throws UniversalConnectionPoolException the universal connection pool exception
+   */
+  @Test
+  void testGetStatsByPrefix() throws UniversalConnectionPoolException {
+    StatsCollection collection = new StatsCollection(new XStream(), null);
+    for (String name : new String[] {"app.req./b", "app.req./a", "app.reqs", "app.req", "ds.busy",
+        "app.avg_proc_time./a"}) {
+      collection.newStats(name, 10);
+    }
+
+    Map<String, StatsSeries> matches = collection.getStatsByPrefix("app.req.");
+    Assertions.assertEquals(Arrays.asList("app.req./a", "app.req./b"),
+        new ArrayList<>(matches.keySet()));
+    Assertions.assertEquals(6, collection.getStatsByPrefix("").size());
+    Assertions.assertTrue(collection.getStatsByPrefix("zzz").isEmpty());
+
+    // the result is a live view
+    collection.newStats("app.req./c", 10);
+    Assertions.assertEquals(3, matches.size());
+  }
+
+  /**
+   * Test snapshots are written in the background, replace the previous snapshot atomically and
+   * report their duration and size.
+   *
+   * @param tempDir the temp dir
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testBackgroundSnapshot(@TempDir Path tempDir) throws Exception {
+    StatsCollection collection = new StatsCollection(new XStream(), tempDir.toString());
+    collection.setSwapFileName("stats.bin");
+    collection.newStats("app.requests./", 10).add(1_000, 5);
+
+    collection.serialize();
+    collection.awaitSnapshot(10_000);
+    Path file = tempDir.resolve("stats.bin");
+    Assertions.assertTrue(Files.exists(file));
+    Assertions.assertFalse(Files.exists(tempDir.resolve("stats.bin.tmp")));
+    StatsSeries size = collection.getStats(StatsCollection.SNAPSHOT_SIZE_SERIES);
+    Assertions.assertEquals(Files.size(file), (long) size.getLastValue());
+    Assertions.assertNotNull(collection.getStats(StatsCollection.SNAPSHOT_TIME_SERIES));
+
+    collection.serialize();
+    collection.awaitSnapshot(10_000);
+    Assertions.assertTrue(Files.exists(tempDir.resolve("stats.bin.1")));
+    StatsSnapshotCodec.Snapshot snapshot = StatsSnapshotCodec.read(file);
+    Assertions.assertEquals(5, snapshot.getStats().get("app.requests./").getLastValue());
+    // the first snapshot's own size was recorded before the second one was captured
+    Assertions.assertEquals(1,
+        snapshot.getStats().get(StatsCollection.SNAPSHOT_SIZE_SERIES).size());
+    collection.destroy();
+  }
+
+  /**
+   * Test prefix end.
+   */
+  @Test
+  void testPrefixEnd() {
+    Assertions.assertEquals("app/", StatsCollection.prefixEnd("app."));
+    Assertions.assertEquals("b", StatsCollection.prefixEnd("a" + Character.MAX_VALUE));
+    Assertions.assertNull(StatsCollection.prefixEnd(""));
+  }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import com.thoughtworks.xstream.XStream;
+
+import java.util.Map;
+
+import oracle.ucp.UniversalConnectionPoolException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class StatsQueryTest.
+ */
+class StatsQueryTest {
+
+  /** The Constant MINUTE. */
+  private static final long MINUTE = 60_000L;
+
+  /**
+   * Creates a series with one sample every 10 seconds, valued 1 to 12, over two minutes.
+   *
+   * @return the series
+   */
+  private static StatsSeries series() {
+    StatsSeries series = new StatsSeries(100);
+    for (int i = 0; i < 12; i++) {
+      series.add(i * 10_000L, i + 1);
+    }
+    return series;
+  }
+
+  /**
+   * Creates a query over the first two minutes.
+   *
+   * @param aggregation the aggregation
+   *
+   * @return the query
+   */
+  private static StatsQuery query(String aggregation) {
+    StatsQuery query = new StatsQuery();
+    query.setFrom(0);
+    query.setTo(2 * MINUTE);
+    query.setStep(MINUTE);
+    query.setAggregation(aggregation);
+    return query;
+  }
+
+  /**
+   * Test the aggregations over raw samples.
+   */
+  @Test
+  void testAggregations() {
+    StatsSeries series = series();
+    StatsQuery.Result min = query("min").evaluate(series);
+    Assertions.assertEquals(2, min.size());
+    Assertions.assertEquals(0, min.getResolution());
+    Assertions.assertEquals(12, min.getSampleCount());
+    Assertions.assertEquals(MINUTE, min.getTime(1));
+    Assertions.assertEquals(1, min.getValue(0));
+    Assertions.assertEquals(7, min.getValue(1));
+    Assertions.assertEquals(12, query("max").evaluate(series).getValue(1));
+    Assertions.assertEquals(3.5, query("avg").evaluate(series).getValue(0));
+    Assertions.assertEquals(21, query("sum").evaluate(series).getValue(0));
+    Assertions.assertEquals(0.35, query("rate").evaluate(series).getValue(0), 1e-9);
+    Assertions.assertEquals(3, query("p50").evaluate(series).getValue(0));
+    Assertions.assertEquals(12, query("p99").evaluate(series).getValue(1));
+  }
+
+  /**
+   * Test steps without samples and samples outside the range.
+   */
+  @Test
+  void testGapsAndRange() {
+    StatsSeries series = series();
+    series.add(10 * MINUTE, 100);
+    StatsQuery query = query("sum");
+    query.setFrom(MINUTE);
+    query.setTo(4 * MINUTE);
+    StatsQuery.Result result = query.evaluate(series);
+    Assertions.assertEquals(3, result.size());
+    Assertions.assertEquals(57, result.getValue(0));
+    Assertions.assertTrue(Double.isNaN(result.getValue(1)));
+    Assertions.assertTrue(Double.isNaN(result.getValue(2)));
+
+    StatsQuery percentile = query("p50");
+    percentile.setStep(0);
+    percentile.setTo(11 * MINUTE);
+    StatsQuery.Result single = percentile.evaluate(series);
+    Assertions.assertEquals(1, single.size());
+    Assertions.assertEquals(7, single.getValue(0));
+  }
+
+  /**
+   * Test the rollup is used once the raw samples no longer cover the range.
+   */
+  @Test
+  void testRollup() {
+    StatsSeries series = new StatsSeries(5);
+    series.setRollups(new StatsRollup(MINUTE, 10));
+    for (int i = 0; i < 60; i++) {
+      series.add(i * 10_000L, i % 6);
+    }
+    StatsQuery query = query("max");
+    query.setTo(10 * MINUTE);
+    StatsQuery.Result result = query.evaluate(series);
+    Assertions.assertEquals(MINUTE, result.getResolution());
+    Assertions.assertEquals(10, result.size());
+    Assertions.assertEquals(5, result.getValue(3));
+    Assertions.assertEquals(2.5, query("avg").evaluate(series).getValue(0));
+  }
+
+  /**
+   * Test prefix queries and invalid queries.
+   *
+   * @throws UniversalConnectionPoolException the universal connection pool exception
+   */
+  @Test
+  void testExecute() throws UniversalConnectionPoolException {
+    StatsCollection collection = new StatsCollection(new XStream(), null);
+    collection.newStats("app.requests./a", 10).add(0, 1);
+    collection.newStats("app.requests./b", 10).add(0, 2);
+    collection.newStats("app.errors./a", 10).add(0, 3);
+
+    StatsQuery query = query("sum");
+    query.setName("app.requests.");
+    query.setPrefix(true);
+    Map<String, StatsQuery.Result> results = query.execute(collection);
+    Assertions.assertEquals(2, results.size());
+    Assertions.assertEquals(2, results.get("app.requests./b").getValue(0));
+
+    query.setStep(1);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> query.execute(collection));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> query.setAggregation("p101"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> query.setAggregation("median"));
+  }
+
+  /**
+   * Test a prefix matching more than {@link StatsQuery#MAX_SERIES} series is refused.
+   *
+   * @throws UniversalConnectionPoolException the universal connection pool exception
+   */
+  @Test
+  void testTooManySeries() throws UniversalConnectionPoolException {
+    StatsCollection collection = new StatsCollection(new XStream(), null);
+    for (int i = 0; i < StatsQuery.MAX_SERIES; i++) {
+      collection.newStats("app.requests./" + i, 10).add(0, i);
+    }
+    StatsQuery query = query("sum");
+    query.setName("app.requests.");
+    query.setPrefix(true);
+    Assertions.assertEquals(StatsQuery.MAX_SERIES, query.execute(collection).size());
+
+    collection.newStats("app.requests./more", 10).add(0, 1);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> query.execute(collection));
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class StatsRollupTest.
+ */
+class StatsRollupTest {
+
+  /** The Constant MINUTE. */
+  private static final long MINUTE = 60_000L;
+
+  /** The Constant HOUR. */
+  private static final long HOUR = 60 * MINUTE;
+
+  /**
+   * Test buckets aggregate samples.
+   */
+  @Test
+  void testAggregation() {
+    StatsRollup rollup = new StatsRollup(MINUTE, 10);
+    rollup.add(0, 4);
+    rollup.add(20_000, 1);
+    rollup.add(40_000, 7);
+    rollup.add(MINUTE + 1, 3);
+    // older than the newest bucket
+    rollup.add(30_000, 100);
+
+    Assertions.assertEquals(2, rollup.size());
+    Assertions.assertEquals(0, rollup.getStart(0));
+    Assertions.assertEquals(1, rollup.getMin(0));
+    Assertions.assertEquals(7, rollup.getMax(0));
+    Assertions.assertEquals(4, rollup.getAvg(0));
+    Assertions.assertEquals(7, rollup.getLast(0));
+    Assertions.assertEquals(3, rollup.getCount(0));
+    Assertions.assertEquals(MINUTE, rollup.getStart(1));
+    Assertions.assertEquals(1, rollup.getCount(1));
+  }
+
+  /**
+   * Test the oldest buckets are dropped once full.
+   */
+  @Test
+  void testCapacity() {
+    StatsRollup rollup = new StatsRollup(MINUTE, 20);
+    for (int i = 0; i < 25; i++) {
+      rollup.add(i * MINUTE, i);
+    }
+    Assertions.assertEquals(20, rollup.size());
+    Assertions.assertEquals(5 * MINUTE, rollup.getStart(0));
+    Assertions.assertTrue(rollup.covers(5 * MINUTE));
+    Assertions.assertFalse(rollup.covers(4 * MINUTE));
+
+    rollup.setCapacity(3);
+    Assertions.assertEquals(3, rollup.size());
+    Assertions.assertEquals(22 * MINUTE, rollup.getStart(0));
+    Assertions.assertEquals(24, rollup.getLast(2));
+  }
+
+  /**
+   * Test the series feeds its rollups and picks the right one for a window.
+   */
+  @Test
+  void testSelectRollup() {
+    StatsSeries series = new StatsSeries(120);
+    StatsRollup minutes = new StatsRollup(MINUTE, 240);
+    StatsRollup hours = new StatsRollup(HOUR, 168);
+    series.setRollups(minutes, hours);
+    long end = 48 * HOUR;
+    for (long time = 0; time < end; time += 30_000L) {
+      series.add(time, 1);
+    }
+
+    Assertions.assertEquals(120, series.size());
+    Assertions.assertEquals(240, minutes.size());
+    Assertions.assertEquals(48, hours.size());
+
+    // the raw samples cover the last hour
+    Assertions.assertNull(series.selectRollup(end - HOUR, end, 800));
+    // nothing is coarse enough for a wide chart, the finest data covering 4 hours wins
+    Assertions.assertSame(minutes, series.selectRollup(end - 4 * HOUR, end, 800));
+    // on a narrow chart hourly buckets are enough
+    Assertions.assertSame(hours, series.selectRollup(end - 4 * HOUR, end, 2));
+    // a day only fits the hourly rollup, which is also coarse enough
+    Assertions.assertSame(hours, series.selectRollup(end - 24 * HOUR, end, 10));
+    // a week reaches back further than anything, the longest history wins
+    Assertions.assertSame(hours, series.selectRollup(end - 168 * HOUR, end, 800));
+
+    series.clear();
+    Assertions.assertEquals(0, minutes.size());
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class StatsSeriesTest.
+ */
+class StatsSeriesTest {
+
+  /**
+   * Test add below capacity.
+   */
+  @Test
+  void testAddBelowCapacity() {
+    StatsSeries series = new StatsSeries(4);
+    series.add(1, 10);
+    series.add(2, 20);
+    Assertions.assertEquals(2, series.size());
+    Assertions.assertEquals(1, series.getTime(0));
+    Assertions.assertEquals(20, series.getValue(1));
+    Assertions.assertEquals(2, series.getLastTime());
+  }
+
+  /**
+   * Test oldest sample is evicted once full.
+   */
+  @Test
+  void testEviction() {
+    StatsSeries series = new StatsSeries(3);
+    for (int i = 1; i <= 5; i++) {
+      series.add(i, i * 10);
+    }
+    Assertions.assertEquals(3, series.size());
+    Assertions.assertEquals(3, series.getTime(0));
+    Assertions.assertEquals(4, series.getTime(1));
+    Assertions.assertEquals(5, series.getTime(2));
+    Assertions.assertEquals(50, series.getLastValue());
+  }
+
+  /**
+   * Test shrinking keeps the most recent samples.
+   */
+  @Test
+  void testSetCapacity() {
+    StatsSeries series = new StatsSeries(4);
+    for (int i = 1; i <= 6; i++) {
+      series.add(i, i);
+    }
+    series.setCapacity(2);
+    Assertions.assertEquals(2, series.size());
+    Assertions.assertEquals(5, series.getTime(0));
+    Assertions.assertEquals(6, series.getTime(1));
+
+    series.setCapacity(5);
+    series.add(7, 7);
+    Assertions.assertEquals(3, series.size());
+    Assertions.assertEquals(5, series.getTime(0));
+    Assertions.assertEquals(7, series.getLastTime());
+  }
+
+  /**
+   * Test clear and out of range access.
+   */
+  @Test
+  void testClear() {
+    StatsSeries series = new StatsSeries(2);
+    series.add(1, 1);
+    series.clear();
+    Assertions.assertTrue(series.isEmpty());
+    Assertions.assertEquals(0, series.getLastValue());
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> series.getTime(0));
+  }
+
+  /**
+   * Test a copy is not affected by later appends.
+   */
+  @Test
+  void testCopy() {
+    StatsSeries series = new StatsSeries(3);
+    series.setRollups(new StatsRollup(10, 5));
+    series.add(1, 1);
+    series.add(2, 2);
+
+    StatsSeries copy = series.copy();
+    series.add(3, 3);
+    series.add(14, 4);
+
+    Assertions.assertEquals(2, copy.size());
+    Assertions.assertEquals(2, copy.getLastValue());
+    Assertions.assertEquals(1, copy.getRollups()[0].size());
+    Assertions.assertEquals(3, series.size());
+    Assertions.assertEquals(2, series.getRollups()[0].size());
+  }
+
+}
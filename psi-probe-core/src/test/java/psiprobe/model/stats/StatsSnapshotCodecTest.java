@@ -0,0 +1,183 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The Class StatsSnapshotCodecTest.
+ */
+class StatsSnapshotCodecTest {
+
+  /** The temp dir. */
+  @TempDir
+  Path tempDir;
+
+  /**
+   * Test round trip.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  void testRoundTrip() throws IOException {
+    StatsSeries requests = new StatsSeries(5);
+    for (int i = 0; i < 8; i++) {
+      requests.add(1_700_000_000_000L + i * 30_000L + (i % 3), i * 7);
+    }
+    StatsSeries cpu = new StatsSeries(3);
+    cpu.add(10, 12.5);
+    cpu.add(20, -0.25);
+    cpu.add(15, Double.NaN);
+
+    Map<String, StatsSeries> stats = new TreeMap<>();
+    stats.put("app.requests./", requests);
+    stats.put("os.cpu", cpu);
+    stats.put("empty", new StatsSeries(4));
+
+    Path file = tempDir.resolve("stats.bin");
+    long size = StatsSnapshotCodec.write(stats, 3, file);
+    Assertions.assertEquals(Files.size(file), size);
+
+    StatsSnapshotCodec.Snapshot snapshot = StatsSnapshotCodec.read(file);
+    Assertions.assertEquals(3, snapshot.getWalSequence());
+    Map<String, StatsSeries> read = snapshot.getStats();
+    Assertions.assertEquals(stats.keySet(), read.keySet());
+    for (Map.Entry<String, StatsSeries> entry : stats.entrySet()) {
+      StatsSeries expected = entry.getValue();
+      StatsSeries actual = read.get(entry.getKey());
+      Assertions.assertEquals(expected.getCapacity(), actual.getCapacity());
+      Assertions.assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        Assertions.assertEquals(expected.getTime(i), actual.getTime(i));
+        Assertions.assertEquals(expected.getValue(i), actual.getValue(i));
+      }
+    }
+  }
+
+  /**
+   * Test rollups survive a round trip.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  void testRollupRoundTrip() throws IOException {
+    StatsSeries series = new StatsSeries(10);
+    series.setRollups(new StatsRollup(60_000L, 4), new StatsRollup(3_600_000L, 2));
+    for (int i = 0; i < 100; i++) {
+      series.add(i * 15_000L, i % 7);
+    }
+    Map<String, StatsSeries> stats = new TreeMap<>();
+    stats.put("app.requests./", series);
+
+    Path file = tempDir.resolve("stats.bin");
+    StatsSnapshotCodec.write(stats, 0, file);
+    StatsSeries read = StatsSnapshotCodec.read(file).getStats().get("app.requests./");
+
+    Assertions.assertTrue(read.isTruncated());
+    StatsRollup[] expected = series.getRollups();
+    StatsRollup[] actual = read.getRollups();
+    Assertions.assertEquals(expected.length, actual.length);
+    for (int r = 0; r < expected.length; r++) {
+      Assertions.assertEquals(expected[r].getResolution(), actual[r].getResolution());
+      Assertions.assertEquals(expected[r].getCapacity(), actual[r].getCapacity());
+      Assertions.assertEquals(expected[r].isTruncated(), actual[r].isTruncated());
+      Assertions.assertEquals(expected[r].size(), actual[r].size());
+      for (int i = 0; i < expected[r].size(); i++) {
+        Assertions.assertEquals(expected[r].getStart(i), actual[r].getStart(i));
+        Assertions.assertEquals(expected[r].getCount(i), actual[r].getCount(i));
+        Assertions.assertEquals(expected[r].getMin(i), actual[r].getMin(i));
+        Assertions.assertEquals(expected[r].getMax(i), actual[r].getMax(i));
+        Assertions.assertEquals(expected[r].getSum(i), actual[r].getSum(i));
+        Assertions.assertEquals(expected[r].getLast(i), actual[r].getLast(i));
+      }
+    }
+  }
+
+  /**
+   * Test baselines survive a round trip.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  void testBaselineRoundTrip() throws IOException {
+    StatsBaseline baseline = new StatsBaseline();
+    baseline.configure(0.1, 0.01, 0.1, 1, 3_600_000L, 24);
+    for (int i = 0; i < 5000; i++) {
+      baseline.add(i * 60_000L, i % 50);
+    }
+    Map<String, StatsBaseline> baselines = new TreeMap<>();
+    baselines.put("app.requests./", baseline);
+
+    Path file = tempDir.resolve("stats.bin");
+    StatsSnapshotCodec.write(new TreeMap<>(), baselines, 0, file);
+    StatsBaseline read = StatsSnapshotCodec.read(file).getBaselines().get("app.requests./");
+    read.configure(0.1, 0.01, 0.1, 1, 3_600_000L, 24);
+
+    Assertions.assertEquals(baseline.getCount(), read.getCount());
+    Assertions.assertEquals(baseline.isSeasonal(), read.isSeasonal());
+    for (long time = 0; time < 86_400_000L; time += 3_600_000L) {
+      Assertions.assertEquals(baseline.getExpected(time), read.getExpected(time));
+    }
+    Assertions.assertEquals(baseline.getDeviation(), read.getDeviation());
+  }
+
+  /**
+   * Test regular samples are compact.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  void testRegularSamplesAreCompact() throws IOException {
+    StatsSeries series = new StatsSeries(240);
+    for (int i = 0; i < 240; i++) {
+      series.add(1_700_000_000_000L + i * 30_000L, 42);
+    }
+    Map<String, StatsSeries> stats = new TreeMap<>();
+    stats.put("ds.busy.app/jdbc/db", series);
+
+    long size = StatsSnapshotCodec.write(stats, 0, tempDir.resolve("stats.bin"));
+    // two bytes per sample at most once the period and value are stable
+    Assertions.assertTrue(size < 240 * 2 + 64, "snapshot size " + size);
+  }
+
+  /**
+   * Test zig zag.
+   */
+  @Test
+  void testZigZag() {
+    for (long value : new long[] {0, 1, -1, 63, -64, Long.MAX_VALUE, Long.MIN_VALUE}) {
+      Assertions.assertEquals(value,
+          StatsSnapshotCodec.unZigZag(StatsSnapshotCodec.zigZag(value)));
+    }
+  }
+
+  /**
+   * Test foreign file is rejected.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  void testForeignFileIsRejected() throws IOException {
+    Path file = tempDir.resolve("stats.xml");
+    Files.write(file, "<tree-map/>".getBytes(StandardCharsets.UTF_8));
+    Assertions.assertThrows(IOException.class, () -> StatsSnapshotCodec.read(file));
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.model.stats;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The Class StatsWriteAheadLogTest.
+ */
+class StatsWriteAheadLogTest {
+
+  /** The temp dir. */
+  @TempDir
+  Path tempDir;
+
+  /**
+   * Test samples survive a restart without close.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  void testReplayAfterCrash() throws IOException {
+    StatsWriteAheadLog wal = new StatsWriteAheadLog(tempDir, "stats.wal", 1024);
+    wal.open();
+    for (int i = 0; i < 100; i++) {
+      wal.append(i % 2 == 0 ? "app.requests./" : "os.cpu", 240, i, i * 0.5);
+    }
+    // no close: the mapped segments are all that is left
+
+    StatsWriteAheadLog recovered = new StatsWriteAheadLog(tempDir, "stats.wal", 1024);
+    recovered.open();
+    List<String> samples = new ArrayList<>();
+    long count = recovered.replay(0,
+        (name, capacity, time, value) -> samples.add(name + "@" + time + "=" + value));
+    Assertions.assertEquals(100, count);
+    Assertions.assertEquals("app.requests./@0=0.0", samples.get(0));
+    Assertions.assertEquals("os.cpu@99=49.5", samples.get(99));
+  }
+
+  /**
+   * Test segments covered by a snapshot are skipped and truncated.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  void testRollAndTruncate() throws IOException {
+    StatsWriteAheadLog wal = new StatsWriteAheadLog(tempDir, "stats.wal", 1024);
+    wal.open();
+    wal.append("ds.busy.db", 10, 1, 1);
+    wal.append("ds.busy.db", 10, 2, 2);
+    long snapshotSequence = wal.roll();
+    wal.append("ds.busy.db", 10, 3, 3);
+    wal.close();
+
+    StatsWriteAheadLog recovered = new StatsWriteAheadLog(tempDir, "stats.wal", 1024);
+    recovered.open();
+    List<Long> times = new ArrayList<>();
+    recovered.replay(snapshotSequence, (name, capacity, time, value) -> {
+      Assertions.assertEquals(10, capacity);
+      times.add(time);
+    });
+    Assertions.assertEquals(1, times.size());
+    Assertions.assertEquals(3L, times.get(0));
+
+    recovered.truncate(snapshotSequence);
+    Assertions.assertFalse(Files.exists(tempDir.resolve("stats.wal.1")));
+    Assertions.assertTrue(Files.exists(tempDir.resolve("stats.wal." + snapshotSequence)));
+    recovered.close();
+  }
+
+  /**
+   * Test threads appending at once over many full segments lose no sample and keep the order of
+   * each series.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testConcurrentAppends() throws Exception {
+    int threads = 4;
+    int samples = 5000;
+    StatsWriteAheadLog wal = new StatsWriteAheadLog(tempDir, "stats.wal", 4096);
+    wal.open();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    try {
+      for (int t = 0; t < threads; t++) {
+        String name = "app.requests./app" + t;
+        futures.add(executor.submit(() -> {
+          start.await();
+          for (int i = 1; i <= samples; i++) {
+            Assertions.assertTrue(wal.append(name, 240, i, i) >= 0);
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    wal.close();
+
+    StatsWriteAheadLog recovered = new StatsWriteAheadLog(tempDir, "stats.wal", 4096);
+    recovered.open();
+    Map<String, Long> last = new HashMap<>();
+    long count = recovered.replay(0, (name, capacity, time, value) -> {
+      Long previous = last.put(name, time);
+      Assertions.assertTrue(previous == null || previous < time, name);
+      Assertions.assertEquals((double) time, value);
+    });
+    recovered.close();
+    Assertions.assertEquals((long) threads * samples, count);
+    Assertions.assertEquals(threads, last.size());
+  }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.scheduler;
+
+import com.thoughtworks.xstream.XStream;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import psiprobe.beans.stats.collectors.ProbeOverheadCollectorBean;
+import psiprobe.model.stats.StatsCollection;
+import psiprobe.model.stats.StatsSeries;
+import psiprobe.tools.JmxTools;
+
+/**
+ * The Class StatsCollectionSchedulerTest.
+ */
+class StatsCollectionSchedulerTest {
+
+  /**
+   * Waits until a job completed the given number of runs.
+   *
+   * @param job the job
+   * @param runs the runs
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  private static void awaitRuns(StatsCollectionScheduler.Job job, long runs)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (job.getRunCount() < runs && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    Assertions.assertEquals(runs, job.getRunCount());
+  }
+
+  /**
+   * Test a job due while its previous run is going is skipped and counted, and that the metrics
+   * of the next run report it.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testOverrun() throws Exception {
+    StatsCollection collection = new StatsCollection(new XStream(), null);
+    CountDownLatch release = new CountDownLatch(1);
+    StatsCollectionScheduler scheduler = new StatsCollectionScheduler();
+    scheduler.statsCollection(collection);
+    scheduler.setJitter("0s");
+    // the dispatcher would only fire after an hour, runs are triggered by hand
+    scheduler.addJob("slow", "1h", "0s", () -> release.await(5, TimeUnit.SECONDS));
+    scheduler.addJob("fast", "1h", "0s", () -> {
+      // nothing to collect
+    });
+    scheduler.afterPropertiesSet();
+    try {
+      StatsCollectionScheduler.Job slow = scheduler.getJobs().get(0);
+      StatsCollectionScheduler.Job fast = scheduler.getJobs().get(1);
+      scheduler.fire(slow);
+      scheduler.fire(slow);
+      scheduler.fire(slow);
+      Assertions.assertEquals(2, slow.getOverrunCount());
+
+      // a slow job does not hold up the others
+      scheduler.fire(fast);
+      awaitRuns(fast, 1);
+      Assertions.assertTrue(slow.isRunning());
+
+      release.countDown();
+      awaitRuns(slow, 1);
+      Assertions.assertFalse(slow.isRunning());
+      StatsSeries overruns = collection.getStats("probe.self.slow.overruns");
+      Assertions.assertEquals(2, overruns.getLastValue());
+      Assertions.assertNotNull(collection.getStats("probe.self.slow.wall"));
+      // fired by hand long before they were due
+      Assertions.assertEquals(0, collection.getStats("probe.self.fast.lag").getLastValue());
+
+      scheduler.fire(slow);
+      awaitRuns(slow, 2);
+      Assertions.assertEquals(0, overruns.getLastValue());
+    } finally {
+      scheduler.destroy();
+    }
+  }
+
+  /**
+   * Test the cost of a run is recorded on the job and in its series.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testSelfMetrics() throws Exception {
+    StatsCollection collection = new StatsCollection(new XStream(), null);
+    StatsCollectionScheduler scheduler = new StatsCollectionScheduler();
+    scheduler.statsCollection(collection);
+    scheduler.setJitter("0s");
+    scheduler.addJob("calls", "1h", "0s", () -> {
+      JmxTools.recordCall();
+      JmxTools.recordCall();
+    });
+    scheduler.afterPropertiesSet();
+    try {
+      StatsCollectionScheduler.Job job = scheduler.getJobs().get(0);
+      scheduler.fire(job);
+      awaitRuns(job, 1);
+      Assertions.assertEquals(2, job.getLastMBeanCalls());
+      Assertions.assertEquals(2, collection.getStats("probe.self.calls.mbeanCalls").getLastValue());
+      Assertions.assertNotNull(collection.getStats("probe.self.calls.wall"));
+      // only collectors wait for series monitors
+      Assertions.assertNull(collection.getStats("probe.self.calls.lockWait"));
+      Assertions.assertFalse(job.isVirtual());
+      if (job.getLastCpu() >= 0) {
+        Assertions.assertEquals(job.getLastCpu(), job.getCpuTime());
+        Assertions.assertNotNull(collection.getStats("probe.self.calls.cpu"));
+      }
+    } finally {
+      scheduler.destroy();
+    }
+  }
+
+  /**
+   * Test a job whose CPU time is not measured, as on virtual threads, makes the probe CPU share
+   * unavailable instead of leaving the job out of it.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testUnmeasuredVirtualJob() throws Exception {
+    StatsCollection collection = new StatsCollection(new XStream(), null);
+    StatsCollectionScheduler scheduler = new StatsCollectionScheduler();
+    scheduler.addJob("virtual", "1h", "0s", () -> {
+      // nothing to collect
+    });
+    StatsCollectionScheduler.Job job = scheduler.getJobs().get(0);
+    job.executor = Runnable::run;
+    Assertions.assertTrue(job.isVirtual());
+    job.recordCpu(-1);
+    Assertions.assertFalse(job.isCpuMeasured());
+    Assertions.assertEquals(0, job.getCpuTime());
+
+    ProbeOverheadCollectorBean overhead = new ProbeOverheadCollectorBean();
+    overhead.statsCollection(collection);
+    overhead.setScheduler(scheduler);
+    overhead.collect();
+    overhead.collect();
+    Assertions.assertFalse(overhead.isCpuMeasurable());
+    Assertions.assertEquals(-1, overhead.getCpuUsage());
+    Assertions.assertNull(collection.getStats(ProbeOverheadCollectorBean.CPU_SERIES));
+  }
+
+  /**
+   * Test a failing run is counted and does not stop the job.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testFailure() throws Exception {
+    StatsCollectionScheduler scheduler = new StatsCollectionScheduler();
+    scheduler.setJitter("0s");
+    scheduler.addJob("failing", "1h", "0s", () -> {
+      throw new IllegalStateException("test");
+    });
+    scheduler.addJob("disabled", "0s", "0s", () -> Assertions.fail("not scheduled"));
+    scheduler.afterPropertiesSet();
+    try {
+      Assertions.assertEquals(1, scheduler.getJobs().size());
+      StatsCollectionScheduler.Job job = scheduler.getJobs().get(0);
+      scheduler.fire(job);
+      awaitRuns(job, 1);
+      scheduler.fire(job);
+      awaitRuns(job, 2);
+      Assertions.assertEquals(2, job.getFailureCount());
+    } finally {
+      scheduler.destroy();
+    }
+  }
+
+  /**
+   * Test jobs are aligned to their period and phase.
+   */
+  @Test
+  void testFirstFire() {
+    Assertions.assertEquals(60_000, StatsCollectionScheduler.firstFire(30_000, 30_000, 0));
+    Assertions.assertEquals(40_000, StatsCollectionScheduler.firstFire(31_000, 30_000, 10_000));
+    Assertions.assertEquals(310_000,
+        StatsCollectionScheduler.firstFire(10_000, 300_000, 10_000));
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.tools;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class GeoIpResolverTest.
+ */
+class GeoIpResolverTest {
+
+  /** The database bundled with the web application. */
+  private static final File DATABASE =
+      new File("../psi-probe-web/src/main/resources/" + GeoIpResolver.DATABASE);
+
+  /**
+   * Test addresses are looked up once and the least recently used are evicted, without a
+   * database.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testCacheWithoutDatabase() throws Exception {
+    try (GeoIpResolver resolver = new GeoIpResolver(null, 2)) {
+      Assertions.assertNull(resolver.resolve(null));
+      Assertions.assertNull(resolver.resolve("192.0.2.1"));
+      Assertions.assertEquals(System.getProperty("user.country", ""),
+          resolver.resolve("127.0.0.1").getCountry());
+      Assertions.assertEquals(2, resolver.size());
+
+      resolver.resolve("192.0.2.2");
+      Assertions.assertEquals(2, resolver.size());
+
+      Map<String, Locale> locales = resolver
+          .resolveAll(Arrays.asList("127.0.0.1", "127.0.0.1", null, "192.0.2.3"))
+          .get(10, TimeUnit.SECONDS);
+      Assertions.assertEquals(1, locales.size());
+      Assertions.assertTrue(locales.containsKey("127.0.0.1"));
+    }
+  }
+
+  /**
+   * Test a loopback address still resolves, from the cache too, when the JVM has no language or
+   * country and its locale equals the root locale.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testRootLocaleIsCached() throws Exception {
+    String language = System.getProperty("user.language");
+    String country = System.getProperty("user.country");
+    System.setProperty("user.language", "");
+    System.setProperty("user.country", "");
+    try (GeoIpResolver resolver = new GeoIpResolver(null, 2)) {
+      Assertions.assertEquals(Locale.ROOT, resolver.resolve("127.0.0.1"));
+      Assertions.assertEquals(Locale.ROOT, resolver.resolve("127.0.0.1"));
+      Assertions.assertEquals(Locale.ROOT, resolver
+          .resolveAll(Arrays.asList("127.0.0.1")).get(10, TimeUnit.SECONDS).get("127.0.0.1"));
+    } finally {
+      restore("user.language", language);
+      restore("user.country", country);
+    }
+  }
+
+  /**
+   * Restores a system property.
+   *
+   * @param key the key
+   * @param value the value, null to clear it
+   */
+  private static void restore(String key, String value) {
+    if (value == null) {
+      System.clearProperty(key);
+    } else {
+      System.setProperty(key, value);
+    }
+  }
+
+  /**
+   * Test an address is located with the bundled database, memory-mapped.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testResolveWithDatabase() throws Exception {
+    Assumptions.assumeTrue(DATABASE.isFile());
+    try (GeoIpResolver resolver =
+        new GeoIpResolver(GeoIpResolver.open(DATABASE.toURI().toURL()), 16)) {
+      Map<String, Locale> locales =
+          resolver.resolveAll(Arrays.asList("8.8.8.8", "8.8.8.8")).get(10, TimeUnit.SECONDS);
+      Assertions.assertEquals("US", locales.get("8.8.8.8").getCountry());
+      Assertions.assertEquals(1, resolver.size());
+      Assertions.assertSame(locales.get("8.8.8.8"), resolver.resolve("8.8.8.8"));
+    }
+  }
+
+}
@@ -0,0 +1,284 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.tools;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+/**
+ * Benchmark of reading the attributes of 200 request processor like MBeans one by one and in
+ * batches, on an in-process MBean server and on one that adds a simulated 20µs round trip per call
+ * as a remote connector would. Prints the MBean server calls and the time per pass.
+ *
+ * <p>
+ * Not run by the build, start it from the IDE or with
+ * {@code java -cp target/test-classes:target/classes:<jars> psiprobe.tools.JmxBatchBenchmark}.
+ * </p>
+ */
+public final class JmxBatchBenchmark {
+
+  /** The Constant MBEANS. */
+  private static final int MBEANS = 200;
+
+  /** The Constant ROUND_TRIP_NANOS, the simulated latency of a remote call. */
+  private static final long ROUND_TRIP_NANOS = 20_000;
+
+  /** The Constant WARMUP_PASSES. */
+  private static final int WARMUP_PASSES = 50;
+
+  /** The Constant PASSES. */
+  private static final int PASSES = 100;
+
+  /** The Constant ATTRIBUTES, as read from each request processor. */
+  private static final String[] ATTRIBUTES = {"Stage", "RequestProcessingTime", "RequestBytesSent",
+      "RequestBytesReceived", "RemoteAddr", "VirtualHost", "Method", "WorkerThreadName"};
+
+  /**
+   * Prevent Instantiation.
+   */
+  private JmxBatchBenchmark() {
+    // Prevent Instantiation
+  }
+
+  /**
+   * The management interface of {@link Processor}.
+   */
+  public interface ProcessorMBean {
+
+    /**
+     * Gets the stage.
+     *
+     * @return the stage
+     */
+    int getStage();
+
+    /**
+     * Gets the request processing time.
+     *
+     * @return the request processing time
+     */
+    long getRequestProcessingTime();
+
+    /**
+     * Gets the request bytes sent.
+     *
+     * @return the request bytes sent
+     */
+    long getRequestBytesSent();
+
+    /**
+     * Gets the request bytes received.
+     *
+     * @return the request bytes received
+     */
+    long getRequestBytesReceived();
+
+    /**
+     * Gets the remote addr.
+     *
+     * @return the remote addr
+     */
+    String getRemoteAddr();
+
+    /**
+     * Gets the virtual host.
+     *
+     * @return the virtual host
+     */
+    String getVirtualHost();
+
+    /**
+     * Gets the method.
+     *
+     * @return the method
+     */
+    String getMethod();
+
+    /**
+     * Gets the worker thread name.
+     *
+     * @return the worker thread name
+     */
+    String getWorkerThreadName();
+  }
+
+  /**
+   * A request processor with fixed values.
+   */
+  public static class Processor implements ProcessorMBean {
+
+    /** The index. */
+    private final int index;
+
+    /**
+     * Instantiates a new processor.
+     *
+     * @param index the index
+     */
+    Processor(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public int getStage() {
+      return index % 7;
+    }
+
+    @Override
+    public long getRequestProcessingTime() {
+      return index * 3L;
+    }
+
+    @Override
+    public long getRequestBytesSent() {
+      return index * 1024L;
+    }
+
+    @Override
+    public long getRequestBytesReceived() {
+      return index * 512L;
+    }
+
+    @Override
+    public String getRemoteAddr() {
+      return "10.0.0." + index % 250;
+    }
+
+    @Override
+    public String getVirtualHost() {
+      return "localhost";
+    }
+
+    @Override
+    public String getMethod() {
+      return "GET";
+    }
+
+    @Override
+    public String getWorkerThreadName() {
+      return "http-nio-8080-exec-" + index;
+    }
+  }
+
+  /**
+   * The main method.
+   *
+   * @param args the arguments
+   *
+   * @throws Exception the exception
+   */
+  public static void main(String[] args) throws Exception {
+    MBeanServer local = MBeanServerFactory.newMBeanServer();
+    ObjectName[] names = new ObjectName[MBEANS];
+    for (int i = 0; i < MBEANS; i++) {
+      names[i] = new ObjectName("Catalina:type=RequestProcessor,worker=\"http-nio-8080\",name="
+          + "HttpRequest" + i);
+      local.registerMBean(new Processor(i), names[i]);
+    }
+    MBeanServer remote = withRoundTrip(local);
+
+    System.out.println("server  mode     calls/pass    ms/pass");
+    report("local", "single", local, names, false);
+    report("local", "batched", local, names, true);
+    report("remote", "single", remote, names, false);
+    report("remote", "batched", remote, names, true);
+  }
+
+  /**
+   * Runs the passes of one mode and prints a line.
+   *
+   * @param server the server name
+   * @param mode the mode name
+   * @param mbeanServer the mbean server
+   * @param names the MBean names
+   * @param batched whether to read in batches
+   *
+   * @throws Exception the exception
+   */
+  private static void report(String server, String mode, MBeanServer mbeanServer,
+      ObjectName[] names, boolean batched) throws Exception {
+    for (int i = 0; i < WARMUP_PASSES; i++) {
+      pass(mbeanServer, names, batched);
+    }
+    long calls = JmxTools.getCallCount();
+    long start = System.nanoTime();
+    long checksum = 0;
+    for (int i = 0; i < PASSES; i++) {
+      checksum += pass(mbeanServer, names, batched);
+    }
+    long elapsed = System.nanoTime() - start;
+    System.out.println(String.format(Locale.ROOT, "%-7s %-8s %10d %10.3f   (%d)", server, mode,
+        (JmxTools.getCallCount() - calls) / PASSES, elapsed / 1_000_000d / PASSES, checksum));
+  }
+
+  /**
+   * Reads all attributes of all MBeans once.
+   *
+   * @param server the server
+   * @param names the names
+   * @param batched whether to read in batches
+   *
+   * @return a checksum of the values read
+   *
+   * @throws Exception the exception
+   */
+  private static long pass(MBeanServer server, ObjectName[] names, boolean batched)
+      throws Exception {
+    long sum = 0;
+    for (ObjectName name : names) {
+      if (batched) {
+        JmxAttributes attrs = JmxTools.getAttributes(server, name, ATTRIBUTES);
+        sum += attrs.getInt("Stage") + attrs.getLong("RequestProcessingTime")
+            + attrs.getLong("RequestBytesSent") + attrs.getLong("RequestBytesReceived")
+            + attrs.getString("RemoteAddr").length() + attrs.getString("VirtualHost").length()
+            + attrs.getString("Method").length() + attrs.getString("WorkerThreadName").length();
+      } else {
+        sum += JmxTools.getIntAttr(server, name, "Stage")
+            + JmxTools.getLongAttr(server, name, "RequestProcessingTime")
+            + JmxTools.getLongAttr(server, name, "RequestBytesSent")
+            + JmxTools.getLongAttr(server, name, "RequestBytesReceived")
+            + JmxTools.getStringAttr(server, name, "RemoteAddr").length()
+            + JmxTools.getStringAttr(server, name, "VirtualHost").length()
+            + JmxTools.getStringAttr(server, name, "Method").length()
+            + JmxTools.getStringAttr(server, name, "WorkerThreadName").length();
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Wraps an MBean server so that every call spins for the simulated round trip first.
+   *
+   * @param server the server
+   *
+   * @return the slow server
+   */
+  private static MBeanServer withRoundTrip(MBeanServer server) {
+    return (MBeanServer) Proxy.newProxyInstance(MBeanServer.class.getClassLoader(),
+        new Class<?>[] {MBeanServer.class}, (proxy, method, args) -> {
+          long until = System.nanoTime() + ROUND_TRIP_NANOS;
+          while (System.nanoTime() < until) {
+            // spin, sleeping is far coarser than a round trip
+          }
+          try {
+            return method.invoke(server, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.tools;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class JmxToolsTest.
+ */
+class JmxToolsTest {
+
+  /**
+   * The management interface of {@link Sample}.
+   */
+  public interface SampleMBean {
+
+    /**
+     * Gets the port.
+     *
+     * @return the port
+     */
+    int getPort();
+
+    /**
+     * Gets the bytes.
+     *
+     * @return the bytes
+     */
+    long getBytes();
+
+    /**
+     * Gets the name.
+     *
+     * @return the name
+     */
+    String getName();
+
+    /**
+     * Checks if is connected.
+     *
+     * @return true, if is connected
+     */
+    boolean isConnected();
+
+    /**
+     * Gets the broken attribute, which always fails.
+     *
+     * @return never
+     */
+    String getBroken();
+  }
+
+  /**
+   * A sample MBean.
+   */
+  public static class Sample implements SampleMBean {
+
+    @Override
+    public int getPort() {
+      return 8080;
+    }
+
+    @Override
+    public long getBytes() {
+      return 1L << 40;
+    }
+
+    @Override
+    public String getName() {
+      return null;
+    }
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+
+    @Override
+    public String getBroken() {
+      throw new IllegalStateException("broken");
+    }
+  }
+
+  /**
+   * Test a batched read is one call, and that missing or failing attributes are left out.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testGetAttributes() throws Exception {
+    MBeanServer server = MBeanServerFactory.newMBeanServer();
+    ObjectName name = new ObjectName("test:type=Sample");
+    server.registerMBean(new Sample(), name);
+
+    long calls = JmxTools.getCallCount();
+    JmxAttributes attrs = JmxTools.getAttributes(server, name, "Port", "Bytes", "Name",
+        "Connected", "Broken", "Missing");
+    Assertions.assertEquals(calls + 1, JmxTools.getCallCount());
+
+    Assertions.assertEquals(4, attrs.size());
+    Assertions.assertEquals(8080, attrs.getInt("Port"));
+    Assertions.assertEquals(8080L, attrs.getLong("Port"));
+    Assertions.assertEquals(1L << 40, attrs.getLong("Bytes"));
+    Assertions.assertTrue(attrs.has("Name"));
+    Assertions.assertNull(attrs.getString("Name"));
+    Assertions.assertTrue(attrs.getBoolean("Connected"));
+
+    Assertions.assertFalse(attrs.has("Broken"));
+    Assertions.assertFalse(attrs.has("Missing"));
+    Assertions.assertEquals(-1, attrs.getLong("Missing", -1));
+    Assertions.assertThrows(AttributeNotFoundException.class, () -> attrs.getString("Missing"));
+    Assertions.assertThrows(AttributeNotFoundException.class, () -> attrs.getLong("Name"));
+  }
+
+  /**
+   * Test reading an unregistered MBean fails as the single attribute reads do.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testGetAttributesOfMissingMBean() throws Exception {
+    MBeanServer server = MBeanServerFactory.newMBeanServer();
+    ObjectName name = new ObjectName("test:type=Missing");
+    Assertions.assertThrows(AttributeNotFoundException.class,
+        () -> JmxTools.getAttributes(server, name, "Port"));
+  }
+
+}
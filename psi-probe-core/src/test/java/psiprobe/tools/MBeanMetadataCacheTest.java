@@ -0,0 +1,112 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.tools;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class MBeanMetadataCacheTest.
+ */
+class MBeanMetadataCacheTest {
+
+  /**
+   * Test the MBean info is read once until the MBean is invalidated.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testAttributeMetadata() throws Exception {
+    MBeanServer server = MBeanServerFactory.newMBeanServer();
+    ObjectName name = MBeanMetadataCache.getObjectName("test:type=Metadata");
+    server.registerMBean(new JmxToolsTest.Sample(), name);
+
+    long calls = JmxTools.getCallCount();
+    Assertions.assertTrue(JmxTools.hasAttribute(server, name, "Port"));
+    Assertions.assertFalse(JmxTools.hasAttribute(server, name, "Missing"));
+    Assertions.assertEquals("int", JmxTools.getAttributeType(server, name, "Port"));
+    Assertions.assertEquals("java.lang.String", JmxTools.getAttributeType(server, name, "Name"));
+    Assertions.assertEquals(calls + 1, JmxTools.getCallCount());
+
+    server.unregisterMBean(name);
+    MBeanMetadataCache.invalidate(server, name);
+    Assertions.assertThrows(AttributeNotFoundException.class,
+        () -> JmxTools.hasAttribute(server, name, "Port"));
+    Assertions.assertEquals(calls + 2, JmxTools.getCallCount());
+  }
+
+  /**
+   * Test the same name on two servers keeps the metadata of each.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testMetadataPerServer() throws Exception {
+    MBeanServer first = MBeanServerFactory.newMBeanServer();
+    MBeanServer second = MBeanServerFactory.newMBeanServer();
+    ObjectName name = MBeanMetadataCache.getObjectName("test:type=Shared");
+    first.registerMBean(new JmxToolsTest.Sample(), name);
+    second.registerMBean(new Other(), name);
+
+    Assertions.assertEquals("int", JmxTools.getAttributeType(first, name, "Port"));
+    Assertions.assertTrue(JmxTools.hasAttribute(second, name, "Host"));
+    Assertions.assertFalse(JmxTools.hasAttribute(second, name, "Port"));
+    Assertions.assertTrue(JmxTools.hasAttribute(first, name, "Port"));
+
+    long calls = JmxTools.getCallCount();
+    MBeanMetadataCache.invalidate(second, name);
+    Assertions.assertTrue(JmxTools.hasAttribute(first, name, "Port"));
+    Assertions.assertEquals(calls, JmxTools.getCallCount());
+  }
+
+  /**
+   * Test the same string gives the same object name.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testObjectNames() throws Exception {
+    ObjectName name = MBeanMetadataCache.getObjectName("Catalina:type=Connector,port=8080");
+    Assertions.assertSame(name,
+        MBeanMetadataCache.getObjectName("Catalina:type=Connector,port=8080"));
+    Assertions.assertEquals(new ObjectName("Catalina:type=Connector,port=8080"), name);
+  }
+
+  /**
+   * The management interface of {@link Other}.
+   */
+  public interface OtherMBean {
+
+    /**
+     * Gets the host.
+     *
+     * @return the host
+     */
+    String getHost();
+  }
+
+  /**
+   * An MBean with other attributes than {@link JmxToolsTest.Sample}.
+   */
+  public static class Other implements OtherMBean {
+
+    @Override
+    public String getHost() {
+      return "localhost";
+    }
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+package psiprobe.tools;
+
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardWrapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Class ServletWrapperRegistryTest.
+ */
+class ServletWrapperRegistryTest {
+
+  /**
+   * Creates a wrapper.
+   *
+   * @param name the name
+   *
+   * @return the standard wrapper
+   */
+  private static StandardWrapper wrapper(String name) {
+    StandardWrapper wrapper = new StandardWrapper();
+    wrapper.setName(name);
+    return wrapper;
+  }
+
+  /**
+   * Test the wrappers follow servlets being added and removed, and that the context is forgotten
+   * once destroyed.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void testFollowsChildren() throws Exception {
+    StandardContext context = new StandardContext();
+    context.setName("/registry");
+    StandardWrapper first = wrapper("first");
+    context.addChild(first);
+    int size = ServletWrapperRegistry.size();
+
+    StandardWrapper[] wrappers = ServletWrapperRegistry.getStandardWrappers(context);
+    Assertions.assertArrayEquals(new StandardWrapper[] {first}, wrappers);
+    Assertions.assertEquals(size + 1, ServletWrapperRegistry.size());
+    // no change, no walk
+    Assertions.assertSame(wrappers, ServletWrapperRegistry.getStandardWrappers(context));
+
+    StandardWrapper second = wrapper("second");
+    context.addChild(second);
+    Assertions.assertEquals(2, ServletWrapperRegistry.getStandardWrappers(context).length);
+    Assertions.assertEquals(2, ServletWrapperRegistry.getWrappers(context).length);
+
+    context.removeChild(first);
+    Assertions.assertArrayEquals(new StandardWrapper[] {second},
+        ServletWrapperRegistry.getStandardWrappers(context));
+
+    context.destroy();
+    Assertions.assertEquals(size, ServletWrapperRegistry.size());
+  }
+
+  /**
+   * Test clearing the registry removes its listeners from every context.
+   */
+  @Test
+  void testClearDetachesListeners() {
+    StandardContext first = new StandardContext();
+    first.setName("/first");
+    StandardContext second = new StandardContext();
+    second.setName("/second");
+    int containerListeners = first.findContainerListeners().length;
+    int lifecycleListeners = first.findLifecycleListeners().length;
+    ServletWrapperRegistry.getWrappers(first);
+    ServletWrapperRegistry.getWrappers(second);
+    Assertions.assertEquals(containerListeners + 1, first.findContainerListeners().length);
+    Assertions.assertEquals(lifecycleListeners + 1, first.findLifecycleListeners().length);
+
+    ServletWrapperRegistry.clear();
+    Assertions.assertEquals(0, ServletWrapperRegistry.size());
+    for (StandardContext context : new StandardContext[] {first, second}) {
+      Assertions.assertEquals(containerListeners, context.findContainerListeners().length);
+      Assertions.assertEquals(lifecycleListeners, context.findLifecycleListeners().length);
+    }
+  }
+
+}
@@ -11,18 +11,25 @@
 package psiprobe;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
 import org.apache.catalina.valves.ValveBase;
 
 import psiprobe.model.ApplicationSession;
 import psiprobe.model.IpInfo;
+import psiprobe.model.stats.RequestLatencyRecorder;
 
 /**
- * Valve which inserts the client's IP address into the session for Tomcat 8.5.
+ * Valve which inserts the client's IP address into the session for Tomcat 8.5, and records the
+ * elapsed time of every request for the latency histograms of its application. The time of an
+ * asynchronous request ends when its container thread is released.
  */
 public class Tomcat85AgentValve extends ValveBase {
 
@@ -33,9 +40,31 @@ public class Tomcat85AgentValve extends ValveBase {
     super(true);
   }
 
+  @Override
+  protected synchronized void startInternal() throws LifecycleException {
+    super.startInternal();
+    RequestLatencyRecorder.getInstance().valveStarted();
+  }
+
+  @Override
+  protected synchronized void stopInternal() throws LifecycleException {
+    RequestLatencyRecorder.getInstance().valveStopped();
+    super.stopInternal();
+  }
+
   @Override
   public void invoke(Request request, Response response) throws IOException, ServletException {
-    getNext().invoke(request, response);
+    long start = System.nanoTime();
+    try {
+      getNext().invoke(request, response);
+    } finally {
+      Context context = request.getContext();
+      if (context != null) {
+        Container host = context.getParent();
+        RequestLatencyRecorder.getInstance().record(host == null ? null : host.getName(),
+            context.getName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      }
+    }
 
     if (request.getSession(false) != null) {
       String ip = IpInfo.getClientAddress(request.getRequest());
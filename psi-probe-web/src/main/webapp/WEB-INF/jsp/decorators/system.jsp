@@ -45,6 +45,11 @@
                 <spring:message code="probe.jsp.decorator.system.oshi"/>
             </a>
         </li>
+        <li>
+            <a class="${systemTabOverhead}" href="<c:url value='/overhead.htm'/>">
+                <spring:message code="probe.jsp.decorator.system.overhead"/>
+            </a>
+        </li>
         <li>
             <a class="${systemTabWrapper}" href="<c:url value='/wrapper.htm'/>">
                 <spring:message code="probe.jsp.decorator.system.wrapper"/>
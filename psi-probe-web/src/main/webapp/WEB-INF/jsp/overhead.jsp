@@ -0,0 +1,124 @@
+<%--
+
+    Licensed under the GPL License. You may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+      https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+
+    THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+    WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+    PURPOSE.
+
+--%>
+<%@ page contentType="text/html;charset=UTF-8" language="java" session="false"%>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/fmt" prefix="fmt" %>
+<%@ taglib uri="http://www.springframework.org/tags" prefix="spring" %>
+<%@ taglib uri="http://displaytag.sf.net" prefix="display" %>
+
+<!DOCTYPE html>
+<html lang="${lang}">
+    <head>
+        <title><spring:message code="probe.jsp.overhead.title"/></title>
+    </head>
+
+    <c:set var="navTabSystem" value="active" scope="request"/>
+    <c:set var="systemTabOverhead" value="active" scope="request"/>
+    <c:set var="use_decorator" value="system" scope="request"/>
+
+    <body>
+        <c:set var="chartWidth" value="400"/>
+        <c:set var="chartHeight" value="200"/>
+
+        <spring:message code="probe.jsp.overhead.chart.cpu.legend" var="cpu_legend"/>
+
+        <c:url value="/chart.png" var="probe_cpu_url">
+            <c:param name="p" value="probeCpu"/>
+            <c:param name="xz" value="${chartWidth}"/>
+            <c:param name="yz" value="${chartHeight}"/>
+            <c:param name="s1c" value="#FFCCCC"/>
+            <c:param name="s1o" value="#FF8484"/>
+            <c:param name="s1l" value="${cpu_legend}"/>
+        </c:url>
+
+        <div>
+            <h3><spring:message code="probe.jsp.overhead.h3.summary"/></h3>
+            <table class="genericTbl" cellspacing="0">
+                <tr>
+                    <td class="leftmost"><spring:message code="probe.jsp.overhead.cpu"/></td>
+                    <td>
+                        <c:choose>
+                            <c:when test="${not cpuMeasurable}">
+                                <spring:message code="probe.jsp.overhead.notMeasurable"/>
+                            </c:when>
+                            <c:when test="${cpuUsage lt 0}">
+                                <spring:message code="probe.jsp.overhead.notMeasured"/>
+                            </c:when>
+                            <c:otherwise>
+                                <fmt:formatNumber maxFractionDigits="3" value="${cpuUsage}"/>%
+                            </c:otherwise>
+                        </c:choose>
+                    </td>
+                </tr>
+                <tr>
+                    <td class="leftmost"><spring:message code="probe.jsp.overhead.listenerLatency"/></td>
+                    <td><fmt:formatNumber maxFractionDigits="3" value="${listenerLatency}"/></td>
+                </tr>
+                <tr>
+                    <td class="leftmost"><spring:message code="probe.jsp.overhead.droppedEvents"/></td>
+                    <td>${droppedEvents}</td>
+                </tr>
+            </table>
+
+            <h3><spring:message code="probe.jsp.overhead.h3.jobs"/></h3>
+            <display:table name="jobs" uid="job" class="genericTbl" cellspacing="0" requestURI="">
+                <display:column property="name" titleKey="probe.jsp.overhead.job.name" class="leftmost"/>
+                <display:column titleKey="probe.jsp.overhead.job.period">
+                    ${job.period / 1000}s
+                </display:column>
+                <display:column property="runCount" titleKey="probe.jsp.overhead.job.runs"/>
+                <display:column property="lastDuration" titleKey="probe.jsp.overhead.job.wall"/>
+                <display:column property="maxDuration" titleKey="probe.jsp.overhead.job.maxWall"/>
+                <display:column titleKey="probe.jsp.overhead.job.cpu">
+                    <c:choose>
+                        <c:when test="${job.lastCpu ge 0}">
+                            <fmt:formatNumber maxFractionDigits="1" value="${job.lastCpu / 1000000}"/>
+                        </c:when>
+                        <c:when test="${job.runCount gt 0}">
+                            <spring:message code="probe.jsp.overhead.job.notMeasured"/>
+                        </c:when>
+                    </c:choose>
+                </display:column>
+                <display:column titleKey="probe.jsp.overhead.job.allocated">
+                    <c:choose>
+                        <c:when test="${job.lastAllocated ge 0}">
+                            <fmt:formatNumber maxFractionDigits="1" value="${job.lastAllocated / 1024}"/>
+                        </c:when>
+                        <c:when test="${job.runCount gt 0}">
+                            <spring:message code="probe.jsp.overhead.job.notMeasured"/>
+                        </c:when>
+                    </c:choose>
+                </display:column>
+                <display:column property="lastMBeanCalls" titleKey="probe.jsp.overhead.job.mbeanCalls"/>
+                <display:column titleKey="probe.jsp.overhead.job.lockWait">
+                    <fmt:formatNumber maxFractionDigits="3" value="${job.lastLockWait / 1000000}"/>
+                </display:column>
+                <display:column property="lastLag" titleKey="probe.jsp.overhead.job.lag"/>
+                <display:column property="overrunCount" titleKey="probe.jsp.overhead.job.overruns"/>
+                <display:column property="failureCount" titleKey="probe.jsp.overhead.job.failures"/>
+            </display:table>
+
+            <div class="chartContainer">
+                <dl>
+                    <dt><spring:message code="probe.jsp.overhead.chart.cpu"/></dt>
+                    <dd class="image">
+                        <img border="0" src="<c:out value='${probe_cpu_url}' escapeXml='false'/>"
+                                width="${chartWidth}"
+                                height="${chartHeight}"
+                                alt="<spring:message code='probe.jsp.overhead.chart.cpu'/>"/>
+                    </dd>
+                </dl>
+            </div>
+        </div>
+    </body>
+</html>
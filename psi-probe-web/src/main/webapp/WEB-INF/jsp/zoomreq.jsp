@@ -29,6 +29,9 @@
         <c:param name="l" value="true"/>
         <c:param name="p" value="${param.p}"/>
         <c:param name="sp" value="${param.sp}"/>
+        <c:if test="${not empty span}">
+            <c:param name="span" value="${span}"/>
+        </c:if>
         <c:choose>
             <c:when test="${param.p == 'traffic'}">
                 <c:param name="s1c" value="#95FE8B"/>
@@ -60,6 +63,18 @@
                     <spring:message code="probe.jsp.zoomedchart.back"/>
                 </a>
             </li>
+            <c:forEach items="2h,1d,2d,7d" var="window">
+                <li>
+                    <c:url value="/zoomchart.htm" var="windowUrl">
+                        <c:param name="p" value="${param.p}"/>
+                        <c:param name="sp" value="${param.sp}"/>
+                        <c:param name="span" value="${window}"/>
+                    </c:url>
+                    <a href="${fn:escapeXml(windowUrl)}">
+                        <spring:message code="probe.jsp.zoomedchart.span" arguments="${window}"/>
+                    </a>
+                </li>
+            </c:forEach>
         </ul>
 
         <div class="blockContainer">